@@ -0,0 +1,36 @@
+package com.lemon.words.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The benchmarks entry point - JMH's command line, writing the results as JSON (jmh-result.json) unless
+ * another result format \ file is given, so runs can be compared over time.
+ * 
+ * Examples:
+ *   java -jar target/benchmarks.jar                                    (all the benchmarks)
+ *   java -jar target/benchmarks.jar IngestBenchmark -p distribution=zipf
+ *   java -jar target/benchmarks.jar RankingBenchmark -rff ranking-before.json
+ */
+public final class BenchmarkMain {
+
+	private static final String RESULT_FORMAT_OPTION = "-rf";
+	private static final String RESULT_FILE_OPTION = "-rff";
+
+	private BenchmarkMain() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<String> options = new ArrayList<>(Arrays.asList(args));
+		if (!options.contains(RESULT_FORMAT_OPTION)) {
+			options.add(RESULT_FORMAT_OPTION);
+			options.add("json");
+		}
+		if (!options.contains(RESULT_FILE_OPTION)) {
+			options.add(RESULT_FILE_OPTION);
+			options.add("jmh-result.json");
+		}
+		org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+	}
+}
@@ -0,0 +1,101 @@
+package com.lemon.words.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lemon.words.service.WordService;
+
+/**
+ * Mixed readers and writers on a single service - ranking queries while small string ingests keep coming.
+ * 
+ * The default group is 3 reader threads and 1 writer thread, the thread counts are configurable from the command line,
+ * e.g. 8 readers and 2 writers: java -jar target/benchmarks.jar ContentionBenchmark -tg 8,2
+ * (the order of the counts is the order of the group's methods: read, write)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Group)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ContentionBenchmark {
+
+	private static final int QUERIES = 1024;
+	private static final int WORDS_PER_POST = 1000;
+	private static final int POSTS = 64;
+
+	@Param({ "100000" })
+	public int vocabularySize;
+
+	private Path directory;
+	private WordService wordService;
+	private String[] queries;
+	private String[] posts;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("words-contention-benchmark");
+		wordService = Services.create(directory, Duration.ofSeconds(1));
+		Corpus corpus = new Corpus(vocabularySize, Corpus.ZIPF, 42);
+		wordService.postWords("string", String.join(" ", corpus.getVocabulary()));
+
+		SplittableRandom random = new SplittableRandom(7);
+		queries = new String[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			int from = 1 + random.nextInt(vocabularySize - 10);
+			queries[i] = i % 2 == 0 ? String.valueOf(from) : from + "-" + (from + 9);
+		}
+		posts = new String[POSTS];
+		for (int i = 0; i < POSTS; i++) {
+			posts[i] = corpus.text(WORDS_PER_POST);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		wordService.destroy();
+		Services.delete(directory);
+	}
+
+	/**
+	 * The position of each thread in the queries \ posts
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(3)
+	public List<String> read(Cursor cursor) {
+		return wordService.getWordRanking(queries[cursor.next++ & (QUERIES - 1)]);
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public void write(Cursor cursor) throws Exception {
+		wordService.postWords("string", posts[cursor.next++ & (POSTS - 1)]);
+	}
+}
@@ -0,0 +1,110 @@
+package com.lemon.words.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generating synthetic corpora for the benchmarks - a fixed vocabulary and a word distribution over it.
+ * 
+ * Natural language word frequencies are roughly Zipfian (the k-th most common word appears ~1/k^s as often as the first),
+ * so the 'zipf' corpora have a few very hot words and a long tail of rare ones. The 'uniform' corpora are the worst case
+ * for the counting (every word is equally likely, so the per word state is touched evenly).
+ * The generation is seeded so the runs are comparable.
+ */
+final class Corpus {
+
+	static final String UNIFORM = "uniform";
+	static final String ZIPF = "zipf";
+
+	private static final double ZIPF_EXPONENT = 1.0;
+
+	private final String[] vocabulary;
+	// The cumulative probability of the words (null for a uniform distribution)
+	private final double[] cumulative;
+	private final SplittableRandom random;
+
+	Corpus(int vocabularySize, String distribution, long seed) {
+		this.random = new SplittableRandom(seed);
+		this.vocabulary = new String[vocabularySize];
+		for (int i = 0; i < vocabularySize; i++) {
+			vocabulary[i] = word(i);
+		}
+		switch (distribution) {
+		case UNIFORM:
+			this.cumulative = null;
+			break;
+		case ZIPF:
+			this.cumulative = new double[vocabularySize];
+			double sum = 0;
+			for (int i = 0; i < vocabularySize; i++) {
+				sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+				cumulative[i] = sum;
+			}
+			for (int i = 0; i < vocabularySize; i++) {
+				cumulative[i] /= sum;
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown distribution: " + distribution);
+		}
+	}
+
+	/**
+	 * A word derived from its id (base 26 letters, so the words have realistic lengths and shared prefixes)
+	 */
+	static String word(int id) {
+		StringBuilder word = new StringBuilder();
+		int value = id;
+		do {
+			word.append((char) ('a' + value % 26));
+			value /= 26;
+		} while (value > 0);
+		return word.append('w').toString();
+	}
+
+	String nextWord() {
+		if (cumulative == null) {
+			return vocabulary[random.nextInt(vocabulary.length)];
+		}
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+		return vocabulary[Math.min(index < 0 ? -index - 1 : index, vocabulary.length - 1)];
+	}
+
+	/**
+	 * A text of the given number of words (space separated, a new line every 16 words)
+	 */
+	String text(int words) {
+		StringBuilder text = new StringBuilder(words * 8);
+		appendWords(text, words);
+		return text.toString();
+	}
+
+	/**
+	 * Writing a file of the given number of words
+	 */
+	void writeFile(Path file, long words) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			StringBuilder block = new StringBuilder();
+			for (long written = 0; written < words; written += 4096) {
+				block.setLength(0);
+				appendWords(block, (int) Math.min(4096, words - written));
+				writer.append(block);
+			}
+		}
+	}
+
+	private void appendWords(StringBuilder text, int words) {
+		for (int i = 0; i < words; i++) {
+			text.append(nextWord()).append(i % 16 == 15 ? '\n' : ' ');
+		}
+	}
+
+	String[] getVocabulary() {
+		return vocabulary;
+	}
+}
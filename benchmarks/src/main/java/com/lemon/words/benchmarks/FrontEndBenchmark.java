@@ -0,0 +1,188 @@
+package com.lemon.words.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.lemon.WordsApplication;
+
+/**
+ * A load test of the two front ends over HTTP - the servlet one (a fixed pool of Tomcat request threads) against the reactive
+ * one (spring.main.web-application-type=reactive, WebFlux on Netty), with slow streamed uploads and ranking queries at once.
+ *
+ * Each upload thread posts a POST /words/stream body that trickles in (a chunk every uploadPause), as a slow client does.
+ * In the servlet mode every such upload pins a request thread for its whole duration, once there are as many uploads as
+ * request threads (serverThreads, server.tomcat.threads.max) the rankings wait for a thread. In the reactive mode the uploads
+ * hold no thread while they wait for their next chunk, so the ranking throughput \ latency should barely move.
+ * Compare the rank results of the two modes (the upload results are bounded by the pause):
+ *   java -jar target/benchmarks.jar FrontEndBenchmark -tg 4,16 -p serverThreads=16
+ * (the order of the thread counts is the order of the group's methods: rank, upload)
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Group)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class FrontEndBenchmark {
+
+	private static final int VOCABULARY_SIZE = 100_000;
+	private static final int QUERIES = 1024;
+	private static final int UPLOAD_CHUNKS = 20;
+	private static final int UPLOAD_CHUNK_WORDS = 1000;
+
+	@Param({ "servlet", "reactive" })
+	public String mode;
+
+	@Param({ "16" })
+	public int serverThreads;
+
+	@Param({ "50" })
+	public int uploadPauseMillis;
+
+	private Path directory;
+	private ConfigurableApplicationContext context;
+	private HttpClient client;
+	private URI[] queries;
+	private URI uploadUri;
+	private byte[] chunk;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("words-front-end-benchmark");
+		// Command line arguments, they override the server's application.properties
+		context = new SpringApplicationBuilder(WordsApplication.class).run("--spring.main.web-application-type=" + mode,
+				"--server.port=0", "--server.tomcat.threads.max=" + serverThreads,
+				"--words.persistence.directory=" + directory, "--words.persistence.log-sync-interval=1s",
+				"--logging.level.root=WARN");
+		String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+		Corpus corpus = new Corpus(VOCABULARY_SIZE, Corpus.ZIPF, 42);
+		HttpResponse<Void> vocabulary = client.send(HttpRequest.newBuilder(URI.create(base + "/words/stream"))
+				.header("Content-Type", "text/plain").POST(HttpRequest.BodyPublishers.ofString(String.join(" ",
+						corpus.getVocabulary()), StandardCharsets.UTF_8)).build(), HttpResponse.BodyHandlers.discarding());
+		if (vocabulary.statusCode() != 200) {
+			throw new IllegalStateException("Failed to ingest the vocabulary: " + vocabulary.statusCode());
+		}
+		SplittableRandom random = new SplittableRandom(7);
+		queries = new URI[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			int from = 1 + random.nextInt(VOCABULARY_SIZE - 10);
+			queries[i] = URI.create(base + "/word_ranking?range=" + from + "-" + (from + 9));
+		}
+		uploadUri = URI.create(base + "/words/stream");
+		chunk = (corpus.text(UPLOAD_CHUNK_WORDS) + " ").getBytes(StandardCharsets.UTF_8);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		context.close();
+		Services.delete(directory);
+	}
+
+	/**
+	 * The position of each thread in the queries
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(4)
+	public int rank(Cursor cursor) throws Exception {
+		return send(HttpRequest.newBuilder(queries[cursor.next++ & (QUERIES - 1)]).GET().build());
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(16)
+	public int upload() throws Exception {
+		return send(HttpRequest.newBuilder(uploadUri).header("Content-Type", "text/plain")
+				.POST(HttpRequest.BodyPublishers.ofInputStream(() -> new SlowBody(chunk, UPLOAD_CHUNKS, uploadPauseMillis)))
+				.build());
+	}
+
+	private int send(HttpRequest request) throws Exception {
+		HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+		if (response.statusCode() != 200) {
+			throw new IllegalStateException(request.uri() + " failed: " + response.statusCode());
+		}
+		return response.statusCode();
+	}
+
+	/**
+	 * A body of the same chunk repeated, pausing before each chunk (a slow client)
+	 */
+	private static final class SlowBody extends InputStream {
+
+		private final byte[] chunk;
+		private final long pauseMillis;
+		private int chunksLeft;
+		private int position;
+
+		private SlowBody(byte[] chunk, int chunks, long pauseMillis) {
+			this.chunk = chunk;
+			this.chunksLeft = chunks;
+			this.pauseMillis = pauseMillis;
+			this.position = chunk.length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position == chunk.length) {
+				if (chunksLeft == 0) {
+					return -1;
+				}
+				chunksLeft--;
+				position = 0;
+				try {
+					Thread.sleep(pauseMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+			int read = Math.min(len, chunk.length - position);
+			System.arraycopy(chunk, position, b, off, read);
+			position += read;
+			return read;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.lemon.words.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lemon.words.service.WordService;
+
+/**
+ * POST /words throughput (WordService.postWords) in tokens per second, for type=string and type=file inputs.
+ * 
+ * The corpora are generated per vocabulary size and distribution (see Corpus). The write ahead log is synced in the background
+ * (words.persistence.log-sync-interval) so the numbers are the ingest itself and not the disk's fsync latency.
+ * The state is cleared before each iteration so the vocabulary doesn't keep growing across iterations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class IngestBenchmark {
+
+	private static final int STRING_WORDS = 100_000;
+	private static final int FILE_WORDS = 2_000_000;
+
+	@Param({ "1000", "100000", "1000000" })
+	public int vocabularySize;
+
+	@Param({ Corpus.UNIFORM, Corpus.ZIPF })
+	public String distribution;
+
+	private Path directory;
+	private WordService wordService;
+	private String text;
+	private String filename;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("words-ingest-benchmark");
+		Corpus corpus = new Corpus(vocabularySize, distribution, 42);
+		text = corpus.text(STRING_WORDS);
+		Path file = directory.resolve("corpus.txt");
+		corpus.writeFile(file, FILE_WORDS);
+		filename = file.toString();
+		wordService = Services.create(directory, Duration.ofSeconds(1));
+	}
+
+	@Setup(Level.Iteration)
+	public void clear() throws Exception {
+		wordService.clear();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		wordService.destroy();
+		Services.delete(directory);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STRING_WORDS)
+	public void postString() throws Exception {
+		wordService.postWords("string", text);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FILE_WORDS)
+	public void postFile() throws Exception {
+		wordService.postWords("file", filename);
+	}
+}
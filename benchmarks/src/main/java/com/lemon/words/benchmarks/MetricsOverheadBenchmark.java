@@ -0,0 +1,92 @@
+package com.lemon.words.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lemon.words.service.WordService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+/**
+ * The cost of the metrics (see WordsMetrics) on the ingest and ranking hot paths.
+ * 
+ * registry=none is a registry without backends (every meter is a no-op), registry=prometheus is what the server runs with.
+ * The scores of the two should be within the error of each other.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class MetricsOverheadBenchmark {
+
+	private static final int STRING_WORDS = 10_000;
+	private static final int QUERIES = 1024;
+	private static final int VOCABULARY_SIZE = 100_000;
+
+	@Param({ "none", "prometheus" })
+	public String registry;
+
+	private Path directory;
+	private WordService wordService;
+	private String text;
+	private String[] queries;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("words-metrics-benchmark");
+		MeterRegistry meterRegistry = "prometheus".equals(registry) ? new PrometheusMeterRegistry(PrometheusConfig.DEFAULT)
+				: new CompositeMeterRegistry();
+		wordService = Services.create(directory, Duration.ofSeconds(1), meterRegistry);
+		Corpus corpus = new Corpus(VOCABULARY_SIZE, Corpus.ZIPF, 42);
+		wordService.postWords("string", String.join(" ", corpus.getVocabulary()));
+		text = corpus.text(STRING_WORDS);
+
+		SplittableRandom random = new SplittableRandom(7);
+		queries = new String[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			queries[i] = String.valueOf(1 + random.nextInt(VOCABULARY_SIZE));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		wordService.destroy();
+		Services.delete(directory);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STRING_WORDS)
+	public void postString() throws Exception {
+		wordService.postWords("string", text);
+	}
+
+	@Benchmark
+	public List<String> pointQuery() {
+		return wordService.getWordRanking(queries[next++ & (QUERIES - 1)]);
+	}
+}
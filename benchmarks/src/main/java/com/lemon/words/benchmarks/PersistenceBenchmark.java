@@ -0,0 +1,81 @@
+package com.lemon.words.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lemon.words.config.WordsProperties.Vocabulary.StorageType;
+import com.lemon.words.service.WordService;
+
+/**
+ * The time of taking a snapshot (WordService.saveMapToDisk) and of loading the state on startup (WordService.init, which loads
+ * the snapshot and replays the write ahead log).
+ *
+ * restart is a clean shutdown followed by a startup - a mapped vocabulary is then reopened as is instead of being loaded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class PersistenceBenchmark {
+
+	@Param({ "100000", "1000000" })
+	public int vocabularySize;
+
+	@Param({ "HEAP", "MAPPED" })
+	public StorageType storage;
+
+	private Path directory;
+	private WordService wordService;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("words-persistence-benchmark");
+		wordService = Services.create(directory, Duration.ZERO, storage);
+		Corpus corpus = new Corpus(vocabularySize, Corpus.ZIPF, 42);
+		wordService.postWords("string", String.join(" ", corpus.getVocabulary()));
+		Path file = directory.resolve("corpus.txt");
+		corpus.writeFile(file, vocabularySize * 10L);
+		wordService.postWords("file", file.toString());
+		wordService.saveMapToDisk();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		wordService.destroy();
+		Services.delete(directory);
+	}
+
+	@Benchmark
+	public void saveMapToDisk() throws Exception {
+		wordService.saveMapToDisk();
+	}
+
+	@Benchmark
+	public void loadMapFromDisk() throws Exception {
+		wordService.init();
+	}
+
+	@Benchmark
+	public void restart() throws Exception {
+		wordService.destroy();
+		wordService = Services.create(directory, Duration.ZERO, storage);
+	}
+}
@@ -0,0 +1,90 @@
+package com.lemon.words.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lemon.words.service.WordService;
+
+/**
+ * GET /word_ranking latency (WordService.getWordRanking) for point queries and range queries,
+ * sampled so the results include the latency percentiles.
+ * 
+ * The queries are precomputed (random positions over the whole vocabulary) and cycled through.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RankingBenchmark {
+
+	private static final int QUERIES = 1024;
+
+	@Param({ "10000", "1000000" })
+	public int vocabularySize;
+
+	@Param({ "100" })
+	public int rangeLength;
+
+	private Path directory;
+	private WordService wordService;
+	private String[] pointQueries;
+	private String[] rangeQueries;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("words-ranking-benchmark");
+		wordService = Services.create(directory, Duration.ofSeconds(1));
+		Corpus corpus = new Corpus(vocabularySize, Corpus.ZIPF, 42);
+		// Making sure the whole vocabulary is ranked, then a zipfian corpus on top of it
+		wordService.postWords("string", String.join(" ", corpus.getVocabulary()));
+		Path file = directory.resolve("corpus.txt");
+		corpus.writeFile(file, vocabularySize * 10L);
+		wordService.postWords("file", file.toString());
+
+		SplittableRandom random = new SplittableRandom(7);
+		pointQueries = new String[QUERIES];
+		rangeQueries = new String[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			pointQueries[i] = String.valueOf(1 + random.nextInt(vocabularySize));
+			int from = 1 + random.nextInt(Math.max(1, vocabularySize - rangeLength));
+			rangeQueries[i] = from + "-" + (from + rangeLength - 1);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		wordService.destroy();
+		Services.delete(directory);
+	}
+
+	@Benchmark
+	public List<String> pointQuery() {
+		return wordService.getWordRanking(pointQueries[next++ & (QUERIES - 1)]);
+	}
+
+	@Benchmark
+	public List<String> rangeQuery() {
+		return wordService.getWordRanking(rangeQueries[next++ & (QUERIES - 1)]);
+	}
+}
@@ -0,0 +1,73 @@
+package com.lemon.words.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.lemon.words.config.WordsProperties;
+import com.lemon.words.config.WordsProperties.Vocabulary.StorageType;
+import com.lemon.words.metrics.WordsMetrics;
+import com.lemon.words.service.WordService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Creating WordService instances outside of spring (each with its own state directory)
+ */
+final class Services {
+
+	private Services() {
+	}
+
+	/**
+	 * A service over a new empty state directory
+	 * 
+	 * @param logSyncInterval - 0 waits for the disk on every ingest (the server default), otherwise the log is synced in the background
+	 * @return
+	 * @throws Exception
+	 */
+	static WordService create(Path stateDirectory, Duration logSyncInterval) throws Exception {
+		return create(stateDirectory, logSyncInterval, StorageType.HEAP, new SimpleMeterRegistry());
+	}
+
+	/**
+	 * A service over a state directory with the given vocabulary storage (see words.vocabulary.storage)
+	 */
+	static WordService create(Path stateDirectory, Duration logSyncInterval, StorageType storage) throws Exception {
+		return create(stateDirectory, logSyncInterval, storage, new SimpleMeterRegistry());
+	}
+
+	/**
+	 * A service over a new empty state directory, recording its metrics to the given registry
+	 */
+	static WordService create(Path stateDirectory, Duration logSyncInterval, MeterRegistry registry) throws Exception {
+		return create(stateDirectory, logSyncInterval, StorageType.HEAP, registry);
+	}
+
+	private static WordService create(Path stateDirectory, Duration logSyncInterval, StorageType storage,
+			MeterRegistry registry) throws Exception {
+		WordsProperties properties = new WordsProperties();
+		properties.getVocabulary().setStorage(storage);
+		properties.getPersistence().setDirectory(stateDirectory.toString());
+		properties.getPersistence().setLogSyncInterval(logSyncInterval);
+		// The benchmarks trigger the snapshots themselves
+		properties.getPersistence().setSnapshotInterval(Duration.ZERO);
+		properties.getRanking().setMaxPositions(Integer.MAX_VALUE);
+		WordService wordService = new WordService(properties, new WordsMetrics(registry, properties));
+		wordService.init();
+		return wordService;
+	}
+
+	static void delete(Path directory) throws IOException {
+		if (!Files.exists(directory)) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+}
@@ -0,0 +1,546 @@
+package com.lemon.words.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * The words server configuration (the 'words.*' properties in application.properties)
+ * 
+ * The defaults here are used when a property is not set (and when the service is created without spring, e.g. benchmarks)
+ */
+@Component
+@ConfigurationProperties(prefix = "words")
+public class WordsProperties {
+
+	private final Ingest ingest = new Ingest();
+	private final Persistence persistence = new Persistence();
+	private final Url url = new Url();
+	private final Jobs jobs = new Jobs();
+	private final Ranking ranking = new Ranking();
+	private final Metrics metrics = new Metrics();
+	private final Vocabulary vocabulary = new Vocabulary();
+	private final Cluster cluster = new Cluster();
+	private final Replication replication = new Replication();
+	private final Reactive reactive = new Reactive();
+
+	public Ingest getIngest() {
+		return ingest;
+	}
+
+	public Persistence getPersistence() {
+		return persistence;
+	}
+
+	public Url getUrl() {
+		return url;
+	}
+
+	public Jobs getJobs() {
+		return jobs;
+	}
+
+	public Ranking getRanking() {
+		return ranking;
+	}
+
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	public Vocabulary getVocabulary() {
+		return vocabulary;
+	}
+
+	public Cluster getCluster() {
+		return cluster;
+	}
+
+	public Replication getReplication() {
+		return replication;
+	}
+
+	public Reactive getReactive() {
+		return reactive;
+	}
+
+	public static class Ingest {
+
+		// The number of threads used to ingest a single file (0 means the number of available processors)
+		private int parallelism = 0;
+
+		// A file is split to chunks of (roughly) this size, each chunk is tokenized by a single thread
+		private DataSize fileChunkSize = DataSize.ofMegabytes(16);
+
+		// The number of lock stripes of the pending counts shared by concurrent ingests (0 means 4 per available processor)
+		private int countStripes = 0;
+
+		// The maximal size of a POST /words/stream body (and of its decompressed content when gzipped)
+		private DataSize streamMaxSize = DataSize.ofGigabytes(1);
+
+		public int getParallelism() {
+			return parallelism;
+		}
+
+		public void setParallelism(int parallelism) {
+			this.parallelism = parallelism;
+		}
+
+		public DataSize getFileChunkSize() {
+			return fileChunkSize;
+		}
+
+		public void setFileChunkSize(DataSize fileChunkSize) {
+			this.fileChunkSize = fileChunkSize;
+		}
+
+		public int getCountStripes() {
+			return countStripes;
+		}
+
+		public void setCountStripes(int countStripes) {
+			this.countStripes = countStripes;
+		}
+
+		public DataSize getStreamMaxSize() {
+			return streamMaxSize;
+		}
+
+		public void setStreamMaxSize(DataSize streamMaxSize) {
+			this.streamMaxSize = streamMaxSize;
+		}
+	}
+
+	public static class Persistence {
+
+		// The directory of the state file (snapshot) and the write ahead log
+		private String directory = ".";
+
+		// 0 means every POST /words waits for its log record to be synced to the disk (concurrent requests share a single sync).
+		// Otherwise the log is synced in the background every interval (a crash may lose the last interval)
+		private Duration logSyncInterval = Duration.ZERO;
+
+		// A snapshot is taken (and the log truncated) every interval if there were updates, 0 disables the periodic snapshot
+		private Duration snapshotInterval = Duration.ofMinutes(5);
+
+		// A snapshot is also taken once the log grows to this size
+		private DataSize snapshotLogSize = DataSize.ofMegabytes(64);
+
+		public String getDirectory() {
+			return directory;
+		}
+
+		public void setDirectory(String directory) {
+			this.directory = directory;
+		}
+
+		public Duration getLogSyncInterval() {
+			return logSyncInterval;
+		}
+
+		public void setLogSyncInterval(Duration logSyncInterval) {
+			this.logSyncInterval = logSyncInterval;
+		}
+
+		public Duration getSnapshotInterval() {
+			return snapshotInterval;
+		}
+
+		public void setSnapshotInterval(Duration snapshotInterval) {
+			this.snapshotInterval = snapshotInterval;
+		}
+
+		public DataSize getSnapshotLogSize() {
+			return snapshotLogSize;
+		}
+
+		public void setSnapshotLogSize(DataSize snapshotLogSize) {
+			this.snapshotLogSize = snapshotLogSize;
+		}
+	}
+
+	public static class Url {
+
+		private Duration connectTimeout = Duration.ofSeconds(5);
+
+		// The maximal time to wait for a single read from the remote host
+		private Duration readTimeout = Duration.ofSeconds(30);
+
+		// The maximal time to download the whole content
+		private Duration maxDuration = Duration.ofMinutes(10);
+
+		// The maximal size of the content, both as downloaded and decompressed
+		private DataSize maxSize = DataSize.ofGigabytes(1);
+
+		public Duration getConnectTimeout() {
+			return connectTimeout;
+		}
+
+		public void setConnectTimeout(Duration connectTimeout) {
+			this.connectTimeout = connectTimeout;
+		}
+
+		public Duration getReadTimeout() {
+			return readTimeout;
+		}
+
+		public void setReadTimeout(Duration readTimeout) {
+			this.readTimeout = readTimeout;
+		}
+
+		public Duration getMaxDuration() {
+			return maxDuration;
+		}
+
+		public void setMaxDuration(Duration maxDuration) {
+			this.maxDuration = maxDuration;
+		}
+
+		public DataSize getMaxSize() {
+			return maxSize;
+		}
+
+		public void setMaxSize(DataSize maxSize) {
+			this.maxSize = maxSize;
+		}
+	}
+
+	public static class Jobs {
+
+		// The number of threads running ingest jobs (off the web server's request threads)
+		private int workers = 4;
+		// The number of jobs waiting for a worker, a submit beyond it is rejected (429)
+		private int queueCapacity = 100;
+		// The number of finished jobs kept for the status endpoint (the oldest are forgotten first)
+		private int maxFinished = 1000;
+
+		public int getWorkers() {
+			return workers;
+		}
+
+		public void setWorkers(int workers) {
+			this.workers = workers;
+		}
+
+		public int getQueueCapacity() {
+			return queueCapacity;
+		}
+
+		public void setQueueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+		}
+
+		public int getMaxFinished() {
+			return maxFinished;
+		}
+
+		public void setMaxFinished(int maxFinished) {
+			this.maxFinished = maxFinished;
+		}
+	}
+
+	public static class Ranking {
+
+		// How stale a /word_ranking response may be, 0 means a new ranking snapshot is published after every ingest
+		// (a copy of the whole ranking per ingest, under the service monitor)
+		private Duration maxStaleness = Duration.ZERO;
+		// The maximal number of positions a single /word_ranking request may return
+		private int maxPositions = 100000;
+		// The maximal number of words a single /words/lookup request may look up
+		private int maxLookupWords = 10000;
+		// Whether the words are also indexed by their prefixes (for /word_ranking?prefix=, see PrefixIndex)
+		private boolean prefixIndex = true;
+		// EXACT ranks every word, APPROXIMATE only keeps the top words in a bounded memory (see Approximate)
+		private RankingMode mode = RankingMode.EXACT;
+		private final Approximate approximate = new Approximate();
+		// The time windows /word_ranking?window= can rank (none by default, e.g. 5m,1h,24h - each costs a ranked copy of its words)
+		// and the buckets they slide by. Ignored in the APPROXIMATE mode
+		private List<Duration> windows = new ArrayList<>();
+		private Duration windowBucket = Duration.ofMinutes(1);
+
+		public Duration getMaxStaleness() {
+			return maxStaleness;
+		}
+
+		public void setMaxStaleness(Duration maxStaleness) {
+			this.maxStaleness = maxStaleness;
+		}
+
+		public int getMaxPositions() {
+			return maxPositions;
+		}
+
+		public void setMaxPositions(int maxPositions) {
+			this.maxPositions = maxPositions;
+		}
+
+		public int getMaxLookupWords() {
+			return maxLookupWords;
+		}
+
+		public void setMaxLookupWords(int maxLookupWords) {
+			this.maxLookupWords = maxLookupWords;
+		}
+
+		public boolean isPrefixIndex() {
+			return prefixIndex;
+		}
+
+		public void setPrefixIndex(boolean prefixIndex) {
+			this.prefixIndex = prefixIndex;
+		}
+
+		public RankingMode getMode() {
+			return mode;
+		}
+
+		public void setMode(RankingMode mode) {
+			this.mode = mode;
+		}
+
+		public Approximate getApproximate() {
+			return approximate;
+		}
+
+		public List<Duration> getWindows() {
+			return windows;
+		}
+
+		public void setWindows(List<Duration> windows) {
+			this.windows = windows;
+		}
+
+		public Duration getWindowBucket() {
+			return windowBucket;
+		}
+
+		public void setWindowBucket(Duration windowBucket) {
+			this.windowBucket = windowBucket;
+		}
+
+		public enum RankingMode {
+			EXACT, APPROXIMATE
+		}
+
+		public static class Approximate {
+
+			// The number of top positions served by /word_ranking
+			private int topK = 1000;
+			// The number of monitored words (the Space-Saving counters), more counters tighten the error of the top positions
+			private int counters = 10000;
+			// The Count-Min Sketch error (relative to the total count) and the probability of exceeding it
+			private double errorRate = 0.0001;
+			private double failureProbability = 0.01;
+
+			public int getTopK() {
+				return topK;
+			}
+
+			public void setTopK(int topK) {
+				this.topK = topK;
+			}
+
+			public int getCounters() {
+				return counters;
+			}
+
+			public void setCounters(int counters) {
+				this.counters = counters;
+			}
+
+			public double getErrorRate() {
+				return errorRate;
+			}
+
+			public void setErrorRate(double errorRate) {
+				this.errorRate = errorRate;
+			}
+
+			public double getFailureProbability() {
+				return failureProbability;
+			}
+
+			public void setFailureProbability(double failureProbability) {
+				this.failureProbability = failureProbability;
+			}
+		}
+	}
+
+	public static class Metrics {
+
+		// 1 out of this number of /word_ranking requests is timed (1 times every request)
+		private int rankingSampleInterval = 16;
+
+		public int getRankingSampleInterval() {
+			return rankingSampleInterval;
+		}
+
+		public void setRankingSampleInterval(int rankingSampleInterval) {
+			this.rankingSampleInterval = rankingSampleInterval;
+		}
+	}
+
+	public static class Vocabulary {
+
+		// Where the words, counts and rank index are kept - HEAP (Java arrays) or MAPPED (off heap, memory mapped files)
+		private StorageType storage = StorageType.HEAP;
+		// The directory of the mapped files (relative to words.persistence.directory)
+		private String directory = "vocabulary";
+
+		public StorageType getStorage() {
+			return storage;
+		}
+
+		public void setStorage(StorageType storage) {
+			this.storage = storage;
+		}
+
+		public String getDirectory() {
+			return directory;
+		}
+
+		public void setDirectory(String directory) {
+			this.directory = directory;
+		}
+
+		public enum StorageType {
+			HEAP, MAPPED
+		}
+	}
+
+	public static class Cluster {
+
+		// The base URLs of all the nodes (e.g. http://host:8080), in the same order on every node - empty means a single node
+		private List<String> nodes = new ArrayList<>();
+		// This node's position in the nodes list
+		private int nodeIndex = 0;
+		// The connect and read timeout of a call to another node
+		private Duration timeout = Duration.ofSeconds(30);
+		// The number of rank quantiles (words at evenly spaced positions) each shard samples per round of a deep range
+		private int histogramSize = 256;
+
+		public List<String> getNodes() {
+			return nodes;
+		}
+
+		public void setNodes(List<String> nodes) {
+			this.nodes = nodes;
+		}
+
+		public int getNodeIndex() {
+			return nodeIndex;
+		}
+
+		public void setNodeIndex(int nodeIndex) {
+			this.nodeIndex = nodeIndex;
+		}
+
+		public Duration getTimeout() {
+			return timeout;
+		}
+
+		public void setTimeout(Duration timeout) {
+			this.timeout = timeout;
+		}
+
+		public int getHistogramSize() {
+			return histogramSize;
+		}
+
+		public void setHistogramSize(int histogramSize) {
+			this.histogramSize = histogramSize;
+		}
+	}
+
+	public static class Replication {
+
+		// The port this node streams its batches to replicas on (0 - no replicas)
+		private int port = 0;
+		// The primary (host:port of its words.replication.port) this node replicates, empty - not a replica
+		private String primary = "";
+		// The primary sends a heartbeat when it had no batch to send for this long, a replica reconnects after 3 silent intervals
+		private Duration heartbeatInterval = Duration.ofSeconds(1);
+		// The time a replica waits before reconnecting to the primary
+		private Duration reconnectDelay = Duration.ofSeconds(1);
+		// The number of batches waiting to be sent to a replica, a replica that falls further behind is disconnected
+		private int queueSize = 1024;
+
+		public int getPort() {
+			return port;
+		}
+
+		public void setPort(int port) {
+			this.port = port;
+		}
+
+		public String getPrimary() {
+			return primary;
+		}
+
+		public void setPrimary(String primary) {
+			this.primary = primary;
+		}
+
+		public Duration getHeartbeatInterval() {
+			return heartbeatInterval;
+		}
+
+		public void setHeartbeatInterval(Duration heartbeatInterval) {
+			this.heartbeatInterval = heartbeatInterval;
+		}
+
+		public Duration getReconnectDelay() {
+			return reconnectDelay;
+		}
+
+		public void setReconnectDelay(Duration reconnectDelay) {
+			this.reconnectDelay = reconnectDelay;
+		}
+
+		public int getQueueSize() {
+			return queueSize;
+		}
+
+		public void setQueueSize(int queueSize) {
+			this.queueSize = queueSize;
+		}
+	}
+
+	public static class Reactive {
+
+		// The threads the ingests (and the other blocking writes) run on, off the event loop
+		private int ingestThreads = 4;
+		// The ingests waiting for an ingest thread, more concurrent ingests are rejected with 429
+		private int ingestQueueSize = 256;
+		// The threads the reads that may wait on the service monitor (lookups, prefixes and windows) run on
+		private int readThreads = 16;
+
+		public int getIngestThreads() {
+			return ingestThreads;
+		}
+
+		public void setIngestThreads(int ingestThreads) {
+			this.ingestThreads = ingestThreads;
+		}
+
+		public int getIngestQueueSize() {
+			return ingestQueueSize;
+		}
+
+		public void setIngestQueueSize(int ingestQueueSize) {
+			this.ingestQueueSize = ingestQueueSize;
+		}
+
+		public int getReadThreads() {
+			return readThreads;
+		}
+
+		public void setReadThreads(int readThreads) {
+			this.readThreads = readThreads;
+		}
+	}
+}
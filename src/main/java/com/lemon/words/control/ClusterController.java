@@ -0,0 +1,98 @@
+package com.lemon.words.control;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.lemon.words.service.WordService;
+import com.lemon.words.service.cluster.ShardCodec;
+
+/**
+ * The entrypoints the nodes of a cluster (words.cluster.nodes) call on each other - this node's shard of the words
+ * (see Shard and RemoteShard). The words are sent in the binary format of ShardCodec.
+ *
+ * Security(!): these entrypoints are internal - a client can ingest straight into a shard (bypassing the partitioning).
+ * They should only be reachable by the other nodes (e.g. a private network \ a proxy that doesn't route /cluster).
+ * They are blocking, so they are served in the servlet mode only (see ReactiveWordController).
+ */
+@RestController
+@RequestMapping("/cluster")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ClusterController {
+
+	@Autowired
+	private WordService wordService;
+
+	/**
+	 * Ingesting a batch of the words this node owns (ShardCodec counts)
+	 *
+	 * @param body
+	 * @throws IOException
+	 */
+	@PostMapping(value = "/counts", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+	@ResponseStatus(code = HttpStatus.OK)
+	public void ingest(@RequestBody byte[] body) throws IOException {
+		this.wordService.ingestShard(ShardCodec.decodeCounts(body));
+	}
+
+	@GetMapping(value = "/size")
+	public int size() {
+		return this.wordService.shardSize();
+	}
+
+	/**
+	 * The shard's words at the (zero based) positions from..from+limit (ShardCodec occurrences)
+	 *
+	 * @param from
+	 * @param limit
+	 * @return
+	 */
+	@GetMapping(value = "/words", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+	public byte[] words(@RequestParam(name = "from") int from, @RequestParam(name = "limit") int limit) {
+		return ShardCodec.encodeOccurrences(this.wordService.shardWords(from, limit));
+	}
+
+	/**
+	 * The shard's words at the given positions (a JSON array), as ShardCodec occurrences
+	 *
+	 * @param positions
+	 * @return
+	 */
+	@PostMapping(value = "/words/at", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+	public byte[] wordsAt(@RequestBody int[] positions) {
+		return ShardCodec.encodeOccurrences(this.wordService.shardWordsAt(positions));
+	}
+
+	/**
+	 * For each of the given words (ShardCodec occurrences), the number of the shard's words ranked before it
+	 *
+	 * @param body
+	 * @return
+	 */
+	@PostMapping(value = "/ranks", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+	public long[] ranks(@RequestBody byte[] body) {
+		return this.wordService.shardRanksOf(ShardCodec.decodeOccurrences(body));
+	}
+
+	/**
+	 * The shard's counts of the given words (a JSON array), 0 for an unknown word
+	 *
+	 * @param words
+	 * @return
+	 */
+	@PostMapping(value = "/counts/lookup")
+	public long[] counts(@RequestBody List<String> words) {
+		return this.wordService.shardCountsOf(words);
+	}
+}
@@ -0,0 +1,275 @@
+package com.lemon.words.control;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.ZipException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.lemon.words.config.WordsProperties;
+import com.lemon.words.exception.IngestQueueFullException;
+import com.lemon.words.exception.InvalidGzipException;
+import com.lemon.words.exception.InvalidPrefixException;
+import com.lemon.words.model.IngestJob;
+import com.lemon.words.model.WordLookup;
+import com.lemon.words.model.dto.PostWordsRequestDTO;
+import com.lemon.words.model.dto.PostWordsResponseDTO;
+import com.lemon.words.service.IngestJobService;
+import com.lemon.words.service.WordService;
+import com.lemon.words.service.ingest.StreamUpload;
+import com.lemon.words.service.ranking.RankingSnapshot;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The word entrypoints on the reactive front end (spring.main.web-application-type=reactive, WebFlux on Netty) -
+ * the same entrypoints, parameters and responses as WordController, without a thread per request:
+ *   - /word_ranking from the published snapshot is served on the event loop (it never locks)
+ *   - the lookups, the prefix and the window rankings (they may wait on the service monitor) run on the read threads
+ *   - the ingests run on their own bounded threads (words.reactive.*), 429 when too many are waiting
+ *   - a streamed upload (POST /words/stream) is fed to the tokenizer buffer by buffer as it arrives (see StreamUpload),
+ *     no thread waits for a slow client's next bytes
+ *
+ * The cluster entrypoints (ClusterController) are blocking, so a cluster's nodes run in the servlet mode.
+ */
+@RestController
+@RequestMapping("/")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWordController {
+
+	private static final String URL_TYPE = "url";
+	private static final String GZIP = "gzip";
+	// The body buffers read ahead of the tokenizer (the rest of the body waits in the socket)
+	private static final int STREAM_PREFETCH = 8;
+
+	@Autowired
+	private WordService wordService;
+
+	@Autowired
+	private IngestJobService ingestJobService;
+
+	@Autowired
+	private WordsProperties properties;
+
+	private Scheduler ingestScheduler;
+	private Scheduler readScheduler;
+
+	@PostConstruct
+	public void init() {
+		if (this.wordService.isClustered()) {
+			throw new IllegalStateException("A cluster's nodes (words.cluster.nodes) run in the servlet mode, "
+					+ "not with spring.main.web-application-type=reactive");
+		}
+		WordsProperties.Reactive reactive = properties.getReactive();
+		this.ingestScheduler = Schedulers.newBoundedElastic(reactive.getIngestThreads(), reactive.getIngestQueueSize(),
+				"words-ingest");
+		this.readScheduler = Schedulers.newBoundedElastic(reactive.getReadThreads(),
+				Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "words-read");
+	}
+
+	@PreDestroy
+	public void destroy() {
+		this.ingestScheduler.dispose();
+		this.readScheduler.dispose();
+	}
+
+	/**
+	 * As WordController.postWords - the synchronous ingests run on the ingest threads
+	 *
+	 * @param requestDTO
+	 * @param async
+	 * @return
+	 */
+	@PostMapping(value = "/words")
+	public Mono<ResponseEntity<PostWordsResponseDTO>> postWords(@RequestBody PostWordsRequestDTO requestDTO,
+			@RequestParam(name = "async", defaultValue = "false") boolean async) {
+		if (async || URL_TYPE.equals(requestDTO.getType())) {
+			IngestJob job = this.ingestJobService.submit(requestDTO.getType(), requestDTO.getData());
+			return Mono.just(ResponseEntity.accepted().body(new PostWordsResponseDTO(job.getId())));
+		}
+		return onIngestThread(() -> {
+			this.wordService.postWords(requestDTO.getType(), requestDTO.getData());
+			return ResponseEntity.ok().build();
+		});
+	}
+
+	/**
+	 * As WordController.postWordsStream - the body's buffers are tokenized on an ingest thread as they arrive
+	 * (each buffer is released once it is tokenized) and the upload is ingested once the body ends.
+	 * A gzipped body that is not valid gzip gets 400.
+	 *
+	 * @param request
+	 * @return
+	 */
+	@PostMapping(value = "/words/stream", consumes = { MediaType.TEXT_PLAIN_VALUE, WordController.APPLICATION_GZIP_VALUE })
+	public Mono<ResponseEntity<Void>> postWordsStream(ServerHttpRequest request) {
+		HttpHeaders headers = request.getHeaders();
+		MediaType contentType = headers.getContentType();
+		boolean gzip = GZIP.equalsIgnoreCase(headers.getFirst(HttpHeaders.CONTENT_ENCODING))
+				|| (contentType != null && contentType.isCompatibleWith(MediaType.valueOf(WordController.APPLICATION_GZIP_VALUE)));
+		Mono<ResponseEntity<Void>> ingest = Mono.using(
+				() -> this.wordService.openWordsStream(headers.getContentLength(), gzip),
+				upload -> request.getBody().publishOn(ingestScheduler, STREAM_PREFETCH).doOnNext(buffer -> feed(upload, buffer))
+						.then(Mono.fromCallable(() -> {
+							this.wordService.ingestWordsStream(upload);
+							return ResponseEntity.ok().<Void>build();
+						})),
+				StreamUpload::close);
+		return ingest.doOnDiscard(PooledDataBuffer.class, DataBufferUtils::release)
+				.onErrorMap(RejectedExecutionException.class, this::ingestQueueFull)
+				.onErrorMap(e -> gzip && (e instanceof ZipException || e instanceof EOFException), InvalidGzipException::new);
+	}
+
+	/**
+	 * As WordController.getJob
+	 *
+	 * @param id
+	 * @return
+	 */
+	@GetMapping(value = "/words/jobs/{id}")
+	public ResponseEntity<IngestJob> getJob(@PathVariable(name = "id") String id) {
+		IngestJob job = this.ingestJobService.getJob(id);
+		if (job == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(job);
+	}
+
+	/**
+	 * As WordController.getWordRanking - the snapshot ranking is served on the event loop, the prefix and the window rankings
+	 * on the read threads
+	 *
+	 * @param rangeInput
+	 * @param window
+	 * @param prefix
+	 * @param staleness
+	 * @return
+	 */
+	@GetMapping(value = "/word_ranking")
+	public Mono<ResponseEntity<List<String>>> getWordRanking(@RequestParam(name = "range") String rangeInput,
+			@RequestParam(name = "window", required = false) String window,
+			@RequestParam(name = "prefix", required = false) String prefix,
+			@RequestParam(name = "staleness", required = false) String staleness) {
+		checkStaleness(staleness);
+		if (prefix != null) {
+			if (window != null) {
+				throw new InvalidPrefixException("A prefix can't be combined with a window");
+			}
+			RankingSnapshot snapshot = this.wordService.getRankingSnapshot();
+			return onReadThread(() -> WordController.approximateHeaders(ResponseEntity.ok(), snapshot)
+					.body(this.wordService.getPrefixRanking(rangeInput, prefix, snapshot)));
+		}
+		if (window != null) {
+			return onReadThread(() -> ResponseEntity.ok(this.wordService.getWordRanking(rangeInput, window)));
+		}
+		RankingSnapshot snapshot = this.wordService.getRankingSnapshot();
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok().header(WordController.RANKING_VERSION_HEADER,
+				String.valueOf(snapshot.getVersion()));
+		return Mono.just(
+				WordController.approximateHeaders(response, snapshot).body(this.wordService.getWordRanking(rangeInput, snapshot)));
+	}
+
+	/**
+	 * As WordController.getWord, on the read threads
+	 *
+	 * @param word
+	 * @param staleness
+	 * @return
+	 */
+	@GetMapping(value = "/word/{word}")
+	public Mono<ResponseEntity<WordLookup>> getWord(@PathVariable(name = "word") String word,
+			@RequestParam(name = "staleness", required = false) String staleness) {
+		checkStaleness(staleness);
+		RankingSnapshot snapshot = this.wordService.getRankingSnapshot();
+		return onReadThread(() -> {
+			WordLookup lookup = this.wordService.lookupWords(Collections.singletonList(word), snapshot).get(0);
+			if (lookup.getRank() == null) {
+				return ResponseEntity.notFound().build();
+			}
+			return WordController.approximateHeaders(ResponseEntity.ok(), snapshot).body(lookup);
+		});
+	}
+
+	/**
+	 * As WordController.lookupWords, on the read threads
+	 *
+	 * @param words
+	 * @param staleness
+	 * @return
+	 */
+	@PostMapping(value = "/words/lookup")
+	public Mono<ResponseEntity<List<WordLookup>>> lookupWords(@RequestBody List<String> words,
+			@RequestParam(name = "staleness", required = false) String staleness) {
+		checkStaleness(staleness);
+		RankingSnapshot snapshot = this.wordService.getRankingSnapshot();
+		return onReadThread(() -> WordController.approximateHeaders(ResponseEntity.ok(), snapshot)
+				.body(this.wordService.lookupWords(words, snapshot)));
+	}
+
+	/**
+	 * As WordController.save, on the ingest threads
+	 *
+	 * @return
+	 */
+	@PostMapping(value = "/save")
+	public Mono<ResponseEntity<Void>> save() {
+		return onIngestThread(() -> {
+			this.wordService.saveMapToDisk();
+			return ResponseEntity.ok().build();
+		});
+	}
+
+	private void checkStaleness(String staleness) {
+		if (staleness != null) {
+			this.wordService.checkStaleness(staleness);
+		}
+	}
+
+	private static void feed(StreamUpload upload, DataBuffer buffer) {
+		try {
+			upload.feed(buffer.asByteBuffer());
+		} catch (IOException e) {
+			throw Exceptions.propagate(e);
+		} finally {
+			DataBufferUtils.release(buffer);
+		}
+	}
+
+	private <T> Mono<T> onIngestThread(Callable<T> ingest) {
+		return Mono.fromCallable(ingest).subscribeOn(ingestScheduler).onErrorMap(RejectedExecutionException.class,
+				this::ingestQueueFull);
+	}
+
+	private <T> Mono<T> onReadThread(Callable<T> read) {
+		return Mono.fromCallable(read).subscribeOn(readScheduler);
+	}
+
+	private Throwable ingestQueueFull(RejectedExecutionException e) {
+		return new IngestQueueFullException(properties.getReactive().getIngestQueueSize());
+	}
+}
@@ -1,20 +1,37 @@
 package com.lemon.words.control;
 
+import java.io.EOFException;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
+import java.util.zip.ZipException;
+
+import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.lemon.words.exception.InvalidGzipException;
+import com.lemon.words.exception.InvalidPrefixException;
+import com.lemon.words.model.IngestJob;
+import com.lemon.words.model.WordLookup;
 import com.lemon.words.model.dto.PostWordsRequestDTO;
+import com.lemon.words.model.dto.PostWordsResponseDTO;
+import com.lemon.words.service.IngestJobService;
 import com.lemon.words.service.WordService;
+import com.lemon.words.service.ranking.RankingSnapshot;
 
 /**
  * The controller that exposes the word entrypoints
@@ -26,25 +43,187 @@ import com.lemon.words.service.WordService;
  * Exception handling(!): Exceptions are simply thrown where a validation \
  * error occurs. We could of use an exception hierarchy with error
  * codes\messages so our clients will receive meaningful error messages
+ *
+ * This is the servlet front end, with spring.main.web-application-type=reactive the same entrypoints are served by
+ * ReactiveWordController.
  */
 @RestController
 @RequestMapping("/")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class WordController {
 
+	private static final String URL_TYPE = "url";
+	private static final String GZIP = "gzip";
+	public static final String APPLICATION_GZIP_VALUE = "application/gzip";
+	public static final String RANKING_VERSION_HEADER = "X-Ranking-Version";
+	public static final String RANKING_APPROXIMATE_HEADER = "X-Ranking-Approximate";
+	public static final String RANKING_MAX_ERROR_HEADER = "X-Ranking-Max-Error";
+
 	@Autowired
 	private WordService wordService;
 
+	@Autowired
+	private IngestJobService ingestJobService;
+
+	/**
+	 * type=url requests (and any request with async=true) are ingested in the background (a slow remote host shouldn't pin a request thread),
+	 * the response is 202 with the job id, or 429 when the job queue is full. The other requests are processed synchronously.
+	 * 
+	 * @param requestDTO
+	 * @param async
+	 * @return
+	 * @throws Exception
+	 */
 	@PostMapping(value = "/words")
-	@ResponseStatus(code = HttpStatus.OK)
-	public void postWords(@RequestBody PostWordsRequestDTO requestDTO) throws Exception {
+	public ResponseEntity<PostWordsResponseDTO> postWords(@RequestBody PostWordsRequestDTO requestDTO,
+			@RequestParam(name = "async", defaultValue = "false") boolean async) throws Exception {
+		if (async || URL_TYPE.equals(requestDTO.getType())) {
+			IngestJob job = this.ingestJobService.submit(requestDTO.getType(), requestDTO.getData());
+			return ResponseEntity.accepted().body(new PostWordsResponseDTO(job.getId()));
+		}
 		this.wordService.postWords(requestDTO.getType(), requestDTO.getData());
+		return ResponseEntity.ok().build();
+	}
+
+	/**
+	 * Streaming a raw text body straight into the tokenizer (the text doesn't travel in a JSON string, so it is never materialized).
+	 * The body is text/plain (UTF-8), or gzipped - application/gzip or any text/plain with Content-Encoding: gzip.
+	 * Bodies larger than words.ingest.stream-max-size get 413, a gzipped body that is not valid gzip gets 400.
+	 * 
+	 * @param request
+	 * @return
+	 * @throws Exception
+	 */
+	@PostMapping(value = "/words/stream", consumes = { MediaType.TEXT_PLAIN_VALUE, APPLICATION_GZIP_VALUE })
+	public ResponseEntity<Void> postWordsStream(HttpServletRequest request) throws Exception {
+		boolean gzip = GZIP.equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING))
+				|| MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.valueOf(APPLICATION_GZIP_VALUE));
+		try (InputStream body = request.getInputStream()) {
+			this.wordService.postWordsStream(body, request.getContentLengthLong(), gzip);
+		} catch (ZipException | EOFException e) {
+			if (gzip) {
+				throw new InvalidGzipException(e);
+			}
+			throw e;
+		}
+		return ResponseEntity.ok().build();
+	}
+
+	/**
+	 * The status and progress (bytes read, tokens counted, duration) of a background ingest
+	 * 
+	 * @param id
+	 * @return
+	 */
+	@GetMapping(value = "/words/jobs/{id}")
+	public ResponseEntity<IngestJob> getJob(@PathVariable(name = "id") String id) {
+		IngestJob job = this.ingestJobService.getJob(id);
+		if (job == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(job);
 	}
 
+	/**
+	 * The ranking is served from an immutable snapshot, the X-Ranking-Version header is the version of the snapshot.
+	 * An approximate ranking (words.ranking.mode=approximate) is flagged with X-Ranking-Approximate: true
+	 * and X-Ranking-Max-Error (the maximal over count of the served words).
+	 * 
+	 * With a window (e.g. window=1h, one of words.ranking.windows) only the words ingested in that last window are ranked,
+	 * a window ranking is always exact and always current (no version header).
+	 * 
+	 * With a prefix (e.g. prefix=inter) only the words that start with the prefix are ranked (the range is of their positions),
+	 * from the current ranking (no version header). A prefix can't be combined with a window.
+	 * 
+	 * In a cluster (words.cluster.nodes) the shards of all the nodes are merged (no version header, no windows or prefixes).
+	 * 
+	 * With a staleness (e.g. staleness=5s) a read replica that is further behind its primary answers 503 (see checkStaleness).
+	 * 
+	 * @param rangeInput
+	 * @param window
+	 * @param prefix
+	 * @param staleness
+	 * @return
+	 */
 	@GetMapping(value = "/word_ranking")
-	@ResponseStatus(code = HttpStatus.OK)
-	@ResponseBody
-	public List<String> getWordRanking(@RequestParam(name = "range") String rangeInput) {
-		return this.wordService.getWordRanking(rangeInput);
+	public ResponseEntity<List<String>> getWordRanking(@RequestParam(name = "range") String rangeInput,
+			@RequestParam(name = "window", required = false) String window,
+			@RequestParam(name = "prefix", required = false) String prefix,
+			@RequestParam(name = "staleness", required = false) String staleness) {
+		checkStaleness(staleness);
+		if (prefix != null) {
+			if (window != null) {
+				throw new InvalidPrefixException("A prefix can't be combined with a window");
+			}
+			RankingSnapshot snapshot = this.wordService.getRankingSnapshot();
+			return approximateHeaders(ResponseEntity.ok(), snapshot)
+					.body(this.wordService.getPrefixRanking(rangeInput, prefix, snapshot));
+		}
+		if (window != null) {
+			return ResponseEntity.ok(this.wordService.getWordRanking(rangeInput, window));
+		}
+		RankingSnapshot snapshot = this.wordService.getRankingSnapshot();
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+		if (!this.wordService.isClustered()) {
+			response.header(RANKING_VERSION_HEADER, String.valueOf(snapshot.getVersion()));
+		}
+		return approximateHeaders(response, snapshot).body(this.wordService.getWordRanking(rangeInput, snapshot));
+	}
+
+	/**
+	 * A word's count and current rank, 404 if the word was never ingested.
+	 * In the approximate mode only the served top positions can be found, flagged as in /word_ranking.
+	 * 
+	 * @param word
+	 * @param staleness - as in /word_ranking
+	 * @return
+	 */
+	@GetMapping(value = "/word/{word}")
+	public ResponseEntity<WordLookup> getWord(@PathVariable(name = "word") String word,
+			@RequestParam(name = "staleness", required = false) String staleness) {
+		checkStaleness(staleness);
+		RankingSnapshot snapshot = this.wordService.getRankingSnapshot();
+		WordLookup lookup = this.wordService.lookupWords(Collections.singletonList(word), snapshot).get(0);
+		if (lookup.getRank() == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return approximateHeaders(ResponseEntity.ok(), snapshot).body(lookup);
+	}
+
+	/**
+	 * The counts and current ranks of a batch of words (a JSON array, at most words.ranking.max-lookup-words),
+	 * in the request's order - a word that was never ingested has a 0 count and a null rank.
+	 * 
+	 * @param words
+	 * @param staleness - as in /word_ranking
+	 * @return
+	 */
+	@PostMapping(value = "/words/lookup")
+	public ResponseEntity<List<WordLookup>> lookupWords(@RequestBody List<String> words,
+			@RequestParam(name = "staleness", required = false) String staleness) {
+		checkStaleness(staleness);
+		RankingSnapshot snapshot = this.wordService.getRankingSnapshot();
+		return approximateHeaders(ResponseEntity.ok(), snapshot).body(this.wordService.lookupWords(words, snapshot));
+	}
+
+	/**
+	 * A read may bound how far behind the primary a read replica's answer is (words.replication.primary), the primary's
+	 * (and a single node's) answers are always current
+	 * 
+	 * @param staleness
+	 */
+	private void checkStaleness(String staleness) {
+		if (staleness != null) {
+			this.wordService.checkStaleness(staleness);
+		}
+	}
+
+	static ResponseEntity.BodyBuilder approximateHeaders(ResponseEntity.BodyBuilder response, RankingSnapshot snapshot) {
+		if (snapshot.isApproximate()) {
+			response.header(RANKING_APPROXIMATE_HEADER, "true").header(RANKING_MAX_ERROR_HEADER,
+					String.valueOf(snapshot.getMaxError()));
+		}
+		return response;
 	}
 
 	/**
@@ -0,0 +1,17 @@
+package com.lemon.words.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when another node of the cluster (words.cluster.nodes) can't be reached or fails a call (502)
+ */
+@ResponseStatus(code = HttpStatus.BAD_GATEWAY)
+public class ClusterException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ClusterException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
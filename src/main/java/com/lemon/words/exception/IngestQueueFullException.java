@@ -0,0 +1,17 @@
+package com.lemon.words.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the ingest job queue is full - the client should back off and retry later (429)
+ */
+@ResponseStatus(code = HttpStatus.TOO_MANY_REQUESTS)
+public class IngestQueueFullException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public IngestQueueFullException(int queueCapacity) {
+		super("The ingest queue is full (" + queueCapacity + " queued jobs), retry later");
+	}
+}
@@ -0,0 +1,17 @@
+package com.lemon.words.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a gzipped upload (POST /words/stream) is not gzip, is corrupted or ends inside a member (400)
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST)
+public class InvalidGzipException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidGzipException(Throwable cause) {
+		super("The body is not valid gzip: " + cause.getMessage(), cause);
+	}
+}
@@ -0,0 +1,18 @@
+package com.lemon.words.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a /word_ranking prefix can't be served - the prefix index is disabled (words.ranking.prefix-index)
+ * or the prefix is combined with a window (400)
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST)
+public class InvalidPrefixException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidPrefixException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,17 @@
+package com.lemon.words.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a /word_ranking range input can't be parsed (400)
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST)
+public class InvalidRangeException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidRangeException(String message) {
+		super(message);
+	}
+}
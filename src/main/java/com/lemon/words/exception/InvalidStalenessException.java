@@ -0,0 +1,17 @@
+package com.lemon.words.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a read's staleness parameter is not a duration (e.g. staleness=500ms, staleness=5s) (400)
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST)
+public class InvalidStalenessException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidStalenessException(String staleness) {
+		super("Invalid staleness '" + staleness + "', expected a duration (e.g. 500ms, 5s)");
+	}
+}
@@ -0,0 +1,17 @@
+package com.lemon.words.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a /word_ranking window is malformed or is not one of the configured windows (words.ranking.windows) (400)
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST)
+public class InvalidWindowException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidWindowException(String message) {
+		super(message);
+	}
+}
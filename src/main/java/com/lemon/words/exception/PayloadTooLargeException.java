@@ -0,0 +1,17 @@
+package com.lemon.words.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a streamed upload (POST /words/stream) exceeds words.ingest.stream-max-size (413)
+ */
+@ResponseStatus(code = HttpStatus.PAYLOAD_TOO_LARGE)
+public class PayloadTooLargeException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public PayloadTooLargeException(long maxSize) {
+		super("The upload exceeds the maximal size of " + maxSize + " bytes");
+	}
+}
@@ -0,0 +1,17 @@
+package com.lemon.words.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a read replica (words.replication.primary) is asked to ingest - the ingests go to the primary (409)
+ */
+@ResponseStatus(code = HttpStatus.CONFLICT)
+public class ReadOnlyReplicaException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ReadOnlyReplicaException(String primary) {
+		super("This node is a read replica of " + primary + ", ingest to the primary");
+	}
+}
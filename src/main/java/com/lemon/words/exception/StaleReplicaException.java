@@ -0,0 +1,21 @@
+package com.lemon.words.exception;
+
+import java.time.Duration;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a read replica lags behind its primary more than the request's staleness allows (503, another replica \ the primary
+ * may serve it)
+ */
+@ResponseStatus(code = HttpStatus.SERVICE_UNAVAILABLE)
+public class StaleReplicaException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public StaleReplicaException(Duration lag, Duration staleness) {
+		super("The replica is " + (lag == null ? "not synchronized yet" : lag.toMillis() + "ms behind the primary")
+				+ ", the request allows " + staleness.toMillis() + "ms");
+	}
+}
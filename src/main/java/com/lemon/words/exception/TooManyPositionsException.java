@@ -0,0 +1,18 @@
+package com.lemon.words.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a /word_ranking request selects more positions than the server allows (words.ranking.max-positions) (400)
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST)
+public class TooManyPositionsException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public TooManyPositionsException(long positions, long maxPositions) {
+		super("The range selects " + positions + " positions, at most " + maxPositions
+				+ " positions can be requested at once (split the request)");
+	}
+}
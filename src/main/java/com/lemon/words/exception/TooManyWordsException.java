@@ -0,0 +1,18 @@
+package com.lemon.words.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a /words/lookup request asks for more words than the server allows (words.ranking.max-lookup-words) (400)
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST)
+public class TooManyWordsException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public TooManyWordsException(long words, long maxWords) {
+		super("The request looks up " + words + " words, at most " + maxWords
+				+ " words can be looked up at once (split the request)");
+	}
+}
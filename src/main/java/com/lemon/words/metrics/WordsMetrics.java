@@ -0,0 +1,138 @@
+package com.lemon.words.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.stereotype.Component;
+
+import com.lemon.words.config.WordsProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * The words server metrics (exposed by actuator, see management.* in application.properties).
+ * 
+ * None of the meters is touched per token - the ingest meters are recorded once per ingested \ merged batch
+ * and only a sample of the /word_ranking requests is timed (words.metrics.ranking-sample-interval).
+ * 
+ *   words.ingest.tokens                   - counter, the tokens ingested (its rate is the tokens per second)
+ *   words.ingest.words{kind=new|existing} - counter, the distinct words of each merged batch that were new \ already ranked
+ *   words.ingest.lock.wait                - timer, the time an ingest waited for the ingest lock (taken exclusively by snapshots)
+ *   words.ranking.latency                 - timer (histogram), the sampled /word_ranking latency
+ *   words.snapshot.save                   - timer, saveMapToDisk duration
+ *   words.snapshot.size                   - gauge, the size of the last snapshot file (bytes)
+ *   words.vocabulary.size                 - gauge, the number of distinct words
+ *   words.replication.replicas            - gauge, the number of connected read replicas (on a primary)
+ *   words.replication.lag                 - gauge, the time a read replica is behind its primary (seconds, +Inf before its first snapshot)
+ */
+@Component
+public class WordsMetrics {
+
+	private final MeterRegistry registry;
+	private final Counter tokens;
+	private final Counter newWords;
+	private final Counter existingWords;
+	private final Timer lockWait;
+	private final Timer rankingLatency;
+	private final Timer snapshotSave;
+	private final AtomicLong snapshotSize = new AtomicLong();
+	private final int rankingSampleInterval;
+
+	public WordsMetrics(MeterRegistry registry, WordsProperties properties) {
+		this.registry = registry;
+		this.rankingSampleInterval = Math.max(1, properties.getMetrics().getRankingSampleInterval());
+		this.tokens = Counter.builder("words.ingest.tokens").description("The tokens ingested").register(registry);
+		this.newWords = Counter.builder("words.ingest.words").tag("kind", "new")
+				.description("The distinct words of the ingested batches that were not ranked before").register(registry);
+		this.existingWords = Counter.builder("words.ingest.words").tag("kind", "existing")
+				.description("The distinct words of the ingested batches that were already ranked").register(registry);
+		this.lockWait = Timer.builder("words.ingest.lock.wait")
+				.description("The time an ingest waited for the ingest lock before adding its batch").register(registry);
+		this.rankingLatency = Timer.builder("words.ranking.latency").description("The (sampled) word ranking latency")
+				.publishPercentileHistogram().minimumExpectedValue(Duration.ofNanos(100))
+				.maximumExpectedValue(Duration.ofSeconds(1)).register(registry);
+		this.snapshotSave = Timer.builder("words.snapshot.save").description("The time of taking a snapshot")
+				.register(registry);
+		Gauge.builder("words.snapshot.size", snapshotSize, AtomicLong::get).baseUnit("bytes")
+				.description("The size of the last snapshot file").register(registry);
+	}
+
+	/**
+	 * Recording an ingested batch
+	 * 
+	 * @param tokensCount
+	 * @param lockWaitNanos
+	 */
+	public void ingested(long tokensCount, long lockWaitNanos) {
+		tokens.increment(tokensCount);
+		lockWait.record(lockWaitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Recording a batch of pending counts merged into the ranking
+	 * 
+	 * @param newWordsCount
+	 * @param existingWordsCount
+	 */
+	public void merged(long newWordsCount, long existingWordsCount) {
+		newWords.increment(newWordsCount);
+		existingWords.increment(existingWordsCount);
+	}
+
+	/**
+	 * Whether to time the current /word_ranking request (a random sample, no shared state between the request threads)
+	 * 
+	 * @return
+	 */
+	public boolean sampleRanking() {
+		return rankingSampleInterval == 1 || ThreadLocalRandom.current().nextInt(rankingSampleInterval) == 0;
+	}
+
+	public void rankingServed(long nanos) {
+		rankingLatency.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void snapshotSaved(long nanos, long bytes) {
+		snapshotSave.record(nanos, TimeUnit.NANOSECONDS);
+		snapshotSize.set(bytes);
+	}
+
+	/**
+	 * Registering the vocabulary size gauge (read on scrape)
+	 * 
+	 * @param owner
+	 * @param vocabularySize
+	 */
+	public <T> void registerVocabularySize(T owner, ToDoubleFunction<T> vocabularySize) {
+		Gauge.builder("words.vocabulary.size", owner, vocabularySize).description("The number of distinct words")
+				.register(registry);
+	}
+
+	/**
+	 * Registering the connected replicas gauge of a primary (read on scrape)
+	 * 
+	 * @param owner
+	 * @param replicas
+	 */
+	public <T> void registerReplicas(T owner, ToDoubleFunction<T> replicas) {
+		Gauge.builder("words.replication.replicas", owner, replicas).description("The number of connected read replicas")
+				.register(registry);
+	}
+
+	/**
+	 * Registering the replication lag gauge of a replica (read on scrape)
+	 * 
+	 * @param owner
+	 * @param lagSeconds
+	 */
+	public <T> void registerReplicationLag(T owner, ToDoubleFunction<T> lagSeconds) {
+		Gauge.builder("words.replication.lag", owner, lagSeconds).baseUnit("seconds")
+				.description("The time the replica is behind its primary").register(registry);
+	}
+}
@@ -0,0 +1,59 @@
+package com.lemon.words.model;
+
+/**
+ * The progress of a single file of a multi file ingest (type=file with a directory \ glob), also counted in the ingest's total progress.
+ * Thread safe, the file is counted by a worker thread while the clients read it.
+ */
+public class FileProgress extends IngestProgress {
+
+	public enum Status {
+		PENDING, RUNNING, SUCCEEDED, FAILED
+	}
+
+	private final String path;
+	private final long size;
+	private final IngestProgress total;
+	private volatile Status status = Status.PENDING;
+	private volatile String error;
+
+	public FileProgress(String path, long size, IngestProgress total) {
+		this.path = path;
+		this.size = size;
+		this.total = total;
+	}
+
+	@Override
+	public void add(long bytesRead, long tokensCounted) {
+		super.add(bytesRead, tokensCounted);
+		total.add(bytesRead, tokensCounted);
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void started() {
+		this.status = Status.RUNNING;
+	}
+
+	public void succeeded() {
+		this.status = Status.SUCCEEDED;
+	}
+
+	public void failed(String error) {
+		this.error = error;
+		this.status = Status.FAILED;
+	}
+}
@@ -0,0 +1,90 @@
+package com.lemon.words.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A POJO that represents an ingest (POST /words) that runs in the background, including its progress.
+ * The status fields are updated by the worker thread and read by the clients, hence volatile.
+ */
+public class IngestJob extends IngestProgress {
+
+	public enum Status {
+		QUEUED, RUNNING, SUCCEEDED, FAILED
+	}
+
+	private final String id;
+	private final String type;
+	private final Instant submittedAt;
+	private volatile Status status;
+	private volatile Instant startedAt;
+	private volatile Instant finishedAt;
+	private volatile String error;
+
+	public IngestJob(String type) {
+		super();
+		this.id = UUID.randomUUID().toString();
+		this.type = type;
+		this.submittedAt = Instant.now();
+		this.status = Status.QUEUED;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public Instant getSubmittedAt() {
+		return submittedAt;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public Instant getStartedAt() {
+		return startedAt;
+	}
+
+	public Instant getFinishedAt() {
+		return finishedAt;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * The running time of the job so far (or its total running time once it is finished)
+	 * 
+	 * @return
+	 */
+	public long getDurationMillis() {
+		Instant start = startedAt;
+		if (start == null) {
+			return 0;
+		}
+		Instant end = finishedAt;
+		return Duration.between(start, end != null ? end : Instant.now()).toMillis();
+	}
+
+	public void started() {
+		this.startedAt = Instant.now();
+		this.status = Status.RUNNING;
+	}
+
+	public void succeeded() {
+		this.finishedAt = Instant.now();
+		this.status = Status.SUCCEEDED;
+	}
+
+	public void failed(String error) {
+		this.error = error;
+		this.finishedAt = Instant.now();
+		this.status = Status.FAILED;
+	}
+}
@@ -0,0 +1,46 @@
+package com.lemon.words.model;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The progress of an ingest - the bytes read and the tokens counted so far.
+ * Thread safe, a parallel ingest reports from several threads.
+ *
+ * A multi file ingest (type=file with a directory \ glob) also has the progress and the outcome of each file.
+ */
+public class IngestProgress {
+
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong tokens = new AtomicLong();
+	private volatile List<FileProgress> files;
+
+	public void add(long bytesRead, long tokensCounted) {
+		this.bytes.addAndGet(bytesRead);
+		this.tokens.addAndGet(tokensCounted);
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public long getTokens() {
+		return tokens.get();
+	}
+
+	/**
+	 * The files of a multi file ingest in their scheduling order (largest first), null for any other ingest
+	 * 
+	 * @return
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public List<FileProgress> getFiles() {
+		return files;
+	}
+
+	public void setFiles(List<FileProgress> files) {
+		this.files = files;
+	}
+}
@@ -0,0 +1,34 @@
+package com.lemon.words.model;
+
+/**
+ * A word's count and its current rank (one based, as the /word_ranking positions) - a word that was never ingested
+ * (or, in the approximate mode, is not in the served top positions) has a 0 count and no rank
+ */
+public class WordLookup {
+
+	private final String word;
+	private final long count;
+	private final Integer rank;
+
+	public WordLookup(String word, long count, Integer rank) {
+		this.word = word;
+		this.count = count;
+		this.rank = rank;
+	}
+
+	public static WordLookup unknown(String word) {
+		return new WordLookup(word, 0, null);
+	}
+
+	public String getWord() {
+		return word;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public Integer getRank() {
+		return rank;
+	}
+}
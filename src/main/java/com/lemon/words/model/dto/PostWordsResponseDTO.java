@@ -0,0 +1,27 @@
+package com.lemon.words.model.dto;
+
+/**
+ * The dto for the POST /words response of a request that is processed in the background (HTTP 202)
+ */
+public class PostWordsResponseDTO {
+
+	private String jobId;
+
+	public PostWordsResponseDTO() {
+		super();
+	}
+
+	public PostWordsResponseDTO(String jobId) {
+		super();
+		this.jobId = jobId;
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	public void setJobId(String jobId) {
+		this.jobId = jobId;
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.lemon.words.service;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.lemon.words.config.WordsProperties;
+import com.lemon.words.exception.IngestQueueFullException;
+import com.lemon.words.model.IngestJob;
+
+/**
+ * The service that runs ingests (POST /words) as background jobs.
+ * 
+ * Slow ingests (e.g. a slow remote host for type=url) run on this service's own worker threads
+ * so they don't pin the web server's request threads that serve /word_ranking.
+ * 
+ * Backpressure: the jobs wait for a worker in a bounded queue, once it is full a submit is rejected
+ * (IngestQueueFullException - 429) instead of piling up work (and memory) the workers can't keep up with.
+ */
+@Service
+public class IngestJobService {
+
+	private static final Logger log = LoggerFactory.getLogger(IngestJobService.class);
+
+	private final WordService wordService;
+	private final ThreadPoolExecutor workers;
+	private final int queueCapacity;
+	private final int maxFinished;
+	private final Map<String, IngestJob> jobs = new ConcurrentHashMap<>();
+	// The finished jobs ids by finish order, for forgetting the oldest ones
+	private final Queue<String> finishedJobs = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger finishedJobsCount = new AtomicInteger();
+
+	public IngestJobService(WordService wordService, WordsProperties properties) {
+		this.wordService = wordService;
+		int workerThreads = properties.getJobs().getWorkers();
+		this.queueCapacity = properties.getJobs().getQueueCapacity();
+		this.maxFinished = properties.getJobs().getMaxFinished();
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+					Thread thread = new Thread(runnable, "words-ingest-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@PreDestroy
+	public void destroy() {
+		this.workers.shutdownNow();
+	}
+
+	/**
+	 * Submitting an ingest to run in the background
+	 * 
+	 * @param type
+	 * @param data
+	 * @return the job, its id can be used to follow it
+	 * @throws IngestQueueFullException when the queue is full
+	 */
+	public IngestJob submit(String type, String data) {
+		IngestJob job = new IngestJob(type);
+		// Registered before it is queued so a fast worker can't finish (and evict) it before it is known
+		jobs.put(job.getId(), job);
+		try {
+			workers.execute(() -> run(job, data));
+		} catch (RejectedExecutionException e) {
+			jobs.remove(job.getId());
+			throw new IngestQueueFullException(queueCapacity);
+		}
+		return job;
+	}
+
+	public IngestJob getJob(String id) {
+		return jobs.get(id);
+	}
+
+	private void run(IngestJob job, String data) {
+		job.started();
+		try {
+			wordService.postWords(job.getType(), data, job);
+			job.succeeded();
+		} catch (Exception e) {
+			log.warn("Ingest job {} ({}) failed", job.getId(), job.getType(), e);
+			job.failed(e.toString());
+		}
+		finished(job);
+	}
+
+	/**
+	 * Keeping at most maxFinished finished jobs, the oldest are forgotten first
+	 * 
+	 * @param job
+	 */
+	private void finished(IngestJob job) {
+		finishedJobs.add(job.getId());
+		if (finishedJobsCount.incrementAndGet() > maxFinished) {
+			String oldest = finishedJobs.poll();
+			if (oldest != null) {
+				finishedJobsCount.decrementAndGet();
+				jobs.remove(oldest);
+			}
+		}
+	}
+}
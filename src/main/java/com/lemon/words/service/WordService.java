@@ -1,28 +1,78 @@
 package com.lemon.words.service;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
-import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.stereotype.Service;
 
+import com.lemon.words.config.WordsProperties;
+import com.lemon.words.config.WordsProperties.Ranking.RankingMode;
+import com.lemon.words.config.WordsProperties.Vocabulary.StorageType;
+import com.lemon.words.exception.InvalidPrefixException;
+import com.lemon.words.exception.InvalidRangeException;
+import com.lemon.words.exception.InvalidWindowException;
+import com.lemon.words.exception.InvalidStalenessException;
+import com.lemon.words.exception.PayloadTooLargeException;
+import com.lemon.words.exception.ReadOnlyReplicaException;
+import com.lemon.words.exception.StaleReplicaException;
+import com.lemon.words.exception.TooManyPositionsException;
+import com.lemon.words.exception.TooManyWordsException;
+import com.lemon.words.metrics.WordsMetrics;
+import com.lemon.words.model.IngestProgress;
+import com.lemon.words.model.WordLookup;
 import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.cluster.LocalShard;
+import com.lemon.words.service.cluster.WordsCluster;
+import com.lemon.words.service.ingest.FileSet;
+import com.lemon.words.service.ingest.ParallelFileIngester;
+import com.lemon.words.service.ingest.StreamUpload;
+import com.lemon.words.service.ingest.StripedWordCounts;
+import com.lemon.words.service.ingest.UrlFetcher;
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.ingest.WordTokenizer;
+import com.lemon.words.service.persistence.LegacySnapshotMigrator;
+import com.lemon.words.service.persistence.SnapshotFile;
+import com.lemon.words.service.persistence.WriteAheadLog;
+import com.lemon.words.service.ranking.CountMinSketch;
+import com.lemon.words.service.ranking.DictionaryRankIndex;
+import com.lemon.words.service.ranking.HeavyHitters;
+import com.lemon.words.service.ranking.PrefixIndex;
+import com.lemon.words.service.ranking.RankRanges;
+import com.lemon.words.service.ranking.RankingSnapshot;
+import com.lemon.words.service.ranking.TimeWindows;
+import com.lemon.words.service.ranking.WordDictionary;
+import com.lemon.words.service.replication.ReplicationPrimary;
+import com.lemon.words.service.replication.ReplicationReplica;
+import com.lemon.words.service.storage.HeapStorage;
+import com.lemon.words.service.storage.IntArray;
+import com.lemon.words.service.storage.LongArray;
+import com.lemon.words.service.storage.MappedStorage;
+import com.lemon.words.service.storage.VocabularyStorage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 /**
  * The service that takes care of word business logic
@@ -33,46 +83,246 @@ public class WordService {
 
 	// High level description of the solution:
 	// ==========================================
-	// We will maintain a sorted array with the words occurrences object which is sortable.
-	// When we add \ update an element we simply execute a binary search (log(n) complexity) in order to identify its new position
-	// Once we have such array - to get the n-th ranked word is simply getting the n-th item in this sorted array.
+	// We will maintain a rank index (an order statistic tree) with the words occurrences object which is sortable.
+	// When we add \ update an element we remove and re insert it (log(n) complexity) in order to identify its new position
+	// Once we have such index - to get the n-th ranked word is simply walking down the tree to the n-th item (log(n) complexity).
+	// The reverse (a word's rank, see lookupWords()) is walking down the tree to the word, summing the sizes of the sub trees on its left.
+	// The words are also in a prefix index (a radix tree, see PrefixIndex) annotated with the best word of every sub tree,
+	// so the top words of a prefix (?prefix=) are found best first from the prefix's node without scanning the vocabulary.
+	// The original sorted array is still available as a reference implementation (see SortedListRankIndex).
+	// The words are dictionary encoded (see WordDictionary) - each word is a dense int id over a shared byte arena
+	// with its count in a long[], and the rank index is a tree of ids kept in int arrays (see DictionaryRankIndex),
+	// so the vocabulary costs a few dozen bytes per word instead of a String, a WordOccurrences, a map entry and a tree node.
+	// With words.vocabulary.storage=mapped these arrays are memory mapped files (see MappedStorage) - off the heap,
+	// and after a clean shutdown the next startup maps them as they are instead of loading the snapshot.
+	// With words.ranking.mode=approximate the vocabulary is not kept at all - the ingests are counted into a bounded summary
+	// of the heaviest words (see HeavyHitters) and only its top-k positions are served, flagged as approximate.
+	// With words.ranking.windows (off by default, exact mode only) the merged batches are also recorded by word id into time buckets
+	// (see TimeWindows) so the ranking can be asked for the last window (e.g. ?window=1h), each window is kept ranked incrementally
+	// as buckets enter and leave it.
+	// With words.cluster.nodes the words are hash partitioned across several nodes (see WordsCluster) - this service keeps
+	// the shard of the words this node owns, the ingests are routed to the owners and the rankings and lookups merge all the shards.
+	// With words.replication.primary this service is a read replica - it follows the primary's batches over a socket
+	// (see ReplicationPrimary and ReplicationReplica) and serves the reads from its own rank index, so the reads of the replicas
+	// never contend with the primary's ingests.
 	
 	// Optimization concerns:
 	// ==========================
 	// Iv'e optimized for faster /word_ranking retrieval making the /words entrypoint a bit slower. Since my array is always sorted on update the get rank is fast.
 	// We could of optimized for faster update (/words) instead - by storing the input very fast without any process and on retrieval (/word_ranking) spend some processing to find the results.
-	// I'm maintaining an additional Hashmap to quickly find elements (words) on the sorted array (or if they exists at all)
+	// The dictionary's hash table (open addressing) is used to quickly find elements (words) on the rank index (or if they exists at all)
 	// 
 
 	// Concurrency:
 	// ================
 	// We will use thread safe data structures in order to avoid data access issues
-	// Our main update method will be synchronized too.
-	// This will incur some performance degradation.
-	// We could invest more time to use some sort of a smart locking to allow non synchronized method for better performance.
+	// Concurrent ingests don't take a global lock - each ingest adds its batch to the pending counts (StripedWordCounts),
+	// which are lock striped by word, so parallel requests only contend on the stripes of the words they share.
+	// The rank index (not thread safe) is then reconciled with the pending counts in batches under the service monitor:
+	// after every ingest (and a single reconciliation covers all the ingests that finished meanwhile)
+	// or periodically when a words.ranking.max-staleness is configured.
+	// The ingest lock (a read write lock) is shared by the ingests and taken exclusively by a snapshot, so a snapshot
+	// always sees the log and the counts at the same point.
+	// The ranking retrieval doesn't lock at all - the writers publish an immutable copy of the ranking (RankingSnapshot)
+	// through a volatile reference, after every ingest or at most every words.ranking.max-staleness.
+	// A reader never waits for an ingest and all the positions of a request come from the same version of the ranking.
 	
 	//	
-	// a helper map to quickly find \ check if words exists in the sorted array
-	private Map<String, WordOccurrences> wordToOccurrencesMap;
+	// The vocabulary - word ids, bytes and counts, also used to quickly find \ check if words exists in the rank index
+	private WordDictionary dictionary;
+
+	// Our main rank index, in ascending order from most occurrences count to least occurrences with lexicographic break even.
+	private DictionaryRankIndex rankIndex;
+
+	// The words by their prefixes, for the prefix rankings (null when words.ranking.prefix-index is off or in the approximate mode)
+	private PrefixIndex prefixIndex;
+
+	// Keeps the dictionary and the rank index arrays (on the heap or memory mapped files)
+	private VocabularyStorage vocabularyStorage;
+	// A mapped vocabulary's state - whether its files are consistent (a clean shutdown) and the last log sequence they include
+	private LongArray vocabularyState;
+	private static final int VOCABULARY_CLEAN = 0;
+	private static final int VOCABULARY_SEQUENCE = 1;
 
-	// Our main sorted array, the array is in ascending order from most occurrences count to least occurrences with lexicographic break even.
-	private List<WordOccurrences> occurrencesArray;
+	// The rankings of the recent time windows (null when no window is configured)
+	private volatile TimeWindows timeWindows;
+
+	// The approximate ranking's summary (null in the exact mode, then the dictionary and the rank index stay empty)
+	private HeavyHitters heavyHitters;
 
 	// Some constant strings used in the service
-	private static final String WHITE_SPACE = " ";
-	private static final String MINUS_SIGN = "-";
 	public static final String STATE_FILENAME = "state.txt";
+	public static final String LOG_FILENAME = "state.wal";
 	private static final String FILE_TYPE = "file";
 	private static final String URL_TYPE = "url";
 	private static final String STRING_TYPE = "string";
-	private static final String EMPTY_STRING = "";
-	private static final String COMMA_SIGN = ",";
+	// The buffer a streamed upload is read with (see postWordsStream)
+	private static final int STREAM_READ_BUFFER_SIZE = 64 * 1024;
 	
 	
+	private static final Logger log = LoggerFactory.getLogger(WordService.class);
+
 	// Toggling persist on save on\off (see saveMapToDisk() comments for more information)
 	private static boolean persistOnUpdate = true; 
 	
-	
+	private final WordsProperties properties;
+
+	// Counting the words of type=file requests in parallel (memory mapped chunks on a fork join pool)
+	private final ParallelFileIngester fileIngester;
+
+	// Opening type=url requests
+	private final UrlFetcher urlFetcher;
+
+	// Persistence - the state file (snapshot) and the write ahead log are kept in this directory
+	private final Path stateDirectory;
+	private volatile WriteAheadLog writeAheadLog;
+	private volatile long lastSnapshotSequence;
+	// Only a single snapshot is taken at a time (always taken before the service monitor)
+	private final Object compactionLock = new Object();
+	private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+	// Runs the periodic snapshots and log syncs
+	private final ScheduledExecutorService persistenceExecutor;
+
+	// The ranking served to the readers and the version of the current state (incremented by each merged ingest, guarded by this)
+	private volatile RankingSnapshot rankingSnapshot = RankingSnapshot.EMPTY;
+	private long rankingVersion;
+	// Publishes the ranking periodically (only when a max staleness is configured)
+	private final ScheduledExecutorService rankingExecutor;
+
+	// Ingest, ranking and persistence metrics (recorded per batch \ sampled, never per token)
+	private final WordsMetrics metrics;
+
+	// The cluster of words.cluster.nodes, this service keeps the local shard (null on a single node)
+	private final WordsCluster cluster;
+
+	// Streams the ingested batches to the replicas (null without words.replication.port)
+	private final ReplicationPrimary replicationPrimary;
+	// Follows the primary (null unless this service is a replica, words.replication.primary)
+	private final ReplicationReplica replicationReplica;
+	// The replication is started once the state is loaded (by the first init())
+	private final AtomicBoolean replicationStarted = new AtomicBoolean();
+
+	// The ingested counts that are not in the rank index yet
+	private final StripedWordCounts pendingCounts;
+	// Shared by the ingests (logging + adding to the pending counts), exclusive for snapshots and reloading the state
+	private final ReentrantReadWriteLock ingestLock = new ReentrantReadWriteLock();
+
+	/**
+	 * A service without metrics (e.g. outside of spring)
+	 * 
+	 * @param properties
+	 */
+	public WordService(WordsProperties properties) {
+		this(properties, new WordsMetrics(new SimpleMeterRegistry(), properties));
+	}
+
+	@Autowired
+	public WordService(WordsProperties properties, WordsMetrics metrics) {
+		this.properties = properties;
+		this.metrics = metrics;
+		metrics.registerVocabularySize(this, WordService::vocabularySize);
+		this.fileIngester = new ParallelFileIngester(properties.getIngest().getParallelism(),
+				properties.getIngest().getFileChunkSize().toBytes());
+		this.urlFetcher = new UrlFetcher(properties.getUrl().getConnectTimeout(), properties.getUrl().getReadTimeout(),
+				properties.getUrl().getMaxDuration(), properties.getUrl().getMaxSize().toBytes());
+		this.stateDirectory = Paths.get(properties.getPersistence().getDirectory());
+		int countStripes = properties.getIngest().getCountStripes();
+		this.pendingCounts = new StripedWordCounts(
+				countStripes > 0 ? countStripes : 4 * Runtime.getRuntime().availableProcessors());
+		this.persistenceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "words-persistence");
+			thread.setDaemon(true);
+			return thread;
+		});
+		schedulePersistenceTasks();
+		this.rankingExecutor = scheduleRankingPublisher();
+		this.cluster = createCluster();
+		WordsProperties.Replication replication = properties.getReplication();
+		if (cluster != null && (replication.getPort() > 0 || !replication.getPrimary().isEmpty())) {
+			throw new IllegalStateException("The replication (words.replication) can't be combined with a cluster (words.cluster.nodes)");
+		}
+		this.replicationPrimary = replication.getPort() > 0 ? new ReplicationPrimary(replication.getPort(),
+				replication.getHeartbeatInterval(), replication.getQueueSize(), this::replicaBootstrap) : null;
+		this.replicationReplica = replication.getPrimary().isEmpty() ? null
+				: new ReplicationReplica(replication.getPrimary(), replication.getHeartbeatInterval(),
+						replication.getReconnectDelay(), new ReplicationReplica.Target() {
+							@Override
+							public void restore(long sequence, long words, SnapshotFile.Entries entries) throws Exception {
+								restoreReplica(sequence, words, entries);
+							}
+
+							@Override
+							public void apply(WordCounts batch) throws IOException {
+								addBatch(batch);
+							}
+						});
+		if (replicationPrimary != null) {
+			metrics.registerReplicas(replicationPrimary, ReplicationPrimary::replicas);
+		}
+		if (replicationReplica != null) {
+			metrics.registerReplicationLag(replicationReplica, replica -> replica.getLag() == null ? Double.POSITIVE_INFINITY
+					: replica.getLag().toNanos() / 1e9);
+		}
+	}
+
+	private WordsCluster createCluster() {
+		if (properties.getCluster().getNodes().isEmpty()) {
+			return null;
+		}
+		if (properties.getRanking().getMode() == RankingMode.APPROXIMATE) {
+			throw new IllegalStateException("The approximate ranking mode can't be clustered (words.cluster.nodes)");
+		}
+		return WordsCluster.of(properties.getCluster(), new LocalShard(this));
+	}
+
+	/**
+	 * Whether the words are partitioned across a cluster (words.cluster.nodes) - then the rankings are not served from snapshots
+	 * 
+	 * @return
+	 */
+	public boolean isClustered() {
+		return cluster != null;
+	}
+
+	private ScheduledExecutorService scheduleRankingPublisher() {
+		Duration maxStaleness = properties.getRanking().getMaxStaleness();
+		if (maxStaleness.isZero()) {
+			return null;
+		}
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "words-ranking");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::reconcileRanking, maxStaleness.toMillis(), maxStaleness.toMillis(), TimeUnit.MILLISECONDS);
+		return executor;
+	}
+
+	private void schedulePersistenceTasks() {
+		Duration logSyncInterval = properties.getPersistence().getLogSyncInterval();
+		if (!logSyncInterval.isZero()) {
+			persistenceExecutor.scheduleWithFixedDelay(() -> {
+				try {
+					WriteAheadLog currentLog = this.writeAheadLog;
+					if (currentLog != null) {
+						currentLog.sync();
+					}
+				} catch (IOException e) {
+					log.error("Failed to sync the write ahead log", e);
+				}
+			}, logSyncInterval.toMillis(), logSyncInterval.toMillis(), TimeUnit.MILLISECONDS);
+		}
+		Duration snapshotInterval = properties.getPersistence().getSnapshotInterval();
+		if (!snapshotInterval.isZero()) {
+			persistenceExecutor.scheduleWithFixedDelay(() -> {
+				WriteAheadLog currentLog = this.writeAheadLog;
+				if (currentLog != null && currentLog.getLastSequence() > lastSnapshotSequence) {
+					saveMapToDiskQuietly();
+				}
+			}, snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
 	/**
 	 * This method will be called upon servers start.
 	 * It will initialize all of the classes data structures.
@@ -82,9 +332,60 @@ public class WordService {
 	 */
 	@PostConstruct
 	public void init() throws Exception {
-		this.wordToOccurrencesMap = new ConcurrentHashMap<>();
-		this.occurrencesArray = Collections.synchronizedList(new ArrayList<>());
-		this.loadMapFromDisk();
+		ingestLock.writeLock().lock();
+		try {
+			synchronized (this) {
+				closeLog();
+				// The pending counts are in the log, they are replayed by the load
+				pendingCounts.drain();
+				closeVocabulary();
+				this.loadMapFromDisk();
+			}
+		} finally {
+			ingestLock.writeLock().unlock();
+		}
+		if (replicationStarted.compareAndSet(false, true)) {
+			if (replicationPrimary != null) {
+				replicationPrimary.start();
+			}
+			if (replicationReplica != null) {
+				replicationReplica.start();
+			}
+		}
+	}
+
+	@PreDestroy
+	public void destroy() throws IOException {
+		this.fileIngester.close();
+		this.persistenceExecutor.shutdown();
+		if (this.cluster != null) {
+			this.cluster.close();
+		}
+		if (this.replicationPrimary != null) {
+			this.replicationPrimary.close();
+		}
+		if (this.replicationReplica != null) {
+			this.replicationReplica.close();
+		}
+		if (this.rankingExecutor != null) {
+			this.rankingExecutor.shutdown();
+		}
+		ingestLock.writeLock().lock();
+		try {
+			synchronized (this) {
+				WriteAheadLog currentLog = this.writeAheadLog;
+				if (currentLog != null) {
+					currentLog.sync();
+					// Every logged ingest is merged, a mapped vocabulary can be reopened as is from this sequence
+					reconcileRanking();
+					checkpointVocabulary(currentLog.getLastSequence());
+				}
+				closeVocabulary();
+				closeLog();
+			}
+		} finally {
+			ingestLock.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -102,253 +403,1023 @@ public class WordService {
 	 * @throws Exception
 	 */
 	public void postWords(String type, String data) throws Exception {
+		postWords(type, data, new IngestProgress());
+	}
 
+	/**
+	 * Same as postWords(type, data), reporting the bytes read and tokens counted to the given progress (see IngestJobService)
+	 * 
+	 * @param type
+	 * @param data
+	 * @param progress
+	 * @throws Exception
+	 */
+	public void postWords(String type, String data, IngestProgress progress) throws Exception {
+		checkWritable();
+
+		WordCounts wordCounts;
 		switch (type) {
 		case STRING_TYPE:
-			handlePostString(data);
+			wordCounts = handlePostString(data, progress);
 			break;
 		case URL_TYPE:
-			handlePostUrl(data);
+			wordCounts = handlePostUrl(data, progress);
 			break;
 		case FILE_TYPE:
-			handlePostFile(data);
+			wordCounts = handlePostFile(data, progress);
 			break;
 		default:
 			throw new IllegalStateException();
 		}
+		ingest(wordCounts);
+	}
+
+	/**
+	 * Ingesting a streamed upload (POST /words/stream) - the body is tokenized while it is read (the caller closes it),
+	 * so only the read buffer and the upload's distinct words are kept in memory, never the text itself.
+	 * 
+	 * The body is UTF-8 text, optionally gzipped. Both the body and its decompressed content are limited to words.ingest.stream-max-size.
+	 * 
+	 * @param body
+	 * @param contentLength - the declared length of the body (-1 if unknown, e.g. a chunked upload)
+	 * @param gzip - whether the body is gzipped
+	 * @throws IOException
+	 * @throws PayloadTooLargeException
+	 */
+	public void postWordsStream(InputStream body, long contentLength, boolean gzip) throws IOException {
+		try (StreamUpload upload = openWordsStream(contentLength, gzip)) {
+			byte[] buffer = new byte[STREAM_READ_BUFFER_SIZE];
+			int read;
+			while ((read = body.read(buffer)) != -1) {
+				upload.feed(buffer, 0, read);
+			}
+			ingestWordsStream(upload);
+		}
+	}
+
+	/**
+	 * Starting a push based streamed upload - the caller feeds the body's buffers as they arrive and then ingests the upload
+	 * (see ingestWordsStream), or closes it when the body fails. Used by the non blocking front end (see ReactiveWordController).
+	 * 
+	 * @param contentLength - the declared length of the body (-1 if unknown)
+	 * @param gzip - whether the body is gzipped
+	 * @return
+	 * @throws PayloadTooLargeException when the declared length exceeds words.ingest.stream-max-size
+	 */
+	public StreamUpload openWordsStream(long contentLength, boolean gzip) {
+		checkWritable();
+		long maxSize = properties.getIngest().getStreamMaxSize().toBytes();
+		if (contentLength > maxSize) {
+			throw new PayloadTooLargeException(maxSize);
+		}
+		return new StreamUpload(maxSize, gzip);
+	}
+
+	/**
+	 * Ingesting a fully fed upload (see openWordsStream)
+	 * 
+	 * @param upload
+	 * @throws IOException when a gzipped body ends inside a member
+	 */
+	public void ingestWordsStream(StreamUpload upload) throws IOException {
+		ingest(upload.finish());
+	}
+
+	/**
+	 * Adding a counted batch - to this node's shard, or in a cluster to the shards that own its words (see WordsCluster.ingest)
+	 * 
+	 * @param wordCounts
+	 * @throws IOException
+	 */
+	private void ingest(WordCounts wordCounts) throws IOException {
+		if (cluster != null) {
+			cluster.ingest(wordCounts);
+		} else {
+			ingestShard(wordCounts);
+		}
+	}
+
+	/**
+	 * Adding a counted batch to this node's words, waiting for the ranking (unless a max staleness is configured) and the log
+	 * (in a cluster the batch should have only the words this node owns, see POST /cluster/counts)
+	 * 
+	 * @param wordCounts
+	 * @throws IOException
+	 */
+	public void ingestShard(WordCounts wordCounts) throws IOException {
+		checkWritable();
+		addBatch(wordCounts);
+	}
+
+	/**
+	 * A read replica only changes by its primary's batches
+	 * 
+	 * @throws ReadOnlyReplicaException
+	 */
+	private void checkWritable() {
+		if (replicationReplica != null) {
+			throw new ReadOnlyReplicaException(replicationReplica.getPrimary());
+		}
+	}
+
+	private void addBatch(WordCounts wordCounts) throws IOException {
+		long sequence = addPendingCounts(wordCounts);
+		if (rankingExecutor == null) {
+			// Read your writes - the ranking includes this ingest once the request returns
+			reconcileRanking();
+		}
 		if (persistOnUpdate) {
-			saveMapToDisk();
+			commitToLog(sequence);
 		}
 	}
 
 	/**
-	 * Get the file inputStream and handle it line by line
+	 * Memory map the file and count its words in parallel chunks (see ParallelFileIngester)
+	 * Compressed files (gzip, zstd or bzip2) are decompressed on the fly, blocked gzip (BGZF) files in parallel chunks too
+	 * A directory \ glob counts all its files (largest first, see ParallelFileIngester.countAll) into a single batch,
+	 * so the whole set is a single ingest (a single log record and sync), a failed file is skipped and reported in the progress
 	 * No file validations here (access, exist etc..)
 	 * 
 	 * Security concern - filename is provided by the client. this is a vulnerability but i ignore that here.
 	 * 
 	 * @param filename
+	 * @param progress
+	 * @return
 	 * @throws Exception
 	 */
-	private void handlePostFile(String filename) throws Exception {
-		File initialFile = new File(filename);
-		InputStream is = new FileInputStream(initialFile);
-		this.handleWordsStream(is);
+	private WordCounts handlePostFile(String filename, IngestProgress progress) throws Exception {
+		if (FileSet.isMultiple(filename)) {
+			return fileIngester.countAll(FileSet.resolve(filename), progress);
+		}
+		return fileIngester.count(Paths.get(filename), progress);
 	}
 
 	/**
-	 * Get the URL inputStream and handle it line by line
-	 * Again, no URL validations here (access, exist etc..)
-	 * 
-	 * Security concern - url is provided by the client. this is a vulnerability but i ignore that here.
+	 * Stream the URL content into the tokenizer (with timeouts and a size cap, see UrlFetcher)
+	 * A compressed content (gzip, zstd or bzip2, see CompressedInput) is decompressed on the fly, the size cap applies to both the compressed and the decompressed bytes
 	 * 
 	 * @param url
+	 * @param progress
+	 * @return
 	 * @throws Exception
 	 */
-	private void handlePostUrl(String url) throws Exception {
-		try (InputStream is = new URL(url).openConnection().getInputStream()) {
-			handleWordsStream(is);
-		}
+	private WordCounts handlePostUrl(String url, IngestProgress progress) throws Exception {
+		return handleWordsStream(urlFetcher.openDecompressed(url), progress);
 	}
 	/**
 	 * Get the string's inputStream and handle it line by line
 	 * 
 	 * @param data
+	 * @param progress
+	 * @return
 	 * @throws IOException
 	 */
-	private void handlePostString(String data) throws IOException {
-		try (InputStream inputStream = new ByteArrayInputStream(data.getBytes())) {
-			handleWordsStream(inputStream);
-		}
+	private WordCounts handlePostString(String data, IngestProgress progress) throws IOException {
+		return handleWordsStream(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), progress);
 	}
 
 	/**
-	 * This method receives an input stream, reads it line by line, 
-	 * stripping the strings for relevant characters and increment the words occurrences for these words.
+	 * This method receives an input stream (and closes it), tokenizes its bytes (see WordTokenizer for the words separation rules)
+	 * and counts the words occurrences for these words.
+	 * 
+	 * The ingest is done in two phases:
+	 *   1) Counting the whole stream into a private (unsynchronized) batch - no locking per word
+	 *   2) Adding the batch to the pending counts (lock striped, see addPendingCounts()) which are merged into the ranking in batches
 	 *  
 	 * @param inputStream
+	 * @param progress
+	 * @return
+	 * @throws IOException
 	 */
-	private void handleWordsStream(InputStream inputStream) {
-		String[] wordsInLine = null;
-		try (Scanner sc = new Scanner(inputStream, StandardCharsets.UTF_8)) {
-			while (sc.hasNextLine()) {
-				wordsInLine = stripLineForMidWordsAndSpaces(sc.nextLine());
-				for (String word : wordsInLine) {
-					if (!isNullOrEmpty(word)) {
-						incrementWordOccurrences(word.toLowerCase());
-					}
-				}
+	private WordCounts handleWordsStream(InputStream inputStream, IngestProgress progress) throws IOException {
+		WordCounts wordCounts = new WordCounts();
+		try (InputStream is = inputStream) {
+			new WordTokenizer(wordCounts).tokenize(is, progress);
+		}
+		return wordCounts;
+	}
+
+
+	/**
+	 * Adding an ingested batch to the pending counts (without the service monitor, concurrent ingests run in parallel)
+	 * 
+	 * When persisting on update the batch is appended to the write ahead log first, under the shared ingest lock
+	 * so a snapshot (which takes it exclusively) always contains exactly the log records up to its sequence.
+	 * 
+	 * @param wordCounts
+	 * @return the log sequence of the batch (0 if it was not logged)
+	 * @throws IOException
+	 */
+	private long addPendingCounts(WordCounts wordCounts) throws IOException {
+		long requestedAt = System.nanoTime();
+		ingestLock.readLock().lock();
+		try {
+			long lockWaitNanos = System.nanoTime() - requestedAt;
+			long sequence = 0;
+			if (persistOnUpdate && !wordCounts.isEmpty()) {
+				sequence = writeAheadLog.append(wordCounts);
+			}
+			pendingCounts.addAll(wordCounts);
+			if (replicationPrimary != null) {
+				replicationPrimary.publish(sequence, wordCounts);
 			}
+			metrics.ingested(wordCounts.getTotalCount(), lockWaitNanos);
+			return sequence;
+		} finally {
+			ingestLock.readLock().unlock();
 		}
 	}
 
-	private boolean isNullOrEmpty(String word) {
-		return word == null || word.equals(EMPTY_STRING);
+	/**
+	 * Here we merge the pending counts (of all the ingests since the last reconciliation) into our rank index.
+	 * Each word is re positioned at most once (with its total delta) so the ranking is identical to incrementing the words one by one.
+	 * A new ranking snapshot is published if anything changed.
+	 */
+	private synchronized void reconcileRanking() {
+		boolean changed = false;
+		for (WordCounts batch : pendingCounts.drain()) {
+			int newWords = mergeWordCounts(batch);
+			metrics.merged(newWords, batch.size() - newWords);
+			if (timeWindows != null) {
+				timeWindows.record(batch);
+			}
+			changed = true;
+		}
+		if (changed) {
+			rankingVersion++;
+			publishRanking();
+		}
 	}
-	
+
+	/**
+	 * Publishing an immutable copy of the current ranking to the readers (the caller holds the service monitor)
+	 */
+	private void publishRanking() {
+		if (heavyHitters != null) {
+			this.rankingSnapshot = RankingSnapshot.approximate(
+					heavyHitters.top(properties.getRanking().getApproximate().getTopK()), rankingVersion);
+		} else {
+			this.rankingSnapshot = RankingSnapshot.of(dictionary, rankIndex, vocabularyStorage, rankingVersion);
+		}
+	}
+
 	/**
-	 * Clearing mid word dashes. For example:  'tel-aviv' -> 'tel aviv' 
-	 * Leaving only alphabetical words. For example:  'tel aviv321' -> 'tel aviv'
+	 * The ranking currently served to the readers (no locking)
 	 * 
-	 * @param sc
 	 * @return
 	 */
-	private String[] stripLineForMidWordsAndSpaces(String lineString) {
-		lineString = StringUtils.replace(lineString, MINUS_SIGN, WHITE_SPACE);
-		return lineString.split(WHITE_SPACE);
+	public RankingSnapshot getRankingSnapshot() {
+		return rankingSnapshot;
 	}
 
-
 	/**
-	 * Here we update a given word into our sorted array.
+	 * Merging a batch into the rank index (or into the approximate summary)
 	 * 
-	 * @param word
+	 * @param wordCounts
+	 * @return the number of words that were added to the ranking
 	 */
-	private synchronized void incrementWordOccurrences(String word) {
-		
-		if (!wordToOccurrencesMap.containsKey(word)) {
-			addNewWord(word);
-		} else {
-			incrementExistingWord(word);
+	private int mergeWordCounts(WordCounts wordCounts) {
+		if (heavyHitters != null) {
+			return heavyHitters.addAll(wordCounts);
 		}
+		int vocabularySizeBefore = dictionary.size();
+		wordCounts.forEachEntry((bytes, offset, length, hash, delta) -> {
+			int id = dictionary.find(bytes, offset, length, hash);
+			if (id < 0) {
+				addNewWord(bytes, offset, length, hash, delta);
+			} else {
+				incrementExistingWord(id, delta);
+			}
+		});
+		return dictionary.size() - vocabularySizeBefore;
+	}
+
+	private int vocabularySize() {
+		return heavyHitters != null ? heavyHitters.size() : dictionary.size();
 	}
 
 	/**
 	 * Increment an existing element can cause its position to change
-	 * This is why we remove it from the array and re positioning it
-	 * Both of these are using binary search O(log(n))
+	 * This is why we remove it from the index and re positioning it
+	 * Both of these are O(log(n))
 	 * 
-	 * @param word
+	 * @param id
+	 * @param delta
 	 */
-	private void incrementExistingWord(String word) {
-		WordOccurrences wo = wordToOccurrencesMap.get(word);
-		int currentIndex = Collections.binarySearch(occurrencesArray, wo);
-		occurrencesArray.remove(currentIndex);
-		wo.setCount(wo.getCount() + 1);
-		int binarySearchIndexResult = Collections.binarySearch(occurrencesArray, wo);
-		occurrencesArray.add(extractIndexFromBinarySearchIndexResult(binarySearchIndexResult), wo);
+	private void incrementExistingWord(int id, long delta) {
+		rankIndex.increment(id, delta);
+		if (prefixIndex != null) {
+			prefixIndex.increment(id);
+		}
 	}
 
 	/**
-	 * Adding a new word using binary search O(log(n))
+	 * Adding a new word O(log(n)) - its UTF-8 bytes are copied to the dictionary, no String is created
 	 * 
-	 * @param word
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @param hash
+	 * @param count
 	 */
-	private void addNewWord(String word) {
-		WordOccurrences newWo = new WordOccurrences(1l, word);
-		if (occurrencesArray.isEmpty()) {
-			occurrencesArray.add(0, newWo);
+	private void addNewWord(byte[] bytes, int offset, int length, int hash, long count) {
+		int id = dictionary.add(bytes, offset, length, hash, count);
+		rankIndex.add(id);
+		if (prefixIndex != null) {
+			prefixIndex.add(id);
 		}
-		else {
-			int binarySearchIndexResult = Collections.binarySearch(occurrencesArray, newWo);
-			occurrencesArray.add(extractIndexFromBinarySearchIndexResult(binarySearchIndexResult),newWo);
+	}
+
+	/**
+	 * The method gets the client input and returns the relevant words.
+	 * 
+	 * The input is parsed once (see RankRanges), overlapping ranges are merged (e.g. '1-10,2-4' returns each position once)
+	 * and the result is in rank order. The ranges are clamped to the vocabulary size so positions that don't exist
+	 * cost nothing, and each range is copied as a single slice of the ranking.
+	 * 
+	 * @param input
+	 * @return
+	 * @throws InvalidRangeException when the input is malformed
+	 * @throws TooManyPositionsException when the ranges select more than words.ranking.max-positions existing positions
+	 */
+	public List<String> getWordRanking(String input) {
+		return getWordRanking(input, rankingSnapshot);
+	}
+
+	/**
+	 * Same as getWordRanking(input), served from the given ranking snapshot
+	 * (in a cluster the shards are merged as they are, see WordsCluster.getWordRanking)
+	 * 
+	 * @param input
+	 * @param snapshot
+	 * @return
+	 */
+	public List<String> getWordRanking(String input, RankingSnapshot snapshot) {
+		if (!metrics.sampleRanking()) {
+			return extractWordRanking(input, snapshot);
 		}
-		wordToOccurrencesMap.put(word, newWo);
+		long start = System.nanoTime();
+		List<String> result = extractWordRanking(input, snapshot);
+		metrics.rankingServed(System.nanoTime() - start);
+		return result;
 	}
-	
+
 	/**
-	 * Binary search returns a negative value for the target index. 
-	 * here we get the real array index position.
+	 * Same as getWordRanking(input), ranking only the words ingested in the given time window (e.g. '5m', '1h', '24h').
+	 * The window must be one of words.ranking.windows, a null window is the all time ranking.
 	 * 
-	 * @param binarySearchIndexResult
+	 * @param input
+	 * @param window
 	 * @return
+	 * @throws InvalidWindowException when the window is malformed or not configured
 	 */
-	private int extractIndexFromBinarySearchIndexResult(int binarySearchIndexResult) {
-		return (-binarySearchIndexResult) - 1;
+	public List<String> getWordRanking(String input, String window) {
+		if (window == null) {
+			return getWordRanking(input);
+		}
+		if (cluster != null) {
+			throw new InvalidWindowException("The window rankings are not supported in a cluster (words.cluster.nodes)");
+		}
+		Duration duration = parseWindow(window);
+		if (!metrics.sampleRanking()) {
+			return extractWindowRanking(input, duration);
+		}
+		long start = System.nanoTime();
+		List<String> result = extractWindowRanking(input, duration);
+		metrics.rankingServed(System.nanoTime() - start);
+		return result;
 	}
 
 	/**
-	 * The method gets the client input and returns the relevant words.
+	 * Same as getWordRanking(input), ranking only the words that start with the given prefix (e.g. '1-20' of 'inter').
 	 * 
-	 * Need to validate legal input format and throw relevant exceptions when necessary.
-	 * I assumed the input ranges can NOT contain overlapping ranges. (e.g. '1-10,2-4' )
-	 * In the current implementation it will create duplications. (could be handled \ validated)
+	 * The prefix is found in the prefix index and only the requested positions of its words are produced, best first
+	 * (see PrefixIndex) - the cost depends on the positions and not on the vocabulary size.
+	 * The words are ranked by the live ranking under the service monitor (like lookupWords()).
+	 * In the approximate mode the given (published) snapshot's top positions that start with the prefix are ranked.
 	 * 
 	 * @param input
+	 * @param prefix
+	 * @param snapshot - the snapshot an approximate ranking is served from
 	 * @return
+	 * @throws InvalidPrefixException when the prefix index is disabled
 	 */
-	public List<String> getWordRanking(String input) {
-		
-		List<String> result = new ArrayList<>();
-		String[] rangesInput = input.split(COMMA_SIGN);
-		
-		for (String rangeInput : rangesInput) {
-			if (!rangeInput.contains(MINUS_SIGN)) {
-				// Simple single position (e.g. 2,4,50)
-				injectWordsToResult(result, Integer.valueOf(rangeInput));
-			} else {
-				// ranged position (e.g. 1-4)
-				String[] fromToInput = rangeInput.split(MINUS_SIGN);
-				String from = fromToInput[0];
-				String to = fromToInput[1];
-				for (Integer i = Integer.valueOf(from); i <= Long.valueOf(to); i++) {
-					injectWordsToResult(result, i);
+	public List<String> getPrefixRanking(String input, String prefix, RankingSnapshot snapshot) {
+		if (!metrics.sampleRanking()) {
+			return extractPrefixRanking(input, prefix, snapshot);
+		}
+		long start = System.nanoTime();
+		List<String> result = extractPrefixRanking(input, prefix, snapshot);
+		metrics.rankingServed(System.nanoTime() - start);
+		return result;
+	}
+
+	private List<String> extractPrefixRanking(String input, String prefix, RankingSnapshot snapshot) {
+		if (cluster != null) {
+			throw new InvalidPrefixException("The prefix rankings are not supported in a cluster (words.cluster.nodes)");
+		}
+		RankRanges ranges = RankRanges.parse(input);
+		if (snapshot.isApproximate()) {
+			List<String> matching = new ArrayList<>();
+			for (int i = 0; i < snapshot.size(); i++) {
+				String word = snapshot.get(i);
+				if (word.startsWith(prefix)) {
+					matching.add(word);
 				}
 			}
+			return extractWordRanking(ranges, matching.size(),
+					(fromIndex, toIndex, into) -> into.addAll(matching.subList(fromIndex, toIndex)));
+		}
+		byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+		synchronized (this) {
+			if (heavyHitters != null) {
+				// Nothing is ranked yet in the approximate mode before its first snapshot
+				return extractWordRanking(ranges, 0, (fromIndex, toIndex, into) -> {
+				});
+			}
+			if (prefixIndex == null) {
+				throw new InvalidPrefixException("The prefix index is disabled (words.ranking.prefix-index)");
+			}
+			PrefixIndex.PrefixRanking ranking = prefixIndex.rank(prefixBytes);
+			return extractWordRanking(ranges, ranking.size(), ranking::copyRange);
+		}
+	}
+
+	private Duration parseWindow(String window) {
+		Duration duration;
+		try {
+			duration = DurationStyle.detectAndParse(window);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidWindowException("Invalid window '" + window + "', the windows are: " + windowsDescription());
+		}
+		TimeWindows currentWindows = this.timeWindows;
+		if (currentWindows == null || !currentWindows.hasWindow(duration)) {
+			throw new InvalidWindowException("Unsupported window '" + window + "', the windows are: " + windowsDescription());
+		}
+		return duration;
+	}
+
+	private String windowsDescription() {
+		if (timeWindows == null) {
+			return "none";
+		}
+		List<String> windows = new ArrayList<>();
+		for (Duration duration : properties.getRanking().getWindows()) {
+			if (duration.toHours() > 0 && duration.equals(Duration.ofHours(duration.toHours()))) {
+				windows.add(duration.toHours() + "h");
+			} else if (duration.toMinutes() > 0 && duration.equals(Duration.ofMinutes(duration.toMinutes()))) {
+				windows.add(duration.toMinutes() + "m");
+			} else {
+				windows.add(duration.toMillis() + "ms");
+			}
+		}
+		return String.join(", ", windows);
+	}
+
+	private List<String> extractWindowRanking(String input, Duration duration) {
+		RankRanges ranges = RankRanges.parse(input);
+		return timeWindows.read(duration, window -> extractWordRanking(ranges, window.size(), window::copyRange));
+	}
+
+	private List<String> extractWordRanking(String input, RankingSnapshot snapshot) {
+		if (cluster != null) {
+			return cluster.getWordRanking(RankRanges.parse(input), properties.getRanking().getMaxPositions());
+		}
+		return extractWordRanking(RankRanges.parse(input), snapshot.size(), snapshot::copyRange);
+	}
+
+	/**
+	 * Copies the words at the given (zero based, to exclusive) positions of a ranking
+	 */
+	@FunctionalInterface
+	private interface RangeCopier {
+		void copyRange(int fromIndex, int toIndex, List<String> into);
+	}
+
+	private List<String> extractWordRanking(RankRanges ranges, int size, RangeCopier ranking) {
+		long positions = ranges.countPositions(size);
+		int maxPositions = properties.getRanking().getMaxPositions();
+		if (positions > maxPositions) {
+			throw new TooManyPositionsException(positions, maxPositions);
+		}
+
+		List<String> result = new ArrayList<>((int) positions);
+		for (int i = 0; i < ranges.rangesCount() && ranges.getFrom(i) <= size; i++) {
+			// no words beyond the vocabulary size
+			ranking.copyRange((int) ranges.getFrom(i) - 1, (int) Math.min(ranges.getTo(i), size), result);
+		}
+		return result;
+	}
+
+	/**
+	 * The count and the current rank of each of the given words (in the given order), the words are lower cased as ingested.
+	 * 
+	 * Each word is found by the dictionary's hash table (O(1)) and ranked by walking the rank index (an order statistic tree)
+	 * from the root down to the word, counting the sub tree sizes on its left - O(log(n)) per word.
+	 * The lookups are answered from the live ranking under the service monitor, which is taken once for the whole request,
+	 * so all the words of a request are ranked against the same state. It may be ahead of the published ranking snapshot
+	 * (with a words.ranking.max-staleness) but never behind it.
+	 * In the approximate mode the words are looked up in the given (published) snapshot's top positions, without locking.
+	 * In a cluster the words are looked up in their owners and ranked by all the shards (see WordsCluster.lookupWords).
+	 * 
+	 * @param words
+	 * @param snapshot - the snapshot an approximate lookup is served from
+	 * @return
+	 * @throws TooManyWordsException when more than words.ranking.max-lookup-words words are requested
+	 */
+	public List<WordLookup> lookupWords(List<String> words, RankingSnapshot snapshot) {
+		int maxLookupWords = properties.getRanking().getMaxLookupWords();
+		if (words.size() > maxLookupWords) {
+			throw new TooManyWordsException(words.size(), maxLookupWords);
+		}
+		// The ingested words are lower cased by the tokenizer, so are the looked up words
+		words = normalizeWords(words);
+		if (cluster != null) {
+			return cluster.lookupWords(words);
+		}
+		List<WordLookup> result = new ArrayList<>(words.size());
+		if (snapshot.isApproximate()) {
+			for (String word : words) {
+				result.add(snapshot.lookup(word));
+			}
+			return result;
+		}
+		synchronized (this) {
+			for (String word : words) {
+				// Nothing is ranked yet in the approximate mode before its first snapshot
+				int id = heavyHitters != null ? -1 : dictionary.find(word);
+				result.add(id < 0 ? WordLookup.unknown(word)
+						: new WordLookup(word, dictionary.getCount(id), rankIndex.indexOf(id) + 1));
+			}
 		}
 		return result;
 	}
 
+	private static List<String> normalizeWords(List<String> words) {
+		List<String> normalized = new ArrayList<>(words.size());
+		for (String word : words) {
+			normalized.add(WordTokenizer.normalize(word));
+		}
+		return normalized;
+	}
+
 	/**
-	 * This method prepares the response to the client by adding the ranked words for the relevant range.
+	 * Same as lookupWords(words, snapshot), an approximate lookup is served from the current snapshot
 	 * 
-	 * @param result
-	 * @param rangeInput
+	 * @param words
+	 * @return
 	 */
-	private void injectWordsToResult(List<String> result, Integer rangeInput) {
+	public List<WordLookup> lookupWords(List<String> words) {
+		return lookupWords(words, rankingSnapshot);
+	}
 
-		if (occurrencesArray.size() >= rangeInput) {
-				result.add(occurrencesArray.get(rangeInput-1).getWord());
-		} else {
-			// no words with this count.
+	/**
+	 * The number of words in this node's shard (see WordsCluster), the shard methods serve the live ranking under the service monitor
+	 * 
+	 * @return
+	 */
+	public synchronized int shardSize() {
+		return heavyHitters != null ? 0 : rankIndex.size();
+	}
+
+	/**
+	 * The words of this node's shard at the (zero based) positions from..from+limit
+	 * 
+	 * @param from
+	 * @param limit
+	 * @return
+	 */
+	public synchronized List<WordOccurrences> shardWords(int from, int limit) {
+		int to = (int) Math.min(shardSize(), (long) from + limit);
+		List<WordOccurrences> result = new ArrayList<>(Math.max(0, to - from));
+		for (int position = from; position < to; position++) {
+			result.add(shardWord(rankIndex.idAt(position)));
 		}
+		return result;
 	}
 
 	/**
-	 * Persisting to disk the entire SortedArray (Serializable)
+	 * The words of this node's shard at the given (zero based) positions, the positions that don't exist are skipped
+	 * 
+	 * @param positions
+	 * @return
+	 */
+	public synchronized List<WordOccurrences> shardWordsAt(int[] positions) {
+		int size = shardSize();
+		List<WordOccurrences> result = new ArrayList<>(positions.length);
+		for (int position : positions) {
+			if (position >= 0 && position < size) {
+				result.add(shardWord(rankIndex.idAt(position)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * For each of the given words (of any shard), the number of this node's words ranked before it
+	 * 
+	 * @param words
+	 * @return
+	 */
+	public synchronized long[] shardRanksOf(List<WordOccurrences> words) {
+		long[] ranks = new long[words.size()];
+		if (heavyHitters == null) {
+			for (int i = 0; i < ranks.length; i++) {
+				WordOccurrences word = words.get(i);
+				ranks[i] = rankIndex.rankOf(word.getCount(), word.getWord().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return ranks;
+	}
+
+	/**
+	 * The counts of the given words in this node's shard (0 for an unknown word)
+	 * 
+	 * @param words
+	 * @return
+	 */
+	public synchronized long[] shardCountsOf(List<String> words) {
+		long[] counts = new long[words.size()];
+		if (heavyHitters == null) {
+			for (int i = 0; i < counts.length; i++) {
+				int id = dictionary.find(WordTokenizer.normalize(words.get(i)));
+				counts[i] = id < 0 ? 0 : dictionary.getCount(id);
+			}
+		}
+		return counts;
+	}
+
+	private WordOccurrences shardWord(int id) {
+		return new WordOccurrences(dictionary.getCount(id), dictionary.getWord(id));
+	}
+
+	/**
+	 * Making sure the reads are at most the given staleness (e.g. '500ms', '5s') behind the primary - always true unless this is a replica
+	 * 
+	 * @param staleness
+	 * @throws InvalidStalenessException when the staleness is not a duration
+	 * @throws StaleReplicaException when the replica lags behind the primary more than that (or has no snapshot yet)
+	 */
+	public void checkStaleness(String staleness) {
+		Duration maxLag;
+		try {
+			maxLag = DurationStyle.detectAndParse(staleness);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidStalenessException(staleness);
+		}
+		if (replicationReplica == null) {
+			return;
+		}
+		Duration lag = replicationReplica.getLag();
+		if (lag == null || lag.compareTo(maxLag) > 0) {
+			throw new StaleReplicaException(lag, maxLag);
+		}
+	}
+
+	/**
+	 * A copy of the words for a new replica (see ReplicationPrimary) - taken like a snapshot (see saveMapToDisk()), and the replica
+	 * is registered (by the given callback) before the ingests resume, so it gets every batch after the copy exactly once.
+	 * 
+	 * @param register
+	 * @return
+	 */
+	private ReplicationPrimary.Bootstrap replicaBootstrap(Runnable register) {
+		ingestLock.writeLock().lock();
+		try {
+			synchronized (this) {
+				reconcileRanking();
+				int size = vocabularySize();
+				SnapshotFile.Entries entries = heavyHitters != null ? copyHeavyHitters(size) : copyRanking(size);
+				register.run();
+				return new ReplicationPrimary.Bootstrap(writeAheadLog.getLastSequence(), size, entries);
+			}
+		} finally {
+			ingestLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replacing the state of a replica with its primary's snapshot - the snapshot is streamed to a state file aside
+	 * (the replica keeps serving its current ranking meanwhile), which then replaces the state and is loaded (see clear()).
+	 * 
+	 * @param sequence
+	 * @param words
+	 * @param entries
+	 * @throws Exception
+	 */
+	private void restoreReplica(long sequence, long words, SnapshotFile.Entries entries) throws Exception {
+		Path temporaryFile = stateDirectory.resolve(STATE_FILENAME + ".replica");
+		SnapshotFile.write(temporaryFile, sequence, words, entries);
+		replaceState(temporaryFile);
+	}
+
+	/**
+	 * Waiting for the batch's log record to reach the disk (group commit, see WriteAheadLog)
+	 * and triggering a background compaction once the log grows too big.
+	 * 
+	 * @param sequence
+	 * @throws IOException
+	 */
+	private void commitToLog(long sequence) throws IOException {
+		WriteAheadLog currentLog = this.writeAheadLog;
+		currentLog.sync(sequence);
+		if (currentLog.size() >= properties.getPersistence().getSnapshotLogSize().toBytes()
+				&& compactionScheduled.compareAndSet(false, true)) {
+			persistenceExecutor.execute(() -> {
+				compactionScheduled.set(false);
+				saveMapToDiskQuietly();
+			});
+		}
+	}
+
+	/**
+	 * Persisting to disk the entire sorted rank index (a binary snapshot, see SnapshotFile) and truncating the write ahead log.
 	 * 
 	 * We could have several different approaches here to save to disk:
 	 *   1) Periodically using a cron job
 	 *   2) On demand (manually) - using an endpoint. I created one in the WordController (/words/save)
-	 *   3) On each call to (/words) - toggled on right now but can be switched off by changing persistOnUpdate=false	 
+	 *   3) On each call to (/words)
 	 * 
-	 * The tradeoff here is between potentially losing data (that was not persisted before a crash) to degraded performance as the disk is a bottleneck here.
-	 * With that said, the size of the English dictionary is a few MB so we talk about a reasonably fast process to persist
-	 * Especially if we are using a SSD drive. 
-	 *  
+	 * We use all three - each call to (/words) appends only its per word deltas to a write ahead log (can be switched off by changing persistOnUpdate=false)
+	 * so the cost of a request's persistence is proportional to the request and not to the vocabulary size.
+	 * A snapshot of the entire state is taken periodically (words.persistence.snapshot-interval), 
+	 * when the log grows (words.persistence.snapshot-log-size) and on demand. Then the log files it covers are deleted. 
 	 * 
-	 * Could be optimized by persisting only deltas \ buckets \ parts of the array
-	 * instead of saving the entire sorted array
+	 * Only copying the state (and rotating the log) holds the ingest lock and the service monitor, the snapshot itself is written without them.
+	 * The snapshot is written to a temporary file and atomically renamed so a crash never leaves a half written state.
+	 * In the approximate mode the snapshot has the summary's words in rank order (their counts are restored as exact on load).
 	 *  
 	 * @throws Exception
 	 */
-	public synchronized void saveMapToDisk() throws Exception {
-		if (!occurrencesArray.isEmpty()) {
-			try (FileOutputStream fos = new FileOutputStream(STATE_FILENAME);
-					ObjectOutputStream oos = new ObjectOutputStream(fos)) {
-				oos.writeObject(this.occurrencesArray);
+	public void saveMapToDisk() throws Exception {
+		synchronized (compactionLock) {
+			long start = System.nanoTime();
+			int size;
+			SnapshotFile.Entries entries;
+			long snapshotSequence;
+			ingestLock.writeLock().lock();
+			try {
+				synchronized (this) {
+					// No ingest is in flight, the pending counts are exactly the logged records that are not ranked yet
+					reconcileRanking();
+					size = vocabularySize();
+					entries = heavyHitters != null ? copyHeavyHitters(size) : copyRanking(size);
+					snapshotSequence = writeAheadLog.getLastSequence();
+					if (writeAheadLog.size() > 0) {
+						writeAheadLog.rotate(stateDirectory.resolve(LOG_FILENAME + "." + snapshotSequence));
+					}
+				}
+			} finally {
+				ingestLock.writeLock().unlock();
+			}
+
+			Path temporaryFile = stateDirectory.resolve(STATE_FILENAME + ".tmp");
+			SnapshotFile.write(temporaryFile, snapshotSequence, size, entries);
+			long snapshotSize = Files.size(temporaryFile);
+			Files.move(temporaryFile, stateDirectory.resolve(STATE_FILENAME), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			lastSnapshotSequence = snapshotSequence;
+
+			for (Path rotatedLog : rotatedLogs()) {
+				if (rotatedLogSequence(rotatedLog) <= snapshotSequence) {
+					Files.delete(rotatedLog);
+				}
 			}
+			metrics.snapshotSaved(System.nanoTime() - start, snapshotSize);
 		}
 	}
 
 	/**
-	 * A method that loads an existing state of the sorted array (if exists)
-	 * The method re-populates the Map 'wordToOccurrencesMap' with the entire occurrencesArray words collection. 
+	 * Copying the ranked words for a snapshot (the caller holds the service monitor)
+	 * The counts keep changing after the monitor is released, copying them (the words bytes never change).
+	 * The copies are temporary arrays of the vocabulary storage, off heap with a mapped vocabulary
+	 * 
+	 * @param size
+	 * @return
+	 */
+	private SnapshotFile.Entries copyRanking(int size) {
+		IntArray rankedIds = vocabularyStorage.temporaryIntArray(size);
+		rankIndex.copyTo(rankedIds);
+		LongArray counts = vocabularyStorage.temporaryLongArray(size);
+		for (int i = 0; i < size; i++) {
+			counts.set(i, dictionary.getCount(rankedIds.get(i)));
+		}
+		WordDictionary.Words words = dictionary.words();
+		return consumer -> {
+			byte[] buffer = new byte[64];
+			for (int i = 0; i < size; i++) {
+				int id = rankedIds.get(i);
+				buffer = words.getBytes(id, buffer);
+				consumer.accept(buffer, 0, words.getLength(id), counts.get(i));
+			}
+		};
+	}
+
+	/**
+	 * Copying the approximate summary's words for a snapshot (the caller holds the service monitor)
+	 * 
+	 * @param size
+	 * @return
+	 */
+	private SnapshotFile.Entries copyHeavyHitters(int size) {
+		String[] words = new String[size];
+		long[] counts = new long[size];
+		List<HeavyHitters.Counter> top = heavyHitters.top(size);
+		for (int i = 0; i < size; i++) {
+			words[i] = top.get(i).getWord();
+			counts[i] = top.get(i).getCount();
+		}
+		return consumer -> {
+			for (int i = 0; i < size; i++) {
+				byte[] bytes = words[i].getBytes(StandardCharsets.UTF_8);
+				consumer.accept(bytes, 0, bytes.length, counts[i]);
+			}
+		};
+	}
+
+	private void saveMapToDiskQuietly() {
+		try {
+			saveMapToDisk();
+		} catch (Exception e) {
+			log.error("Failed to save a snapshot of the words state", e);
+		}
+	}
+
+	/**
+	 * A method that loads an existing state of the sorted array (if exists) into the rank index
+	 * The method re-populates the dictionary with the entire sorted array words collection (streamed as UTF-8 bytes, no objects per word).
+	 * 
+	 * A mapped vocabulary that was closed cleanly is reopened as is instead (no snapshot loading, see openVocabulary()).
+	 * 
+	 * Then the write ahead logs (rotated logs that were not compacted yet and the current log) are replayed on top of the snapshot,
+	 * skipping the records the snapshot already contains.
 	 * 
 	 * @throws Exception
 	 */
 	private synchronized void loadMapFromDisk() throws Exception {
-		File f = new File(STATE_FILENAME);
-		if (f.exists()) {
-			try (FileInputStream fin = new FileInputStream(STATE_FILENAME)) {
-				try (ObjectInputStream ois = new ObjectInputStream(fin)) {
-					occurrencesArray = (List<WordOccurrences>) ois.readObject();
-					for (WordOccurrences wordOccurrences : occurrencesArray) {
-							this.wordToOccurrencesMap.put(wordOccurrences.getWord(), wordOccurrences);
-					}
-				}
+		long snapshotSequence = 0;
+		Path stateFile = stateDirectory.resolve(STATE_FILENAME);
+		if (openVocabulary()) {
+			snapshotSequence = vocabularyState.get(VOCABULARY_SEQUENCE);
+			log.info("Reopened the mapped vocabulary ({} words, log sequence {})", dictionary.size(), snapshotSequence);
+		} else if (Files.exists(stateFile)) {
+			if (LegacySnapshotMigrator.isLegacy(stateFile)) {
+				// A one way migration of a Java serialized state file
+				LegacySnapshotMigrator.migrate(stateFile);
+			}
+			if (heavyHitters != null) {
+				// The approximate summary restarts from the saved counts (a new sketch, the saved words are monitored again)
+				snapshotSequence = SnapshotFile.read(stateFile, (bytes, offset, length, count) -> heavyHitters.add(bytes,
+						offset, length, WordCounts.hash(bytes, offset, length), count));
+			} else {
+				// The words are already in rank order so their ids are their ranks, bulk building the index
+				snapshotSequence = SnapshotFile.read(stateFile, (bytes, offset, length, count) -> dictionary.add(bytes,
+						offset, length, WordCounts.hash(bytes, offset, length), count));
+				rankIndex.loadRanked();
+			}
+		}
+		this.lastSnapshotSequence = snapshotSequence;
+		openPrefixIndex();
+		openTimeWindows();
+
+		WordCounts replayed = new WordCounts();
+		long lastSequence = snapshotSequence;
+		for (Path rotatedLog : rotatedLogs()) {
+			lastSequence = Math.max(lastSequence, WriteAheadLog.replay(rotatedLog, snapshotSequence, replayed));
+		}
+		Path logFile = stateDirectory.resolve(LOG_FILENAME);
+		lastSequence = Math.max(lastSequence, WriteAheadLog.replay(logFile, snapshotSequence, replayed));
+		mergeWordCounts(replayed);
+		rankingVersion++;
+		publishRanking();
+
+		this.writeAheadLog = new WriteAheadLog(logFile, lastSequence,
+				properties.getPersistence().getLogSyncInterval().isZero());
+	}
+
+	/**
+	 * The rotated log files (state.wal.[last sequence]) in ascending sequence order
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private List<Path> rotatedLogs() throws IOException {
+		List<Path> rotatedLogs = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(stateDirectory, LOG_FILENAME + ".*")) {
+			for (Path path : stream) {
+				rotatedLogs.add(path);
 			}
 		}
+		rotatedLogs.sort(Comparator.comparingLong(this::rotatedLogSequence));
+		return rotatedLogs;
+	}
+
+	private long rotatedLogSequence(Path rotatedLog) {
+		String filename = rotatedLog.getFileName().toString();
+		return Long.parseLong(filename.substring(LOG_FILENAME.length() + 1));
+	}
+
+	/**
+	 * Opening the vocabulary storage (see words.vocabulary.storage) with its dictionary and rank index.
+	 * 
+	 * A mapped vocabulary whose files were left consistent by a clean shutdown (see checkpointVocabulary()) is reopened with its content,
+	 * otherwise the files are discarded and the vocabulary starts empty (and is loaded from the snapshot and the logs).
+	 * The files are marked as inconsistent before they change, so a crash never leaves files that look clean.
+	 * The approximate ranking mode keeps its bounded summary on the heap (the storage setting is ignored).
+	 * 
+	 * @return whether an existing vocabulary was reopened
+	 * @throws IOException
+	 */
+	private boolean openVocabulary() throws IOException {
+		boolean reopened = false;
+		heavyHitters = null;
+		if (properties.getRanking().getMode() == RankingMode.APPROXIMATE) {
+			WordsProperties.Ranking.Approximate approximate = properties.getRanking().getApproximate();
+			heavyHitters = new HeavyHitters(approximate.getCounters(),
+					CountMinSketch.withErrorBound(approximate.getErrorRate(), approximate.getFailureProbability()));
+			vocabularyStorage = HeapStorage.INSTANCE;
+			vocabularyState = null;
+		} else if (properties.getVocabulary().getStorage() == StorageType.MAPPED) {
+			Path directory = vocabularyDirectory();
+			vocabularyStorage = new MappedStorage(directory);
+			vocabularyState = vocabularyStorage.longArray("state", 2);
+			reopened = vocabularyState.get(VOCABULARY_CLEAN) == 1;
+			if (!reopened) {
+				vocabularyStorage.close();
+				MappedStorage.delete(directory);
+				vocabularyStorage = new MappedStorage(directory);
+				vocabularyState = vocabularyStorage.longArray("state", 2);
+			}
+			vocabularyState.set(VOCABULARY_CLEAN, 0);
+			vocabularyStorage.force();
+		} else {
+			vocabularyStorage = HeapStorage.INSTANCE;
+			vocabularyState = null;
+		}
+		dictionary = new WordDictionary(vocabularyStorage);
+		rankIndex = new DictionaryRankIndex(dictionary, vocabularyStorage);
+		return reopened;
+	}
+
+	/**
+	 * Opening the prefix index of the loaded (or reopened) vocabulary - a reopened mapped vocabulary has its index as it was,
+	 * otherwise the index is built from the dictionary. A disabled index of a mapped vocabulary is marked as stale
+	 * (the words will change without it) so it is rebuilt if it is enabled again.
+	 */
+	private void openPrefixIndex() {
+		prefixIndex = null;
+		if (heavyHitters != null) {
+			return;
+		}
+		if (properties.getRanking().isPrefixIndex()) {
+			prefixIndex = new PrefixIndex(dictionary, vocabularyStorage);
+		} else if (vocabularyStorage.isPersistent()) {
+			PrefixIndex.invalidate(vocabularyStorage);
+		}
+	}
+
+	/**
+	 * Starting the time windows (see words.ranking.windows) over the loaded dictionary - the windows are in memory only
+	 * (the log records have no time) so they start empty. The approximate ranking mode has no dictionary to key them by,
+	 * so it has no windows.
+	 */
+	private void openTimeWindows() {
+		List<Duration> windows = properties.getRanking().getWindows();
+		timeWindows = windows.isEmpty() || heavyHitters != null ? null
+				: new TimeWindows(dictionary, windows, properties.getRanking().getWindowBucket(), System::currentTimeMillis);
+	}
+
+	/**
+	 * Writing a mapped vocabulary to the disk and marking its files as consistent up to the given log sequence
+	 * (the caller holds the ingest lock exclusively and everything up to the sequence is merged)
+	 * 
+	 * @param sequence
+	 */
+	private void checkpointVocabulary(long sequence) {
+		if (vocabularyStorage != null && vocabularyStorage.isPersistent()) {
+			vocabularyStorage.force();
+			vocabularyState.set(VOCABULARY_SEQUENCE, sequence);
+			vocabularyState.set(VOCABULARY_CLEAN, 1);
+			vocabularyStorage.force();
+		}
+	}
+
+	private synchronized void closeVocabulary() {
+		if (vocabularyStorage != null) {
+			vocabularyStorage.close();
+			vocabularyStorage = null;
+		}
+	}
+
+	private Path vocabularyDirectory() {
+		return stateDirectory.resolve(properties.getVocabulary().getDirectory());
+	}
+
+	private synchronized void closeLog() throws IOException {
+		if (this.writeAheadLog != null) {
+			this.writeAheadLog.close();
+			this.writeAheadLog = null;
+		}
 	}
 
 	/**
@@ -357,11 +1428,41 @@ public class WordService {
 	 * @throws Exception
 	 */
 	public void clear() throws Exception {
-		File f = new File(STATE_FILENAME);
-		if (f.exists()) {
-			f.delete();
+		replaceState(null);
+	}
+
+	/**
+	 * Replacing the state (the snapshot, the logs and a mapped vocabulary) with the given snapshot file (or nothing) and reloading it
+	 * 
+	 * @param snapshot
+	 * @throws Exception
+	 */
+	private void replaceState(Path snapshot) throws Exception {
+		synchronized (compactionLock) {
+			ingestLock.writeLock().lock();
+			try {
+				synchronized (this) {
+					closeLog();
+					closeVocabulary();
+					if (properties.getVocabulary().getStorage() == StorageType.MAPPED) {
+						MappedStorage.delete(vocabularyDirectory());
+					}
+					if (snapshot == null) {
+						Files.deleteIfExists(stateDirectory.resolve(STATE_FILENAME));
+					} else {
+						Files.move(snapshot, stateDirectory.resolve(STATE_FILENAME), StandardCopyOption.ATOMIC_MOVE,
+								StandardCopyOption.REPLACE_EXISTING);
+					}
+					Files.deleteIfExists(stateDirectory.resolve(LOG_FILENAME));
+					for (Path rotatedLog : rotatedLogs()) {
+						Files.delete(rotatedLog);
+					}
+					init();
+				}
+			} finally {
+				ingestLock.writeLock().unlock();
+			}
 		}
-		init();
 	}
 
 }
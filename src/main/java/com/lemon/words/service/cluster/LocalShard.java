@@ -0,0 +1,55 @@
+package com.lemon.words.service.cluster;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.WordService;
+import com.lemon.words.service.ingest.WordCounts;
+
+/**
+ * The shard kept by a WordService in this JVM (this node's shard, or the shards of a cluster in a single JVM, e.g. in tests)
+ */
+public class LocalShard implements Shard {
+
+	private final WordService wordService;
+
+	public LocalShard(WordService wordService) {
+		this.wordService = wordService;
+	}
+
+	@Override
+	public int size() {
+		return wordService.shardSize();
+	}
+
+	@Override
+	public List<WordOccurrences> words(int from, int limit) {
+		return wordService.shardWords(from, limit);
+	}
+
+	@Override
+	public List<WordOccurrences> wordsAt(int[] positions) {
+		return wordService.shardWordsAt(positions);
+	}
+
+	@Override
+	public long[] ranksOf(List<WordOccurrences> words) {
+		return wordService.shardRanksOf(words);
+	}
+
+	@Override
+	public long[] countsOf(List<String> words) {
+		return wordService.shardCountsOf(words);
+	}
+
+	@Override
+	public void ingest(WordCounts wordCounts) throws IOException {
+		wordService.ingestShard(wordCounts);
+	}
+
+	@Override
+	public String toString() {
+		return "local";
+	}
+}
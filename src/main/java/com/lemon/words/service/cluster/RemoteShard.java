@@ -0,0 +1,107 @@
+package com.lemon.words.service.cluster;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.ingest.WordCounts;
+
+/**
+ * The shard kept by another node, called through its /cluster endpoints (see ClusterController).
+ * The words travel in the binary format of ShardCodec, the positions, ranks and counts as JSON arrays.
+ */
+public class RemoteShard implements Shard {
+
+	private final String baseUrl;
+	private final RestTemplate restTemplate;
+
+	/**
+	 * @param baseUrl - the node's base URL (e.g. http://words-1:8080)
+	 * @param timeout - the connect and read timeout of a call
+	 */
+	public RemoteShard(String baseUrl, Duration timeout) {
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout((int) timeout.toMillis());
+		requestFactory.setReadTimeout((int) timeout.toMillis());
+		this.restTemplate = new RestTemplate(requestFactory);
+	}
+
+	@Override
+	public int size() throws IOException {
+		try {
+			return restTemplate.getForObject(baseUrl + "/cluster/size", Integer.class);
+		} catch (RestClientException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public List<WordOccurrences> words(int from, int limit) throws IOException {
+		try {
+			return ShardCodec.decodeOccurrences(restTemplate.getForObject(baseUrl + "/cluster/words?from={from}&limit={limit}",
+					byte[].class, from, limit));
+		} catch (RestClientException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public List<WordOccurrences> wordsAt(int[] positions) throws IOException {
+		try {
+			return ShardCodec.decodeOccurrences(restTemplate.postForObject(baseUrl + "/cluster/words/at", positions, byte[].class));
+		} catch (RestClientException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public long[] ranksOf(List<WordOccurrences> words) throws IOException {
+		try {
+			return restTemplate.postForObject(baseUrl + "/cluster/ranks", binary(ShardCodec.encodeOccurrences(words)), long[].class);
+		} catch (RestClientException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public long[] countsOf(List<String> words) throws IOException {
+		try {
+			return restTemplate.postForObject(baseUrl + "/cluster/counts/lookup", words, long[].class);
+		} catch (RestClientException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public void ingest(WordCounts wordCounts) throws IOException {
+		try {
+			restTemplate.postForObject(baseUrl + "/cluster/counts", binary(ShardCodec.encodeCounts(wordCounts)), Void.class);
+		} catch (RestClientException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return baseUrl;
+	}
+
+	private static HttpEntity<byte[]> binary(byte[] body) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+		return new HttpEntity<>(body, headers);
+	}
+
+	private IOException failed(RestClientException e) {
+		return new IOException("The call to the node " + baseUrl + " failed: " + e.getMessage(), e);
+	}
+}
@@ -0,0 +1,69 @@
+package com.lemon.words.service.cluster;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.ingest.WordCounts;
+
+/**
+ * A shard of a cluster's words - the words whose hash falls on one node (see WordsCluster.shardOf).
+ * 
+ * The positions are of the shard's own ranking (zero based, the order of WordOccurrences.compareTo),
+ * the cluster merges them into the global ranking.
+ */
+public interface Shard {
+
+	/**
+	 * The number of words in the shard
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	int size() throws IOException;
+
+	/**
+	 * The words at the positions from..from+limit (fewer if the shard is smaller)
+	 * 
+	 * @param from
+	 * @param limit
+	 * @return
+	 * @throws IOException
+	 */
+	List<WordOccurrences> words(int from, int limit) throws IOException;
+
+	/**
+	 * The words at the given positions (the positions that don't exist are skipped)
+	 * 
+	 * @param positions
+	 * @return
+	 * @throws IOException
+	 */
+	List<WordOccurrences> wordsAt(int[] positions) throws IOException;
+
+	/**
+	 * For each of the given words (of any shard), the number of the shard's words ranked before it
+	 * 
+	 * @param words
+	 * @return
+	 * @throws IOException
+	 */
+	long[] ranksOf(List<WordOccurrences> words) throws IOException;
+
+	/**
+	 * The counts of the given words (0 for a word that is not in the shard)
+	 * 
+	 * @param words
+	 * @return
+	 * @throws IOException
+	 */
+	long[] countsOf(List<String> words) throws IOException;
+
+	/**
+	 * Ingesting a batch of the shard's words (persisted and ranked once it returns)
+	 * 
+	 * @param wordCounts
+	 * @throws IOException
+	 */
+	void ingest(WordCounts wordCounts) throws IOException;
+}
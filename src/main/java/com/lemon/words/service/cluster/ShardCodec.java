@@ -0,0 +1,72 @@
+package com.lemon.words.service.cluster;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.ingest.WordCounts;
+
+/**
+ * The binary format of the words sent between the nodes (the /cluster endpoints):
+ *   [int entries] then for each entry [int length][length UTF-8 bytes][long count]
+ * 
+ * A batch's words are written from its arena as they are (no String per word), and decoded straight into a WordCounts.
+ */
+public final class ShardCodec {
+
+	private ShardCodec() {
+	}
+
+	public static byte[] encodeCounts(WordCounts wordCounts) {
+		int[] size = { Integer.BYTES };
+		wordCounts.forEachEntry((bytes, offset, length, hash, count) -> size[0] += Integer.BYTES + length + Long.BYTES);
+		ByteBuffer buffer = ByteBuffer.allocate(size[0]);
+		buffer.putInt(wordCounts.size());
+		wordCounts.forEachEntry((bytes, offset, length, hash, count) -> buffer.putInt(length).put(bytes, offset, length).putLong(count));
+		return buffer.array();
+	}
+
+	public static WordCounts decodeCounts(byte[] encoded) {
+		ByteBuffer buffer = ByteBuffer.wrap(encoded);
+		WordCounts wordCounts = new WordCounts();
+		int entries = buffer.getInt();
+		for (int i = 0; i < entries; i++) {
+			int length = buffer.getInt();
+			int offset = buffer.position();
+			buffer.position(offset + length);
+			wordCounts.add(encoded, offset, length, buffer.getLong());
+		}
+		return wordCounts;
+	}
+
+	public static byte[] encodeOccurrences(List<WordOccurrences> occurrences) {
+		List<byte[]> words = new ArrayList<>(occurrences.size());
+		int size = Integer.BYTES;
+		for (WordOccurrences wo : occurrences) {
+			byte[] word = wo.getWord().getBytes(StandardCharsets.UTF_8);
+			words.add(word);
+			size += Integer.BYTES + word.length + Long.BYTES;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(occurrences.size());
+		for (int i = 0; i < occurrences.size(); i++) {
+			buffer.putInt(words.get(i).length).put(words.get(i)).putLong(occurrences.get(i).getCount());
+		}
+		return buffer.array();
+	}
+
+	public static List<WordOccurrences> decodeOccurrences(byte[] encoded) {
+		ByteBuffer buffer = ByteBuffer.wrap(encoded);
+		int entries = buffer.getInt();
+		List<WordOccurrences> occurrences = new ArrayList<>(entries);
+		for (int i = 0; i < entries; i++) {
+			int length = buffer.getInt();
+			String word = new String(encoded, buffer.position(), length, StandardCharsets.UTF_8);
+			buffer.position(buffer.position() + length);
+			occurrences.add(new WordOccurrences(buffer.getLong(), word));
+		}
+		return occurrences;
+	}
+}
@@ -0,0 +1,384 @@
+package com.lemon.words.service.cluster;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.lemon.words.config.WordsProperties;
+import com.lemon.words.exception.ClusterException;
+import com.lemon.words.exception.TooManyPositionsException;
+import com.lemon.words.model.WordLookup;
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.ranking.RankRanges;
+
+/**
+ * The words of a cluster, hash partitioned across its shards (see words.cluster.nodes) - each word is owned by a single shard
+ * (see {@link #shardOf(int, int)}), so a shard's ranking is the global ranking restricted to its words.
+ *
+ * Ingest - a counted batch is split by owner and the parts are sent to their shards in parallel.
+ * Ranking - the global ranking is the k-way merge of the shards rankings:
+ *   - the top positions (1-n) are a merge of the n first words of every shard
+ *   - a deep range (e.g. 1000000-1000010) is first located - for each shard, how many of its words are ranked before the range.
+ *     Instead of fetching all the words before the range, each shard samples its rank quantiles (the words at evenly spaced
+ *     positions, words.cluster.histogram-size of them) and every shard counts its words ranked before each sample, so every
+ *     sample gets its exact global rank. The closest samples before and after the range bound where it starts in every shard,
+ *     and the next round samples only between these bounds - each round narrows the bounds by the histogram size.
+ *     Then only the words between the bounds and the range itself are fetched and merged.
+ * Lookup - a word's count comes from its owner and its global rank is the sum of the shards counts of the words ranked before it.
+ *
+ * The shards are called in parallel (each call of a request at the same time on all the shards). The shards keep changing
+ * between the calls of a request so a ranking is not a consistent snapshot of the cluster (a word may move between positions
+ * of a request), once the ingests stop the responses are exact.
+ */
+public class WordsCluster implements AutoCloseable {
+
+	private final List<Shard> shards;
+	private final int histogramSize;
+	// Runs the calls to the shards
+	private final ExecutorService executor;
+
+	/**
+	 * A cluster of the given shards, the shard of the index i owns the words that {@link #shardOf(int, int)} maps to i
+	 *
+	 * @param shards
+	 * @param histogramSize - the number of rank quantiles each shard samples per round of locating a deep range
+	 */
+	public WordsCluster(List<Shard> shards, int histogramSize) {
+		this.shards = new ArrayList<>(shards);
+		this.histogramSize = Math.max(1, histogramSize);
+		this.executor = Executors.newFixedThreadPool(4 * shards.size(), runnable -> {
+			Thread thread = new Thread(runnable, "words-cluster");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * The cluster of the configured nodes, this node's shard is the given local shard and the others are called over HTTP
+	 *
+	 * @param cluster
+	 * @param localShard
+	 * @return
+	 */
+	public static WordsCluster of(WordsProperties.Cluster cluster, Shard localShard) {
+		List<String> nodes = cluster.getNodes();
+		if (cluster.getNodeIndex() < 0 || cluster.getNodeIndex() >= nodes.size()) {
+			throw new IllegalStateException("words.cluster.node-index " + cluster.getNodeIndex()
+					+ " is not a position in words.cluster.nodes " + nodes);
+		}
+		List<Shard> shards = new ArrayList<>();
+		for (int i = 0; i < nodes.size(); i++) {
+			shards.add(i == cluster.getNodeIndex() ? localShard : new RemoteShard(nodes.get(i), cluster.getTimeout()));
+		}
+		return new WordsCluster(shards, cluster.getHistogramSize());
+	}
+
+	/**
+	 * The shard that owns a word (by its hash, see WordCounts.hash).
+	 * The shard is picked by the high bits of the hash, a shard's dictionary places its words by the low bits (see WordDictionary)
+	 * which would otherwise be the same for all the words of a shard.
+	 *
+	 * @param hash
+	 * @param shards
+	 * @return
+	 */
+	public static int shardOf(int hash, int shards) {
+		return (int) (((hash & 0xFFFFFFFFL) * shards) >>> 32);
+	}
+
+	public int shardOf(String word) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		return shardOf(WordCounts.hash(bytes, 0, bytes.length), shards.size());
+	}
+
+	/**
+	 * Ingesting a batch - each shard gets the part of the batch it owns.
+	 * The parts are ingested independently, if a shard fails the other parts may be ingested already (retrying the batch
+	 * would count them twice).
+	 *
+	 * @param wordCounts
+	 * @throws ClusterException when a shard fails
+	 */
+	public void ingest(WordCounts wordCounts) {
+		WordCounts[] parts = new WordCounts[shards.size()];
+		for (int i = 0; i < parts.length; i++) {
+			parts[i] = new WordCounts();
+		}
+		wordCounts.forEachEntry(
+				(bytes, offset, length, hash, count) -> parts[shardOf(hash, parts.length)].add(bytes, offset, length, count));
+		scatter((index, shard) -> {
+			if (!parts[index].isEmpty()) {
+				shard.ingest(parts[index]);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * The words at the given positions of the global ranking (see WordService.getWordRanking(input))
+	 *
+	 * @param ranges
+	 * @param maxPositions
+	 * @return
+	 * @throws TooManyPositionsException when the ranges select more than maxPositions existing positions
+	 * @throws ClusterException when a shard fails
+	 */
+	public List<String> getWordRanking(RankRanges ranges, int maxPositions) {
+		List<Integer> sizes = scatter((index, shard) -> shard.size());
+		long size = 0;
+		for (int shardSize : sizes) {
+			size += shardSize;
+		}
+		long positions = ranges.countPositions(size);
+		if (positions > maxPositions) {
+			throw new TooManyPositionsException(positions, maxPositions);
+		}
+
+		List<String> result = new ArrayList<>((int) positions);
+		for (int i = 0; i < ranges.rangesCount() && ranges.getFrom(i) <= size; i++) {
+			long from = ranges.getFrom(i) - 1;
+			copyRange(sizes, from, (int) (Math.min(ranges.getTo(i), size) - from), result);
+		}
+		return result;
+	}
+
+	/**
+	 * The count and global rank of each of the given words, in the given order (see WordService.lookupWords())
+	 *
+	 * @param words
+	 * @return
+	 * @throws ClusterException when a shard fails
+	 */
+	public List<WordLookup> lookupWords(List<String> words) {
+		List<List<String>> ownedWords = new ArrayList<>();
+		for (int i = 0; i < shards.size(); i++) {
+			ownedWords.add(new ArrayList<>());
+		}
+		int[] owners = new int[words.size()];
+		int[] ownedIndexes = new int[words.size()];
+		for (int i = 0; i < words.size(); i++) {
+			owners[i] = shardOf(words.get(i));
+			ownedIndexes[i] = ownedWords.get(owners[i]).size();
+			ownedWords.get(owners[i]).add(words.get(i));
+		}
+		List<long[]> counts = scatter((index, shard) -> ownedWords.get(index).isEmpty() ? new long[0]
+				: shard.countsOf(ownedWords.get(index)));
+
+		List<WordOccurrences> known = new ArrayList<>();
+		for (int i = 0; i < words.size(); i++) {
+			long count = counts.get(owners[i])[ownedIndexes[i]];
+			if (count > 0) {
+				known.add(new WordOccurrences(count, words.get(i)));
+			}
+		}
+		List<long[]> ranks = known.isEmpty() ? Collections.emptyList() : scatter((index, shard) -> shard.ranksOf(known));
+
+		List<WordLookup> result = new ArrayList<>(words.size());
+		int knownIndex = 0;
+		for (int i = 0; i < words.size(); i++) {
+			long count = counts.get(owners[i])[ownedIndexes[i]];
+			if (count == 0) {
+				result.add(WordLookup.unknown(words.get(i)));
+				continue;
+			}
+			long before = 0;
+			for (long[] shardRanks : ranks) {
+				before += shardRanks[knownIndex];
+			}
+			knownIndex++;
+			result.add(new WordLookup(words.get(i), count, (int) (before + 1)));
+		}
+		return result;
+	}
+
+	/**
+	 * Copying the words at the global (zero based) positions from..from+count
+	 */
+	private void copyRange(List<Integer> sizes, long from, int count, List<String> into) {
+		int[][] bounds = locate(sizes, from);
+		int[] lower = bounds[0];
+		int[] upper = bounds[1];
+		long skip = from;
+		for (int position : lower) {
+			skip -= position;
+		}
+		List<List<WordOccurrences>> slices = scatter((index, shard) -> shard.words(lower[index],
+				(int) Math.min(Integer.MAX_VALUE, (long) upper[index] - lower[index] + count)));
+		merge(slices, skip, count, into);
+	}
+
+	/**
+	 * Bounding, for each shard, the number of its words ranked before the global (zero based) position.
+	 *
+	 * The lower bounds are always the shards positions right after a single word (so the words before them are exactly
+	 * the global positions before that word's position + 1) and the global position is reached by merging the shards from them.
+	 * Rounds of rank quantiles narrow the bounds until at most histogram size words per shard are between them.
+	 *
+	 * @param sizes
+	 * @param position
+	 * @return the lower and the upper bounds
+	 */
+	private int[][] locate(List<Integer> sizes, long position) {
+		int[] lower = new int[shards.size()];
+		int[] upper = new int[shards.size()];
+		for (int i = 0; i < upper.length; i++) {
+			upper[i] = (int) Math.min(sizes.get(i), position);
+		}
+		long gap = gap(lower, upper);
+		while (gap > (long) histogramSize * shards.size()) {
+			List<List<WordOccurrences>> samples = scatter((index, shard) -> {
+				int[] positions = quantiles(lower[index], upper[index]);
+				return positions.length == 0 ? Collections.emptyList() : shard.wordsAt(positions);
+			});
+			List<WordOccurrences> keys = new ArrayList<>();
+			List<Integer> keyShards = new ArrayList<>();
+			for (int i = 0; i < samples.size(); i++) {
+				keys.addAll(samples.get(i));
+				keyShards.addAll(Collections.nCopies(samples.get(i).size(), i));
+			}
+			List<long[]> ranks = scatter((index, shard) -> shard.ranksOf(keys));
+
+			// The closest samples before and at \ after the position
+			int below = -1;
+			int above = -1;
+			long belowRank = -1;
+			long aboveRank = Long.MAX_VALUE;
+			for (int k = 0; k < keys.size(); k++) {
+				long rank = 0;
+				for (long[] shardRanks : ranks) {
+					rank += shardRanks[k];
+				}
+				if (rank < position && rank > belowRank) {
+					below = k;
+					belowRank = rank;
+				} else if (rank >= position && rank < aboveRank) {
+					above = k;
+					aboveRank = rank;
+				}
+			}
+			for (int i = 0; i < lower.length; i++) {
+				if (below >= 0) {
+					long afterBelow = ranks.get(i)[below] + (keyShards.get(below) == i ? 1 : 0);
+					lower[i] = (int) Math.max(lower[i], afterBelow);
+				}
+				if (above >= 0) {
+					upper[i] = (int) Math.min(upper[i], ranks.get(i)[above]);
+				}
+				upper[i] = Math.max(upper[i], lower[i]);
+			}
+			long narrowed = gap(lower, upper);
+			if (narrowed >= gap) {
+				// The shards changed under the samples (concurrent ingests), the range is merged from the bounds as they are
+				break;
+			}
+			gap = narrowed;
+		}
+		return new int[][] { lower, upper };
+	}
+
+	/**
+	 * The positions of (at most) histogram size evenly spaced words of from..to (exclusive)
+	 */
+	private int[] quantiles(int from, int to) {
+		int length = to - from;
+		if (length <= histogramSize) {
+			int[] positions = new int[length];
+			for (int i = 0; i < length; i++) {
+				positions[i] = from + i;
+			}
+			return positions;
+		}
+		int[] positions = new int[histogramSize];
+		for (int i = 0; i < histogramSize; i++) {
+			positions[i] = (int) (from + (long) length * (i + 1) / (histogramSize + 1));
+		}
+		return positions;
+	}
+
+	private static long gap(int[] lower, int[] upper) {
+		long gap = 0;
+		for (int i = 0; i < lower.length; i++) {
+			gap += upper[i] - lower[i];
+		}
+		return gap;
+	}
+
+	/**
+	 * A k-way merge of the shards slices (each in rank order), skipping the first words and copying the next count words
+	 */
+	private static void merge(List<List<WordOccurrences>> slices, long skip, int count, List<String> into) {
+		// The heads are (slice, position in the slice)
+		PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, slices.size()),
+				(a, b) -> slices.get(a[0]).get(a[1]).compareTo(slices.get(b[0]).get(b[1])));
+		for (int i = 0; i < slices.size(); i++) {
+			if (!slices.get(i).isEmpty()) {
+				heads.add(new int[] { i, 0 });
+			}
+		}
+		long merged = 0;
+		while (!heads.isEmpty() && merged < skip + count) {
+			int[] head = heads.poll();
+			if (merged++ >= skip) {
+				into.add(slices.get(head[0]).get(head[1]).getWord());
+			}
+			if (++head[1] < slices.get(head[0]).size()) {
+				heads.add(head);
+			}
+		}
+	}
+
+	/**
+	 * A call to a single shard
+	 */
+	@FunctionalInterface
+	private interface ShardCall<T> {
+		T call(int index, Shard shard) throws IOException;
+	}
+
+	/**
+	 * Calling all the shards in parallel and waiting for all of them
+	 *
+	 * @param call
+	 * @return the results in the shards order
+	 * @throws ClusterException when a call fails
+	 */
+	private <T> List<T> scatter(ShardCall<T> call) {
+		List<Future<T>> futures = new ArrayList<>(shards.size());
+		for (int i = 0; i < shards.size(); i++) {
+			int index = i;
+			futures.add(executor.submit(() -> call.call(index, shards.get(index))));
+		}
+		List<T> results = new ArrayList<>(shards.size());
+		ClusterException failure = null;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				results.add(futures.get(i).get());
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = new ClusterException("The shard " + shards.get(i) + " failed: " + e.getCause().getMessage(),
+							e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ClusterException("Interrupted while waiting for the shards", e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return results;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,154 @@
+package com.lemon.words.service.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A BGZF file (blocked gzip, as written by bgzip) - a series of independent gzip members of at most 64KB each,
+ * where every member header has a 'BC' extra field with the member's compressed size.
+ *
+ * The sizes let us find all the blocks by reading their headers only, so the blocks can be decompressed in parallel
+ * (a plain multi member gzip doesn't record where the next member starts, it can only be decompressed sequentially).
+ *
+ * Block = [1F 8B 08 04][mtime, xfl, os (6 bytes)][short XLEN][extra fields, with 'B' 'C' [short 2][short BSIZE - 1]]
+ *         [deflate data][int crc32][int uncompressed size]      (little endian)
+ */
+final class BgzfFile {
+
+	// The fixed gzip header followed by XLEN
+	private static final int HEADER_SIZE = 12;
+	private static final int TRAILER_SIZE = 8;
+	private static final int FLAG_EXTRA = 0x04;
+	// The uncompressed size of a block never exceeds 64KB
+	static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+	// The [start, end) file positions of each block
+	private final long[] starts;
+	private final long[] ends;
+
+	private BgzfFile(long[] starts, long[] ends) {
+		this.starts = starts;
+		this.ends = ends;
+	}
+
+	/**
+	 * Reading the blocks layout of a gzip file
+	 *
+	 * @param channel
+	 * @return the blocks, or null if the file is not a BGZF file (then it should be decompressed as a stream)
+	 * @throws IOException
+	 */
+	static BgzfFile open(FileChannel channel) throws IOException {
+		long size = channel.size();
+		List<long[]> blocks = new ArrayList<>();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + MAX_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		long position = 0;
+		while (position < size) {
+			long blockSize = blockSize(channel, position, header);
+			if (blockSize < 0 || position + blockSize > size) {
+				return null;
+			}
+			blocks.add(new long[] { position, position + blockSize });
+			position += blockSize;
+		}
+		long[] starts = new long[blocks.size()];
+		long[] ends = new long[blocks.size()];
+		for (int i = 0; i < blocks.size(); i++) {
+			starts[i] = blocks.get(i)[0];
+			ends[i] = blocks.get(i)[1];
+		}
+		return new BgzfFile(starts, ends);
+	}
+
+	/**
+	 * The compressed size of the block at the given position (from its 'BC' extra field), -1 if it is not a BGZF block
+	 */
+	private static long blockSize(FileChannel channel, long position, ByteBuffer header) throws IOException {
+		header.clear().limit(HEADER_SIZE);
+		readFully(channel, header, position);
+		if (header.position() < HEADER_SIZE || (header.get(0) & 0xFF) != 0x1F || (header.get(1) & 0xFF) != 0x8B
+				|| header.get(2) != 8 || (header.get(3) & FLAG_EXTRA) == 0) {
+			return -1;
+		}
+		int extraLength = header.getShort(10) & 0xFFFF;
+		header.clear().limit(extraLength);
+		readFully(channel, header, position + HEADER_SIZE);
+		for (int offset = 0; offset + 4 <= header.position();) {
+			int subfieldLength = header.getShort(offset + 2) & 0xFFFF;
+			if (header.get(offset) == 'B' && header.get(offset + 1) == 'C' && subfieldLength == 2
+					&& offset + 6 <= header.position()) {
+				return (header.getShort(offset + 4) & 0xFFFF) + 1;
+			}
+			offset += 4 + subfieldLength;
+		}
+		return -1;
+	}
+
+	int blocks() {
+		return starts.length;
+	}
+
+	long compressedSize(int block) {
+		return ends[block] - starts[block];
+	}
+
+	/**
+	 * Decompressing a block (verifying its checksum)
+	 *
+	 * @param channel
+	 * @param block
+	 * @param compressed - a buffer for the compressed block (at least MAX_BLOCK_SIZE)
+	 * @param inflater - a raw (nowrap) inflater, reset by this method
+	 * @param into - at least MAX_BLOCK_SIZE bytes
+	 * @return the number of decompressed bytes
+	 * @throws IOException
+	 */
+	int inflate(FileChannel channel, int block, ByteBuffer compressed, Inflater inflater, byte[] into) throws IOException {
+		compressed.clear().limit((int) compressedSize(block));
+		readFully(channel, compressed, starts[block]);
+		compressed.flip().order(ByteOrder.LITTLE_ENDIAN);
+		int dataStart = HEADER_SIZE + (compressed.getShort(10) & 0xFFFF);
+		int dataEnd = compressed.limit() - TRAILER_SIZE;
+		int expectedCrc = compressed.getInt(dataEnd);
+		int expectedSize = compressed.getInt(dataEnd + 4);
+		if (expectedSize < 0 || expectedSize > into.length) {
+			throw new IOException("Corrupted BGZF block at " + starts[block]);
+		}
+		inflater.reset();
+		compressed.position(dataStart).limit(dataEnd);
+		inflater.setInput(compressed);
+		int length = 0;
+		try {
+			while (length < expectedSize && !inflater.finished()) {
+				int inflated = inflater.inflate(into, length, expectedSize - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupted BGZF block at " + starts[block], e);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(into, 0, length);
+		if (length != expectedSize || (int) crc.getValue() != expectedCrc) {
+			throw new IOException("Corrupted BGZF block at " + starts[block]);
+		}
+		return length;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.lemon.words.service.ingest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+/**
+ * An input stream that fails once too many bytes were read or once its deadline has passed.
+ * 
+ * Used for the inputs we don't control (remote URLs, request bodies) so a single huge \ endless source can't pin a thread forever.
+ */
+public class BoundedInputStream extends FilterInputStream {
+
+	private final long maxBytes;
+	private final long deadlineNanos;
+	private final String source;
+	private long bytesRead;
+
+	/**
+	 * @param in
+	 * @param maxBytes - the maximal number of bytes to read
+	 * @param maxDurationNanos - the maximal time to read the whole stream (0 means no limit)
+	 * @param source - a description of the source for the error messages
+	 */
+	public BoundedInputStream(InputStream in, long maxBytes, long maxDurationNanos, String source) {
+		super(in);
+		this.maxBytes = maxBytes;
+		this.deadlineNanos = maxDurationNanos > 0 ? System.nanoTime() + maxDurationNanos : 0;
+		this.source = source;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkDeadline();
+		int b = super.read();
+		if (b != -1) {
+			count(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkDeadline();
+		int read = super.read(b, off, len);
+		if (read > 0) {
+			count(read);
+		}
+		return read;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	private void count(int read) throws IOException {
+		bytesRead += read;
+		if (bytesRead > maxBytes) {
+			throw new IOException(source + " exceeds the maximal size of " + maxBytes + " bytes");
+		}
+	}
+
+	private void checkDeadline() throws IOException {
+		if (deadlineNanos != 0 && System.nanoTime() - deadlineNanos > 0) {
+			throw new SocketTimeoutException(source + " exceeded its maximal read duration");
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.lemon.words.service.ingest;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * Detecting the compression of an input by its magic bytes and decompressing it on the fly (no temporary files).
+ *
+ *   gzip  - 1F 8B          (all the concatenated members, see GzipDecoderInputStream, and BgzfFile for the parallel block gzip)
+ *   zstd  - 28 B5 2F FD    (all the frames)
+ *   bzip2 - 'B' 'Z' 'h'    (concatenated streams too)
+ * Anything else is read as is (raw text).
+ */
+public final class CompressedInput {
+
+	private static final int MAGIC_LENGTH = 4;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	public enum Format {
+		NONE, GZIP, ZSTD, BZIP2
+	}
+
+	private CompressedInput() {
+	}
+
+	/**
+	 * The compression of the content starting with the given bytes
+	 *
+	 * @param magic
+	 * @param length - the number of bytes available (may be shorter than the magic)
+	 * @return
+	 */
+	public static Format detect(byte[] magic, int length) {
+		if (length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+			return Format.GZIP;
+		}
+		if (length >= 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5 && (magic[2] & 0xFF) == 0x2F
+				&& (magic[3] & 0xFF) == 0xFD) {
+			return Format.ZSTD;
+		}
+		if (length >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h') {
+			return Format.BZIP2;
+		}
+		return Format.NONE;
+	}
+
+	/**
+	 * The compression of a file (by its first bytes)
+	 *
+	 * @param channel
+	 * @return
+	 * @throws IOException
+	 */
+	public static Format detect(FileChannel channel) throws IOException {
+		ByteBuffer magic = ByteBuffer.allocate(MAGIC_LENGTH);
+		channel.read(magic, 0);
+		return detect(magic.array(), magic.position());
+	}
+
+	/**
+	 * Wrapping the input with the decompressor of its detected compression (the returned stream closes the input)
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static InputStream open(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+		buffered.mark(MAGIC_LENGTH);
+		byte[] magic = new byte[MAGIC_LENGTH];
+		int length = 0;
+		int read;
+		while (length < MAGIC_LENGTH && (read = buffered.read(magic, length, MAGIC_LENGTH - length)) != -1) {
+			length += read;
+		}
+		buffered.reset();
+		switch (detect(magic, length)) {
+		case GZIP:
+			return new GzipDecoderInputStream(buffered);
+		case ZSTD:
+			return new ZstdInputStream(buffered);
+		case BZIP2:
+			return new BZip2CompressorInputStream(buffered, true);
+		default:
+			return buffered;
+		}
+	}
+}
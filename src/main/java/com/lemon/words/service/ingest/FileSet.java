@@ -0,0 +1,79 @@
+package com.lemon.words.service.ingest;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Resolving the files of a type=file ingest - a single file, a directory (all its regular files, recursively)
+ * or a glob (e.g. /data/corpora/**.gz or /data/logs/2021-0[1-6]-??.txt, see FileSystem.getPathMatcher).
+ *
+ * A glob is walked from its longest directory prefix without glob characters, and matched against the walked paths.
+ */
+public final class FileSet {
+
+	private static final String GLOB_CHARACTERS = "*?[{";
+
+	private FileSet() {
+	}
+
+	/**
+	 * Whether the spec names more than a single file (a directory or a glob)
+	 *
+	 * @param spec
+	 * @return
+	 */
+	public static boolean isMultiple(String spec) {
+		return isGlob(spec) || Files.isDirectory(Paths.get(spec));
+	}
+
+	/**
+	 * The regular files of a directory \ glob (sorted by path)
+	 *
+	 * @param spec
+	 * @return
+	 * @throws IOException when no file matches
+	 */
+	public static List<Path> resolve(String spec) throws IOException {
+		Path base;
+		PathMatcher matcher;
+		if (isGlob(spec)) {
+			int firstGlobCharacter = firstGlobCharacter(spec);
+			int baseEnd = spec.lastIndexOf('/', firstGlobCharacter);
+			base = Paths.get(baseEnd < 0 ? "." : baseEnd == 0 ? "/" : spec.substring(0, baseEnd));
+			// The walked paths of a relative glob without a directory start with './'
+			String pattern = baseEnd < 0 ? "./" + spec : spec;
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+		} else {
+			base = Paths.get(spec);
+			matcher = path -> true;
+		}
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(base)) {
+			files = walk.filter(Files::isRegularFile).filter(matcher::matches).sorted().collect(Collectors.toList());
+		}
+		if (files.isEmpty()) {
+			throw new IOException("No files match " + spec);
+		}
+		return files;
+	}
+
+	private static boolean isGlob(String spec) {
+		return firstGlobCharacter(spec) >= 0 && !Files.isRegularFile(Paths.get(spec));
+	}
+
+	private static int firstGlobCharacter(String spec) {
+		for (int i = 0; i < spec.length(); i++) {
+			if (GLOB_CHARACTERS.indexOf(spec.charAt(i)) >= 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,222 @@
+package com.lemon.words.service.ingest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A push based gzip decoder - the compressed bytes are fed as they arrive (e.g. the buffers of a request body)
+ * and the decompressed bytes are pushed to an output, so no thread waits on a stream for the next bytes.
+ *
+ * It accepts what GZIPInputStream accepts: concatenated members (each member's CRC and size are verified), and bytes after
+ * the last member that are not a gzip header are ignored. The optional header CRC (FHCRC) is skipped, not verified.
+ *
+ * NOT thread safe, a decoder instance is used by a single upload.
+ */
+final class GzipDecoder implements AutoCloseable {
+
+	private static final int MAGIC_FIRST = 0x1F;
+	private static final int MAGIC_SECOND = 0x8B;
+	private static final int DEFLATE = 8;
+	private static final int FIXED_HEADER_SIZE = 10;
+	private static final int TRAILER_SIZE = 8;
+	// The header's name \ comment are zero terminated, a longer header is rejected
+	private static final int MAX_HEADER_SIZE = 64 * 1024;
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+	private static final int FLAG_HEADER_CRC = 2;
+	private static final int FLAG_EXTRA = 4;
+	private static final int FLAG_NAME = 8;
+	private static final int FLAG_COMMENT = 16;
+
+	/**
+	 * The decompressed bytes
+	 */
+	@FunctionalInterface
+	interface Output {
+		void write(byte[] bytes, int offset, int length) throws IOException;
+	}
+
+	private enum State {
+		HEADER, DATA, TRAILER, IGNORED
+	}
+
+	private final Inflater inflater = new Inflater(true);
+	private final CRC32 crc = new CRC32();
+	private final byte[] output = new byte[OUTPUT_BUFFER_SIZE];
+
+	// The header (or trailer) bytes received so far, they may span several buffers
+	private byte[] pending = new byte[FIXED_HEADER_SIZE];
+	private int pendingLength;
+	private State state = State.HEADER;
+	private int members;
+	private long memberSize;
+
+	/**
+	 * Decoding the next compressed bytes
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @param out
+	 * @throws IOException when the bytes are not gzip or are corrupted
+	 */
+	void decode(byte[] bytes, int offset, int length, Output out) throws IOException {
+		int end = offset + length;
+		while (offset < end && state != State.IGNORED) {
+			switch (state) {
+			case HEADER:
+				offset = readHeader(bytes, offset, end);
+				break;
+			case DATA:
+				offset = inflate(bytes, offset, end, out);
+				break;
+			default:
+				offset = readTrailer(bytes, offset, end);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Ending the compressed bytes
+	 *
+	 * @throws EOFException when the bytes end inside a member (or there were none)
+	 */
+	void finish() throws IOException {
+		if (state == State.DATA || state == State.TRAILER || (state == State.HEADER && members == 0)) {
+			throw new EOFException("Unexpected end of the gzip input");
+		}
+	}
+
+	@Override
+	public void close() {
+		inflater.end();
+	}
+
+	private int readHeader(byte[] bytes, int offset, int end) throws IOException {
+		int before = pendingLength;
+		int copied = append(bytes, offset, Math.min(end - offset, MAX_HEADER_SIZE - pendingLength));
+		if (!hasGzipMagic()) {
+			if (members > 0) {
+				// Trailing garbage after the last member, ignored like GZIPInputStream does
+				state = State.IGNORED;
+				return end;
+			}
+			throw new ZipException("Not in GZIP format");
+		}
+		int headerLength = headerLength();
+		if (headerLength < 0) {
+			if (pendingLength == MAX_HEADER_SIZE) {
+				throw new ZipException("The gzip header exceeds " + MAX_HEADER_SIZE + " bytes");
+			}
+			return offset + copied;
+		}
+		pendingLength = 0;
+		inflater.reset();
+		crc.reset();
+		memberSize = 0;
+		state = State.DATA;
+		return offset + headerLength - before;
+	}
+
+	private boolean hasGzipMagic() throws ZipException {
+		if ((pendingLength > 0 && (pending[0] & 0xFF) != MAGIC_FIRST) || (pendingLength > 1 && (pending[1] & 0xFF) != MAGIC_SECOND)) {
+			return false;
+		}
+		if (pendingLength > 2 && pending[2] != DEFLATE) {
+			throw new ZipException("Unsupported gzip compression method " + pending[2]);
+		}
+		return true;
+	}
+
+	/**
+	 * The length of the pending header, -1 while it is incomplete
+	 */
+	private int headerLength() {
+		if (pendingLength < FIXED_HEADER_SIZE) {
+			return -1;
+		}
+		int flags = pending[3] & 0xFF;
+		int length = FIXED_HEADER_SIZE;
+		if ((flags & FLAG_EXTRA) != 0) {
+			if (pendingLength < length + 2) {
+				return -1;
+			}
+			length += 2 + ((pending[length] & 0xFF) | (pending[length + 1] & 0xFF) << 8);
+		}
+		if ((flags & FLAG_NAME) != 0) {
+			length = skipZeroTerminated(length);
+		}
+		if (length >= 0 && (flags & FLAG_COMMENT) != 0) {
+			length = skipZeroTerminated(length);
+		}
+		if (length >= 0 && (flags & FLAG_HEADER_CRC) != 0) {
+			length += 2;
+		}
+		return length >= 0 && length <= pendingLength ? length : -1;
+	}
+
+	private int skipZeroTerminated(int from) {
+		for (int i = from; i < pendingLength; i++) {
+			if (pending[i] == 0) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	private int inflate(byte[] bytes, int offset, int end, Output out) throws IOException {
+		inflater.setInput(bytes, offset, end - offset);
+		try {
+			while (!inflater.finished()) {
+				int inflated = inflater.inflate(output);
+				if (inflated > 0) {
+					crc.update(output, 0, inflated);
+					memberSize += inflated;
+					out.write(output, 0, inflated);
+				} else if (inflater.needsInput()) {
+					return end;
+				} else if (inflater.needsDictionary()) {
+					throw new ZipException("A gzip member with a preset dictionary");
+				}
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException(e.getMessage());
+		}
+		state = State.TRAILER;
+		return end - inflater.getRemaining();
+	}
+
+	private int readTrailer(byte[] bytes, int offset, int end) throws IOException {
+		int copied = append(bytes, offset, Math.min(end - offset, TRAILER_SIZE - pendingLength));
+		if (pendingLength == TRAILER_SIZE) {
+			if (littleEndianInt(0) != (int) crc.getValue() || littleEndianInt(4) != (int) memberSize) {
+				throw new ZipException("Corrupt GZIP trailer");
+			}
+			pendingLength = 0;
+			members++;
+			state = State.HEADER;
+		}
+		return offset + copied;
+	}
+
+	private int littleEndianInt(int offset) {
+		return (pending[offset] & 0xFF) | (pending[offset + 1] & 0xFF) << 8 | (pending[offset + 2] & 0xFF) << 16
+				| (pending[offset + 3] & 0xFF) << 24;
+	}
+
+	private int append(byte[] bytes, int offset, int length) {
+		if (pendingLength + length > pending.length) {
+			byte[] grown = new byte[Math.min(MAX_HEADER_SIZE, Math.max(pending.length * 2, pendingLength + length))];
+			System.arraycopy(pending, 0, grown, 0, pendingLength);
+			pending = grown;
+		}
+		System.arraycopy(bytes, offset, pending, pendingLength, length);
+		pendingLength += length;
+		return length;
+	}
+}
@@ -0,0 +1,100 @@
+package com.lemon.words.service.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A gzip input stream over the push based GzipDecoder - it reads the source until its end, so every member is decoded
+ * (GZIPInputStream only reads past a member when the next header is already buffered or the source reports available bytes,
+ * on a socket it may stop at a member boundary and silently drop the rest, e.g. of a BGZF file).
+ *
+ * NOT thread safe.
+ */
+final class GzipDecoderInputStream extends InputStream {
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	// The compressed bytes decoded at a time - deflate expands at most ~1032:1, so the decoded bytes waiting to be read stay bounded
+	private static final int DECODE_SLICE_SIZE = 1024;
+
+	private final InputStream in;
+	private final GzipDecoder decoder = new GzipDecoder();
+	private final byte[] input = new byte[READ_BUFFER_SIZE];
+	private int inputOffset;
+	private int inputLength;
+	private byte[] decoded = new byte[READ_BUFFER_SIZE];
+	private int decodedOffset;
+	private int decodedLength;
+	private boolean ended;
+
+	GzipDecoderInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (decodedOffset == decodedLength) {
+			if (!decodeNext()) {
+				return -1;
+			}
+		}
+		int read = Math.min(len, decodedLength - decodedOffset);
+		System.arraycopy(decoded, decodedOffset, b, off, read);
+		decodedOffset += read;
+		return read;
+	}
+
+	@Override
+	public int available() {
+		return decodedLength - decodedOffset;
+	}
+
+	@Override
+	public void close() throws IOException {
+		decoder.close();
+		in.close();
+	}
+
+	/**
+	 * Decoding the next slice of the source, false at its end
+	 */
+	private boolean decodeNext() throws IOException {
+		if (inputOffset == inputLength) {
+			if (ended) {
+				return false;
+			}
+			int read = in.read(input, 0, input.length);
+			if (read == -1) {
+				ended = true;
+				decoder.finish();
+				return false;
+			}
+			inputOffset = 0;
+			inputLength = read;
+		}
+		decodedOffset = 0;
+		decodedLength = 0;
+		int slice = Math.min(DECODE_SLICE_SIZE, inputLength - inputOffset);
+		decoder.decode(input, inputOffset, slice, this::append);
+		inputOffset += slice;
+		return true;
+	}
+
+	private void append(byte[] bytes, int offset, int length) {
+		if (decodedLength + length > decoded.length) {
+			byte[] grown = new byte[Math.max(decoded.length * 2, decodedLength + length)];
+			System.arraycopy(decoded, 0, grown, 0, decodedLength);
+			decoded = grown;
+		}
+		System.arraycopy(bytes, offset, decoded, decodedLength, length);
+		decodedLength += length;
+	}
+}
@@ -0,0 +1,391 @@
+package com.lemon.words.service.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+import com.lemon.words.model.FileProgress;
+import com.lemon.words.model.IngestProgress;
+
+/**
+ * Counting the words of a (large) file in parallel.
+ *
+ * The file is memory mapped and split to chunks, each chunk boundary is moved forward to the next separator
+ * (' ', '-', '\n', '\r') so a word never spans two chunks. Since the separators are ASCII bytes
+ * a boundary can't split a multi byte character either.
+ * Each chunk is tokenized on a fork join pool into its own WordCounts and the partial counts are merged (also in parallel).
+ *
+ * The counts are exactly the counts of a single threaded tokenization so the resulting ranking is identical.
+ *
+ * Compressed files (gzip, zstd, bzip2 - detected by their magic bytes, see CompressedInput) are decompressed on the fly.
+ * A blocked gzip file (BGZF, see BgzfFile) is split to chunks of whole blocks which are decompressed and tokenized in parallel,
+ * since a word may span two chunks each chunk skips the bytes before its first separator and the previous chunk
+ * reads on (into the next blocks) up to that separator. Other compressed files are decompressed by a single thread.
+ *
+ * A set of files (see {@link #countAll(List, IngestProgress)}) is scheduled largest first over the pool's threads,
+ * each thread takes the next file when it is done with its current one and its files are counted into a single partial count.
+ */
+public class ParallelFileIngester implements AutoCloseable {
+
+	// A single mapping is limited to 2GB, we map large chunks in windows of this size
+	private static final int MAX_MAPPING_SIZE = 256 * 1024 * 1024;
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final ForkJoinPool pool;
+	private final long chunkSize;
+
+	/**
+	 * @param parallelism - the number of threads, 0 means the number of available processors
+	 * @param chunkSize
+	 */
+	public ParallelFileIngester(int parallelism, long chunkSize) {
+		this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	/**
+	 * Counting the words of the given file
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public WordCounts count(Path path) throws IOException {
+		return count(path, new IngestProgress());
+	}
+
+	/**
+	 * Counting the words of the given file, reporting the progress of all the chunks
+	 *
+	 * @param path
+	 * @param progress
+	 * @return
+	 * @throws IOException
+	 */
+	public WordCounts count(Path path, IngestProgress progress) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			CompressedInput.Format format = CompressedInput.detect(channel);
+			if (format == CompressedInput.Format.GZIP) {
+				BgzfFile bgzf = BgzfFile.open(channel);
+				if (bgzf != null) {
+					List<int[]> chunks = splitToBlockChunks(bgzf);
+					return countChunks(chunks.size(), chunk -> countBlocksChunk(channel, bgzf, chunks.get(chunk), progress));
+				}
+			}
+			if (format != CompressedInput.Format.NONE) {
+				return countCompressed(path, progress);
+			}
+			List<long[]> chunks = splitToChunks(channel);
+			return countChunks(chunks.size(), chunk -> countChunk(channel, chunks.get(chunk)[0], chunks.get(chunk)[1], progress));
+		}
+	}
+
+	/**
+	 * Counting the words of a set of files - each of the pool's threads takes the largest file left until none is left
+	 * (so a large file doesn't start last and delay the whole set), the files are still split to chunks so the threads
+	 * that run out of files help with the last large ones. The threads' partial counts are merged at the end.
+	 *
+	 * A file that fails is reported as failed (see FileProgress) and its counts are discarded, the other files are counted.
+	 *
+	 * @param paths
+	 * @param progress - the total progress, its files are set to the files' progress in their scheduling order
+	 * @return the counts of all the succeeded files
+	 * @throws IOException if all the files failed
+	 */
+	public WordCounts countAll(List<Path> paths, IngestProgress progress) throws IOException {
+		List<FileProgress> files = new ArrayList<>(paths.size());
+		for (Path path : paths) {
+			try {
+				files.add(new FileProgress(path.toString(), Files.size(path), progress));
+			} catch (IOException e) {
+				// E.g. deleted since the set was resolved - failed, sized 0 for the ordering
+				FileProgress failed = new FileProgress(path.toString(), 0, progress);
+				failed.failed(e.toString());
+				files.add(failed);
+			}
+		}
+		files.sort(Comparator.comparingLong(FileProgress::getSize).reversed());
+		progress.setFiles(files);
+
+		AtomicInteger next = new AtomicInteger();
+		int workers = Math.min(pool.getParallelism(), files.size());
+		List<ForkJoinTask<WordCounts>> tasks = new ArrayList<>(workers);
+		for (int i = 0; i < workers; i++) {
+			tasks.add(pool.submit(() -> {
+				WordCounts partial = new WordCounts();
+				int file;
+				while ((file = next.getAndIncrement()) < files.size()) {
+					FileProgress fileProgress = files.get(file);
+					if (fileProgress.getStatus() == FileProgress.Status.FAILED) {
+						continue;
+					}
+					fileProgress.started();
+					try {
+						WordCounts fileCounts = count(Paths.get(fileProgress.getPath()), fileProgress);
+						partial.addAll(fileCounts);
+						fileProgress.succeeded();
+					} catch (IOException | RuntimeException e) {
+						fileProgress.failed(e.toString());
+					}
+				}
+				return partial;
+			}));
+		}
+		WordCounts wordCounts = null;
+		for (ForkJoinTask<WordCounts> task : tasks) {
+			WordCounts partial = task.join();
+			// Merging the smaller batch into the larger one
+			if (wordCounts == null) {
+				wordCounts = partial;
+			} else if (wordCounts.size() >= partial.size()) {
+				wordCounts.addAll(partial);
+			} else {
+				partial.addAll(wordCounts);
+				wordCounts = partial;
+			}
+		}
+		if (files.stream().allMatch(file -> file.getStatus() == FileProgress.Status.FAILED)) {
+			throw new IOException("All the " + files.size() + " files failed, the first: " + files.get(0).getError());
+		}
+		return wordCounts;
+	}
+
+	/**
+	 * Counting the chunks on the fork join pool (unless there is a single chunk)
+	 */
+	private WordCounts countChunks(int chunks, ChunkCounter counter) throws IOException {
+		if (chunks == 1) {
+			// Not worth the fork join overhead
+			return counter.count(0);
+		}
+		try {
+			return pool.invoke(new ChunksTask(counter, 0, chunks));
+		} catch (UncheckedIOException e) {
+				// The fork join pool may wrap the thrown exception with a new one of the same type
+				Throwable cause = e.getCause();
+				while (cause instanceof UncheckedIOException) {
+					cause = cause.getCause();
+				}
+				throw (IOException) cause;
+		}
+	}
+
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Splitting the file to [start, end) chunks aligned on word boundaries
+	 */
+	private List<long[]> splitToChunks(FileChannel channel) throws IOException {
+		long size = channel.size();
+		List<long[]> chunks = new ArrayList<>();
+		long start = 0;
+		while (start < size) {
+			long end = start + chunkSize >= size ? size : nextSeparator(channel, start + chunkSize, size);
+			chunks.add(new long[] { start, end });
+			start = end;
+		}
+		if (chunks.isEmpty()) {
+			chunks.add(new long[] { 0, 0 });
+		}
+		return chunks;
+	}
+
+	/**
+	 * The position of the first separator at or after the given position (or the file size if there is none)
+	 */
+	private long nextSeparator(FileChannel channel, long position, long size) throws IOException {
+		while (position < size) {
+			int windowSize = (int) Math.min(COPY_BUFFER_SIZE, size - position);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+			for (int i = 0; i < windowSize; i++) {
+				if (isSeparator(window.get(i))) {
+					return position + i;
+				}
+			}
+			position += windowSize;
+		}
+		return size;
+	}
+
+	/**
+	 * Splitting a BGZF file to [first block, last block) chunks of (roughly) the chunk size of compressed bytes
+	 */
+	private List<int[]> splitToBlockChunks(BgzfFile bgzf) {
+		List<int[]> chunks = new ArrayList<>();
+		int first = 0;
+		long size = 0;
+		for (int block = 0; block < bgzf.blocks(); block++) {
+			size += bgzf.compressedSize(block);
+			if (size >= chunkSize) {
+				chunks.add(new int[] { first, block + 1 });
+				first = block + 1;
+				size = 0;
+			}
+		}
+		if (first < bgzf.blocks() || chunks.isEmpty()) {
+			chunks.add(new int[] { first, bgzf.blocks() });
+		}
+		return chunks;
+	}
+
+	private static int firstSeparator(byte[] bytes, int length) {
+		for (int i = 0; i < length; i++) {
+			if (isSeparator(bytes[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isSeparator(byte b) {
+		return b == ' ' || b == '-' || b == '\n' || b == '\r';
+	}
+
+	private static WordCounts countChunk(FileChannel channel, long start, long end, IngestProgress progress)
+			throws IOException {
+		WordCounts wordCounts = new WordCounts();
+		WordTokenizer tokenizer = new WordTokenizer(wordCounts);
+		byte[] buffer = new byte[COPY_BUFFER_SIZE];
+		for (long windowStart = start; windowStart < end; windowStart += MAX_MAPPING_SIZE) {
+			int windowSize = (int) Math.min(MAX_MAPPING_SIZE, end - windowStart);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+			while (window.hasRemaining()) {
+				int length = Math.min(buffer.length, window.remaining());
+				window.get(buffer, 0, length);
+				long tokensBefore = tokenizer.getTokens();
+				tokenizer.feed(buffer, 0, length);
+				progress.add(length, tokenizer.getTokens() - tokensBefore);
+			}
+		}
+		long tokensBefore = tokenizer.getTokens();
+		tokenizer.finish();
+		progress.add(0, tokenizer.getTokens() - tokensBefore);
+		return wordCounts;
+	}
+
+	/**
+	 * Counting the words of a chunk of BGZF blocks - starting after the first separator (unless it is the first chunk),
+	 * and reading on into the next blocks up to the first separator in order to complete the chunk's last word
+	 */
+	private static WordCounts countBlocksChunk(FileChannel channel, BgzfFile bgzf, int[] chunk, IngestProgress progress)
+			throws IOException {
+		WordCounts wordCounts = new WordCounts();
+		WordTokenizer tokenizer = new WordTokenizer(wordCounts);
+		ByteBuffer compressed = ByteBuffer.allocate(BgzfFile.MAX_BLOCK_SIZE);
+		byte[] buffer = new byte[BgzfFile.MAX_BLOCK_SIZE];
+		Inflater inflater = new Inflater(true);
+		try {
+			// The bytes before the first separator belong to the previous chunk's last word
+			boolean skipping = chunk[0] > 0;
+			for (int block = chunk[0]; block < chunk[1]; block++) {
+				int length = bgzf.inflate(channel, block, compressed, inflater, buffer);
+				int start = 0;
+				if (skipping) {
+					start = firstSeparator(buffer, length);
+					if (start < 0) {
+						continue;
+					}
+					skipping = false;
+				}
+				long tokensBefore = tokenizer.getTokens();
+				tokenizer.feed(buffer, start, length - start);
+				progress.add(length - start, tokenizer.getTokens() - tokensBefore);
+			}
+			// A chunk without any separator is entirely inside a word of a previous chunk
+			for (int block = chunk[1]; !skipping && block < bgzf.blocks(); block++) {
+				int length = bgzf.inflate(channel, block, compressed, inflater, buffer);
+				int end = firstSeparator(buffer, length);
+				tokenizer.feed(buffer, 0, end < 0 ? length : end);
+				if (end >= 0) {
+					break;
+				}
+			}
+		} finally {
+			inflater.end();
+		}
+		long tokensBefore = tokenizer.getTokens();
+		tokenizer.finish();
+		progress.add(0, tokenizer.getTokens() - tokensBefore);
+		return wordCounts;
+	}
+
+	/**
+	 * Decompressing a (non BGZF) compressed file as a stream into a single tokenizer
+	 */
+	private static WordCounts countCompressed(Path path, IngestProgress progress) throws IOException {
+		WordCounts wordCounts = new WordCounts();
+		try (InputStream decompressed = CompressedInput.open(Files.newInputStream(path))) {
+			new WordTokenizer(wordCounts).tokenize(decompressed, progress);
+		}
+		return wordCounts;
+	}
+
+	/**
+	 * Counts a single chunk (by its index)
+	 */
+	@FunctionalInterface
+	private interface ChunkCounter {
+		WordCounts count(int chunk) throws IOException;
+	}
+
+	/**
+	 * Counting a range of chunks - splitting the range in half until a single chunk is left,
+	 * then merging the two halves counts.
+	 */
+	private static class ChunksTask extends RecursiveTask<WordCounts> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient ChunkCounter counter;
+		private final int from;
+		private final int to;
+
+		private ChunksTask(ChunkCounter counter, int from, int to) {
+			this.counter = counter;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected WordCounts compute() {
+			if (to - from == 1) {
+				try {
+					return counter.count(from);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			int middle = (from + to) >>> 1;
+			ChunksTask left = new ChunksTask(counter, from, middle);
+			ChunksTask right = new ChunksTask(counter, middle, to);
+			left.fork();
+			WordCounts rightCounts = right.compute();
+			WordCounts leftCounts = left.join();
+			// Merging the smaller batch into the larger one
+			if (leftCounts.size() >= rightCounts.size()) {
+				leftCounts.addAll(rightCounts);
+				return leftCounts;
+			}
+			rightCounts.addAll(leftCounts);
+			return rightCounts;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.lemon.words.service.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.lemon.words.exception.PayloadTooLargeException;
+
+/**
+ * A streamed upload (POST /words/stream) that is tokenized as its buffers arrive - push based, so the buffers can come
+ * from a blocking stream (see WordService.postWordsStream) or straight from a non blocking server (see ReactiveWordController).
+ *
+ * The body is UTF-8 text, optionally gzipped (see GzipDecoder). Both the body and its decompressed content are limited
+ * to the maximal size, only the current buffer and the upload's distinct words are kept in memory.
+ *
+ * NOT thread safe, the buffers of an upload are fed one at a time.
+ */
+public class StreamUpload implements AutoCloseable {
+
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final long maxSize;
+	private final WordCounts wordCounts = new WordCounts();
+	private final WordTokenizer tokenizer = new WordTokenizer(wordCounts);
+	// null for a plain text body
+	private final GzipDecoder gzip;
+	private byte[] copyBuffer;
+	private long bytesRead;
+	private long contentSize;
+
+	/**
+	 * @param maxSize - the maximal size of the body and of its decompressed content
+	 * @param gzip - whether the body is gzipped
+	 */
+	public StreamUpload(long maxSize, boolean gzip) {
+		this.maxSize = maxSize;
+		this.gzip = gzip ? new GzipDecoder() : null;
+	}
+
+	/**
+	 * Feeding the next bytes of the body
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @throws IOException when a gzipped body is corrupted
+	 * @throws PayloadTooLargeException
+	 */
+	public void feed(byte[] bytes, int offset, int length) throws IOException {
+		bytesRead += length;
+		if (bytesRead > maxSize) {
+			throw new PayloadTooLargeException(maxSize);
+		}
+		if (gzip != null) {
+			gzip.decode(bytes, offset, length, this::tokenize);
+		} else {
+			tokenize(bytes, offset, length);
+		}
+	}
+
+	/**
+	 * Feeding the next bytes of the body from a (possibly direct) buffer, the buffer is consumed
+	 *
+	 * @param buffer
+	 * @throws IOException
+	 */
+	public void feed(ByteBuffer buffer) throws IOException {
+		if (buffer.hasArray()) {
+			int length = buffer.remaining();
+			feed(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+			buffer.position(buffer.position() + length);
+			return;
+		}
+		if (copyBuffer == null) {
+			copyBuffer = new byte[COPY_BUFFER_SIZE];
+		}
+		while (buffer.hasRemaining()) {
+			int length = Math.min(buffer.remaining(), copyBuffer.length);
+			buffer.get(copyBuffer, 0, length);
+			feed(copyBuffer, 0, length);
+		}
+	}
+
+	/**
+	 * Ending the body - the counted words of the upload
+	 *
+	 * @return
+	 * @throws IOException when a gzipped body ends inside a member
+	 */
+	public WordCounts finish() throws IOException {
+		if (gzip != null) {
+			gzip.finish();
+		}
+		tokenizer.finish();
+		return wordCounts;
+	}
+
+	/**
+	 * The number of body bytes fed so far
+	 *
+	 * @return
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Releasing the decoder (an upload may be abandoned before it is finished, e.g. a client that disconnects)
+	 */
+	@Override
+	public void close() {
+		if (gzip != null) {
+			gzip.close();
+		}
+	}
+
+	private void tokenize(byte[] bytes, int offset, int length) {
+		contentSize += length;
+		if (contentSize > maxSize) {
+			throw new PayloadTooLargeException(maxSize);
+		}
+		tokenizer.feed(bytes, offset, length);
+	}
+}
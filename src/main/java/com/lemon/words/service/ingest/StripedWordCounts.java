@@ -0,0 +1,102 @@
+package com.lemon.words.service.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The word counts that were ingested but not merged into the ranking yet, shared by all the concurrent ingests.
+ *
+ * The words are split to lock stripes by their hash (each stripe is a WordCounts with its own lock),
+ * so concurrent ingests only contend when they add words of the same stripe at the same time -
+ * there is no global lock and each ingest takes every stripe lock at most once.
+ *
+ * The ranking drains the pending counts in batches (see {@link #drain()}).
+ */
+public class StripedWordCounts {
+
+	// An odd constant (2^32 / the golden ratio) - multiplying by it spreads every bit of the hash into the high bits
+	private static final int STRIPE_MIX = 0x9E3779B9;
+
+	private final WordCounts[] stripes;
+	private final Object[] locks;
+	private final int shift;
+
+	/**
+	 * @param stripesCount - rounded up to a power of two (at least 2)
+	 */
+	public StripedWordCounts(int stripesCount) {
+		int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(2, stripesCount) - 1));
+		this.stripes = new WordCounts[1 << bits];
+		this.locks = new Object[1 << bits];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new WordCounts();
+			locks[i] = new Object();
+		}
+		// The stripe is taken from the high bits of the re mixed hash (see stripe())
+		this.shift = 32 - bits;
+	}
+
+	/**
+	 * Adding a batch - the batch's entries are grouped by stripe so each stripe is locked once
+	 *
+	 * @param batch
+	 */
+	public void addAll(WordCounts batch) {
+		int size = batch.size();
+		int[] starts = new int[stripes.length + 1];
+		for (int id = 0; id < size; id++) {
+			starts[stripe(batch.hashAt(id)) + 1]++;
+		}
+		for (int i = 0; i < stripes.length; i++) {
+			starts[i + 1] += starts[i];
+		}
+		int[] positions = starts.clone();
+		int[] order = new int[size];
+		for (int id = 0; id < size; id++) {
+			order[positions[stripe(batch.hashAt(id))]++] = id;
+		}
+
+		for (int i = 0; i < stripes.length; i++) {
+			if (starts[i] == starts[i + 1]) {
+				continue;
+			}
+			synchronized (locks[i]) {
+				WordCounts stripe = stripes[i];
+				for (int k = starts[i]; k < starts[i + 1]; k++) {
+					stripe.addEntry(batch, order[k]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Taking all the pending counts (the stripes are swapped with empty ones).
+	 * The returned batches have no words in common.
+	 *
+	 * @return
+	 */
+	public List<WordCounts> drain() {
+		List<WordCounts> drained = new ArrayList<>();
+		for (int i = 0; i < stripes.length; i++) {
+			synchronized (locks[i]) {
+				if (!stripes[i].isEmpty()) {
+					drained.add(stripes[i]);
+					stripes[i] = new WordCounts();
+				}
+			}
+		}
+		return drained;
+	}
+
+	public int getStripesCount() {
+		return stripes.length;
+	}
+
+	/**
+	 * The hash is re mixed before its high bits are taken - the hash tables use the hash's low bits and a cluster picks the shard
+	 * by its high bits (see WordsCluster.shardOf), so a node's words would otherwise fall into a fraction of its stripes
+	 */
+	private int stripe(int hash) {
+		return (hash * STRIPE_MIX) >>> shift;
+	}
+}
@@ -0,0 +1,67 @@
+package com.lemon.words.service.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.time.Duration;
+
+/**
+ * Opening a remote URL for streaming into the tokenizer, with connect \ read timeouts, a total duration limit and a size cap
+ * (on both the downloaded and the decompressed content).
+ * 
+ * Again, no URL validations here (access, exist etc..)
+ * Security concern - url is provided by the client. this is a vulnerability but i ignore that here.
+ */
+public class UrlFetcher {
+
+	private final Duration connectTimeout;
+	private final Duration readTimeout;
+	private final Duration maxDuration;
+	private final long maxSize;
+
+	public UrlFetcher(Duration connectTimeout, Duration readTimeout, Duration maxDuration, long maxSize) {
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.maxDuration = maxDuration;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Opening the URL, the caller is responsible for closing the stream
+	 * 
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 */
+	public InputStream open(String url) throws IOException {
+		URLConnection connection = new URL(url).openConnection();
+		connection.setConnectTimeout((int) connectTimeout.toMillis());
+		connection.setReadTimeout((int) readTimeout.toMillis());
+		InputStream is = connection.getInputStream();
+		long contentLength = connection.getContentLengthLong();
+		if (contentLength > maxSize) {
+			is.close();
+			throw new IOException(url + " exceeds the maximal size of " + maxSize + " bytes");
+		}
+		return new BoundedInputStream(is, maxSize, maxDuration.toNanos(), url);
+	}
+
+	/**
+	 * Opening the URL decompressed by its detected compression (see CompressedInput), the caller is responsible for closing
+	 * the stream. The decompressed content is limited to the maximal size too - a small compressed body can expand far beyond it.
+	 *
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 */
+	public InputStream openDecompressed(String url) throws IOException {
+		InputStream is = open(url);
+		try {
+			return new BoundedInputStream(CompressedInput.open(is), maxSize, 0, "The decompressed content of " + url);
+		} catch (IOException e) {
+			is.close();
+			throw e;
+		}
+	}
+}
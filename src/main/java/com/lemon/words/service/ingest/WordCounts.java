@@ -0,0 +1,254 @@
+package com.lemon.words.service.ingest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A private (NOT thread safe) batch of word counts.
+ *
+ * Each ingest counts its whole stream into its own batch without any locking,
+ * the batch is then merged into the service's global ranking in a single step.
+ *
+ * The batch is keyed by the UTF-8 bytes of the words (an open addressing hash table over a bytes arena)
+ * so the tokenizer can count a token straight from its reusable buffer.
+ * No String is created on the ingest path - the consumers (the merge, the log, the replication and the time windows)
+ * read the entries as bytes through {@link #forEachEntry}.
+ */
+public class WordCounts {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	// The hash table slots, holding the entry id + 1 (0 means an empty slot)
+	private int[] slots;
+
+	// The entries, indexed by entry id
+	private int[] hashes;
+	private int[] offsets;
+	private int[] lengths;
+	private long[] counts;
+	private int size;
+
+	// The words bytes, contiguous
+	private byte[] arena;
+	private int arenaLength;
+
+	private long totalCount;
+
+	public WordCounts() {
+		this.slots = new int[INITIAL_CAPACITY * 2];
+		this.hashes = new int[INITIAL_CAPACITY];
+		this.offsets = new int[INITIAL_CAPACITY];
+		this.lengths = new int[INITIAL_CAPACITY];
+		this.counts = new long[INITIAL_CAPACITY];
+		this.arena = new byte[INITIAL_CAPACITY * 8];
+	}
+
+	public void increment(String word) {
+		add(word, 1l);
+	}
+
+	/**
+	 * Incrementing a word given as UTF-8 bytes, no String is allocated.
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 */
+	public void increment(byte[] bytes, int offset, int length) {
+		add(bytes, offset, length, 1l);
+	}
+
+	public void add(String word, long delta) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		add(bytes, 0, bytes.length, delta);
+	}
+
+	/**
+	 * Merging another batch into this one.
+	 *
+	 * @param other
+	 */
+	public void addAll(WordCounts other) {
+		for (int i = 0; i < other.size; i++) {
+			add(other.arena, other.offsets[i], other.lengths[i], other.counts[i]);
+		}
+	}
+
+	/**
+	 * The hash of an entry's word (entry ids are 0..size-1, in insertion order)
+	 *
+	 * @param id
+	 * @return
+	 */
+	int hashAt(int id) {
+		return hashes[id];
+	}
+
+	/**
+	 * Adding a single entry of another batch to this one
+	 *
+	 * @param other
+	 * @param id
+	 */
+	void addEntry(WordCounts other, int id) {
+		add(other.arena, other.offsets[id], other.lengths[id], other.counts[id]);
+	}
+
+	public long get(String word) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		int hash = hash(bytes, 0, bytes.length);
+		int mask = slots.length - 1;
+		for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int id = slots[slot] - 1;
+			if (hashes[id] == hash && equalBytes(id, bytes, 0, bytes.length)) {
+				return counts[id];
+			}
+		}
+		return 0l;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * The sum of all counts in the batch (i.e. the number of tokens counted)
+	 *
+	 * @return
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Iterating the entries as Strings - a String is decoded per entry on every call, so it is kept off the ingest path
+	 * (e.g. for checking a batch in the tests), use {@link #forEachEntry}
+	 *
+	 * @param consumer
+	 */
+	public void forEach(ObjLongConsumer<String> consumer) {
+		for (int i = 0; i < size; i++) {
+			consumer.accept(new String(arena, offsets[i], lengths[i], StandardCharsets.UTF_8), counts[i]);
+		}
+	}
+
+	/**
+	 * Iterating the entries as UTF-8 bytes (the bytes are the batch's arena, they must not be kept or modified)
+	 *
+	 * @param consumer
+	 */
+	public void forEachEntry(EntryConsumer consumer) {
+		for (int i = 0; i < size; i++) {
+			consumer.accept(arena, offsets[i], lengths[i], hashes[i], counts[i]);
+		}
+	}
+
+	/**
+	 * Receives a word's UTF-8 bytes, their hash (see {@link WordCounts#hash(byte[], int, int)}) and its count
+	 */
+	@FunctionalInterface
+	public interface EntryConsumer {
+		void accept(byte[] bytes, int offset, int length, int hash, long count);
+	}
+
+	/**
+	 * Adding a word given as UTF-8 bytes (e.g. a decoded or partitioned batch), no String is allocated.
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @param delta
+	 */
+	public void add(byte[] bytes, int offset, int length, long delta) {
+		totalCount += delta;
+		int hash = hash(bytes, offset, length);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while (slots[slot] != 0) {
+			int id = slots[slot] - 1;
+			if (hashes[id] == hash && equalBytes(id, bytes, offset, length)) {
+				counts[id] += delta;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		// A brand new word
+		ensureEntriesCapacity(length);
+		int id = size++;
+		hashes[id] = hash;
+		offsets[id] = arenaLength;
+		lengths[id] = length;
+		counts[id] = delta;
+		System.arraycopy(bytes, offset, arena, arenaLength, length);
+		arenaLength += length;
+		slots[slot] = id + 1;
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+	}
+
+	private boolean equalBytes(int id, byte[] bytes, int offset, int length) {
+		if (lengths[id] != length) {
+			return false;
+		}
+		int entryOffset = offsets[id];
+		for (int i = 0; i < length; i++) {
+			if (arena[entryOffset + i] != bytes[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void ensureEntriesCapacity(int length) {
+		if (size == hashes.length) {
+			int capacity = size * 2;
+			hashes = Arrays.copyOf(hashes, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+		}
+		if (arenaLength + length > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + length));
+		}
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = hashes[id] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id + 1;
+		}
+	}
+
+	/**
+	 * The hash of a word's UTF-8 bytes (shared with the WordDictionary so entries can be moved without rehashing)
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public static int hash(byte[] bytes, int offset, int length) {
+		int hash = 1;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + bytes[i];
+		}
+		// Spreading the bits (murmur3 finalizer) since we mask the hash into the table
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
@@ -0,0 +1,194 @@
+package com.lemon.words.service.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.lemon.words.model.IngestProgress;
+
+/**
+ * A streaming tokenizer that works directly on the UTF-8 bytes of the input and counts the tokens into a {@link WordCounts} batch.
+ *
+ * The tokenizer keeps the semantics of the original line splitter (Scanner + replace('-', ' ') + split(' ') + toLowerCase()):
+ *   - Words are separated by white spaces (' ' only, tabs are part of a word), dashes and line separators
+ *     ('\n', '\r', U+0085, U+2028 and U+2029 - the same line separators Scanner.nextLine() uses)
+ *   - Words are lower cased
+ *
+ * The tokenizer is push based (see {@link #feed(byte[], int, int)}) and uses reusable buffers,
+ * ASCII words are lower cased in place and counted straight from the token buffer.
+ * Only words with non ASCII characters are decoded to a String in order to lower case them the same way String.toLowerCase() does.
+ *
+ * NOT thread safe, a tokenizer instance is used by a single ingest.
+ */
+public class WordTokenizer {
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final int INITIAL_TOKEN_SIZE = 64;
+
+	private static final byte WHITE_SPACE = ' ';
+	private static final byte MINUS_SIGN = '-';
+	private static final byte LINE_FEED = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+
+	// Multi byte line separators: U+0085 (C2 85), U+2028 (E2 80 A8) and U+2029 (E2 80 A9)
+	private static final byte NEXT_LINE_LEAD = (byte) 0xC2;
+	private static final byte NEXT_LINE_LAST = (byte) 0x85;
+	private static final byte LINE_SEPARATOR_LEAD = (byte) 0xE2;
+	private static final byte LINE_SEPARATOR_MIDDLE = (byte) 0x80;
+	private static final byte LINE_SEPARATOR_LAST = (byte) 0xA8;
+	private static final byte PARAGRAPH_SEPARATOR_LAST = (byte) 0xA9;
+
+	// Lower case mapping for ASCII bytes, computed with String.toLowerCase() so we respect the default locale.
+	// A negative value means the lower case is not a single ASCII character (e.g. 'I' in a Turkish locale)
+	private static final byte[] ASCII_LOWER_CASE = new byte[128];
+
+	static {
+		for (int c = 0; c < 128; c++) {
+			String lowerCase = String.valueOf((char) c).toLowerCase();
+			ASCII_LOWER_CASE[c] = lowerCase.length() == 1 && lowerCase.charAt(0) < 128 ? (byte) lowerCase.charAt(0) : -1;
+		}
+	}
+
+	private final WordCounts wordCounts;
+
+	private byte[] token = new byte[INITIAL_TOKEN_SIZE];
+	private int tokenLength;
+	// Whether the current token needs the String.toLowerCase() path
+	private boolean decodeToken;
+
+	private long tokens;
+
+	public WordTokenizer(WordCounts wordCounts) {
+		this.wordCounts = wordCounts;
+	}
+
+	/**
+	 * A word as the tokenizer counts it - lower cased the same way (e.g. a looked up word, so "Hello" is found as "hello")
+	 *
+	 * @param word
+	 * @return
+	 */
+	public static String normalize(String word) {
+		return word.toLowerCase();
+	}
+
+	/**
+	 * Tokenizing an entire input stream (the stream is not closed)
+	 *
+	 * @param inputStream
+	 * @throws IOException
+	 */
+	public void tokenize(InputStream inputStream) throws IOException {
+		tokenize(inputStream, new IngestProgress());
+	}
+
+	/**
+	 * Tokenizing an entire input stream (the stream is not closed), reporting the progress after every read
+	 *
+	 * @param inputStream
+	 * @param progress
+	 * @throws IOException
+	 */
+	public void tokenize(InputStream inputStream, IngestProgress progress) throws IOException {
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		int read;
+		while ((read = inputStream.read(buffer)) != -1) {
+			long tokensBefore = tokens;
+			feed(buffer, 0, read);
+			progress.add(read, tokens - tokensBefore);
+		}
+		long tokensBefore = tokens;
+		finish();
+		progress.add(0, tokens - tokensBefore);
+	}
+
+	/**
+	 * Feeding the next bytes of the input, a word may span several calls.
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 */
+	public void feed(byte[] bytes, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			byte b = bytes[i];
+			if (b >= 0) {
+				if (b == WHITE_SPACE || b == MINUS_SIGN || b == LINE_FEED || b == CARRIAGE_RETURN) {
+					endToken();
+				} else {
+					byte lowerCase = ASCII_LOWER_CASE[b];
+					if (lowerCase < 0) {
+						decodeToken = true;
+						lowerCase = b;
+					}
+					append(lowerCase);
+				}
+			} else {
+				decodeToken = true;
+				append(b);
+				if (endsWithMultiByteSeparator(b)) {
+					endToken();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ending the input, counting the last word (if any)
+	 */
+	public void finish() {
+		endToken();
+	}
+
+	/**
+	 * The number of tokens counted so far
+	 *
+	 * @return
+	 */
+	public long getTokens() {
+		return tokens;
+	}
+
+	private void append(byte b) {
+		if (tokenLength == token.length) {
+			token = Arrays.copyOf(token, token.length * 2);
+		}
+		token[tokenLength++] = b;
+	}
+
+	/**
+	 * UTF-8 is self synchronizing, a lead byte can't be a continuation byte,
+	 * so if the token ends with the separator's bytes it really ends with the separator character.
+	 * If so the separator is stripped from the token.
+	 */
+	private boolean endsWithMultiByteSeparator(byte last) {
+		if (last == NEXT_LINE_LAST) {
+			if (tokenLength >= 2 && token[tokenLength - 2] == NEXT_LINE_LEAD) {
+				tokenLength -= 2;
+				return true;
+			}
+		} else if (last == LINE_SEPARATOR_LAST || last == PARAGRAPH_SEPARATOR_LAST) {
+			if (tokenLength >= 3 && token[tokenLength - 2] == LINE_SEPARATOR_MIDDLE
+					&& token[tokenLength - 3] == LINE_SEPARATOR_LEAD) {
+				tokenLength -= 3;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void endToken() {
+		if (tokenLength > 0) {
+			tokens++;
+			if (decodeToken) {
+				wordCounts.increment(new String(token, 0, tokenLength, StandardCharsets.UTF_8).toLowerCase());
+			} else {
+				wordCounts.increment(token, 0, tokenLength);
+			}
+		}
+		tokenLength = 0;
+		decodeToken = false;
+	}
+}
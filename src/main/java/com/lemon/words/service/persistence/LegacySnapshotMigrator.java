@@ -0,0 +1,86 @@
+package com.lemon.words.service.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.persistence.SnapshotFile.StateSnapshot;
+
+/**
+ * A one way migration of a legacy state file (a Java serialized List of WordOccurrences, optionally followed by
+ * the write ahead log sequence) to the binary snapshot format (see SnapshotFile).
+ *
+ * The service migrates its state file on startup, the main method allows migrating files offline:
+ *   java -cp words.jar com.lemon.words.service.persistence.LegacySnapshotMigrator state.txt [more files...]
+ */
+public final class LegacySnapshotMigrator {
+
+	// Every Java serialization stream starts with 0xACED
+	private static final int SERIALIZATION_MAGIC_FIRST = 0xAC;
+	private static final int SERIALIZATION_MAGIC_SECOND = 0xED;
+
+	private LegacySnapshotMigrator() {
+	}
+
+	/**
+	 * Whether the file is a legacy (Java serialized) state file
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isLegacy(Path file) throws IOException {
+		try (InputStream is = Files.newInputStream(file)) {
+			return is.read() == SERIALIZATION_MAGIC_FIRST && is.read() == SERIALIZATION_MAGIC_SECOND;
+		}
+	}
+
+	/**
+	 * Replacing the legacy file with a binary snapshot of the same content (the binary file is written aside and atomically renamed)
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void migrate(Path file) throws IOException {
+		StateSnapshot snapshot = readLegacy(file);
+		Path temporaryFile = file.resolveSibling(file.getFileName() + ".migrating");
+		SnapshotFile.write(temporaryFile, snapshot);
+		Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@SuppressWarnings("unchecked")
+	static StateSnapshot readLegacy(Path file) throws IOException {
+		try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(file))) {
+			List<WordOccurrences> occurrences = new ArrayList<>((List<WordOccurrences>) ois.readObject());
+			long sequence = 0;
+			try {
+				sequence = ois.readLong();
+			} catch (EOFException e) {
+				// A state file from before the write ahead log
+			}
+			return new StateSnapshot(occurrences, sequence);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Not a legacy words state file: " + file, e);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		for (String filename : args) {
+			Path file = Paths.get(filename);
+			if (isLegacy(file)) {
+				migrate(file);
+				System.out.println("Migrated " + file);
+			} else {
+				System.out.println("Skipped " + file + " (not a legacy state file)");
+			}
+		}
+	}
+}
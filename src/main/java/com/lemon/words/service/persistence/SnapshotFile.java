@@ -0,0 +1,382 @@
+package com.lemon.words.service.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.lemon.words.model.WordOccurrences;
+
+/**
+ * The binary snapshot format of the words state (a dictionary like file).
+ *
+ * Format (version 1):
+ *   header  = [magic 'WRDS'][byte version][long sequence][long words]
+ *   entries = for each word, in rank order:
+ *             [varint shared prefix length][varint suffix length][suffix UTF-8 bytes][varint count]
+ *   trailer = [int crc32 of the header and the entries]
+ *
+ * The words are front coded - each word only stores the bytes that differ from the previous word.
+ * Since words with the same count are sorted lexicographically this compacts the long tail of rare words.
+ *
+ * The file is read and written through a FileChannel with a direct buffer, so loading streams the file without
+ * building an object graph, and the loader gets the words already in rank order (the rank index can be bulk built).
+ * The entries can be streamed as UTF-8 bytes (see {@link EntryConsumer}) straight from \ into the words dictionary.
+ */
+public final class SnapshotFile {
+
+	private static final byte[] MAGIC = { 'W', 'R', 'D', 'S' };
+	private static final byte VERSION = 1;
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private SnapshotFile() {
+	}
+
+	/**
+	 * The content of a snapshot - the words in rank order and the last write ahead log sequence it includes
+	 */
+	public static class StateSnapshot {
+
+		private final List<WordOccurrences> occurrences;
+		private final long sequence;
+
+		public StateSnapshot(List<WordOccurrences> occurrences, long sequence) {
+			this.occurrences = occurrences;
+			this.sequence = sequence;
+		}
+
+		public List<WordOccurrences> getOccurrences() {
+			return occurrences;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+	}
+
+	/**
+	 * Receives the entries of a snapshot - a word's UTF-8 bytes (which may be reused after the call) and its count
+	 */
+	@FunctionalInterface
+	public interface EntryConsumer {
+		void accept(byte[] bytes, int offset, int length, long count) throws IOException;
+	}
+
+	/**
+	 * Produces the entries of a snapshot, in rank order
+	 */
+	@FunctionalInterface
+	public interface Entries {
+		void forEach(EntryConsumer consumer) throws IOException;
+	}
+
+	/**
+	 * Writing the snapshot to the file (and syncing it to the disk)
+	 *
+	 * @param file
+	 * @param snapshot
+	 * @throws IOException
+	 */
+	public static void write(Path file, StateSnapshot snapshot) throws IOException {
+		write(file, snapshot.getSequence(), snapshot.getOccurrences().size(), consumer -> {
+			for (WordOccurrences wo : snapshot.getOccurrences()) {
+				byte[] word = wo.getWord().getBytes(StandardCharsets.UTF_8);
+				consumer.accept(word, 0, word.length, wo.getCount());
+			}
+		});
+	}
+
+	/**
+	 * Writing the given entries to the file (and syncing it to the disk) without materializing them as objects
+	 *
+	 * @param file
+	 * @param sequence - the last write ahead log sequence the entries include
+	 * @param words - the number of entries
+	 * @param entries
+	 * @throws IOException
+	 */
+	public static void write(Path file, long sequence, long words, Entries entries) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			Writer writer = new Writer(channel);
+			writer.put(MAGIC);
+			writer.put(VERSION);
+			writer.putLong(sequence);
+			writer.putLong(words);
+
+			FrontCodingWriter entryWriter = new FrontCodingWriter(writer);
+			entries.forEach(entryWriter);
+			if (entryWriter.written != words) {
+				throw new IllegalStateException("Expected " + words + " snapshot entries, got " + entryWriter.written);
+			}
+			writer.finish();
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Reading a snapshot file, verifying its checksum
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static StateSnapshot read(Path file) throws IOException {
+		List<WordOccurrences> occurrences = new ArrayList<>();
+		long sequence = read(file, (bytes, offset, length, count) -> occurrences
+				.add(new WordOccurrences(count, new String(bytes, offset, length, StandardCharsets.UTF_8))));
+		return new StateSnapshot(occurrences, sequence);
+	}
+
+	/**
+	 * Streaming the entries of a snapshot file (in rank order) to the consumer, verifying the checksum at the end
+	 * (the consumer's state should be discarded if the read fails)
+	 *
+	 * @param file
+	 * @param consumer
+	 * @return the last write ahead log sequence the snapshot includes
+	 * @throws IOException
+	 */
+	public static long read(Path file, EntryConsumer consumer) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Reader reader = new Reader(channel);
+			byte[] magic = new byte[MAGIC.length];
+			reader.get(magic, 0, magic.length);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException("Not a words snapshot file: " + file);
+			}
+			byte version = reader.get();
+			if (version != VERSION) {
+				throw new IOException("Unsupported words snapshot version " + version + ": " + file);
+			}
+			long sequence = reader.getLong();
+			long words = reader.getLong();
+			if (words < 0 || words > Integer.MAX_VALUE) {
+				throw new IOException("Corrupted words snapshot file: " + file);
+			}
+
+			byte[] word = new byte[64];
+			int wordLength = 0;
+			for (long i = 0; i < words; i++) {
+				int shared = (int) reader.getVarLong();
+				int suffixLength = (int) reader.getVarLong();
+				if (shared > wordLength || suffixLength < 0) {
+					throw new IOException("Corrupted words snapshot file: " + file);
+				}
+				wordLength = shared + suffixLength;
+				if (wordLength > word.length) {
+					word = Arrays.copyOf(word, Math.max(word.length * 2, wordLength));
+				}
+				reader.get(word, shared, suffixLength);
+				long count = reader.getVarLong();
+				consumer.accept(word, 0, wordLength, count);
+			}
+
+			int expectedCrc = (int) reader.checksum();
+			if (reader.getInt() != expectedCrc) {
+				throw new IOException("Words snapshot checksum mismatch: " + file);
+			}
+			return sequence;
+		}
+	}
+
+	/**
+	 * Writes each entry with the bytes it shares with the previous entry's word replaced by their length
+	 */
+	private static class FrontCodingWriter implements EntryConsumer {
+
+		private final Writer writer;
+		private byte[] previous = new byte[64];
+		private int previousLength;
+		private long written;
+
+		private FrontCodingWriter(Writer writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void accept(byte[] bytes, int offset, int length, long count) throws IOException {
+			int shared = 0;
+			int max = Math.min(previousLength, length);
+			while (shared < max && previous[shared] == bytes[offset + shared]) {
+				shared++;
+			}
+			writer.putVarLong(shared);
+			writer.putVarLong(length - shared);
+			writer.put(bytes, offset + shared, length - shared);
+			writer.putVarLong(count);
+			if (length > previous.length) {
+				previous = Arrays.copyOf(previous, Math.max(previous.length * 2, length));
+			}
+			System.arraycopy(bytes, offset, previous, 0, length);
+			previousLength = length;
+			written++;
+		}
+	}
+
+	/**
+	 * A buffered channel writer that checksums everything it writes and appends the checksum on finish
+	 */
+	private static class Writer {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final CRC32 crc = new CRC32();
+
+		private Writer(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		private void put(byte b) throws IOException {
+			ensureRemaining(1);
+			buffer.put(b);
+		}
+
+		private void put(byte[] bytes) throws IOException {
+			put(bytes, 0, bytes.length);
+		}
+
+		private void put(byte[] bytes, int offset, int length) throws IOException {
+			while (length > 0) {
+				ensureRemaining(1);
+				int chunk = Math.min(length, buffer.remaining());
+				buffer.put(bytes, offset, chunk);
+				offset += chunk;
+				length -= chunk;
+			}
+		}
+
+		private void putLong(long value) throws IOException {
+			ensureRemaining(Long.BYTES);
+			buffer.putLong(value);
+		}
+
+		private void putVarLong(long value) throws IOException {
+			ensureRemaining(10);
+			while ((value & ~0x7FL) != 0) {
+				buffer.put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte) value);
+		}
+
+		private void finish() throws IOException {
+			flush();
+			buffer.putInt((int) crc.getValue());
+			buffer.flip();
+			writeBuffer();
+		}
+
+		private void ensureRemaining(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			crc.update(buffer.duplicate());
+			writeBuffer();
+		}
+
+		private void writeBuffer() throws IOException {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * A buffered channel reader that checksums the bytes it consumes
+	 */
+	private static class Reader {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final CRC32 crc = new CRC32();
+		// The buffer position up to which the consumed bytes were added to the checksum
+		private int checksummed;
+
+		private Reader(FileChannel channel) {
+			this.channel = channel;
+			buffer.flip();
+		}
+
+		private byte get() throws IOException {
+			ensureRemaining(1);
+			return buffer.get();
+		}
+
+		private void get(byte[] bytes, int offset, int length) throws IOException {
+			while (length > 0) {
+				ensureRemaining(1);
+				int chunk = Math.min(length, buffer.remaining());
+				buffer.get(bytes, offset, chunk);
+				offset += chunk;
+				length -= chunk;
+			}
+		}
+
+		private long getLong() throws IOException {
+			ensureRemaining(Long.BYTES);
+			return buffer.getLong();
+		}
+
+		private int getInt() throws IOException {
+			ensureRemaining(Integer.BYTES);
+			return buffer.getInt();
+		}
+
+		private long getVarLong() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = get();
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+			throw new IOException("Corrupted words snapshot varint");
+		}
+
+		/**
+		 * The checksum of all the bytes consumed so far
+		 */
+		private long checksum() {
+			consume();
+			return crc.getValue();
+		}
+
+		private void ensureRemaining(int bytes) throws IOException {
+			if (buffer.remaining() >= bytes) {
+				return;
+			}
+			consume();
+			buffer.compact();
+			checksummed = 0;
+			while (buffer.position() < bytes) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException("Unexpected end of words snapshot file");
+				}
+			}
+			buffer.flip();
+		}
+
+		/**
+		 * Adding the bytes consumed since the last call to the checksum
+		 */
+		private void consume() {
+			ByteBuffer consumed = buffer.duplicate();
+			consumed.limit(buffer.position()).position(checksummed);
+			crc.update(consumed);
+			checksummed = buffer.position();
+		}
+	}
+}
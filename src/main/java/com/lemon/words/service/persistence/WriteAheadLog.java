@@ -0,0 +1,374 @@
+package com.lemon.words.service.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import com.lemon.words.service.ingest.WordCounts;
+
+/**
+ * An append only log of the per word deltas of each ingest.
+ *
+ * Record format (big endian):
+ *   [int payload length][int payload crc32][payload]
+ *   payload = [long sequence][int words][for each word: int length, UTF-8 bytes, long delta]
+ *
+ * The sequence numbers are increasing, a snapshot records the last sequence it includes
+ * so replaying the log after a snapshot skips the records that are already in it.
+ * A large ingest (e.g. a directory or a streamed upload) is split to several consecutive records of the same sequence,
+ * each up to the maximal record size - the high bit of words is set on all of them but the last. Replay applies a split
+ * ingest only once its last record is read, so an ingest is replayed whole or not at all.
+ *
+ * Durability: {@link #sync(long)} is a group commit - concurrent callers waiting for the disk are all covered by a single fsync.
+ * When a sync interval is configured the caller doesn't wait at all and the owner calls {@link #sync()} periodically
+ * (a crash may then lose the last interval of ingests).
+ */
+public class WriteAheadLog implements Closeable {
+
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int PAYLOAD_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+	// Set on the words of a record when the ingest continues in the next record
+	private static final int CONTINUED = 0x80000000;
+	private static final int DEFAULT_MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+	private final int maxRecordSize;
+
+	private final Path file;
+	private final boolean syncOnCommit;
+
+	// Guards the file syncing (taken before the log's own monitor)
+	private final Object syncLock = new Object();
+
+	// Guarded by this
+	private FileChannel channel;
+	private long lastSequence;
+	private long size;
+	// Set when a failed append could not be rolled back, the log then refuses any further append
+	private IOException broken;
+
+	private volatile long syncedSequence;
+
+	/**
+	 * Opening the log for appending, starting after the given sequence (the last sequence found in the snapshot \ replay)
+	 *
+	 * @param file
+	 * @param lastSequence
+	 * @param syncOnCommit - whether {@link #sync(long)} waits for the disk
+	 * @throws IOException
+	 */
+	public WriteAheadLog(Path file, long lastSequence, boolean syncOnCommit) throws IOException {
+		this(file, lastSequence, syncOnCommit, DEFAULT_MAX_RECORD_SIZE);
+	}
+
+	/**
+	 * @param file
+	 * @param lastSequence
+	 * @param syncOnCommit
+	 * @param maxRecordSize - the payload size beyond which an ingest is split to several records (a single word may exceed it)
+	 * @throws IOException
+	 */
+	WriteAheadLog(Path file, long lastSequence, boolean syncOnCommit, int maxRecordSize) throws IOException {
+		this.maxRecordSize = maxRecordSize;
+		this.file = file;
+		this.syncOnCommit = syncOnCommit;
+		this.lastSequence = lastSequence;
+		this.syncedSequence = lastSequence;
+		this.channel = open(file);
+		this.size = channel.size();
+	}
+
+	/**
+	 * Appending the deltas of a single ingest (the records are written but not synced, see {@link #sync(long)}).
+	 * Only a single record is held in memory, a large ingest is written as several records.
+	 *
+	 * A failed append is rolled back - the log is truncated to its size before the append, so no torn \ partial record
+	 * stays in the middle of the log (replay would stop there and drop the later ingests).
+	 *
+	 * @param deltas
+	 * @return the ingest's sequence
+	 * @throws IOException
+	 */
+	public synchronized long append(WordCounts deltas) throws IOException {
+		if (broken != null) {
+			throw new IOException("The log could not be rolled back after a failed append", broken);
+		}
+		long sequence = lastSequence + 1;
+		long sizeBefore = size;
+		long[] payloadSize = { PAYLOAD_HEADER_SIZE };
+		deltas.forEachEntry((bytes, offset, length, hash, delta) -> payloadSize[0] += entrySize(length));
+		RecordWriter writer = new RecordWriter(sequence, (int) Math.min(payloadSize[0], maxRecordSize));
+		try {
+			try {
+				deltas.forEachEntry(writer);
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			writer.write(false);
+		} catch (IOException | RuntimeException e) {
+			rollback(sizeBefore, e);
+			throw e;
+		}
+		lastSequence = sequence;
+		return sequence;
+	}
+
+	/**
+	 * Truncating the records of a failed append (the caller holds the log's monitor)
+	 */
+	private void rollback(long sizeBefore, Exception failure) {
+		try {
+			channel.truncate(sizeBefore);
+			size = sizeBefore;
+		} catch (IOException e) {
+			failure.addSuppressed(e);
+			broken = e;
+		}
+	}
+
+	/**
+	 * Writing a whole record to the log (the caller holds the log's monitor)
+	 *
+	 * @param record
+	 * @throws IOException
+	 */
+	void writeRecord(FileChannel channel, ByteBuffer record) throws IOException {
+		while (record.hasRemaining()) {
+			channel.write(record);
+		}
+	}
+
+	/**
+	 * Making sure the given record is on the disk (if the log syncs on commit)
+	 *
+	 * @param sequence
+	 * @throws IOException
+	 */
+	public void sync(long sequence) throws IOException {
+		if (syncOnCommit && syncedSequence < sequence) {
+			sync();
+		}
+	}
+
+	/**
+	 * Syncing all the written records to the disk
+	 *
+	 * @throws IOException
+	 */
+	public void sync() throws IOException {
+		synchronized (syncLock) {
+			long target;
+			FileChannel current;
+			synchronized (this) {
+				target = lastSequence;
+				current = channel;
+			}
+			if (syncedSequence < target) {
+				current.force(false);
+				syncedSequence = target;
+			}
+		}
+	}
+
+	/**
+	 * Moving the current log to the given file and starting a new empty log (used by the compaction)
+	 *
+	 * @param target
+	 * @throws IOException
+	 */
+	public void rotate(Path target) throws IOException {
+		synchronized (syncLock) {
+			synchronized (this) {
+				channel.force(false);
+				syncedSequence = lastSequence;
+				channel.close();
+				Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+				channel = open(file);
+				size = 0;
+			}
+		}
+	}
+
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	public synchronized long size() {
+		return size;
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (syncLock) {
+			synchronized (this) {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Replaying a log file (if exists) into the given counts, skipping the records up to (including) the given sequence.
+	 * A torn record at the end of the log (a crash in the middle of an append) is truncated.
+	 *
+	 * @param file
+	 * @param afterSequence
+	 * @param into
+	 * @return the last sequence found in the log (or afterSequence if it is greater)
+	 * @throws IOException
+	 */
+	public static long replay(Path file, long afterSequence, WordCounts into) throws IOException {
+		long lastSequence = afterSequence;
+		if (!Files.exists(file)) {
+			return lastSequence;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long fileSize = channel.size();
+			long position = 0;
+			// The records read so far of an ingest split to several records, and where its first record starts
+			WordCounts split = null;
+			long splitSequence = 0;
+			long splitStart = 0;
+			ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+			while (position + RECORD_HEADER_SIZE <= fileSize) {
+				header.clear();
+				readFully(channel, header, position);
+				header.flip();
+				int length = header.getInt();
+				int expectedCrc = header.getInt();
+				if (length < 0 || position + RECORD_HEADER_SIZE + length > fileSize) {
+					break;
+				}
+				ByteBuffer payload = ByteBuffer.allocate(length);
+				readFully(channel, payload, position + RECORD_HEADER_SIZE);
+				CRC32 crc = new CRC32();
+				crc.update(payload.array());
+				if ((int) crc.getValue() != expectedCrc) {
+					break;
+				}
+				payload.flip();
+				long sequence = payload.getLong();
+				int words = payload.getInt();
+				boolean continued = (words & CONTINUED) != 0;
+				if (split != null && sequence != splitSequence) {
+					// The rest of the split ingest was never written (its append failed), it is dropped
+					split = null;
+				}
+				if (split == null && continued) {
+					split = new WordCounts();
+					splitSequence = sequence;
+					splitStart = position;
+				}
+				if (sequence > afterSequence) {
+					WordCounts target = split != null ? split : into;
+					for (int i = words & ~CONTINUED; i > 0; i--) {
+						int wordLength = payload.getInt();
+						int wordOffset = payload.position();
+						payload.position(wordOffset + wordLength);
+						target.add(payload.array(), wordOffset, wordLength, payload.getLong());
+					}
+				}
+				position += RECORD_HEADER_SIZE + length;
+				if (!continued) {
+					if (split != null) {
+						into.addAll(split);
+						split = null;
+					}
+					lastSequence = Math.max(lastSequence, sequence);
+				}
+			}
+			// A split ingest whose last record is missing is truncated with its first records
+			long end = split != null ? splitStart : position;
+			if (end < fileSize) {
+				channel.truncate(end);
+				channel.force(false);
+			}
+		}
+		return lastSequence;
+	}
+
+	private static int entrySize(int length) {
+		return Integer.BYTES + length + Long.BYTES;
+	}
+
+	/**
+	 * Writing an ingest's entries as records of up to the maximal record size (the caller holds the log's monitor)
+	 */
+	private final class RecordWriter implements WordCounts.EntryConsumer {
+
+		private final long sequence;
+		private ByteBuffer record;
+		private int words;
+
+		private RecordWriter(long sequence, int payloadCapacity) {
+			this.sequence = sequence;
+			this.record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payloadCapacity);
+			startRecord();
+		}
+
+		@Override
+		public void accept(byte[] bytes, int offset, int length, int hash, long delta) {
+			int entrySize = entrySize(length);
+			if (record.remaining() < entrySize) {
+				try {
+					if (words > 0) {
+						write(true);
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				if (record.remaining() < entrySize) {
+					// A single word beyond the maximal record size gets a record of its own
+					record = ByteBuffer.allocate(RECORD_HEADER_SIZE + PAYLOAD_HEADER_SIZE + entrySize);
+					startRecord();
+				}
+			}
+			record.putInt(length).put(bytes, offset, length).putLong(delta);
+			words++;
+		}
+
+		/**
+		 * Writing the current record
+		 *
+		 * @param continued - whether the ingest continues in the next record
+		 * @throws IOException
+		 */
+		private void write(boolean continued) throws IOException {
+			int payloadLength = record.position() - RECORD_HEADER_SIZE;
+			record.putInt(RECORD_HEADER_SIZE + Long.BYTES, continued ? words | CONTINUED : words);
+			CRC32 crc = new CRC32();
+			crc.update(record.array(), RECORD_HEADER_SIZE, payloadLength);
+			record.putInt(0, payloadLength);
+			record.putInt(Integer.BYTES, (int) crc.getValue());
+			record.flip();
+			writeRecord(channel, record);
+			size += record.limit();
+			startRecord();
+		}
+
+		private void startRecord() {
+			record.clear();
+			record.position(RECORD_HEADER_SIZE);
+			record.putLong(sequence);
+			record.putInt(0);
+			words = 0;
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of log");
+			}
+		}
+	}
+
+	private static FileChannel open(Path file) throws IOException {
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+}
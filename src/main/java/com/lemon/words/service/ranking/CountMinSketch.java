@@ -0,0 +1,103 @@
+package com.lemon.words.service.ranking;
+
+/**
+ * A Count-Min Sketch with conservative updates - approximate counts of any number of words in a fixed memory.
+ *
+ * depth rows of width counters, a word is counted in one counter per row and its estimate is the minimal counter.
+ * The estimate never under counts, and with width = ceil(e / epsilon) and depth = ceil(ln(1 / delta)):
+ *   true count <= estimate <= true count + epsilon * N   (with probability >= 1 - delta, N = the total count)
+ * The conservative update (raising each counter only up to the new estimate) keeps the bound and lowers the over count in practice.
+ *
+ * The rows hashes are derived from the words UTF-8 bytes hash (see WordCounts.hash) by double hashing over a 64 bit mix,
+ * so the sketch is updated from the ingested batches without creating Strings.
+ *
+ * NOT thread safe, the caller is responsible for synchronizing access.
+ */
+public class CountMinSketch {
+
+	private final int width;
+	private final int depth;
+	private final long[] counters;
+
+	public CountMinSketch(int width, int depth) {
+		if (width < 1 || depth < 1) {
+			throw new IllegalArgumentException("A count min sketch needs a positive width and depth: " + width + "x" + depth);
+		}
+		this.width = width;
+		this.depth = depth;
+		this.counters = new long[Math.multiplyExact(width, depth)];
+	}
+
+	/**
+	 * A sketch with the given error bound (relative to the total count) and the probability of exceeding it
+	 *
+	 * @param epsilon
+	 * @param delta
+	 * @return
+	 */
+	public static CountMinSketch withErrorBound(double epsilon, double delta) {
+		if (!(epsilon > 0 && epsilon < 1 && delta > 0 && delta < 1)) {
+			throw new IllegalArgumentException("The error rate and the failure probability must be in (0, 1): " + epsilon + ", " + delta);
+		}
+		return new CountMinSketch((int) Math.ceil(Math.E / epsilon), (int) Math.ceil(Math.log(1 / delta)));
+	}
+
+	/**
+	 * Adding delta occurrences of the word with the given hash
+	 *
+	 * @param hash - see WordCounts.hash
+	 * @param delta
+	 * @return the word's estimated count after the update
+	 */
+	public long add(int hash, long delta) {
+		long estimate = estimate(hash) + delta;
+		long mixed = mix(hash);
+		int h1 = (int) mixed;
+		int h2 = (int) (mixed >>> 32) | 1;
+		for (int row = 0; row < depth; row++) {
+			int index = row * width + Math.floorMod(h1 + row * h2, width);
+			if (counters[index] < estimate) {
+				counters[index] = estimate;
+			}
+		}
+		return estimate;
+	}
+
+	/**
+	 * The estimated count of the word with the given hash (never lower than its true count)
+	 *
+	 * @param hash
+	 * @return
+	 */
+	public long estimate(int hash) {
+		long mixed = mix(hash);
+		int h1 = (int) mixed;
+		int h2 = (int) (mixed >>> 32) | 1;
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counters[row * width + Math.floorMod(h1 + row * h2, width)]);
+		}
+		return estimate;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * The 64 bit finalizer of MurmurHash3, spreading the word hash over both halves
+	 */
+	private static long mix(int hash) {
+		long h = hash * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,201 @@
+package com.lemon.words.service.ranking;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.storage.HeapStorage;
+import com.lemon.words.service.storage.IntArray;
+import com.lemon.words.service.storage.VocabularyStorage;
+
+/**
+ * An order statistic tree (see OrderStatisticTree) over the ids of a WordDictionary.
+ *
+ * Each word is a single node of the tree so the node is the word's id, and the elements are compared
+ * through the dictionary (count, then the word bytes).
+ * The tree is kept by the dictionary's VocabularyStorage, so a persistent storage reopens the tree as it was.
+ *
+ * The id based methods are the ones used for ranking, the RankIndex methods add \ find the element's word in the dictionary
+ * (and their elements are copies - the counts are the dictionary's).
+ *
+ * NOT thread safe, the caller is responsible for synchronizing access (together with the dictionary).
+ */
+public class DictionaryRankIndex implements RankIndex {
+
+	private final WordDictionary dictionary;
+	private final OrderStatisticTree tree;
+
+	/**
+	 * A rank index on the heap (e.g. over a heap dictionary)
+	 *
+	 * @param dictionary
+	 */
+	public DictionaryRankIndex(WordDictionary dictionary) {
+		this(dictionary, HeapStorage.INSTANCE);
+	}
+
+	/**
+	 * Opening the rank index kept by the storage (which should be the dictionary's storage)
+	 *
+	 * @param dictionary
+	 * @param storage
+	 */
+	public DictionaryRankIndex(WordDictionary dictionary, VocabularyStorage storage) {
+		this.dictionary = dictionary;
+		this.tree = new OrderStatisticTree(storage, Math.max(16, dictionary.size()), dictionary::compare);
+	}
+
+	/**
+	 * Adding a word (by id) to its ranked position
+	 *
+	 * @param id
+	 */
+	public void add(int id) {
+		tree.add(id);
+	}
+
+	public void remove(int id) {
+		tree.remove(id);
+	}
+
+	/**
+	 * Changing the count of an indexed word and re positioning it
+	 *
+	 * @param id
+	 * @param delta
+	 */
+	public void increment(int id, long delta) {
+		tree.remove(id);
+		dictionary.setCount(id, dictionary.getCount(id) + delta);
+		tree.add(id);
+	}
+
+	/**
+	 * The id of the word at the given (zero based) position
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int idAt(int index) {
+		return tree.get(index);
+	}
+
+	/**
+	 * The (zero based) position of an indexed word
+	 *
+	 * @param id
+	 * @return
+	 */
+	public int indexOf(int id) {
+		return tree.indexOf(id);
+	}
+
+	/**
+	 * The number of indexed words ranked before the given word (its zero based position if it is indexed),
+	 * the word doesn't have to be in the dictionary
+	 *
+	 * @param count
+	 * @param word - the UTF-8 bytes of the word
+	 * @return
+	 */
+	public int rankOf(long count, byte[] word) {
+		return tree.rankOf(node -> dictionary.compare(count, word, node));
+	}
+
+	@Override
+	public int size() {
+		return tree.size();
+	}
+
+	/**
+	 * Building a perfectly balanced tree of the dictionary's words, when the ids are already in rank order
+	 * (a dictionary loaded from a snapshot) - O(n) instead of n insertions
+	 */
+	public void loadRanked() {
+		tree.build(dictionary.size());
+	}
+
+	/**
+	 * Copying the ids in rank order to the given array (of at least size() capacity)
+	 *
+	 * @param into
+	 */
+	public void copyTo(IntArray into) {
+		int[] count = new int[1];
+		tree.forEach(id -> into.set(count[0]++, id));
+	}
+
+	/**
+	 * Adding the element's word to the dictionary (or setting its count if it is already there, but not indexed)
+	 */
+	@Override
+	public void add(WordOccurrences wordOccurrences) {
+		byte[] bytes = wordOccurrences.getWord().getBytes(StandardCharsets.UTF_8);
+		int hash = WordCounts.hash(bytes, 0, bytes.length);
+		int id = dictionary.find(bytes, 0, bytes.length, hash);
+		if (id == -1) {
+			id = dictionary.add(bytes, 0, bytes.length, hash, wordOccurrences.getCount());
+		} else {
+			dictionary.setCount(id, wordOccurrences.getCount());
+		}
+		tree.add(id);
+	}
+
+	/**
+	 * Removing the element's word from the index (it stays in the dictionary)
+	 */
+	@Override
+	public void remove(WordOccurrences wordOccurrences) {
+		int id = indexedId(wordOccurrences);
+		if (id != -1) {
+			tree.remove(id);
+		}
+	}
+
+	@Override
+	public WordOccurrences get(int index) {
+		int id = tree.get(index);
+		return new WordOccurrences(dictionary.getCount(id), dictionary.getWord(id));
+	}
+
+	@Override
+	public int indexOf(WordOccurrences wordOccurrences) {
+		int id = indexedId(wordOccurrences);
+		return id == -1 ? -1 : tree.indexOf(id);
+	}
+
+	/**
+	 * Loading the sorted elements into an empty dictionary (their ids are then in rank order)
+	 */
+	@Override
+	public void load(List<WordOccurrences> sortedOccurrences) {
+		if (dictionary.size() != 0) {
+			throw new IllegalStateException("Loading a dictionary rank index requires an empty dictionary (" + dictionary.size() + " words)");
+		}
+		for (WordOccurrences wordOccurrences : sortedOccurrences) {
+			byte[] bytes = wordOccurrences.getWord().getBytes(StandardCharsets.UTF_8);
+			dictionary.add(bytes, 0, bytes.length, WordCounts.hash(bytes, 0, bytes.length), wordOccurrences.getCount());
+		}
+		loadRanked();
+	}
+
+	@Override
+	public List<WordOccurrences> toList() {
+		List<WordOccurrences> result = new ArrayList<>(size());
+		tree.forEach(id -> result.add(new WordOccurrences(dictionary.getCount(id), dictionary.getWord(id))));
+		return result;
+	}
+
+	/**
+	 * The id of the element's word if it is indexed with the element's count, otherwise -1
+	 */
+	private int indexedId(WordOccurrences wordOccurrences) {
+		int id = dictionary.find(wordOccurrences.getWord());
+		if (id == -1 || dictionary.getCount(id) != wordOccurrences.getCount()) {
+			return -1;
+		}
+		return tree.indexOf(id) == -1 ? -1 : id;
+	}
+}
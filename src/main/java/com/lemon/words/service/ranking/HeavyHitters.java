@@ -0,0 +1,221 @@
+package com.lemon.words.service.ranking;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.lemon.words.service.ingest.WordCounts;
+
+/**
+ * The approximate top words in a bounded memory - a Space-Saving summary of a fixed number of counters,
+ * with a Count-Min Sketch (see CountMinSketch) estimating the words that are not monitored.
+ *
+ * Each monitored word has a count (never lower than its true count) and a lower bound (the occurrences counted since it was monitored).
+ * A word that is not monitored replaces the word with the minimal count only when its sketch estimate exceeds that count,
+ * and it starts from min(sketch estimate, minimal count + delta) - both are upper bounds of its true count.
+ * So the tail of rare words doesn't churn the counters and the words that replace others start with a tighter over count.
+ *
+ * Error bounds (N = the total count, m = the counters, epsilon \ delta = the sketch's error rate and failure probability):
+ *   - every word whose true count is above the minimal counter (at most N / m) is monitored
+ *   - a monitored word's true count is within [count - error, count] where error = count - lower bound <= min(N / m, epsilon * N)
+ *     (the epsilon bound holds with probability >= 1 - delta)
+ * The top K of the summary is therefore exact for the words whose counts are separated by more than the errors,
+ * and the responses report the maximal error of the positions they serve (see RankingSnapshot).
+ *
+ * NOT thread safe, the caller is responsible for synchronizing access.
+ */
+public class HeavyHitters {
+
+	// Most occurrences first, break even by the words (the ranking order)
+	private static final Comparator<Counter> RANK_ORDER = Comparator.comparingLong((Counter counter) -> -counter.count)
+			.thenComparing(counter -> counter.word);
+
+	private final int capacity;
+	private final CountMinSketch sketch;
+	private final Map<String, Counter> counters;
+	// A min heap of the counters by count
+	private final Counter[] heap;
+	private int size;
+	private long totalCount;
+
+	/**
+	 * @param capacity - the number of monitored words
+	 * @param sketch
+	 */
+	public HeavyHitters(int capacity, CountMinSketch sketch) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Heavy hitters need at least a single counter: " + capacity);
+		}
+		this.capacity = capacity;
+		this.sketch = sketch;
+		this.counters = new HashMap<>(capacity * 4 / 3 + 16);
+		this.heap = new Counter[capacity];
+	}
+
+	/**
+	 * Adding the counts of an ingested batch
+	 *
+	 * @param batch
+	 * @return the number of words that became monitored
+	 */
+	public int addAll(WordCounts batch) {
+		int[] admitted = { 0 };
+		batch.forEachEntry((bytes, offset, length, hash, delta) -> {
+			if (add(bytes, offset, length, hash, delta)) {
+				admitted[0]++;
+			}
+		});
+		return admitted[0];
+	}
+
+	/**
+	 * Adding delta occurrences of a word
+	 *
+	 * @param bytes - the word's UTF-8 bytes
+	 * @param offset
+	 * @param length
+	 * @param hash - see {@link WordCounts#hash(byte[], int, int)}
+	 * @param delta
+	 * @return whether the word became monitored
+	 */
+	public boolean add(byte[] bytes, int offset, int length, int hash, long delta) {
+		totalCount += delta;
+		long estimate = sketch.add(hash, delta);
+		// A monitored word's count is never above its estimate, so a word estimated below the minimum is not monitored (no String needed)
+		if (size == capacity && estimate < heap[0].count) {
+			return false;
+		}
+		String word = new String(bytes, offset, length, StandardCharsets.UTF_8);
+		Counter counter = counters.get(word);
+		if (counter != null) {
+			counter.count += delta;
+			counter.lowerBound += delta;
+			siftDown(counter.heapIndex);
+			return false;
+		}
+		if (size < capacity) {
+			// Nothing was replaced yet, a word that is not monitored was never seen - its count is exact
+			counter = new Counter(word, delta, delta);
+			counter.heapIndex = size;
+			heap[size++] = counter;
+			siftUp(counter.heapIndex);
+		} else {
+			Counter minimal = heap[0];
+			if (estimate <= minimal.count) {
+				return false;
+			}
+			// Every word that is not monitored has a true count <= the minimal count
+			counters.remove(minimal.word);
+			counter = new Counter(word, Math.min(estimate, minimal.count + delta), delta);
+			counter.heapIndex = 0;
+			heap[0] = counter;
+			siftDown(0);
+		}
+		counters.put(word, counter);
+		return true;
+	}
+
+	/**
+	 * The monitored words in rank order (up to the given number of words)
+	 *
+	 * @param limit
+	 * @return
+	 */
+	public List<Counter> top(int limit) {
+		Counter[] sorted = Arrays.copyOf(heap, size);
+		Arrays.sort(sorted, RANK_ORDER);
+		return new ArrayList<>(Arrays.asList(sorted).subList(0, Math.min(limit, size)));
+	}
+
+	/**
+	 * The number of monitored words
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * The total count of all the added words (N in the error bounds)
+	 *
+	 * @return
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	private void siftUp(int index) {
+		Counter counter = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (heap[parent].count <= counter.count) {
+				break;
+			}
+			place(heap[parent], index);
+			index = parent;
+		}
+		place(counter, index);
+	}
+
+	private void siftDown(int index) {
+		Counter counter = heap[index];
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+				child++;
+			}
+			if (counter.count <= heap[child].count) {
+				break;
+			}
+			place(heap[child], index);
+			index = child;
+		}
+		place(counter, index);
+	}
+
+	private void place(Counter counter, int index) {
+		heap[index] = counter;
+		counter.heapIndex = index;
+	}
+
+	/**
+	 * A monitored word - its true count is within [getCount() - getError(), getCount()]
+	 */
+	public static final class Counter {
+
+		private final String word;
+		private long count;
+		private long lowerBound;
+		private int heapIndex;
+
+		private Counter(String word, long count, long lowerBound) {
+			this.word = word;
+			this.count = count;
+			this.lowerBound = lowerBound;
+		}
+
+		public String getWord() {
+			return word;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getError() {
+			return count - lowerBound;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.lemon.words.service.ranking;
+
+/**
+ * A map of dictionary ids to longs (e.g. a time bucket's counts) - an open addressing hash table over primitive arrays,
+ * so an entry is 12 bytes instead of a boxed key, a boxed value and a map entry.
+ *
+ * NOT thread safe.
+ */
+final class IdMap {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	// The id + 1 of each slot (0 means an empty slot)
+	private int[] keys = new int[INITIAL_CAPACITY];
+	private long[] values = new long[INITIAL_CAPACITY];
+	private int size;
+
+	/**
+	 * Receives an id and its value
+	 */
+	@FunctionalInterface
+	interface Consumer {
+		void accept(int id, long value);
+	}
+
+	/**
+	 * The id's value, or the given missing value if the id is not in the map
+	 *
+	 * @param id
+	 * @param missing
+	 * @return
+	 */
+	long get(int id, long missing) {
+		int slot = slotOf(id);
+		return keys[slot] == 0 ? missing : values[slot];
+	}
+
+	void put(int id, long value) {
+		int slot = slotOf(id);
+		if (keys[slot] == 0) {
+			keys[slot] = id + 1;
+			if (++size * 2 > keys.length) {
+				values[slot] = value;
+				rehash();
+				return;
+			}
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * Adding to the id's value (an id that is not in the map starts at 0)
+	 *
+	 * @param id
+	 * @param delta
+	 */
+	void add(int id, long delta) {
+		int slot = slotOf(id);
+		put(id, (keys[slot] == 0 ? 0 : values[slot]) + delta);
+	}
+
+	void remove(int id) {
+		int slot = slotOf(id);
+		if (keys[slot] == 0) {
+			return;
+		}
+		// Backward shift deletion - moving the following entries of the probe sequence into the hole (no tombstones)
+		int mask = keys.length - 1;
+		int hole = slot;
+		for (int next = (hole + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+			int home = hash(keys[next] - 1) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				hole = next;
+			}
+		}
+		keys[hole] = 0;
+		size--;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void forEach(Consumer consumer) {
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != 0) {
+				consumer.accept(keys[slot] - 1, values[slot]);
+			}
+		}
+	}
+
+	/**
+	 * The slot holding the id, or the empty slot it would be put in
+	 */
+	private int slotOf(int id) {
+		int mask = keys.length - 1;
+		int slot = hash(id) & mask;
+		while (keys[slot] != 0 && keys[slot] != id + 1) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash() {
+		int[] oldKeys = keys;
+		long[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		values = new long[oldKeys.length * 2];
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = hash(oldKeys[i] - 1) & mask;
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Spreading the (mostly sequential) ids over the table
+	 */
+	private static int hash(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,351 @@
+package com.lemon.words.service.ranking;
+
+import java.util.function.IntConsumer;
+
+import com.lemon.words.service.storage.ByteArray;
+import com.lemon.words.service.storage.IntArray;
+import com.lemon.words.service.storage.LongArray;
+import com.lemon.words.service.storage.VocabularyStorage;
+
+/**
+ * An order statistic tree - an AVL tree where every node also holds the size of its sub tree.
+ *
+ * Knowing the sub tree sizes allows us to find the n-th ranked element and the rank of an element
+ * by walking down a single path of the tree, so add \ remove \ get \ indexOf are all O(log(n)).
+ *
+ * We could of used a count bucketed structure instead (most increments move a word by a single count)
+ * but the tree keeps the worst case logarithmic regardless of the counts distribution.
+ *
+ * The nodes are ints kept in primitive arrays indexed by node (left \ right child, sub tree size and height) instead of
+ * a node object per element. What a node stands for (where its word and count are kept) is up to the rank index using the tree,
+ * the tree orders the nodes through the index's {@link NodeOrder}:
+ *   - OrderStatisticTreeRankIndex - a node is a slot of a WordOccurrences array
+ *   - DictionaryRankIndex - a node is a dictionary id, the word and count are the dictionary's
+ *   - TimeWindows - a node is a slot of a window's dictionary ids and window counts
+ * The arrays (and the root) are kept by a VocabularyStorage, so a persistent storage reopens the tree as it was.
+ *
+ * NOT thread safe, the caller is responsible for synchronizing access.
+ */
+final class OrderStatisticTree {
+
+	static final int NONE = -1;
+
+	/**
+	 * The rank order of two nodes (most occurrences first, lexicographic break even)
+	 */
+	@FunctionalInterface
+	interface NodeOrder {
+		int compare(int a, int b);
+	}
+
+	/**
+	 * The rank order of a key (that may not be a node of the tree) and a node
+	 */
+	@FunctionalInterface
+	interface Probe {
+		int compareTo(int node);
+	}
+
+	private final NodeOrder order;
+
+	// The root (+ 1, so a new storage is an empty tree)
+	private final LongArray header;
+	private final IntArray left;
+	private final IntArray right;
+	private final IntArray sizes;
+	private final ByteArray heights;
+	private int root;
+
+	/**
+	 * Opening the tree kept by the storage (an empty tree unless the storage is persistent and has one)
+	 *
+	 * @param storage
+	 * @param capacity - the initial number of nodes
+	 * @param order
+	 */
+	OrderStatisticTree(VocabularyStorage storage, long capacity, NodeOrder order) {
+		this.order = order;
+		this.header = storage.longArray("index", 1);
+		this.left = storage.intArray("left", capacity);
+		this.right = storage.intArray("right", capacity);
+		this.sizes = storage.intArray("sizes", capacity);
+		this.heights = storage.byteArray("heights", capacity);
+		this.root = (int) header.get(0) - 1;
+	}
+
+	/**
+	 * Adding a node to its ranked position
+	 *
+	 * @param node
+	 */
+	void add(int node) {
+		ensureCapacity(node + 1L);
+		left.set(node, NONE);
+		right.set(node, NONE);
+		sizes.set(node, 1);
+		heights.set(node, (byte) 1);
+		setRoot(add(root, node));
+	}
+
+	/**
+	 * Removing an indexed node (it must still be in the order it was added in)
+	 *
+	 * @param node
+	 */
+	void remove(int node) {
+		setRoot(remove(root, node));
+	}
+
+	/**
+	 * The node at the given (zero based) position
+	 *
+	 * @param index
+	 * @return
+	 */
+	int get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		int node = root;
+		while (true) {
+			int leftSize = size(left.get(node));
+			if (index < leftSize) {
+				node = left.get(node);
+			} else if (index > leftSize) {
+				index -= leftSize + 1;
+				node = right.get(node);
+			} else {
+				return node;
+			}
+		}
+	}
+
+	/**
+	 * The (zero based) position of an indexed node, -1 if it is not indexed
+	 *
+	 * @param node
+	 * @return
+	 */
+	int indexOf(int node) {
+		int current = root;
+		int index = 0;
+		while (current != NONE) {
+			int cmp = order.compare(node, current);
+			if (cmp < 0) {
+				current = left.get(current);
+			} else if (cmp > 0) {
+				index += size(left.get(current)) + 1;
+				current = right.get(current);
+			} else {
+				return index + size(left.get(current));
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The node equal to the key, NONE if there is none
+	 *
+	 * @param probe
+	 * @return
+	 */
+	int find(Probe probe) {
+		int node = root;
+		while (node != NONE) {
+			int cmp = probe.compareTo(node);
+			if (cmp < 0) {
+				node = left.get(node);
+			} else if (cmp > 0) {
+				node = right.get(node);
+			} else {
+				return node;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * The number of nodes ranked before the key (its zero based position if it is a node)
+	 *
+	 * @param probe
+	 * @return
+	 */
+	int rankOf(Probe probe) {
+		int node = root;
+		int index = 0;
+		while (node != NONE) {
+			int cmp = probe.compareTo(node);
+			if (cmp < 0) {
+				node = left.get(node);
+			} else if (cmp > 0) {
+				index += size(left.get(node)) + 1;
+				node = right.get(node);
+			} else {
+				return index + size(left.get(node));
+			}
+		}
+		return index;
+	}
+
+	int size() {
+		return size(root);
+	}
+
+	/**
+	 * Building a perfectly balanced tree of the nodes 0..count-1, which are already in rank order - O(n) instead of n insertions
+	 *
+	 * @param count
+	 */
+	void build(int count) {
+		ensureCapacity(count);
+		setRoot(build(0, count - 1));
+	}
+
+	/**
+	 * Emptying the tree (the arrays are kept for the next nodes)
+	 */
+	void clear() {
+		setRoot(NONE);
+	}
+
+	/**
+	 * Iterating the nodes in rank order
+	 *
+	 * @param consumer
+	 */
+	void forEach(IntConsumer consumer) {
+		// An AVL tree of up to 2^31 nodes is less than 64 levels deep
+		int[] stack = new int[64];
+		int depth = 0;
+		int node = root;
+		while (node != NONE || depth > 0) {
+			while (node != NONE) {
+				stack[depth++] = node;
+				node = left.get(node);
+			}
+			node = stack[--depth];
+			consumer.accept(node);
+			node = right.get(node);
+		}
+	}
+
+	private int add(int current, int node) {
+		if (current == NONE) {
+			return node;
+		}
+		if (order.compare(node, current) < 0) {
+			left.set(current, add(left.get(current), node));
+		} else {
+			right.set(current, add(right.get(current), node));
+		}
+		return rebalance(current);
+	}
+
+	private int remove(int current, int node) {
+		if (current == NONE) {
+			return NONE;
+		}
+		int cmp = order.compare(node, current);
+		if (cmp < 0) {
+			left.set(current, remove(left.get(current), node));
+		} else if (cmp > 0) {
+			right.set(current, remove(right.get(current), node));
+		} else {
+			if (left.get(current) == NONE) {
+				return right.get(current);
+			}
+			if (right.get(current) == NONE) {
+				return left.get(current);
+			}
+			// Replacing the removed node with its successor (the minimal node on the right sub tree)
+			int successor = right.get(current);
+			while (left.get(successor) != NONE) {
+				successor = left.get(successor);
+			}
+			right.set(successor, removeMin(right.get(current)));
+			left.set(successor, left.get(current));
+			current = successor;
+		}
+		return rebalance(current);
+	}
+
+	private int removeMin(int node) {
+		if (left.get(node) == NONE) {
+			return right.get(node);
+		}
+		left.set(node, removeMin(left.get(node)));
+		return rebalance(node);
+	}
+
+	private int build(int from, int to) {
+		if (from > to) {
+			return NONE;
+		}
+		int middle = (from + to) >>> 1;
+		left.set(middle, build(from, middle - 1));
+		right.set(middle, build(middle + 1, to));
+		update(middle);
+		return middle;
+	}
+
+	private int rebalance(int node) {
+		update(node);
+		int balance = height(left.get(node)) - height(right.get(node));
+		if (balance > 1) {
+			if (height(left.get(left.get(node))) < height(right.get(left.get(node)))) {
+				left.set(node, rotateLeft(left.get(node)));
+			}
+			return rotateRight(node);
+		}
+		if (balance < -1) {
+			if (height(right.get(right.get(node))) < height(left.get(right.get(node)))) {
+				right.set(node, rotateRight(right.get(node)));
+			}
+			return rotateLeft(node);
+		}
+		return node;
+	}
+
+	private int rotateRight(int node) {
+		int pivot = left.get(node);
+		left.set(node, right.get(pivot));
+		right.set(pivot, node);
+		update(node);
+		update(pivot);
+		return pivot;
+	}
+
+	private int rotateLeft(int node) {
+		int pivot = right.get(node);
+		right.set(node, left.get(pivot));
+		left.set(pivot, node);
+		update(node);
+		update(pivot);
+		return pivot;
+	}
+
+	private void update(int node) {
+		heights.set(node, (byte) (Math.max(height(left.get(node)), height(right.get(node))) + 1));
+		sizes.set(node, size(left.get(node)) + size(right.get(node)) + 1);
+	}
+
+	private int height(int node) {
+		return node == NONE ? 0 : heights.get(node);
+	}
+
+	private int size(int node) {
+		return node == NONE ? 0 : sizes.get(node);
+	}
+
+	private void setRoot(int node) {
+		root = node;
+		header.set(0, node + 1L);
+	}
+
+	private void ensureCapacity(long capacity) {
+		left.ensureCapacity(capacity);
+		right.ensureCapacity(capacity);
+		sizes.ensureCapacity(capacity);
+		heights.ensureCapacity(capacity);
+	}
+}
@@ -0,0 +1,88 @@
+package com.lemon.words.service.ranking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.storage.HeapStorage;
+
+/**
+ * An order statistic tree (see OrderStatisticTree) over WordOccurrences elements.
+ *
+ * Each element is kept in a slot of an array and the slot is the element's node in the tree,
+ * removed elements free their slots for the next added elements.
+ */
+public class OrderStatisticTreeRankIndex implements RankIndex {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private WordOccurrences[] values = new WordOccurrences[INITIAL_CAPACITY];
+	// The free slots (below used), as a stack
+	private int[] free = new int[INITIAL_CAPACITY];
+	private int freeCount;
+	// The slots 0..used-1 were handed out
+	private int used;
+	private final OrderStatisticTree tree = new OrderStatisticTree(HeapStorage.INSTANCE, INITIAL_CAPACITY,
+			(a, b) -> values[a].compareTo(values[b]));
+
+	@Override
+	public void add(WordOccurrences wordOccurrences) {
+		int node = freeCount > 0 ? free[--freeCount] : used++;
+		if (node == values.length) {
+			values = Arrays.copyOf(values, values.length * 2);
+		}
+		values[node] = wordOccurrences;
+		tree.add(node);
+	}
+
+	@Override
+	public void remove(WordOccurrences wordOccurrences) {
+		int node = tree.find(other -> wordOccurrences.compareTo(values[other]));
+		if (node == OrderStatisticTree.NONE) {
+			return;
+		}
+		tree.remove(node);
+		values[node] = null;
+		if (freeCount == free.length) {
+			free = Arrays.copyOf(free, free.length * 2);
+		}
+		free[freeCount++] = node;
+	}
+
+	@Override
+	public WordOccurrences get(int index) {
+		return values[tree.get(index)];
+	}
+
+	@Override
+	public int indexOf(WordOccurrences wordOccurrences) {
+		int node = tree.find(other -> wordOccurrences.compareTo(values[other]));
+		return node == OrderStatisticTree.NONE ? -1 : tree.indexOf(node);
+	}
+
+	@Override
+	public int size() {
+		return tree.size();
+	}
+
+	/**
+	 * Building a perfectly balanced tree from the sorted list - O(n) instead of n insertions
+	 */
+	@Override
+	public void load(List<WordOccurrences> sortedOccurrences) {
+		int size = sortedOccurrences.size();
+		values = new WordOccurrences[Math.max(INITIAL_CAPACITY, size)];
+		sortedOccurrences.toArray(values);
+		freeCount = 0;
+		used = size;
+		tree.build(size);
+	}
+
+	@Override
+	public List<WordOccurrences> toList() {
+		List<WordOccurrences> result = new ArrayList<>(size());
+		tree.forEach(node -> result.add(values[node]));
+		return result;
+	}
+}
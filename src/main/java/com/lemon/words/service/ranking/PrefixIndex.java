@@ -0,0 +1,397 @@
+package com.lemon.words.service.ranking;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.lemon.words.service.storage.HeapStorage;
+import com.lemon.words.service.storage.IntArray;
+import com.lemon.words.service.storage.LongArray;
+import com.lemon.words.service.storage.VocabularyStorage;
+
+/**
+ * A prefix index over the words of a WordDictionary, for ranking only the words that start with a prefix.
+ *
+ * A radix tree over the words UTF-8 bytes (a trie whose chains of single children are merged into a single edge,
+ * so there are less than two nodes per word). Each node is annotated with the best ranked word of its sub tree
+ * and the number of words in it:
+ *   - the prefix is walked down to its node (O(prefix length)) and the node's word count is the number of matching words
+ *   - the matching words are produced in rank order by a best first search - a priority queue of sub trees ordered by
+ *     their best word, popping a sub tree pushes its own word and its children - so the first k words cost
+ *     O(k * depth * fanout * log(queue)) no matter how large the vocabulary is
+ *
+ * The edges don't copy any bytes - a node's prefix is the first depth bytes of its label word (a word of its sub tree),
+ * and a node is a word's node (the word ends there) when its label word is exactly depth bytes long.
+ *
+ * The counts only grow, so a count change walks up from the word's node making it the best word of its ancestors
+ * until an ancestor already has a better word (see {@link #increment(int)}).
+ *
+ * The arrays are kept by the dictionary's VocabularyStorage (off heap with a mapped storage). A persistent storage
+ * reopens the index with the vocabulary when it covers all the dictionary's words, otherwise the index is rebuilt.
+ *
+ * NOT thread safe, the caller is responsible for synchronizing access (together with the dictionary).
+ */
+public class PrefixIndex {
+
+	private static final int ROOT = 0;
+	// The root is nobody's child, so 0 also means 'no node' in the child \ sibling links
+	private static final int NONE = 0;
+	private static final int NO_WORD = -1;
+
+	// The fields of the header array
+	private static final int NODES = 0;
+	private static final int WORDS = 1;
+
+	private final WordDictionary dictionary;
+
+	// The number of nodes and of indexed words (-1 when the index is stale, see invalidate())
+	private final LongArray header;
+	// The root's children by their first byte (the root has the most children)
+	private final IntArray rootChildren;
+	// Indexed by node
+	private final IntArray firstChild;
+	private final IntArray nextSibling;
+	private final IntArray parents;
+	private final IntArray labels;
+	private final IntArray depths;
+	// The best ranked word of the sub tree (id + 1, 0 for an empty root)
+	private final IntArray best;
+	private final IntArray subtreeWords;
+	// Indexed by word id - the word's node
+	private final IntArray wordNodes;
+	private int nodes;
+	private int indexedWords;
+
+	/**
+	 * A prefix index on the heap (e.g. over a heap dictionary)
+	 *
+	 * @param dictionary
+	 */
+	public PrefixIndex(WordDictionary dictionary) {
+		this(dictionary, HeapStorage.INSTANCE);
+	}
+
+	/**
+	 * Opening the prefix index kept by the storage (which should be the dictionary's storage), indexing all the dictionary's
+	 * words unless the storage already has an index of all of them
+	 *
+	 * @param dictionary
+	 * @param storage
+	 */
+	public PrefixIndex(WordDictionary dictionary, VocabularyStorage storage) {
+		this.dictionary = dictionary;
+		long capacity = Math.max(16, dictionary.size() * 2L);
+		this.header = storage.longArray("prefix", 2);
+		this.rootChildren = storage.intArray("prefix-root", 256);
+		this.firstChild = storage.intArray("prefix-first-child", capacity);
+		this.nextSibling = storage.intArray("prefix-next-sibling", capacity);
+		this.parents = storage.intArray("prefix-parents", capacity);
+		this.labels = storage.intArray("prefix-labels", capacity);
+		this.depths = storage.intArray("prefix-depths", capacity);
+		this.best = storage.intArray("prefix-best", capacity);
+		this.subtreeWords = storage.intArray("prefix-subtree-words", capacity);
+		this.wordNodes = storage.intArray("prefix-word-nodes", Math.max(16, dictionary.size()));
+		this.nodes = (int) header.get(NODES);
+		this.indexedWords = (int) header.get(WORDS);
+		if (nodes == 0 || header.get(WORDS) != dictionary.size()) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * Marking the index kept by a persistent storage as stale - its words will change without it
+	 * (the prefix index is disabled), so it is rebuilt when it is opened again
+	 *
+	 * @param storage
+	 */
+	public static void invalidate(VocabularyStorage storage) {
+		storage.longArray("prefix", 2).set(WORDS, -1);
+	}
+
+	/**
+	 * Indexing a new word of the dictionary
+	 *
+	 * @param id
+	 */
+	public void add(int id) {
+		int length = dictionary.getLength(id);
+		wordNodes.ensureCapacity(id + 1L);
+		int node = ROOT;
+		int depth = 0;
+		while (true) {
+			subtreeWords.set(node, subtreeWords.get(node) + 1);
+			promote(node, id);
+			if (depth == length) {
+				// The node's prefix is the word (all its sub tree words share its bytes, it can be the label)
+				labels.set(node, id);
+				wordNodes.set(id, node);
+				break;
+			}
+			byte first = dictionary.getByte(id, depth);
+			int child = findChild(node, depth, first);
+			if (child == NONE) {
+				int leaf = newNode(node, id, length);
+				link(node, leaf, first);
+				wordNodes.set(id, leaf);
+				break;
+			}
+			int childDepth = depths.get(child);
+			int label = labels.get(child);
+			int common = depth + 1;
+			int end = Math.min(childDepth, length);
+			while (common < end && dictionary.getByte(label, common) == dictionary.getByte(id, common)) {
+				common++;
+			}
+			if (common < childDepth) {
+				child = split(node, child, first, common);
+			}
+			node = child;
+			depth = common;
+		}
+		setIndexedWords(indexedWords + 1);
+	}
+
+	/**
+	 * Re positioning an indexed word after its count grew (see DictionaryRankIndex.increment)
+	 *
+	 * @param id
+	 */
+	public void increment(int id) {
+		int node = wordNodes.get(id);
+		while (true) {
+			int nodeBest = best.get(node) - 1;
+			if (nodeBest != id) {
+				if (dictionary.compare(id, nodeBest) >= 0) {
+					// The ancestors' best words are at least as good as this node's
+					break;
+				}
+				best.set(node, id + 1);
+			}
+			if (node == ROOT) {
+				break;
+			}
+			node = parents.get(node);
+		}
+	}
+
+	/**
+	 * The ranking of the words that start with the given (UTF-8) prefix
+	 *
+	 * @param prefix
+	 * @return
+	 */
+	public PrefixRanking rank(byte[] prefix) {
+		int node = ROOT;
+		int depth = 0;
+		while (depth < prefix.length) {
+			int child = findChild(node, depth, prefix[depth]);
+			if (child == NONE) {
+				return new PrefixRanking(NONE, 0);
+			}
+			int childDepth = depths.get(child);
+			int label = labels.get(child);
+			int end = Math.min(childDepth, prefix.length);
+			for (int i = depth + 1; i < end; i++) {
+				if (dictionary.getByte(label, i) != prefix[i]) {
+					return new PrefixRanking(NONE, 0);
+				}
+			}
+			node = child;
+			depth = childDepth;
+		}
+		return new PrefixRanking(node, subtreeWords.get(node));
+	}
+
+	public int size() {
+		return indexedWords;
+	}
+
+	/**
+	 * The words that start with a prefix in rank order, produced on demand (valid until the index \ dictionary change,
+	 * under the same lock)
+	 */
+	public final class PrefixRanking {
+
+		private final int size;
+		// Sub trees (by node) and words (by -(id + 1)) ordered by their best word
+		private final PriorityQueue<Integer> queue;
+		private int[] ranked = new int[16];
+		private int produced;
+
+		private PrefixRanking(int node, int size) {
+			this.size = size;
+			this.queue = new PriorityQueue<>((a, b) -> dictionary.compare(bestOf(a), bestOf(b)));
+			if (size > 0) {
+				queue.add(node);
+			}
+		}
+
+		/**
+		 * The number of words that start with the prefix
+		 *
+		 * @return
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Appending the words at the given (zero based, to exclusive) positions of the prefix's ranking
+		 *
+		 * @param fromIndex
+		 * @param toIndex
+		 * @param into
+		 */
+		public void copyRange(int fromIndex, int toIndex, List<String> into) {
+			if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+				throw new IndexOutOfBoundsException("Range: " + fromIndex + "-" + toIndex + ", Size: " + size);
+			}
+			while (produced < toIndex) {
+				if (produced == ranked.length) {
+					ranked = Arrays.copyOf(ranked, ranked.length * 2);
+				}
+				ranked[produced++] = next();
+			}
+			for (int i = fromIndex; i < toIndex; i++) {
+				into.add(dictionary.getWord(ranked[i]));
+			}
+		}
+
+		private int next() {
+			while (true) {
+				int entry = queue.poll();
+				if (entry < 0) {
+					return -entry - 1;
+				}
+				int label = labels.get(entry);
+				if (label != NO_WORD && dictionary.getLength(label) == depths.get(entry)) {
+					queue.add(-label - 1);
+				}
+				if (entry == ROOT) {
+					for (int b = 0; b < 256; b++) {
+						if (rootChildren.get(b) != NONE) {
+							queue.add(rootChildren.get(b));
+						}
+					}
+				} else {
+					for (int child = firstChild.get(entry); child != NONE; child = nextSibling.get(child)) {
+						queue.add(child);
+					}
+				}
+			}
+		}
+
+		private int bestOf(int entry) {
+			return entry < 0 ? -entry - 1 : best.get(entry) - 1;
+		}
+	}
+
+	/**
+	 * Indexing all the dictionary's words from scratch
+	 */
+	private void rebuild() {
+		for (int b = 0; b < 256; b++) {
+			rootChildren.set(b, NONE);
+		}
+		nodes = 0;
+		newNode(ROOT, NO_WORD, 0);
+		subtreeWords.set(ROOT, 0);
+		best.set(ROOT, 0);
+		setIndexedWords(0);
+		for (int id = 0; id < dictionary.size(); id++) {
+			add(id);
+		}
+	}
+
+	/**
+	 * Splitting the child's edge at the given depth - a new node takes the child's place, with the child as its only child
+	 */
+	private int split(int node, int child, byte first, int depth) {
+		int middle = newNode(node, labels.get(child), depth);
+		best.set(middle, best.get(child));
+		subtreeWords.set(middle, subtreeWords.get(child));
+		if (node == ROOT) {
+			rootChildren.set(first & 0xFF, middle);
+		} else if (firstChild.get(node) == child) {
+			firstChild.set(node, middle);
+		} else {
+			int previous = firstChild.get(node);
+			while (nextSibling.get(previous) != child) {
+				previous = nextSibling.get(previous);
+			}
+			nextSibling.set(previous, middle);
+		}
+		nextSibling.set(middle, nextSibling.get(child));
+		nextSibling.set(child, NONE);
+		firstChild.set(middle, child);
+		parents.set(child, middle);
+		return middle;
+	}
+
+	/**
+	 * A new leaf node (with the label as its single word)
+	 */
+	private int newNode(int parent, int label, int depth) {
+		int node = nodes;
+		if (node == Integer.MAX_VALUE) {
+			throw new IllegalStateException("The prefix index is full (" + node + " nodes)");
+		}
+		ensureCapacity(node + 1L);
+		firstChild.set(node, NONE);
+		nextSibling.set(node, NONE);
+		parents.set(node, parent);
+		labels.set(node, label);
+		depths.set(node, depth);
+		best.set(node, label + 1);
+		subtreeWords.set(node, 1);
+		nodes++;
+		header.set(NODES, nodes);
+		return node;
+	}
+
+	private void link(int node, int child, byte first) {
+		if (node == ROOT) {
+			rootChildren.set(first & 0xFF, child);
+		} else {
+			nextSibling.set(child, firstChild.get(node));
+			firstChild.set(node, child);
+		}
+	}
+
+	/**
+	 * The child whose edge starts with the given byte (at the node's depth)
+	 */
+	private int findChild(int node, int depth, byte first) {
+		if (node == ROOT) {
+			return rootChildren.get(first & 0xFF);
+		}
+		for (int child = firstChild.get(node); child != NONE; child = nextSibling.get(child)) {
+			if (dictionary.getByte(labels.get(child), depth) == first) {
+				return child;
+			}
+		}
+		return NONE;
+	}
+
+	private void promote(int node, int id) {
+		int nodeBest = best.get(node);
+		if (nodeBest == 0 || dictionary.compare(id, nodeBest - 1) < 0) {
+			best.set(node, id + 1);
+		}
+	}
+
+	private void setIndexedWords(int words) {
+		indexedWords = words;
+		header.set(WORDS, words);
+	}
+
+	private void ensureCapacity(long capacity) {
+		firstChild.ensureCapacity(capacity);
+		nextSibling.ensureCapacity(capacity);
+		parents.ensureCapacity(capacity);
+		labels.ensureCapacity(capacity);
+		depths.ensureCapacity(capacity);
+		best.ensureCapacity(capacity);
+		subtreeWords.ensureCapacity(capacity);
+	}
+}
@@ -0,0 +1,79 @@
+package com.lemon.words.service.ranking;
+
+import java.util.List;
+
+import com.lemon.words.model.WordOccurrences;
+
+/**
+ * An ordered view of the words occurrences, sorted by {@link WordOccurrences#compareTo(WordOccurrences)}
+ * (most occurrences first, lexicographic break even).
+ * 
+ * Implementations are NOT thread safe, the caller is responsible for synchronizing access.
+ * 
+ * Since the position of an element is derived from its count, an element must never be mutated while it is in the index,
+ * use {@link #increment(WordOccurrences, long)} in order to change the count of an indexed element.
+ */
+public interface RankIndex {
+
+	/**
+	 * Adding a new element to its sorted position.
+	 * 
+	 * @param wordOccurrences
+	 */
+	void add(WordOccurrences wordOccurrences);
+
+	/**
+	 * Removing an existing element from the index.
+	 * 
+	 * @param wordOccurrences
+	 */
+	void remove(WordOccurrences wordOccurrences);
+
+	/**
+	 * Changing the count of an indexed element and re positioning it.
+	 * 
+	 * @param wordOccurrences
+	 * @param delta
+	 */
+	default void increment(WordOccurrences wordOccurrences, long delta) {
+		remove(wordOccurrences);
+		wordOccurrences.setCount(wordOccurrences.getCount() + delta);
+		add(wordOccurrences);
+	}
+
+	/**
+	 * Get the element at the given (zero based) position
+	 * 
+	 * @param index
+	 * @return
+	 */
+	WordOccurrences get(int index);
+
+	/**
+	 * Get the (zero based) position of the given element or -1 if it is not indexed.
+	 * 
+	 * @param wordOccurrences
+	 * @return
+	 */
+	int indexOf(WordOccurrences wordOccurrences);
+
+	int size();
+
+	default boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Replacing the content of the index with an already sorted list (e.g. a list loaded from the disk)
+	 * 
+	 * @param sortedOccurrences
+	 */
+	void load(List<WordOccurrences> sortedOccurrences);
+
+	/**
+	 * A sorted copy of the indexed elements
+	 * 
+	 * @return
+	 */
+	List<WordOccurrences> toList();
+}
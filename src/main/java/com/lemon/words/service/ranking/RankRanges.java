@@ -0,0 +1,122 @@
+package com.lemon.words.service.ranking;
+
+import java.util.Arrays;
+
+import com.lemon.words.exception.InvalidRangeException;
+
+/**
+ * The positions requested by a /word_ranking range input (e.g. '1-10,2-4,50'), parsed once.
+ * 
+ * The ranges are normalized - sorted and merged (overlapping and adjacent ranges become a single range),
+ * so a position is returned at most once and the result is in rank order.
+ * Positions are one based, a range is inclusive on both ends.
+ */
+public final class RankRanges {
+
+	private static final char COMMA_SIGN = ',';
+	private static final char MINUS_SIGN = '-';
+
+	// The merged ranges, ascending and disjoint
+	private final long[] from;
+	private final long[] to;
+
+	private RankRanges(long[] from, long[] to) {
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Parsing and merging the range input
+	 * 
+	 * @param input
+	 * @return
+	 * @throws InvalidRangeException when the input is not a comma separated list of positions \ ranges
+	 */
+	public static RankRanges parse(String input) {
+		String[] rangesInput = input.split(String.valueOf(COMMA_SIGN), -1);
+		long[][] ranges = new long[rangesInput.length][];
+		for (int i = 0; i < rangesInput.length; i++) {
+			String rangeInput = rangesInput[i].trim();
+			int minus = rangeInput.indexOf(MINUS_SIGN);
+			if (minus < 0) {
+				// Simple single position (e.g. 2,4,50)
+				long position = parsePosition(rangeInput, input);
+				ranges[i] = new long[] { position, position };
+			} else {
+				// ranged position (e.g. 1-4)
+				long rangeFrom = parsePosition(rangeInput.substring(0, minus), input);
+				long rangeTo = parsePosition(rangeInput.substring(minus + 1), input);
+				if (rangeFrom > rangeTo) {
+					throw new InvalidRangeException("Invalid range '" + rangeInput + "' (from is greater than to): " + input);
+				}
+				ranges[i] = new long[] { rangeFrom, rangeTo };
+			}
+		}
+
+		Arrays.sort(ranges, (a, b) -> Long.compare(a[0], b[0]));
+		long[] from = new long[ranges.length];
+		long[] to = new long[ranges.length];
+		int merged = 0;
+		for (long[] range : ranges) {
+			if (merged > 0 && range[0] <= to[merged - 1] + 1) {
+				to[merged - 1] = Math.max(to[merged - 1], range[1]);
+			} else {
+				from[merged] = range[0];
+				to[merged] = range[1];
+				merged++;
+			}
+		}
+		return new RankRanges(Arrays.copyOf(from, merged), Arrays.copyOf(to, merged));
+	}
+
+	private static long parsePosition(String position, String input) {
+		long value;
+		try {
+			value = Long.parseLong(position.trim());
+		} catch (NumberFormatException e) {
+			throw new InvalidRangeException("Invalid position '" + position + "': " + input);
+		}
+		if (value < 1) {
+			throw new InvalidRangeException("Positions start at 1, got " + value + ": " + input);
+		}
+		return value;
+	}
+
+	/**
+	 * The number of positions that exist in a ranking of the given size (the ranges are clamped to it)
+	 * 
+	 * @param size
+	 * @return
+	 */
+	public long countPositions(long size) {
+		long count = 0;
+		for (int i = 0; i < from.length && from[i] <= size; i++) {
+			count += Math.min(to[i], size) - from[i] + 1;
+		}
+		return count;
+	}
+
+	public int rangesCount() {
+		return from.length;
+	}
+
+	/**
+	 * The (one based) first position of the i-th merged range
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public long getFrom(int i) {
+		return from[i];
+	}
+
+	/**
+	 * The (one based, inclusive) last position of the i-th merged range
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public long getTo(int i) {
+		return to[i];
+	}
+}
@@ -0,0 +1,154 @@
+package com.lemon.words.service.ranking;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.lemon.words.model.WordLookup;
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.storage.HeapStorage;
+import com.lemon.words.service.storage.IntArray;
+import com.lemon.words.service.storage.VocabularyStorage;
+
+/**
+ * An immutable copy of the ranking (the words in rank order) published by the writers for the /word_ranking readers.
+ * 
+ * Readers grab the current snapshot through a volatile reference and read it without any locking,
+ * all the positions of a request are served from the same snapshot so they are consistent with each other.
+ * The version identifies the state the snapshot was taken from (it increases with every merged ingest).
+ *
+ * The snapshot holds the word ids in rank order and a view of the (append only) dictionary, so publishing it copies
+ * an int per word and the words are only decoded to Strings for the positions a request asks for.
+ * The ids are copied to a temporary array of the vocabulary's storage (off heap with a mapped storage).
+ *
+ * An approximate snapshot (see HeavyHitters) holds the top words of the summary with the maximal error of their counts,
+ * in a dictionary of its own (which is never changed after the snapshot is built) so its words can also be looked up without locking.
+ */
+public final class RankingSnapshot {
+
+	public static final RankingSnapshot EMPTY = new RankingSnapshot(HeapStorage.INSTANCE.temporaryIntArray(0), 0,
+			new WordDictionary().words(), 0, null, 0);
+
+	private final IntArray rankedIds;
+	private final int size;
+	private final WordDictionary.Words words;
+	private final long version;
+	// The approximate snapshot's own dictionary (its ids are the positions), null for an exact snapshot
+	private final WordDictionary topDictionary;
+	private final long maxError;
+
+	private RankingSnapshot(IntArray rankedIds, int size, WordDictionary.Words words, long version,
+			WordDictionary topDictionary, long maxError) {
+		this.rankedIds = rankedIds;
+		this.size = size;
+		this.words = words;
+		this.version = version;
+		this.topDictionary = topDictionary;
+		this.maxError = maxError;
+	}
+
+	/**
+	 * Copying the current content of the rank index (the caller must hold the index's \ dictionary's lock)
+	 * 
+	 * @param dictionary
+	 * @param rankIndex
+	 * @param storage - the vocabulary's storage
+	 * @param version
+	 * @return
+	 */
+	public static RankingSnapshot of(WordDictionary dictionary, DictionaryRankIndex rankIndex, VocabularyStorage storage,
+			long version) {
+		int size = rankIndex.size();
+		IntArray rankedIds = storage.temporaryIntArray(size);
+		rankIndex.copyTo(rankedIds);
+		return new RankingSnapshot(rankedIds, size, dictionary.words(), version, null, 0);
+	}
+
+	/**
+	 * Copying the top words of an approximate ranking (the caller must hold the summary's lock)
+	 * 
+	 * @param top - the summary's top words in rank order
+	 * @param version
+	 * @return
+	 */
+	public static RankingSnapshot approximate(List<HeavyHitters.Counter> top, long version) {
+		WordDictionary dictionary = new WordDictionary();
+		IntArray rankedIds = HeapStorage.INSTANCE.temporaryIntArray(top.size());
+		long maxError = 0;
+		for (int i = 0; i < top.size(); i++) {
+			HeavyHitters.Counter counter = top.get(i);
+			byte[] bytes = counter.getWord().getBytes(StandardCharsets.UTF_8);
+			rankedIds.set(i, dictionary.add(bytes, 0, bytes.length, WordCounts.hash(bytes, 0, bytes.length), counter.getCount()));
+			maxError = Math.max(maxError, counter.getError());
+		}
+		return new RankingSnapshot(rankedIds, top.size(), dictionary.words(), version, dictionary, maxError);
+	}
+
+	/**
+	 * Looking up a word of an approximate snapshot (an exact snapshot only has the ids, the live ranking has the counts)
+	 * 
+	 * @param word
+	 * @return the word's count and rank or an unknown word if it is not in the snapshot's top positions
+	 */
+	public WordLookup lookup(String word) {
+		if (topDictionary == null) {
+			throw new UnsupportedOperationException("Only an approximate snapshot can look up words");
+		}
+		int index = topDictionary.find(word);
+		return index < 0 ? WordLookup.unknown(word) : new WordLookup(word, topDictionary.getCount(index), index + 1);
+	}
+
+	/**
+	 * Get the word at the given (zero based) position
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public String get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return words.getWord(rankedIds.get(index));
+	}
+
+	/**
+	 * Appending a copy of the words at the given (zero based, to exclusive) positions
+	 * 
+	 * @param fromIndex
+	 * @param toIndex
+	 * @param into
+	 */
+	public void copyRange(int fromIndex, int toIndex, List<String> into) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException("Range: " + fromIndex + "-" + toIndex + ", Size: " + size);
+		}
+		for (int i = fromIndex; i < toIndex; i++) {
+			into.add(words.getWord(rankedIds.get(i)));
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Whether the snapshot is the top of an approximate ranking (see words.ranking.mode)
+	 * 
+	 * @return
+	 */
+	public boolean isApproximate() {
+		return topDictionary != null;
+	}
+
+	/**
+	 * The maximal over count of the served words (0 for an exact ranking) - a word's true count is within [count - max error, count]
+	 * 
+	 * @return
+	 */
+	public long getMaxError() {
+		return maxError;
+	}
+}
@@ -0,0 +1,71 @@
+package com.lemon.words.service.ranking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.lemon.words.model.WordOccurrences;
+
+/**
+ * The original sorted array implementation.
+ * 
+ * Finding a position is a binary search (log(n) complexity) but adding \ removing shifts the array, 
+ * so every update is really O(n).
+ * We keep it as a simple reference implementation for the tests.
+ */
+public class SortedListRankIndex implements RankIndex {
+
+	private final List<WordOccurrences> occurrencesArray = new ArrayList<>();
+
+	@Override
+	public void add(WordOccurrences wordOccurrences) {
+		int binarySearchIndexResult = Collections.binarySearch(occurrencesArray, wordOccurrences);
+		occurrencesArray.add(extractIndexFromBinarySearchIndexResult(binarySearchIndexResult), wordOccurrences);
+	}
+
+	@Override
+	public void remove(WordOccurrences wordOccurrences) {
+		int currentIndex = Collections.binarySearch(occurrencesArray, wordOccurrences);
+		if (currentIndex >= 0) {
+			occurrencesArray.remove(currentIndex);
+		}
+	}
+
+	@Override
+	public WordOccurrences get(int index) {
+		return occurrencesArray.get(index);
+	}
+
+	@Override
+	public int indexOf(WordOccurrences wordOccurrences) {
+		int index = Collections.binarySearch(occurrencesArray, wordOccurrences);
+		return index >= 0 ? index : -1;
+	}
+
+	@Override
+	public int size() {
+		return occurrencesArray.size();
+	}
+
+	@Override
+	public void load(List<WordOccurrences> sortedOccurrences) {
+		occurrencesArray.clear();
+		occurrencesArray.addAll(sortedOccurrences);
+	}
+
+	@Override
+	public List<WordOccurrences> toList() {
+		return new ArrayList<>(occurrencesArray);
+	}
+
+	/**
+	 * Binary search returns a negative value for the target index. 
+	 * here we get the real array index position.
+	 * 
+	 * @param binarySearchIndexResult
+	 * @return
+	 */
+	private int extractIndexFromBinarySearchIndexResult(int binarySearchIndexResult) {
+		return (-binarySearchIndexResult) - 1;
+	}
+}
@@ -0,0 +1,314 @@
+package com.lemon.words.service.ranking;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.storage.HeapStorage;
+
+/**
+ * Rankings over the last windows of time (e.g. the last 5 minutes \ hour \ day) - sliding windows that move a bucket at a time.
+ *
+ * The ingested batches are recorded into time buckets (e.g. a bucket per minute) kept in a ring as long as the largest window.
+ * Each window keeps its own counts and rank index (an order statistic tree) of the buckets it covers:
+ *   - recording a batch adds it to the current bucket and to every window
+ *   - once a bucket is older than a window its counts are subtracted from that window (a word whose count drops to 0 is removed)
+ * So the eviction is incremental (a bucket at a time, when the clock moves to a new bucket), a window query reads its
+ * rank index directly (no recount) and the memory is bounded by the words of the buckets in the largest window.
+ *
+ * The words are kept by their WordDictionary ids - a bucket is an id to count map and a window is a slot per word
+ * (its id and window count) ranked by the slots' counts and the dictionary's word bytes, all in primitive arrays.
+ * So recording a batch decodes no word, the words are only decoded for the positions a query returns.
+ *
+ * The windows are exact, kept in memory only and need the dictionary (so there are none in the approximate ranking mode).
+ *
+ * Thread safe - recording and evicting take the write lock, reading a window takes the read lock.
+ * Recording must be synchronized with the dictionary (the batch's words are looked up in it), evicting \ reading only
+ * use the dictionary's words view taken by the last record.
+ */
+public class TimeWindows {
+
+	private final WordDictionary dictionary;
+	private final long bucketMillis;
+	private final LongSupplier clock;
+	private final Window[] windows;
+
+	// The ring of buckets - the slot of bucket number b is b % length, bucketNumbers has the bucket number each slot holds
+	private final IdMap[] buckets;
+	private final long[] bucketNumbers;
+
+	// The newest bucket number the windows were advanced to
+	private volatile long currentBucket = Long.MIN_VALUE / 2;
+	// The dictionary's words as of the last record (has every word of the windows)
+	private WordDictionary.Words words;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * @param dictionary - the dictionary the recorded batches were merged into
+	 * @param durations - the windows (each rounded up to whole buckets)
+	 * @param bucket - the buckets duration (the windows slide by a bucket at a time)
+	 * @param clock - the current time in milliseconds
+	 */
+	public TimeWindows(WordDictionary dictionary, List<Duration> durations, Duration bucket, LongSupplier clock) {
+		if (bucket.toMillis() <= 0 || durations.isEmpty()) {
+			throw new IllegalArgumentException("Time windows need a positive bucket duration and at least a single window");
+		}
+		this.dictionary = dictionary;
+		this.words = dictionary.words();
+		this.bucketMillis = bucket.toMillis();
+		this.clock = clock;
+		this.windows = new Window[durations.size()];
+		int maxBuckets = 0;
+		for (int i = 0; i < windows.length; i++) {
+			int windowBuckets = (int) Math.max(1, (durations.get(i).toMillis() + bucketMillis - 1) / bucketMillis);
+			windows[i] = new Window(durations.get(i), windowBuckets);
+			maxBuckets = Math.max(maxBuckets, windowBuckets);
+		}
+		this.buckets = new IdMap[maxBuckets];
+		this.bucketNumbers = new long[maxBuckets];
+	}
+
+	/**
+	 * Recording an ingested batch at the current time - the batch must already be merged into the dictionary
+	 * (the caller synchronizes with the dictionary)
+	 *
+	 * @param batch
+	 */
+	public void record(WordCounts batch) {
+		long now = currentBucketNumber();
+		lock.writeLock().lock();
+		try {
+			words = dictionary.words();
+			advance(now);
+			// The clock never moves the buckets backwards, a late batch goes to the current bucket
+			long bucketNumber = Math.max(now, currentBucket);
+			int slot = (int) Math.floorMod(bucketNumber, (long) buckets.length);
+			if (buckets[slot] == null || bucketNumbers[slot] != bucketNumber) {
+				buckets[slot] = new IdMap();
+				bucketNumbers[slot] = bucketNumber;
+			}
+			IdMap bucket = buckets[slot];
+			batch.forEachEntry((bytes, offset, length, hash, count) -> {
+				int id = dictionary.find(bytes, offset, length, hash);
+				if (id < 0) {
+					throw new IllegalStateException("A recorded word is not in the dictionary");
+				}
+				bucket.add(id, count);
+				for (Window window : windows) {
+					window.add(id, count);
+				}
+			});
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reading a window (under the read lock, the window must not be kept after the reader returns)
+	 *
+	 * @param duration - one of the configured windows
+	 * @param reader
+	 * @return the reader's result
+	 * @throws IllegalArgumentException when the window is not configured
+	 */
+	public <T> T read(Duration duration, Function<Window, T> reader) {
+		Window window = getWindow(duration);
+		long now = currentBucketNumber();
+		if (now > currentBucket) {
+			// Evicting the buckets that aged out even if nothing was ingested since
+			lock.writeLock().lock();
+			try {
+				advance(now);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		lock.readLock().lock();
+		try {
+			return reader.apply(window);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Whether the window is configured
+	 *
+	 * @param duration
+	 * @return
+	 */
+	public boolean hasWindow(Duration duration) {
+		for (Window window : windows) {
+			if (window.duration.equals(duration)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Window getWindow(Duration duration) {
+		for (Window window : windows) {
+			if (window.duration.equals(duration)) {
+				return window;
+			}
+		}
+		throw new IllegalArgumentException("Not a configured window: " + duration);
+	}
+
+	private long currentBucketNumber() {
+		return Math.floorDiv(clock.getAsLong(), bucketMillis);
+	}
+
+	/**
+	 * Moving the windows to end at the given bucket - subtracting the buckets that fell out of each window
+	 * and releasing the buckets that fell out of all of them (the caller holds the write lock)
+	 *
+	 * @param now
+	 */
+	private void advance(long now) {
+		if (now <= currentBucket) {
+			return;
+		}
+		for (Window window : windows) {
+			long start = now - window.buckets + 1;
+			if (start > currentBucket) {
+				// The window has no bucket in common with its previous position
+				window.clear();
+			} else {
+				for (long bucketNumber = window.start; bucketNumber < start; bucketNumber++) {
+					int slot = (int) Math.floorMod(bucketNumber, (long) buckets.length);
+					if (buckets[slot] != null && bucketNumbers[slot] == bucketNumber) {
+						buckets[slot].forEach((id, count) -> window.add(id, -count));
+					}
+				}
+			}
+			window.start = start;
+		}
+		long ringStart = now - buckets.length + 1;
+		for (int slot = 0; slot < buckets.length; slot++) {
+			if (buckets[slot] != null && bucketNumbers[slot] < ringStart) {
+				buckets[slot] = null;
+			}
+		}
+		currentBucket = now;
+	}
+
+	/**
+	 * The ranking of a single window, in rank order (most occurrences first, lexicographic break even)
+	 */
+	public final class Window {
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		private final Duration duration;
+		private final int buckets;
+		// The oldest bucket number the window covers
+		private long start = Long.MIN_VALUE / 2;
+
+		// The window's words - a slot per word with its dictionary id and window count, the slots are the nodes of the tree
+		private int[] ids;
+		private long[] counts;
+		// The slot of each id in the window
+		private IdMap slots;
+		// The free slots (below used), as a stack
+		private int[] free;
+		private int freeCount;
+		// The slots 0..used-1 were handed out
+		private int used;
+		private OrderStatisticTree tree;
+
+		private Window(Duration duration, int buckets) {
+			this.duration = duration;
+			this.buckets = buckets;
+			clear();
+		}
+
+		private void add(int id, long delta) {
+			int slot = (int) slots.get(id, -1);
+			if (slot == -1) {
+				slot = freeCount > 0 ? free[--freeCount] : used++;
+				if (slot == ids.length) {
+					ids = Arrays.copyOf(ids, ids.length * 2);
+					counts = Arrays.copyOf(counts, counts.length * 2);
+				}
+				ids[slot] = id;
+				counts[slot] = delta;
+				slots.put(id, slot);
+				tree.add(slot);
+			} else if (counts[slot] + delta == 0) {
+				tree.remove(slot);
+				slots.remove(id);
+				if (freeCount == free.length) {
+					free = Arrays.copyOf(free, free.length * 2);
+				}
+				free[freeCount++] = slot;
+			} else {
+				tree.remove(slot);
+				counts[slot] += delta;
+				tree.add(slot);
+			}
+		}
+
+		/**
+		 * The rank order of two slots - most occurrences first, break even by the words
+		 */
+		private int compare(int a, int b) {
+			if (counts[a] != counts[b]) {
+				return counts[a] > counts[b] ? -1 : 1;
+			}
+			return words.compare(ids[a], ids[b]);
+		}
+
+		private void clear() {
+			ids = new int[INITIAL_CAPACITY];
+			counts = new long[INITIAL_CAPACITY];
+			slots = new IdMap();
+			free = new int[INITIAL_CAPACITY];
+			freeCount = 0;
+			used = 0;
+			tree = new OrderStatisticTree(HeapStorage.INSTANCE, INITIAL_CAPACITY, this::compare);
+		}
+
+		public Duration getDuration() {
+			return duration;
+		}
+
+		/**
+		 * The number of distinct words in the window
+		 *
+		 * @return
+		 */
+		public int size() {
+			return tree.size();
+		}
+
+		/**
+		 * Appending the words at the given (zero based, to exclusive) positions
+		 *
+		 * @param fromIndex
+		 * @param toIndex
+		 * @param into
+		 */
+		public void copyRange(int fromIndex, int toIndex, List<String> into) {
+			for (int i = fromIndex; i < toIndex; i++) {
+				into.add(words.getWord(ids[tree.get(i)]));
+			}
+		}
+
+		/**
+		 * The count of a word (by its dictionary id) in the window (0 if it doesn't occur)
+		 *
+		 * @param id
+		 * @return
+		 */
+		public long getCount(int id) {
+			int slot = (int) slots.get(id, -1);
+			return slot == -1 ? 0 : counts[slot];
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package com.lemon.words.service.ranking;
+
+import java.nio.charset.StandardCharsets;
+
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.storage.ByteArray;
+import com.lemon.words.service.storage.HeapStorage;
+import com.lemon.words.service.storage.IntArray;
+import com.lemon.words.service.storage.LongArray;
+import com.lemon.words.service.storage.VocabularyStorage;
+
+/**
+ * The vocabulary - every distinct word is encoded to a dense int id (0..size-1, in insertion order).
+ *
+ * Instead of a String, a WordOccurrences and a hash map node per word the dictionary keeps a few primitive arrays:
+ *   - the words UTF-8 bytes, contiguous in a single arena (offsets[id]..offsets[id+1])
+ *   - the counts, a long array indexed by id
+ *   - an open addressing hash table over the arena (slots holding id + 1) with the words hashes
+ * so a word costs its bytes plus ~35 bytes and no objects at all.
+ *
+ * The arrays are kept by a VocabularyStorage - on the heap or off heap in memory mapped files. The dictionary's own
+ * size fields are kept in a storage array as well, so a persistent storage reopens the dictionary as it was.
+ *
+ * The dictionary is append only - a word is never removed and its bytes never move within an arena
+ * (a growing arena keeps the bytes it had, see IntArray.view()), so a {@link Words} view taken at some point stays valid for
+ * the ids it covers without any locking (see RankingSnapshot).
+ *
+ * NOT thread safe, the caller is responsible for synchronizing access.
+ */
+public class WordDictionary {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// The fields of the header array
+	private static final int SIZE = 0;
+	private static final int SLOTS_LENGTH = 1;
+
+	// size and slots length (so a persistent storage reopens the dictionary)
+	private final LongArray header;
+
+	// The hash table slots, holding the id + 1 (0 means an empty slot), a power of two length
+	private final IntArray slots;
+	private long slotsLength;
+
+	// Indexed by id
+	private final IntArray hashes;
+	private final LongArray counts;
+	// offsets[id] is the first byte of the word, offsets[id + 1] is its end
+	private final LongArray offsets;
+	private int size;
+
+	private final ByteArray arena;
+
+	public WordDictionary() {
+		this(HeapStorage.INSTANCE);
+	}
+
+	/**
+	 * Opening the dictionary kept by the storage (an empty dictionary unless the storage is persistent and has one)
+	 * 
+	 * @param storage
+	 */
+	public WordDictionary(VocabularyStorage storage) {
+		this.header = storage.longArray("dictionary", 2);
+		this.size = (int) header.get(SIZE);
+		this.slotsLength = header.get(SLOTS_LENGTH);
+		int capacity = Math.max(INITIAL_CAPACITY, size);
+		this.hashes = storage.intArray("hashes", capacity);
+		this.counts = storage.longArray("counts", capacity);
+		this.offsets = storage.longArray("offsets", capacity + 1L);
+		this.arena = storage.byteArray("arena", INITIAL_CAPACITY * 8L);
+		if (slotsLength == 0) {
+			slotsLength = INITIAL_CAPACITY * 2;
+			header.set(SLOTS_LENGTH, slotsLength);
+		}
+		this.slots = storage.intArray("slots", slotsLength);
+	}
+
+	/**
+	 * The id of the given word or -1 if it is not in the dictionary
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @param hash - see {@link WordCounts#hash(byte[], int, int)}
+	 * @return
+	 */
+	public int find(byte[] bytes, int offset, int length, int hash) {
+		long mask = slotsLength - 1;
+		for (long slot = hash & mask; slots.get(slot) != 0; slot = (slot + 1) & mask) {
+			int id = slots.get(slot) - 1;
+			if (hashes.get(id) == hash && equalBytes(id, bytes, offset, length)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	public int find(String word) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		return find(bytes, 0, bytes.length, WordCounts.hash(bytes, 0, bytes.length));
+	}
+
+	/**
+	 * Adding a word that is not in the dictionary
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @param hash
+	 * @param count
+	 * @return the new word's id
+	 */
+	public int add(byte[] bytes, int offset, int length, int hash, long count) {
+		if (size == Integer.MAX_VALUE - 1) {
+			throw new IllegalStateException("The words dictionary is full (" + size + " words)");
+		}
+		int id = size;
+		long start = offsets.get(id);
+		hashes.ensureCapacity(id + 1L);
+		counts.ensureCapacity(id + 1L);
+		offsets.ensureCapacity(id + 2L);
+		arena.ensureCapacity(start + length);
+		arena.set(start, bytes, offset, length);
+		offsets.set(id + 1L, start + length);
+		hashes.set(id, hash);
+		counts.set(id, count);
+
+		long mask = slotsLength - 1;
+		long slot = hash & mask;
+		while (slots.get(slot) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		slots.set(slot, id + 1);
+		size++;
+		header.set(SIZE, size);
+		if (size * 2L > slotsLength) {
+			rehash();
+		}
+		return id;
+	}
+
+	public long getCount(int id) {
+		return counts.get(id);
+	}
+
+	/**
+	 * Changing a word's count - a word that is in a rank index must be re positioned (see DictionaryRankIndex.increment)
+	 *
+	 * @param id
+	 * @param count
+	 */
+	void setCount(int id, long count) {
+		counts.set(id, count);
+	}
+
+	public String getWord(int id) {
+		return words().getWord(id);
+	}
+
+	/**
+	 * The length of a word's UTF-8 bytes
+	 *
+	 * @param id
+	 * @return
+	 */
+	int getLength(int id) {
+		return (int) (offsets.get(id + 1L) - offsets.get(id));
+	}
+
+	/**
+	 * A single UTF-8 byte of a word
+	 *
+	 * @param id
+	 * @param index
+	 * @return
+	 */
+	byte getByte(int id, int index) {
+		return arena.get(offsets.get(id) + index);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The rank order of two words - most occurrences first, break even by the words
+	 * (the same order as WordOccurrences.compareTo)
+	 *
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public int compare(int a, int b) {
+		long countA = counts.get(a);
+		long countB = counts.get(b);
+		if (countA != countB) {
+			return countA > countB ? -1 : 1;
+		}
+		return compareWords(arena, offsets.get(a), offsets.get(a + 1L), offsets.get(b), offsets.get(b + 1L));
+	}
+
+	/**
+	 * The rank order of a word that may not be in the dictionary (e.g. a word of another shard) and a dictionary word
+	 *
+	 * @param count
+	 * @param word - the UTF-8 bytes of the word
+	 * @param id
+	 * @return
+	 */
+	public int compare(long count, byte[] word, int id) {
+		long idCount = counts.get(id);
+		if (count != idCount) {
+			return count > idCount ? -1 : 1;
+		}
+		long from = offsets.get(id);
+		long length = offsets.get(id + 1L) - from;
+		long common = Math.min(word.length, length);
+		for (int i = 0; i < common; i++) {
+			int cmp = compareBytes(word[i] & 0xFF, arena.get(from + i) & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return Long.compare(word.length, length);
+	}
+
+	/**
+	 * A read only view of the words added so far (stays valid while the dictionary keeps growing)
+	 *
+	 * @return
+	 */
+	public Words words() {
+		return new Words(arena.view(), offsets.view(), size);
+	}
+
+	/**
+	 * Comparing two UTF-8 encoded words in the order of String.compareTo (UTF-16 code units).
+	 *
+	 * Byte order is code point order, which is the UTF-16 order except for supplementary characters (4 byte sequences,
+	 * surrogate pairs in UTF-16) that sort before U+E000..U+FFFF (3 byte sequences starting with 0xEE \ 0xEF) in UTF-16.
+	 * The first different byte is at the same character boundary in both words (all the bytes before it are equal).
+	 */
+	static int compareWords(ByteArray arena, long fromA, long toA, long fromB, long toB) {
+		long lengthA = toA - fromA;
+		long lengthB = toB - fromB;
+		long length = Math.min(lengthA, lengthB);
+		for (long i = 0; i < length; i++) {
+			int cmp = compareBytes(arena.get(fromA + i) & 0xFF, arena.get(fromB + i) & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return Long.compare(lengthA, lengthB);
+	}
+
+	/**
+	 * Comparing the first different (unsigned) bytes of two words in the order of String.compareTo (see compareWords())
+	 */
+	private static int compareBytes(int byteA, int byteB) {
+		if (byteA >= 0xF0 && (byteB == 0xEE || byteB == 0xEF)) {
+			return -1;
+		}
+		if (byteB >= 0xF0 && (byteA == 0xEE || byteA == 0xEF)) {
+			return 1;
+		}
+		return byteA - byteB;
+	}
+
+	private boolean equalBytes(int id, byte[] bytes, int offset, int length) {
+		long start = offsets.get(id);
+		if (offsets.get(id + 1L) - start != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (arena.get(start + i) != bytes[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		slotsLength *= 2;
+		slots.ensureCapacity(slotsLength);
+		for (long slot = 0; slot < slotsLength; slot++) {
+			slots.set(slot, 0);
+		}
+		long mask = slotsLength - 1;
+		for (int id = 0; id < size; id++) {
+			long slot = hashes.get(id) & mask;
+			while (slots.get(slot) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots.set(slot, id + 1);
+		}
+		header.set(SLOTS_LENGTH, slotsLength);
+	}
+
+	/**
+	 * A read only view of the words with the ids 0..size-1
+	 */
+	public static final class Words {
+
+		private final ByteArray arena;
+		private final LongArray offsets;
+		private final int size;
+
+		private Words(ByteArray arena, LongArray offsets, int size) {
+			this.arena = arena;
+			this.offsets = offsets;
+			this.size = size;
+		}
+
+		public String getWord(int id) {
+			byte[] bytes = new byte[getLength(id)];
+			arena.get(offsets.get(id), bytes, 0, bytes.length);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Copying the UTF-8 bytes of a word (getLength(id) bytes) to the given buffer, or to a new buffer if it is too small
+		 *
+		 * @param id
+		 * @param buffer
+		 * @return the buffer holding the bytes
+		 */
+		public byte[] getBytes(int id, byte[] buffer) {
+			int length = getLength(id);
+			if (length > buffer.length) {
+				buffer = new byte[Math.max(length, buffer.length * 2)];
+			}
+			arena.get(offsets.get(id), buffer, 0, length);
+			return buffer;
+		}
+
+		public int getLength(int id) {
+			return (int) (offsets.get(id + 1L) - offsets.get(id));
+		}
+
+		/**
+		 * Comparing two words in the order of String.compareTo (see compareWords())
+		 *
+		 * @param a
+		 * @param b
+		 * @return
+		 */
+		int compare(int a, int b) {
+			return compareWords(arena, offsets.get(a), offsets.get(a + 1L), offsets.get(b), offsets.get(b + 1L));
+		}
+
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package com.lemon.words.service.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lemon.words.service.cluster.ShardCodec;
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.persistence.SnapshotFile;
+
+/**
+ * The primary side of the replication - streams the node's words to its read replicas (see ReplicationReplica).
+ *
+ * Protocol (big endian, over a socket):
+ *   replica -> primary: [int magic 'WRPL'][byte version]
+ *   primary -> replica: a snapshot, then the batches (and heartbeats when there are no batches)
+ *     snapshot  = [byte SNAPSHOT][long sequence][long words], then for each word in rank order [int length][UTF-8 bytes][long count]
+ *     batch     = [byte BATCH][long sequence][long queued nanos][int length][the batch's words, see ShardCodec]
+ *     heartbeat = [byte HEARTBEAT]
+ *
+ * A connecting replica always starts from a snapshot (bootstrap) - the words are copied and the replica is registered for the
+ * next batches while the ingests are paused (see {@link Source}), so the replica gets every later batch exactly once.
+ * Each replica has its own sender thread and a bounded queue of encoded batches - a slow replica never slows the ingests down,
+ * it is disconnected once its queue is full (and bootstraps again when it reconnects).
+ * A batch carries the time it waited in the queue, so the replica computes its lag without comparing the clocks of the hosts.
+ */
+public class ReplicationPrimary implements AutoCloseable {
+
+	static final int MAGIC = 0x5752504C;
+	static final byte VERSION = 1;
+	static final byte SNAPSHOT = 1;
+	static final byte BATCH = 2;
+	static final byte HEARTBEAT = 3;
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final Logger log = LoggerFactory.getLogger(ReplicationPrimary.class);
+
+	/**
+	 * The words of the node, for a new replica
+	 */
+	@FunctionalInterface
+	public interface Source {
+
+		/**
+		 * A copy of the words, taken while the ingests are paused - the register callback is called before they resume
+		 *
+		 * @param register
+		 * @return
+		 * @throws IOException
+		 */
+		Bootstrap bootstrap(Runnable register) throws IOException;
+	}
+
+	/**
+	 * A copy of the words - the entries (in rank order) include the log records up to the sequence
+	 */
+	public static class Bootstrap {
+
+		private final long sequence;
+		private final long words;
+		private final SnapshotFile.Entries entries;
+
+		public Bootstrap(long sequence, long words, SnapshotFile.Entries entries) {
+			this.sequence = sequence;
+			this.words = words;
+			this.entries = entries;
+		}
+	}
+
+	private final int port;
+	private final Duration heartbeatInterval;
+	private final int queueSize;
+	private final Source source;
+	private final Set<Replica> replicas = ConcurrentHashMap.newKeySet();
+	private volatile ServerSocket serverSocket;
+	private volatile Thread acceptThread;
+	private volatile boolean closed;
+
+	/**
+	 * @param port - the port the replicas connect to
+	 * @param heartbeatInterval - a heartbeat is sent to a replica that had no batch for this long
+	 * @param queueSize - the batches waiting to be sent to a replica
+	 * @param source
+	 */
+	public ReplicationPrimary(int port, Duration heartbeatInterval, int queueSize, Source source) {
+		this.port = port;
+		this.heartbeatInterval = heartbeatInterval;
+		this.queueSize = Math.max(1, queueSize);
+		this.source = source;
+	}
+
+	/**
+	 * Listening for replicas
+	 *
+	 * @throws IOException
+	 */
+	public void start() throws IOException {
+		ServerSocket socket = new ServerSocket();
+		socket.setReuseAddress(true);
+		socket.bind(new InetSocketAddress(port));
+		this.serverSocket = socket;
+		acceptThread = startThread(this::accept, "words-replication-primary");
+		log.info("Streaming the words to replicas on port {}", port);
+	}
+
+	/**
+	 * Queueing an ingested batch for every replica (called by the ingest, under the shared ingest lock)
+	 *
+	 * @param sequence - the batch's log sequence
+	 * @param batch
+	 */
+	public void publish(long sequence, WordCounts batch) {
+		if (replicas.isEmpty() || batch.isEmpty()) {
+			return;
+		}
+		// Encoded once for all the replicas
+		QueuedBatch queued = new QueuedBatch(sequence, ShardCodec.encodeCounts(batch));
+		for (Replica replica : replicas) {
+			replica.offer(queued);
+		}
+	}
+
+	/**
+	 * The number of connected replicas
+	 *
+	 * @return
+	 */
+	public int replicas() {
+		return replicas.size();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		ServerSocket socket = this.serverSocket;
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				log.warn("Failed to close the replication socket", e);
+			}
+		}
+		// The port is released once the blocked accept returns (so a restarted primary can bind it again)
+		Thread thread = this.acceptThread;
+		if (thread != null) {
+			try {
+				thread.join(heartbeatInterval.toMillis());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		for (Replica replica : replicas) {
+			replica.disconnect();
+		}
+	}
+
+	private void accept() {
+		while (!closed) {
+			try {
+				Socket socket = serverSocket.accept();
+				Replica replica = new Replica(socket);
+				startThread(replica::run, "words-replication-" + socket.getRemoteSocketAddress());
+			} catch (IOException e) {
+				if (!closed) {
+					log.warn("Failed to accept a replica", e);
+				}
+			}
+		}
+	}
+
+	private static Thread startThread(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	private static class QueuedBatch {
+
+		private final long sequence;
+		private final byte[] encoded;
+		private final long queuedAt = System.nanoTime();
+
+		private QueuedBatch(long sequence, byte[] encoded) {
+			this.sequence = sequence;
+			this.encoded = encoded;
+		}
+	}
+
+	/**
+	 * A connected replica and its sender
+	 */
+	private class Replica {
+
+		private final Socket socket;
+		private final BlockingQueue<QueuedBatch> queue = new ArrayBlockingQueue<>(queueSize);
+
+		private Replica(Socket socket) {
+			this.socket = socket;
+		}
+
+		private void offer(QueuedBatch batch) {
+			if (!queue.offer(batch)) {
+				log.warn("The replica {} fell more than {} batches behind, disconnecting it", socket.getRemoteSocketAddress(),
+						queueSize);
+				disconnect();
+			}
+		}
+
+		private void run() {
+			try (Socket connection = socket) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+				if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+					throw new IOException("Not a words replica");
+				}
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream(), BUFFER_SIZE));
+				Bootstrap bootstrap = source.bootstrap(() -> replicas.add(this));
+				out.writeByte(SNAPSHOT);
+				out.writeLong(bootstrap.sequence);
+				out.writeLong(bootstrap.words);
+				bootstrap.entries.forEach((bytes, offset, length, count) -> {
+					out.writeInt(length);
+					out.write(bytes, offset, length);
+					out.writeLong(count);
+				});
+				out.flush();
+				log.info("Bootstrapped the replica {} ({} words, log sequence {})", connection.getRemoteSocketAddress(),
+						bootstrap.words, bootstrap.sequence);
+
+				while (!closed && replicas.contains(this)) {
+					QueuedBatch batch = queue.poll(heartbeatInterval.toNanos(), TimeUnit.NANOSECONDS);
+					if (batch == null) {
+						out.writeByte(HEARTBEAT);
+					} else {
+						out.writeByte(BATCH);
+						out.writeLong(batch.sequence);
+						out.writeLong(System.nanoTime() - batch.queuedAt);
+						out.writeInt(batch.encoded.length);
+						out.write(batch.encoded);
+					}
+					if (queue.isEmpty()) {
+						out.flush();
+					}
+				}
+			} catch (IOException e) {
+				if (!closed) {
+					log.info("The replica {} disconnected: {}", socket.getRemoteSocketAddress(), e.getMessage());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				replicas.remove(this);
+			}
+		}
+
+		private void disconnect() {
+			replicas.remove(this);
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Closing anyway
+			}
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.lemon.words.service.replication;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lemon.words.service.cluster.ShardCodec;
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.persistence.SnapshotFile;
+
+/**
+ * The replica side of the replication - follows a primary (see ReplicationPrimary for the protocol).
+ *
+ * On every (re)connection the replica's words are replaced by the primary's snapshot and then the primary's batches are applied
+ * as they arrive. The connection is dropped (and made again after the reconnect delay) when the primary is silent for 3 heartbeat
+ * intervals, so a dead primary shows as a growing lag.
+ *
+ * The lag is the time since the replica was last known to have all the primary's batches - the time a heartbeat arrived,
+ * or the time a batch was queued by the primary (its arrival less its time in the primary's queue).
+ */
+public class ReplicationReplica implements AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(ReplicationReplica.class);
+
+	private static final long NEVER = Long.MIN_VALUE;
+
+	/**
+	 * The replica's words
+	 */
+	public interface Target {
+
+		/**
+		 * Replacing the words with the primary's snapshot (the entries are streamed from the primary, in rank order)
+		 *
+		 * @param sequence
+		 * @param words
+		 * @param entries
+		 * @throws Exception
+		 */
+		void restore(long sequence, long words, SnapshotFile.Entries entries) throws Exception;
+
+		/**
+		 * Applying a batch of the primary
+		 *
+		 * @param batch
+		 * @throws IOException
+		 */
+		void apply(WordCounts batch) throws IOException;
+	}
+
+	private final String primary;
+	private final String host;
+	private final int port;
+	private final Duration heartbeatInterval;
+	private final Duration reconnectDelay;
+	private final Target target;
+	private volatile boolean closed;
+	private volatile Socket socket;
+	private Thread thread;
+
+	// The System.nanoTime the words were last known to be current (NEVER before the first snapshot)
+	private volatile long currentAt = NEVER;
+	private volatile long appliedSequence;
+
+	/**
+	 * @param primary - host:port
+	 * @param heartbeatInterval - the primary's heartbeat interval
+	 * @param reconnectDelay
+	 * @param target
+	 */
+	public ReplicationReplica(String primary, Duration heartbeatInterval, Duration reconnectDelay, Target target) {
+		int separator = primary.lastIndexOf(':');
+		if (separator <= 0) {
+			throw new IllegalStateException("words.replication.primary should be host:port, not '" + primary + "'");
+		}
+		this.primary = primary;
+		this.host = primary.substring(0, separator);
+		this.port = Integer.parseInt(primary.substring(separator + 1));
+		this.heartbeatInterval = heartbeatInterval;
+		this.reconnectDelay = reconnectDelay;
+		this.target = target;
+	}
+
+	public void start() {
+		thread = new Thread(this::run, "words-replication-replica");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public String getPrimary() {
+		return primary;
+	}
+
+	/**
+	 * The time since the words were last known to be current, null if they never were (no snapshot was restored yet)
+	 *
+	 * @return
+	 */
+	public Duration getLag() {
+		long current = currentAt;
+		return current == NEVER ? null : Duration.ofNanos(Math.max(0, System.nanoTime() - current));
+	}
+
+	/**
+	 * The primary's log sequence of the last applied batch (or snapshot)
+	 *
+	 * @return
+	 */
+	public long getAppliedSequence() {
+		return appliedSequence;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		Socket current = this.socket;
+		if (current != null) {
+			try {
+				current.close();
+			} catch (IOException e) {
+				// Closing anyway
+			}
+		}
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	private void run() {
+		int silence = (int) Math.min(Integer.MAX_VALUE, 3 * heartbeatInterval.toMillis());
+		while (!closed) {
+			try (Socket connection = new Socket()) {
+				this.socket = connection;
+				connection.connect(new InetSocketAddress(host, port), silence);
+				connection.setSoTimeout(silence);
+				DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+				out.writeInt(ReplicationPrimary.MAGIC);
+				out.writeByte(ReplicationPrimary.VERSION);
+				out.flush();
+				receive(new DataInputStream(new BufferedInputStream(connection.getInputStream(), ReplicationPrimary.BUFFER_SIZE)));
+			} catch (Exception e) {
+				if (!closed) {
+					log.warn("Replicating {} failed, reconnecting in {}: {}", primary, reconnectDelay, e.toString());
+				}
+			}
+			try {
+				Thread.sleep(reconnectDelay.toMillis());
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void receive(DataInputStream in) throws Exception {
+		if (in.readByte() != ReplicationPrimary.SNAPSHOT) {
+			throw new IOException("Expected a snapshot from the primary");
+		}
+		long sequence = in.readLong();
+		long words = in.readLong();
+		target.restore(sequence, words, consumer -> {
+			byte[] word = new byte[64];
+			for (long i = 0; i < words; i++) {
+				int length = in.readInt();
+				if (length > word.length) {
+					word = Arrays.copyOf(word, Math.max(word.length * 2, length));
+				}
+				in.readFully(word, 0, length);
+				consumer.accept(word, 0, length, in.readLong());
+			}
+		});
+		appliedSequence = sequence;
+		currentAt = System.nanoTime();
+		log.info("Restored the snapshot of {} ({} words, log sequence {})", primary, words, sequence);
+
+		while (!closed) {
+			byte type = in.readByte();
+			long receivedAt = System.nanoTime();
+			if (type == ReplicationPrimary.BATCH) {
+				long batchSequence = in.readLong();
+				long queuedNanos = in.readLong();
+				byte[] encoded = new byte[in.readInt()];
+				in.readFully(encoded);
+				target.apply(ShardCodec.decodeCounts(encoded));
+				appliedSequence = batchSequence;
+				currentAt = Math.max(currentAt, receivedAt - queuedNanos);
+			} else if (type == ReplicationPrimary.HEARTBEAT) {
+				currentAt = receivedAt;
+			} else {
+				throw new IOException("Unexpected replication message " + type);
+			}
+		}
+	}
+}
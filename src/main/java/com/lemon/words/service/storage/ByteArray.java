@@ -0,0 +1,48 @@
+package com.lemon.words.service.storage;
+
+/**
+ * A growable array of bytes (see VocabularyStorage), indexed by long so mapped arrays may exceed the int range.
+ * NOT thread safe - a single writer, readers only read through a {@link #view()} of the indexes that were written before it was published.
+ */
+public interface ByteArray {
+
+	byte get(long index);
+
+	void set(long index, byte value);
+
+	/**
+	 * Copying length bytes starting at the given index into the given array
+	 *
+	 * @param index
+	 * @param into
+	 * @param offset
+	 * @param length
+	 */
+	void get(long index, byte[] into, int offset, int length);
+
+	/**
+	 * Copying length bytes of the given array to the given index
+	 *
+	 * @param index
+	 * @param from
+	 * @param offset
+	 * @param length
+	 */
+	void set(long index, byte[] from, int offset, int length);
+
+	long capacity();
+
+	/**
+	 * Growing the array (keeping its content) so it has at least the given capacity
+	 *
+	 * @param capacity
+	 */
+	void ensureCapacity(long capacity);
+
+	/**
+	 * A read only view of the current content that stays valid (for the indexes it covers) while the array keeps growing
+	 *
+	 * @return
+	 */
+	ByteArray view();
+}
@@ -0,0 +1,187 @@
+package com.lemon.words.service.storage;
+
+import java.util.Arrays;
+
+/**
+ * The vocabulary arrays on the Java heap (the default), the names are ignored and nothing is persisted.
+ *
+ * An array grows by doubling (copied to a new Java array), a view keeps the Java array it was taken from.
+ */
+public final class HeapStorage implements VocabularyStorage {
+
+	public static final HeapStorage INSTANCE = new HeapStorage();
+
+	// Some VMs reserve header words in an array
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	private HeapStorage() {
+	}
+
+	@Override
+	public IntArray intArray(String name, long capacity) {
+		return new HeapIntArray(new int[arraySize(capacity)]);
+	}
+
+	@Override
+	public LongArray longArray(String name, long capacity) {
+		return new HeapLongArray(new long[arraySize(capacity)]);
+	}
+
+	@Override
+	public ByteArray byteArray(String name, long capacity) {
+		return new HeapByteArray(new byte[arraySize(capacity)]);
+	}
+
+	@Override
+	public IntArray temporaryIntArray(long capacity) {
+		return intArray(null, capacity);
+	}
+
+	@Override
+	public LongArray temporaryLongArray(long capacity) {
+		return longArray(null, capacity);
+	}
+
+	@Override
+	public boolean isPersistent() {
+		return false;
+	}
+
+	@Override
+	public void force() {
+	}
+
+	@Override
+	public void close() {
+	}
+
+	private static int arraySize(long capacity) {
+		if (capacity > MAX_ARRAY_SIZE) {
+			throw new IllegalStateException("A heap vocabulary array can't hold " + capacity
+					+ " elements (see words.vocabulary.storage=mapped)");
+		}
+		return (int) capacity;
+	}
+
+	private static int grownSize(int length, long capacity) {
+		return arraySize(Math.max(capacity, Math.min(MAX_ARRAY_SIZE, Math.max(16, length * 2L))));
+	}
+
+	private static final class HeapIntArray implements IntArray {
+
+		private int[] array;
+
+		private HeapIntArray(int[] array) {
+			this.array = array;
+		}
+
+		@Override
+		public int get(long index) {
+			return array[(int) index];
+		}
+
+		@Override
+		public void set(long index, int value) {
+			array[(int) index] = value;
+		}
+
+		@Override
+		public long capacity() {
+			return array.length;
+		}
+
+		@Override
+		public void ensureCapacity(long capacity) {
+			if (capacity > array.length) {
+				array = Arrays.copyOf(array, grownSize(array.length, capacity));
+			}
+		}
+
+		@Override
+		public IntArray view() {
+			return new HeapIntArray(array);
+		}
+	}
+
+	private static final class HeapLongArray implements LongArray {
+
+		private long[] array;
+
+		private HeapLongArray(long[] array) {
+			this.array = array;
+		}
+
+		@Override
+		public long get(long index) {
+			return array[(int) index];
+		}
+
+		@Override
+		public void set(long index, long value) {
+			array[(int) index] = value;
+		}
+
+		@Override
+		public long capacity() {
+			return array.length;
+		}
+
+		@Override
+		public void ensureCapacity(long capacity) {
+			if (capacity > array.length) {
+				array = Arrays.copyOf(array, grownSize(array.length, capacity));
+			}
+		}
+
+		@Override
+		public LongArray view() {
+			return new HeapLongArray(array);
+		}
+	}
+
+	private static final class HeapByteArray implements ByteArray {
+
+		private byte[] array;
+
+		private HeapByteArray(byte[] array) {
+			this.array = array;
+		}
+
+		@Override
+		public byte get(long index) {
+			return array[(int) index];
+		}
+
+		@Override
+		public void set(long index, byte value) {
+			array[(int) index] = value;
+		}
+
+		@Override
+		public void get(long index, byte[] into, int offset, int length) {
+			System.arraycopy(array, (int) index, into, offset, length);
+		}
+
+		@Override
+		public void set(long index, byte[] from, int offset, int length) {
+			System.arraycopy(from, offset, array, (int) index, length);
+		}
+
+		@Override
+		public long capacity() {
+			return array.length;
+		}
+
+		@Override
+		public void ensureCapacity(long capacity) {
+			if (capacity > array.length) {
+				array = Arrays.copyOf(array, grownSize(array.length, capacity));
+			}
+		}
+
+		@Override
+		public ByteArray view() {
+			return new HeapByteArray(array);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.lemon.words.service.storage;
+
+/**
+ * A growable array of ints (see VocabularyStorage), indexed by long so mapped arrays may exceed the int range.
+ * NOT thread safe - a single writer, readers only read through a {@link #view()} of the indexes that were written before it was published.
+ */
+public interface IntArray {
+
+	int get(long index);
+
+	void set(long index, int value);
+
+	long capacity();
+
+	/**
+	 * Growing the array (keeping its content) so it has at least the given capacity
+	 *
+	 * @param capacity
+	 */
+	void ensureCapacity(long capacity);
+
+	/**
+	 * A read only view of the current content that stays valid (for the indexes it covers) while the array keeps growing
+	 *
+	 * @return
+	 */
+	IntArray view();
+}
@@ -0,0 +1,399 @@
+package com.lemon.words.service.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The vocabulary arrays off heap, in memory mapped files of a directory ([name].dat per named array).
+ *
+ * A file is mapped in fixed size segments (a single mapping is limited to 2GB), an array grows by mapping more segments
+ * of its file so the existing segments never move - a view keeps the segments it was taken from.
+ * The heap only holds the segments objects, the OS pages the content in \ out (the files are sparse until written).
+ *
+ * Temporary arrays are mapped from a file that is deleted right away, the mapping (and the disk space) is released
+ * by the garbage collector once the array is no longer referenced.
+ *
+ * The named arrays keep their content across restarts, the caller decides whether that content is consistent
+ * (e.g. it was {@link #force() forced} on a clean shutdown, see WordService).
+ */
+public final class MappedStorage implements VocabularyStorage {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private static final String FILE_SUFFIX = ".dat";
+	private static final String TEMPORARY_PREFIX = "temporary-";
+
+	private final Path directory;
+	private final int segmentShift;
+	private final List<Segments> named = new ArrayList<>();
+
+	public MappedStorage(Path directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param directory
+	 * @param segmentSize - a power of two of at least 8 bytes (so elements never cross segments)
+	 */
+	public MappedStorage(Path directory, int segmentSize) {
+		if (segmentSize < Long.BYTES || Integer.bitCount(segmentSize) != 1) {
+			throw new IllegalArgumentException("The segment size must be a power of two of at least 8 bytes: " + segmentSize);
+		}
+		this.directory = directory;
+		this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+		try {
+			Files.createDirectories(directory);
+			// Left behind by a crash between creating and deleting a temporary file
+			deleteFiles(directory, TEMPORARY_PREFIX + "*");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Deleting the arrays files of a storage directory (the storage must be closed)
+	 *
+	 * @param directory
+	 * @throws IOException
+	 */
+	public static void delete(Path directory) throws IOException {
+		if (Files.isDirectory(directory)) {
+			deleteFiles(directory, "*" + FILE_SUFFIX);
+		}
+	}
+
+	@Override
+	public IntArray intArray(String name, long capacity) {
+		return new MappedIntArray(open(name, capacity * Integer.BYTES));
+	}
+
+	@Override
+	public LongArray longArray(String name, long capacity) {
+		return new MappedLongArray(open(name, capacity * Long.BYTES));
+	}
+
+	@Override
+	public ByteArray byteArray(String name, long capacity) {
+		return new MappedByteArray(open(name, capacity));
+	}
+
+	@Override
+	public IntArray temporaryIntArray(long capacity) {
+		return new MappedIntArray(temporary(capacity * Integer.BYTES));
+	}
+
+	@Override
+	public LongArray temporaryLongArray(long capacity) {
+		return new MappedLongArray(temporary(capacity * Long.BYTES));
+	}
+
+	@Override
+	public boolean isPersistent() {
+		return true;
+	}
+
+	@Override
+	public synchronized void force() {
+		for (Segments segments : named) {
+			segments.force();
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		for (Segments segments : named) {
+			segments.close();
+		}
+		named.clear();
+	}
+
+	private synchronized Segments open(String name, long bytes) {
+		try {
+			FileChannel channel = FileChannel.open(directory.resolve(name + FILE_SUFFIX), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			Segments segments = new Segments(channel, segmentShift);
+			segments.ensureCapacity(Math.max(Math.max(bytes, Long.BYTES), channel.size()));
+			named.add(segments);
+			return segments;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Segments temporary(long bytes) {
+		try {
+			Path file = Files.createTempFile(directory, TEMPORARY_PREFIX, FILE_SUFFIX);
+			try {
+				Segments segments = new Segments(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE),
+						segmentShift);
+				segments.mapExactly(bytes);
+				// The mapping stays valid after the channel is closed and the file is deleted, a temporary array can't grow
+				segments.close();
+				return segments;
+			} finally {
+				Files.delete(file);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void deleteFiles(Path directory, String glob) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+			for (Path path : stream) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	/**
+	 * The mapped segments of a file - growing maps more segments to a new segments array (the previous array stays valid)
+	 */
+	private static final class Segments {
+
+		private final int shift;
+		private FileChannel channel;
+		private MappedByteBuffer[] buffers = new MappedByteBuffer[0];
+
+		private Segments(FileChannel channel, int shift) {
+			this.channel = channel;
+			this.shift = shift;
+		}
+
+		private MappedByteBuffer[] ensureCapacity(long bytes) {
+			long segmentSize = 1L << shift;
+			int count = (int) ((bytes + segmentSize - 1) >>> shift);
+			if (count <= buffers.length) {
+				return buffers;
+			}
+			if (channel == null) {
+				throw new IllegalStateException("A closed vocabulary array can't grow");
+			}
+			try {
+				MappedByteBuffer[] grown = Arrays.copyOf(buffers, count);
+				for (int i = buffers.length; i < count; i++) {
+					grown[i] = channel.map(MapMode.READ_WRITE, (long) i << shift, segmentSize);
+				}
+				buffers = grown;
+				return buffers;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Mapping exactly the given number of bytes (the last segment may be partial), for a fixed size array
+		 */
+		private void mapExactly(long bytes) throws IOException {
+			long segmentSize = 1L << shift;
+			int count = (int) ((bytes + segmentSize - 1) >>> shift);
+			buffers = new MappedByteBuffer[count];
+			for (int i = 0; i < count; i++) {
+				long position = (long) i << shift;
+				buffers[i] = channel.map(MapMode.READ_WRITE, position, Math.min(segmentSize, bytes - position));
+			}
+		}
+
+		private void force() {
+			for (MappedByteBuffer buffer : buffers) {
+				buffer.force();
+			}
+		}
+
+		private void close() {
+			try {
+				if (channel != null) {
+					channel.close();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				channel = null;
+			}
+		}
+	}
+
+	/**
+	 * The common part of the mapped arrays - locating a byte position in the segments
+	 */
+	private abstract static class MappedArray {
+
+		// null for a view
+		private final Segments owner;
+		protected final int shift;
+		protected final int mask;
+		protected MappedByteBuffer[] buffers;
+
+		protected MappedArray(Segments owner, MappedByteBuffer[] buffers, int shift) {
+			this.owner = owner;
+			this.buffers = buffers;
+			this.shift = shift;
+			this.mask = (1 << shift) - 1;
+		}
+
+		protected long capacityBytes() {
+			return (long) buffers.length << shift;
+		}
+
+		protected void ensureCapacityBytes(long bytes) {
+			if (bytes > capacityBytes()) {
+				if (owner == null) {
+					throw new IllegalStateException("A vocabulary array view can't grow");
+				}
+				buffers = owner.ensureCapacity(bytes);
+			}
+		}
+	}
+
+	private static final class MappedIntArray extends MappedArray implements IntArray {
+
+		private MappedIntArray(Segments segments) {
+			super(segments, segments.buffers, segments.shift);
+		}
+
+		private MappedIntArray(MappedByteBuffer[] buffers, int shift) {
+			super(null, buffers, shift);
+		}
+
+		@Override
+		public int get(long index) {
+			long position = index << 2;
+			return buffers[(int) (position >>> shift)].getInt((int) position & mask);
+		}
+
+		@Override
+		public void set(long index, int value) {
+			long position = index << 2;
+			buffers[(int) (position >>> shift)].putInt((int) position & mask, value);
+		}
+
+		@Override
+		public long capacity() {
+			return capacityBytes() >>> 2;
+		}
+
+		@Override
+		public void ensureCapacity(long capacity) {
+			ensureCapacityBytes(capacity << 2);
+		}
+
+		@Override
+		public IntArray view() {
+			return new MappedIntArray(buffers, shift);
+		}
+	}
+
+	private static final class MappedLongArray extends MappedArray implements LongArray {
+
+		private MappedLongArray(Segments segments) {
+			super(segments, segments.buffers, segments.shift);
+		}
+
+		private MappedLongArray(MappedByteBuffer[] buffers, int shift) {
+			super(null, buffers, shift);
+		}
+
+		@Override
+		public long get(long index) {
+			long position = index << 3;
+			return buffers[(int) (position >>> shift)].getLong((int) position & mask);
+		}
+
+		@Override
+		public void set(long index, long value) {
+			long position = index << 3;
+			buffers[(int) (position >>> shift)].putLong((int) position & mask, value);
+		}
+
+		@Override
+		public long capacity() {
+			return capacityBytes() >>> 3;
+		}
+
+		@Override
+		public void ensureCapacity(long capacity) {
+			ensureCapacityBytes(capacity << 3);
+		}
+
+		@Override
+		public LongArray view() {
+			return new MappedLongArray(buffers, shift);
+		}
+	}
+
+	private static final class MappedByteArray extends MappedArray implements ByteArray {
+
+		private MappedByteArray(Segments segments) {
+			super(segments, segments.buffers, segments.shift);
+		}
+
+		private MappedByteArray(MappedByteBuffer[] buffers, int shift) {
+			super(null, buffers, shift);
+		}
+
+		@Override
+		public byte get(long index) {
+			return buffers[(int) (index >>> shift)].get((int) index & mask);
+		}
+
+		@Override
+		public void set(long index, byte value) {
+			buffers[(int) (index >>> shift)].put((int) index & mask, value);
+		}
+
+		@Override
+		public void get(long index, byte[] into, int offset, int length) {
+			// A word may cross segments
+			while (length > 0) {
+				int position = (int) index & mask;
+				int chunk = Math.min(length, mask + 1 - position);
+				ByteBuffer segment = buffers[(int) (index >>> shift)].duplicate();
+				segment.position(position);
+				segment.get(into, offset, chunk);
+				index += chunk;
+				offset += chunk;
+				length -= chunk;
+			}
+		}
+
+		@Override
+		public void set(long index, byte[] from, int offset, int length) {
+			while (length > 0) {
+				int position = (int) index & mask;
+				int chunk = Math.min(length, mask + 1 - position);
+				ByteBuffer segment = buffers[(int) (index >>> shift)].duplicate();
+				segment.position(position);
+				segment.put(from, offset, chunk);
+				index += chunk;
+				offset += chunk;
+				length -= chunk;
+			}
+		}
+
+		@Override
+		public long capacity() {
+			return capacityBytes();
+		}
+
+		@Override
+		public void ensureCapacity(long capacity) {
+			ensureCapacityBytes(capacity);
+		}
+
+		@Override
+		public ByteArray view() {
+			return new MappedByteArray(buffers, shift);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.lemon.words.service.storage;
+
+import java.io.Closeable;
+
+/**
+ * Where the vocabulary (the dictionary's words bytes and counts, the rank index and the published rankings) keeps its arrays.
+ *
+ * {@link HeapStorage} keeps them in regular Java arrays, {@link MappedStorage} keeps them off heap in memory mapped files
+ * so the heap usage doesn't grow with the vocabulary (the OS pages the arrays in \ out) and the files double as the persisted state.
+ *
+ * Named arrays are the vocabulary's state (a persistent storage reopens them with their content),
+ * temporary arrays are fixed size copies (e.g. a ranking snapshot) that are released once they are no longer referenced.
+ */
+public interface VocabularyStorage extends Closeable {
+
+	/**
+	 * Opening (or creating) the named array with at least the given capacity
+	 *
+	 * @param name
+	 * @param capacity
+	 * @return
+	 */
+	IntArray intArray(String name, long capacity);
+
+	LongArray longArray(String name, long capacity);
+
+	ByteArray byteArray(String name, long capacity);
+
+	/**
+	 * A new (zeroed) temporary array of the given capacity
+	 *
+	 * @param capacity
+	 * @return
+	 */
+	IntArray temporaryIntArray(long capacity);
+
+	LongArray temporaryLongArray(long capacity);
+
+	/**
+	 * Whether the named arrays survive a restart (see {@link #force()})
+	 *
+	 * @return
+	 */
+	boolean isPersistent();
+
+	/**
+	 * Writing the changes of the named arrays to the disk (a persistent storage)
+	 */
+	void force();
+
+	@Override
+	void close();
+}
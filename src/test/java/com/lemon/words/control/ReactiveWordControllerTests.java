@@ -0,0 +1,120 @@
+package com.lemon.words.control;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.lemon.WordsApplication;
+import com.lemon.words.model.dto.PostWordsRequestDTO;
+import com.lemon.words.service.WordService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The reactive front end (spring.main.web-application-type=reactive) serves the same entrypoints as the servlet one,
+ * streams the uploads into the tokenizer and serves the snapshot ranking even while the service is busy
+ */
+class ReactiveWordControllerTests {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+	@TempDir
+	Path tempDir;
+
+	private ConfigurableApplicationContext context;
+	private WebClient client;
+
+	@BeforeEach
+	public void start() {
+		// Command line arguments, they override application.properties
+		context = new SpringApplicationBuilder(WordsApplication.class).run("--spring.main.web-application-type=reactive",
+				"--server.port=0", "--words.persistence.directory=" + tempDir, "--words.ingest.stream-max-size=64KB");
+		client = WebClient.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+	}
+
+	@AfterEach
+	public void stop() {
+		context.close();
+	}
+
+	@Test
+	public void reactive_front_end_serves_the_word_entrypoints() throws Exception {
+		Assertions.assertThrows(Exception.class, () -> context.getBean(WordController.class));
+		Assertions.assertEquals(HttpStatus.OK, client.post().uri("/words").bodyValue(new PostWordsRequestDTO("string", "one two two"))
+				.retrieve().toBodilessEntity().block(TIMEOUT).getStatusCode());
+
+		// A gzipped body sent in small chunks (a chunked upload)
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(gzipped)) {
+			os.write("three three three two".getBytes(StandardCharsets.UTF_8));
+		}
+		byte[] body = gzipped.toByteArray();
+		List<DataBuffer> chunks = new ArrayList<>();
+		for (int offset = 0; offset < body.length; offset += 5) {
+			chunks.add(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(body, offset, Math.min(body.length, offset + 5))));
+		}
+		Assertions.assertEquals(HttpStatus.OK, client.post().uri("/words/stream").contentType(MediaType.valueOf("application/gzip"))
+				.body(Flux.fromIterable(chunks), DataBuffer.class).retrieve().toBodilessEntity().block(TIMEOUT).getStatusCode());
+
+		ResponseEntity<String[]> ranking = client.get().uri("/word_ranking?range=1-3").retrieve().toEntity(String[].class)
+				.block(TIMEOUT);
+		Assertions.assertEquals(Arrays.asList("three", "two", "one"), Arrays.asList(ranking.getBody()));
+		Assertions.assertNotNull(ranking.getHeaders().getFirst(WordController.RANKING_VERSION_HEADER));
+		Assertions.assertEquals(HttpStatus.OK, status(client.get().uri("/word/two")));
+		Assertions.assertEquals(HttpStatus.NOT_FOUND, status(client.get().uri("/word/four")));
+		Assertions.assertEquals(Arrays.asList("three", "two"),
+				client.get().uri("/word_ranking?range=1-3&prefix=t").retrieve().bodyToMono(List.class).block(TIMEOUT));
+
+		// The errors map to the same statuses as in the servlet mode
+		Assertions.assertEquals(HttpStatus.BAD_REQUEST, status(client.get().uri("/word_ranking?range=a-b")));
+		Assertions.assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, status(client.post().uri("/words/stream")
+				.contentType(MediaType.TEXT_PLAIN).bodyValue(new String(new char[70 * 1024]).replace('\0', 'a'))));
+		Assertions.assertEquals(HttpStatus.BAD_REQUEST, status(client.post().uri("/words/stream")
+				.contentType(MediaType.valueOf("application/gzip")).bodyValue("not gzipped")));
+		byte[] truncated = Arrays.copyOf(body, body.length - 4);
+		Assertions.assertEquals(HttpStatus.BAD_REQUEST, status(client.post().uri("/words/stream")
+				.contentType(MediaType.valueOf("application/gzip")).bodyValue(truncated)));
+	}
+
+	@Test
+	public void rankings_are_served_while_an_ingest_waits() throws Exception {
+		WordService wordService = context.getBean(WordService.class);
+		wordService.postWords("string", "ranked words words");
+		Mono<ResponseEntity<Void>> ingest;
+		synchronized (wordService) {
+			// The service monitor is held (as by a long merge), the ingest waits on its ingest thread
+			ingest = client.post().uri("/words").bodyValue(new PostWordsRequestDTO("string", "waiting words")).retrieve()
+					.toBodilessEntity().cache();
+			ingest.subscribe();
+			Assertions.assertEquals(Arrays.asList("words", "ranked"),
+					Arrays.asList(client.get().uri("/word_ranking?range=1-2").retrieve().bodyToMono(String[].class).block(TIMEOUT)));
+		}
+		Assertions.assertEquals(HttpStatus.OK, ingest.block(TIMEOUT).getStatusCode());
+		Assertions.assertEquals(3, wordService.lookupWords(Arrays.asList("words")).get(0).getCount());
+	}
+
+	private static HttpStatus status(WebClient.RequestHeadersSpec<?> request) {
+		return request.exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode())).block(TIMEOUT);
+	}
+}
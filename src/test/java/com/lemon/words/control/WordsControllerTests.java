@@ -2,21 +2,43 @@ package com.lemon.words.control;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.EOFException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipException;
+
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lemon.words.exception.IngestQueueFullException;
+import com.lemon.words.exception.InvalidRangeException;
+import com.lemon.words.exception.InvalidStalenessException;
+import com.lemon.words.exception.InvalidWindowException;
+import com.lemon.words.exception.PayloadTooLargeException;
+import com.lemon.words.exception.StaleReplicaException;
+import com.lemon.words.exception.TooManyWordsException;
+import com.lemon.words.metrics.WordsMetrics;
+import com.lemon.words.model.IngestJob;
+import com.lemon.words.model.WordLookup;
 import com.lemon.words.model.dto.PostWordsRequestDTO;
+import com.lemon.words.service.IngestJobService;
 import com.lemon.words.service.WordService;
+import com.lemon.words.service.ranking.RankingSnapshot;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(WordController.class)
@@ -35,6 +57,12 @@ class WordsControllerTests {
 	@MockBean
 	private WordService service;
 
+	@MockBean
+	private IngestJobService ingestJobService;
+
+	@MockBean
+	private WordsMetrics metrics;
+
 	private ObjectMapper mapper = new ObjectMapper();
 
 	@Test
@@ -48,6 +76,53 @@ class WordsControllerTests {
 				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
 	}
 
+	@Test
+	public void post_words_url_return_status_accepted_202_with_job_id() throws Exception {
+		IngestJob job = new IngestJob("url");
+		Mockito.when(ingestJobService.submit("url", "http://localhost/words.txt")).thenReturn(job);
+
+		mvc.perform(post("/words").content(toJson(new PostWordsRequestDTO("url", "http://localhost/words.txt")))
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isAccepted())
+				.andExpect(jsonPath("$.jobId").value(job.getId()));
+	}
+
+	@Test
+	public void post_words_async_return_status_accepted_202_with_job_id() throws Exception {
+		IngestJob job = new IngestJob("file");
+		Mockito.when(ingestJobService.submit("file", "words.txt")).thenReturn(job);
+
+		mvc.perform(post("/words").param("async", "true").content(toJson(new PostWordsRequestDTO("file", "words.txt")))
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isAccepted())
+				.andExpect(jsonPath("$.jobId").value(job.getId()));
+	}
+
+	@Test
+	public void post_words_when_the_queue_is_full_return_status_too_many_requests_429() throws Exception {
+		Mockito.when(ingestJobService.submit("url", "http://localhost/words.txt"))
+				.thenThrow(new IngestQueueFullException(1));
+
+		mvc.perform(post("/words").content(toJson(new PostWordsRequestDTO("url", "http://localhost/words.txt")))
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isTooManyRequests());
+	}
+
+	@Test
+	public void get_job_return_status_200_with_progress() throws Exception {
+		IngestJob job = new IngestJob("url");
+		job.started();
+		job.add(100, 20);
+		Mockito.when(ingestJobService.getJob(job.getId())).thenReturn(job);
+
+		mvc.perform(get("/words/jobs/" + job.getId())).andExpect(status().isOk())
+				.andExpect(jsonPath("$.status").value("RUNNING")).andExpect(jsonPath("$.bytes").value(100))
+				.andExpect(jsonPath("$.tokens").value(20));
+	}
+
+	@Test
+	public void get_unknown_job_return_status_not_found_404() throws Exception {
+
+		mvc.perform(get("/words/jobs/unknown")).andExpect(status().isNotFound());
+	}
+
 	@Test
 	public void post_words_on_nonlegit_input_return_status_bad_request_400() throws Exception {
 
@@ -62,9 +137,144 @@ class WordsControllerTests {
 
 	@Test
 	public void get_word_ranking_with_parameter_return_status_200() throws Exception {
+		Mockito.when(service.getRankingSnapshot()).thenReturn(RankingSnapshot.EMPTY);
 
 		mvc.perform(get("/word_ranking").param("range", "1,2,3")
-				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+				.andExpect(header().string(WordController.RANKING_VERSION_HEADER, "0"));
+	}
+
+	@Test
+	public void get_word_ranking_approximate_is_flagged() throws Exception {
+		RankingSnapshot snapshot = RankingSnapshot.approximate(Collections.emptyList(), 3);
+		Mockito.when(service.getRankingSnapshot()).thenReturn(snapshot);
+
+		mvc.perform(get("/word_ranking").param("range", "1-10")
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+				.andExpect(header().string(WordController.RANKING_VERSION_HEADER, "3"))
+				.andExpect(header().string(WordController.RANKING_APPROXIMATE_HEADER, "true"))
+				.andExpect(header().string(WordController.RANKING_MAX_ERROR_HEADER, "0"));
+	}
+
+	@Test
+	public void post_words_stream_plain_and_gzip_return_status_200() throws Exception {
+		mvc.perform(post("/words/stream").content("some streamed text").contentType(MediaType.TEXT_PLAIN))
+				.andExpect(status().isOk());
+		Mockito.verify(service).postWordsStream(Mockito.any(), Mockito.eq(18L), Mockito.eq(false));
+
+		mvc.perform(post("/words/stream").content(new byte[] { 1, 2 }).contentType(WordController.APPLICATION_GZIP_VALUE))
+				.andExpect(status().isOk());
+		mvc.perform(post("/words/stream").content(new byte[] { 1, 2 }).contentType(MediaType.TEXT_PLAIN)
+				.header(HttpHeaders.CONTENT_ENCODING, "gzip")).andExpect(status().isOk());
+		Mockito.verify(service, Mockito.times(2)).postWordsStream(Mockito.any(), Mockito.eq(2L), Mockito.eq(true));
+	}
+
+	@Test
+	public void post_words_stream_too_large_return_status_413() throws Exception {
+		Mockito.doThrow(new PayloadTooLargeException(10)).when(service).postWordsStream(Mockito.any(), Mockito.anyLong(),
+				Mockito.anyBoolean());
+
+		mvc.perform(post("/words/stream").content("too much text").contentType(MediaType.TEXT_PLAIN))
+				.andExpect(status().isPayloadTooLarge());
+		mvc.perform(post("/words/stream").content("{}").contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isUnsupportedMediaType());
+	}
+
+	@Test
+	public void post_words_stream_invalid_gzip_return_status_400() throws Exception {
+		Mockito.doThrow(new ZipException("Not in GZIP format")).when(service).postWordsStream(Mockito.any(), Mockito.anyLong(),
+				Mockito.eq(true));
+		Mockito.doThrow(new EOFException("Unexpected end of the gzip input")).when(service).postWordsStream(Mockito.any(),
+				Mockito.eq(3L), Mockito.eq(true));
+
+		mvc.perform(post("/words/stream").content("not gzipped").contentType(WordController.APPLICATION_GZIP_VALUE))
+				.andExpect(status().isBadRequest());
+		mvc.perform(post("/words/stream").content(new byte[] { 0x1F, (byte) 0x8B, 8 })
+				.contentType(WordController.APPLICATION_GZIP_VALUE)).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void get_word_ranking_in_a_window() throws Exception {
+		Mockito.when(service.getWordRanking("1-2", "1h")).thenReturn(Arrays.asList("trending", "words"));
+
+		mvc.perform(get("/word_ranking").param("range", "1-2").param("window", "1h")
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+				.andExpect(jsonPath("$[0]").value("trending"));
+	}
+
+	@Test
+	public void get_word_ranking_with_invalid_window_return_status_bad_request_400() throws Exception {
+		Mockito.when(service.getWordRanking("1", "2m")).thenThrow(new InvalidWindowException("Unsupported window '2m'"));
+
+		mvc.perform(get("/word_ranking").param("range", "1").param("window", "2m")
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void get_word_ranking_with_a_prefix() throws Exception {
+		Mockito.when(service.getRankingSnapshot()).thenReturn(RankingSnapshot.EMPTY);
+		Mockito.when(service.getPrefixRanking("1-2", "inter", RankingSnapshot.EMPTY))
+				.thenReturn(Arrays.asList("internet", "interval"));
+
+		mvc.perform(get("/word_ranking").param("range", "1-2").param("prefix", "inter")
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+				.andExpect(jsonPath("$[1]").value("interval"));
+		mvc.perform(get("/word_ranking").param("range", "1-2").param("prefix", "inter").param("window", "1h")
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void get_word_ranking_with_invalid_range_return_status_bad_request_400() throws Exception {
+		Mockito.when(service.getRankingSnapshot()).thenReturn(RankingSnapshot.EMPTY);
+		Mockito.when(service.getWordRanking("1-a", RankingSnapshot.EMPTY))
+				.thenThrow(new InvalidRangeException("Invalid position 'a': 1-a"));
+
+		mvc.perform(get("/word_ranking").param("range", "1-a")
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void get_word_ranking_with_a_staleness_from_a_lagging_replica_return_status_503() throws Exception {
+		Mockito.when(service.getRankingSnapshot()).thenReturn(RankingSnapshot.EMPTY);
+		Mockito.when(service.getWordRanking("1", RankingSnapshot.EMPTY)).thenReturn(Arrays.asList("data"));
+		Mockito.doThrow(new StaleReplicaException(Duration.ofSeconds(7), Duration.ofSeconds(5))).when(service)
+				.checkStaleness("5s");
+		Mockito.doThrow(new InvalidStalenessException("soon")).when(service).checkStaleness("soon");
+
+		mvc.perform(get("/word_ranking").param("range", "1").param("staleness", "10s")).andExpect(status().isOk())
+				.andExpect(jsonPath("$[0]").value("data"));
+		mvc.perform(get("/word_ranking").param("range", "1").param("staleness", "5s"))
+				.andExpect(status().isServiceUnavailable());
+		mvc.perform(get("/word/data").param("staleness", "soon")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void get_word_return_its_count_and_rank_or_404() throws Exception {
+		Mockito.when(service.getRankingSnapshot()).thenReturn(RankingSnapshot.EMPTY);
+		Mockito.when(service.lookupWords(Collections.singletonList("data"), RankingSnapshot.EMPTY))
+				.thenReturn(Collections.singletonList(new WordLookup("data", 45, 2)));
+		Mockito.when(service.lookupWords(Collections.singletonList("nothing"), RankingSnapshot.EMPTY))
+				.thenReturn(Collections.singletonList(WordLookup.unknown("nothing")));
+
+		mvc.perform(get("/word/data")).andExpect(status().isOk()).andExpect(jsonPath("$.count").value(45))
+				.andExpect(jsonPath("$.rank").value(2));
+		mvc.perform(get("/word/nothing")).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void post_words_lookup_return_status_200() throws Exception {
+		Mockito.when(service.getRankingSnapshot()).thenReturn(RankingSnapshot.EMPTY);
+		Mockito.when(service.lookupWords(Arrays.asList("data", "nothing"), RankingSnapshot.EMPTY))
+				.thenReturn(Arrays.asList(new WordLookup("data", 45, 2), WordLookup.unknown("nothing")));
+		Mockito.when(service.lookupWords(Arrays.asList("a", "b", "c"), RankingSnapshot.EMPTY))
+				.thenThrow(new TooManyWordsException(3, 2));
+
+		mvc.perform(post("/words/lookup").content(toJson(Arrays.asList("data", "nothing")))
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].word").value("data")).andExpect(jsonPath("$[0].rank").value(2))
+				.andExpect(jsonPath("$[1].count").value(0)).andExpect(jsonPath("$[1].rank").isEmpty());
+		mvc.perform(post("/words/lookup").content(toJson(Arrays.asList("a", "b", "c")))
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
 	}
 
 	@Test
@@ -0,0 +1,70 @@
+package com.lemon.words.service;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import com.lemon.words.config.WordsProperties;
+import com.lemon.words.exception.IngestQueueFullException;
+import com.lemon.words.model.IngestJob;
+import com.lemon.words.model.IngestProgress;
+
+/**
+ * The job queue is bounded - a submit beyond the workers and the queue capacity is rejected
+ */
+class IngestJobServiceTests {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private IngestJobService ingestJobService;
+
+	@AfterEach
+	public void tearDown() {
+		release.countDown();
+		if (ingestJobService != null) {
+			ingestJobService.destroy();
+		}
+	}
+
+	@Test
+	public void submit_beyond_the_queue_capacity_is_rejected() throws Exception {
+		WordService wordService = Mockito.mock(WordService.class);
+		CountDownLatch running = new CountDownLatch(1);
+		Mockito.doAnswer(invocation -> {
+			IngestProgress progress = invocation.getArgument(2);
+			progress.add(10, 2);
+			running.countDown();
+			release.await();
+			return null;
+		}).when(wordService).postWords(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+				ArgumentMatchers.any(IngestProgress.class));
+
+		WordsProperties properties = new WordsProperties();
+		properties.getJobs().setWorkers(1);
+		properties.getJobs().setQueueCapacity(1);
+		ingestJobService = new IngestJobService(wordService, properties);
+
+		IngestJob first = ingestJobService.submit("string", "a b");
+		Assertions.assertTrue(running.await(10, TimeUnit.SECONDS));
+		IngestJob second = ingestJobService.submit("string", "c d");
+		Assertions.assertThrows(IngestQueueFullException.class, () -> ingestJobService.submit("string", "e f"));
+
+		Assertions.assertEquals(IngestJob.Status.RUNNING, first.getStatus());
+		Assertions.assertEquals(10, first.getBytes());
+		Assertions.assertEquals(2, first.getTokens());
+		Assertions.assertEquals(IngestJob.Status.QUEUED, second.getStatus());
+		Assertions.assertSame(second, ingestJobService.getJob(second.getId()));
+
+		release.countDown();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (second.getStatus() != IngestJob.Status.SUCCEEDED && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		Assertions.assertEquals(IngestJob.Status.SUCCEEDED, first.getStatus());
+		Assertions.assertEquals(IngestJob.Status.SUCCEEDED, second.getStatus());
+	}
+}
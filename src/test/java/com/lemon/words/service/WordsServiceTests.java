@@ -1,17 +1,54 @@
 package com.lemon.words.service;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.util.unit.DataSize;
 
 import com.lemon.WordsApplication;
+import com.lemon.words.config.WordsProperties;
+import com.lemon.words.config.WordsProperties.Ranking.RankingMode;
+import com.lemon.words.config.WordsProperties.Vocabulary.StorageType;
+import com.lemon.words.exception.InvalidPrefixException;
+import com.lemon.words.exception.InvalidWindowException;
+import com.lemon.words.exception.PayloadTooLargeException;
+import com.lemon.words.exception.TooManyPositionsException;
+import com.lemon.words.exception.TooManyWordsException;
+import com.lemon.words.model.FileProgress;
+import com.lemon.words.model.IngestProgress;
+import com.lemon.words.model.WordLookup;
 import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.ranking.RankIndex;
+import com.lemon.words.service.ranking.RankingSnapshot;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import com.lemon.words.service.ranking.SortedListRankIndex;
 
 @SpringBootTest
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -20,6 +57,9 @@ class WordsServiceTests {
 	@Autowired
 	private WordService wordService;
 
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	/**
 	 * Deleting the state file even though its a little risky. Could of moved it \
 	 * rename it instead (to avoid data loss)
@@ -85,6 +125,33 @@ class WordsServiceTests {
 		Assertions.assertEquals(wordRankingResultArray.get(1), "45");
 	}
 
+	/**
+	 * A glob ingests all its files as a single batch, a broken file (a truncated gzip) is reported and skipped
+	 */
+	@Test
+	public void postWords_file_glob_and_directory(@TempDir Path directory) throws Exception {
+		Files.createDirectories(directory.resolve("nested"));
+		Files.write(directory.resolve("a.txt"), "some data data".getBytes(StandardCharsets.UTF_8));
+		Files.write(directory.resolve("nested/b.txt"), "data more".getBytes(StandardCharsets.UTF_8));
+		Files.write(directory.resolve("c.log"), "ignored".getBytes(StandardCharsets.UTF_8));
+		Files.write(directory.resolve("broken.txt"), new byte[] { 0x1F, (byte) 0x8B, 8, 0, 0 });
+
+		IngestProgress progress = new IngestProgress();
+		this.wordService.postWords("file", directory + "/**.txt", progress);
+		Assertions.assertEquals(Arrays.asList("data", "more", "some"), this.wordService.getWordRanking("1-5"));
+		Assertions.assertEquals(3, progress.getFiles().size());
+		Assertions.assertEquals(directory.resolve("nested/b.txt").toString(), progress.getFiles().get(1).getPath());
+		Assertions.assertEquals(FileProgress.Status.SUCCEEDED, progress.getFiles().get(1).getStatus());
+		Assertions.assertEquals(2, progress.getFiles().get(1).getTokens());
+		Assertions.assertEquals(FileProgress.Status.FAILED, progress.getFiles().get(2).getStatus());
+		Assertions.assertNotNull(progress.getFiles().get(2).getError());
+		Assertions.assertEquals(5, progress.getTokens());
+
+		// A directory is all its files, recursively
+		this.wordService.postWords("file", directory.toString());
+		Assertions.assertEquals(Arrays.asList("data", "more", "some", "ignored"), this.wordService.getWordRanking("1-5"));
+	}
+
 	@Test
 	public void postWords_string_url_sanity() throws Exception {
 		this.wordService.postWords("url", "https://github.com/dwyl/english-words/raw/master/words.txt");
@@ -138,6 +205,25 @@ class WordsServiceTests {
 		
 	}
 	
+	@Test
+	public void words_ranking_overlapping_ranges_are_returned_once() throws Exception {
+		this.wordService.postWords("string", "a a a a b b b c c d");
+		Assertions.assertEquals(Arrays.asList("a", "b", "c", "d"), this.wordService.getWordRanking("3-4,1-3,2"));
+	}
+
+	@Test
+	public void words_ranking_too_many_positions_exception() throws Exception {
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < 100001; i++) {
+			data.append('w').append(i).append(' ');
+		}
+		this.wordService.postWords("string", data.toString());
+		Assertions.assertEquals(100000, this.wordService.getWordRanking("1-100000").size());
+		Assertions.assertThrows(TooManyPositionsException.class, () -> {
+			this.wordService.getWordRanking("1-2000000000");
+		});
+	}
+
 	@Test
 	public void reusing_existsing_state_on_startup() throws Exception {
 		this.wordService.postWords("string", "ok bye bye");
@@ -147,9 +233,443 @@ class WordsServiceTests {
 		Assertions.assertEquals(wordRankingResultArray.get(0), "bye");
 	}
 
+	/**
+	 * The batched ingest should produce the exact ranking of incrementing the words one by one
+	 * (using the reference sorted list index)
+	 */
+	@Test
+	public void postWords_batched_ingest_matches_per_token_ranking() throws Exception {
+		Random random = new Random(7);
+		StringBuilder data = new StringBuilder();
+		RankIndex reference = new SortedListRankIndex();
+		Map<String, WordOccurrences> referenceWords = new HashMap<>();
+		for (int i = 0; i < 5000; i++) {
+			String word = "w" + random.nextInt(300);
+			data.append(word).append(i % 10 == 0 ? "\n" : " ");
+			WordOccurrences wo = referenceWords.get(word);
+			if (wo == null) {
+				wo = new WordOccurrences(1l, word);
+				reference.add(wo);
+				referenceWords.put(word, wo);
+			} else {
+				reference.increment(wo, 1l);
+			}
+		}
+		this.wordService.postWords("string", data.toString());
+		List<String> wordRankingResultArray = this.wordService.getWordRanking("1-" + reference.size());
+		Assertions.assertEquals(reference.size(), wordRankingResultArray.size());
+		for (int i = 0; i < reference.size(); i++) {
+			Assertions.assertEquals(reference.get(i).getWord(), wordRankingResultArray.get(i));
+		}
+	}
+
+	/**
+	 * Concurrent ingests (and a concurrent snapshot) should produce the exact ranking of ingesting them one by one
+	 */
+	@Test
+	public void postWords_concurrent_ingests_match_sequential_ranking() throws Exception {
+		int threads = 4;
+		Random random = new Random(5);
+		String[] posts = new String[threads * 10];
+		RankIndex reference = new SortedListRankIndex();
+		Map<String, WordOccurrences> referenceWords = new HashMap<>();
+		for (int i = 0; i < posts.length; i++) {
+			StringBuilder data = new StringBuilder();
+			for (int j = 0; j < 200; j++) {
+				String word = "w" + random.nextInt(100);
+				data.append(word).append(' ');
+				WordOccurrences wo = referenceWords.get(word);
+				if (wo == null) {
+					wo = new WordOccurrences(1l, word);
+					reference.add(wo);
+					referenceWords.put(word, wo);
+				} else {
+					reference.increment(wo, 1l);
+				}
+			}
+			posts[i] = data.toString();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = thread; i < posts.length; i += threads) {
+						this.wordService.postWords("string", posts[i]);
+					}
+					return null;
+				}));
+			}
+			futures.add(executor.submit(() -> {
+				this.wordService.saveMapToDisk();
+				return null;
+			}));
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		List<String> expected = new ArrayList<>();
+		for (WordOccurrences wo : reference.toList()) {
+			expected.add(wo.getWord());
+		}
+		Assertions.assertEquals(expected, this.wordService.getWordRanking("1-" + reference.size()));
+		// The snapshot and the log recover the same state
+		this.wordService.init();
+		Assertions.assertEquals(expected, this.wordService.getWordRanking("1-" + reference.size()));
+	}
+
+	/**
+	 * The state after a restart is the last snapshot plus the write ahead log records that came after it
+	 */
+	@Test
+	public void recovering_snapshot_and_log_on_startup() throws Exception {
+		this.wordService.postWords("string", "a b b");
+		this.wordService.saveMapToDisk();
+		this.wordService.postWords("string", "c c c a a");
+		List<String> wordRankingResultArray = this.wordService.getWordRanking("1-3");
+		this.wordService.init();
+		Assertions.assertEquals(wordRankingResultArray, this.wordService.getWordRanking("1-3"));
+		Assertions.assertEquals(Arrays.asList("a", "c", "b"), wordRankingResultArray);
+	}
+
+	/**
+	 * A crash in the middle of a log append leaves a torn record at the end of the log, it is dropped on startup
+	 */
+	@Test
+	public void recovering_from_a_torn_log_record_on_startup() throws Exception {
+		this.wordService.postWords("string", "ok bye bye");
+		Files.write(Paths.get(WordService.LOG_FILENAME), new byte[] { 0, 0, 1, 0, 7, 7 }, StandardOpenOption.APPEND);
+		this.wordService.init();
+		Assertions.assertEquals("bye", this.wordService.getWordRanking("1").get(0));
+		this.wordService.postWords("string", "ok ok");
+		this.wordService.init();
+		Assertions.assertEquals("ok", this.wordService.getWordRanking("1").get(0));
+	}
+
+	/**
+	 * A published ranking never changes, an ingest publishes a new version
+	 */
+	@Test
+	public void ranking_snapshots_are_immutable_and_versioned() throws Exception {
+		this.wordService.postWords("string", "a");
+		RankingSnapshot before = this.wordService.getRankingSnapshot();
+		this.wordService.postWords("string", "b b");
+		RankingSnapshot after = this.wordService.getRankingSnapshot();
+		Assertions.assertTrue(after.getVersion() > before.getVersion());
+		Assertions.assertEquals(Arrays.asList("a"), this.wordService.getWordRanking("1-2", before));
+		Assertions.assertEquals(Arrays.asList("b", "a"), this.wordService.getWordRanking("1-2", after));
+	}
+
+	/**
+	 * With a max staleness the ranking is published periodically (and not by the ingest itself)
+	 */
+	@Test
+	public void ranking_is_published_within_the_max_staleness(@TempDir Path stateDirectory) throws Exception {
+		WordsProperties properties = new WordsProperties();
+		properties.getPersistence().setDirectory(stateDirectory.toString());
+		properties.getRanking().setMaxStaleness(Duration.ofMillis(50));
+		WordService staleService = new WordService(properties);
+		try {
+			staleService.init();
+			long initialVersion = staleService.getRankingSnapshot().getVersion();
+			staleService.postWords("string", "x y y");
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (staleService.getRankingSnapshot().getVersion() == initialVersion && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			Assertions.assertEquals(Arrays.asList("y", "x"), staleService.getWordRanking("1-2"));
+		} finally {
+			staleService.destroy();
+		}
+	}
+
+	/**
+	 * A mapped vocabulary closed cleanly is reopened as is (without the snapshot), a crashed one is rebuilt from the snapshot and the log
+	 */
+	@Test
+	public void mapped_vocabulary_is_reopened_after_a_clean_shutdown(@TempDir Path stateDirectory) throws Exception {
+		WordsProperties properties = new WordsProperties();
+		properties.getPersistence().setDirectory(stateDirectory.toString());
+		properties.getVocabulary().setStorage(StorageType.MAPPED);
+
+		WordService mappedService = new WordService(properties);
+		mappedService.init();
+		mappedService.postWords("string", "b a a école école école");
+		mappedService.saveMapToDisk();
+		mappedService.postWords("string", "b b b");
+		Assertions.assertEquals(Arrays.asList("b", "école", "a"), mappedService.getWordRanking("1-3"));
+		mappedService.destroy();
+
+		// The snapshot is not needed to reopen a cleanly closed vocabulary, only the log tail (empty here) is replayed
+		Path snapshot = stateDirectory.resolve(WordService.STATE_FILENAME);
+		Path asideSnapshot = stateDirectory.resolve("aside");
+		Files.move(snapshot, asideSnapshot);
+		WordService reopenedService = new WordService(properties);
+		try {
+			reopenedService.init();
+			Assertions.assertEquals(Arrays.asList("b", "école", "a"), reopenedService.getWordRanking("1-3"));
+			Files.move(asideSnapshot, snapshot);
+
+			// A crash (no clean shutdown) - the files are discarded and the state is rebuilt from the log
+			reopenedService.postWords("string", "a a a a");
+			WordService crashedService = new WordService(properties);
+			try {
+				crashedService.init();
+				Assertions.assertEquals(Arrays.asList("a", "b", "école"), crashedService.getWordRanking("1-3"));
+			} finally {
+				crashedService.destroy();
+			}
+		} finally {
+			reopenedService.destroy();
+		}
+	}
+
+	/**
+	 * The approximate mode serves the top-k of its summary, flagged with the error of the served counts, and survives a restart
+	 */
+	@Test
+	public void approximate_ranking_serves_the_top_k(@TempDir Path stateDirectory) throws Exception {
+		WordsProperties properties = new WordsProperties();
+		properties.getPersistence().setDirectory(stateDirectory.toString());
+		properties.getRanking().setMode(RankingMode.APPROXIMATE);
+		properties.getRanking().getApproximate().setTopK(2);
+		properties.getRanking().getApproximate().setCounters(3);
+
+		WordService approximateService = new WordService(properties);
+		try {
+			approximateService.init();
+			approximateService.postWords("string", "b a a école école école c d");
+			RankingSnapshot snapshot = approximateService.getRankingSnapshot();
+			Assertions.assertTrue(snapshot.isApproximate());
+			Assertions.assertEquals(Arrays.asList("école", "a"), approximateService.getWordRanking("1-10"));
+			List<WordLookup> lookups = approximateService.lookupWords(Arrays.asList("a", "d"));
+			Assertions.assertEquals(2, (int) lookups.get(0).getRank());
+			Assertions.assertTrue(lookups.get(0).getCount() >= 2);
+			Assertions.assertNull(lookups.get(1).getRank());
+			approximateService.postWords("string", "b b b");
+			Assertions.assertEquals(Arrays.asList("b", "école"), approximateService.getWordRanking("1-10"));
+			// At most N / counters
+			Assertions.assertTrue(approximateService.getRankingSnapshot().getMaxError() <= 11 / 3);
+			approximateService.saveMapToDisk();
+			approximateService.postWords("string", "a a a a");
+		} finally {
+			approximateService.destroy();
+		}
+
+		WordService restartedService = new WordService(properties);
+		try {
+			restartedService.init();
+			Assertions.assertEquals(Arrays.asList("a", "b"), restartedService.getWordRanking("1-2"));
+		} finally {
+			restartedService.destroy();
+		}
+	}
+
+	/**
+	 * The ingest metrics are recorded once per batch
+	 */
+	@Test
+	public void ingest_metrics_are_recorded() throws Exception {
+		double tokens = meterRegistry.get("words.ingest.tokens").counter().count();
+		double newWords = meterRegistry.get("words.ingest.words").tag("kind", "new").counter().count();
+		double existingWords = meterRegistry.get("words.ingest.words").tag("kind", "existing").counter().count();
+		long batches = meterRegistry.get("words.ingest.lock.wait").timer().count();
+
+		this.wordService.postWords("string", "a b b");
+		this.wordService.postWords("string", "b c c c");
+		this.wordService.saveMapToDisk();
+
+		Assertions.assertEquals(tokens + 7, meterRegistry.get("words.ingest.tokens").counter().count());
+		Assertions.assertEquals(newWords + 3, meterRegistry.get("words.ingest.words").tag("kind", "new").counter().count());
+		Assertions.assertEquals(existingWords + 1,
+				meterRegistry.get("words.ingest.words").tag("kind", "existing").counter().count());
+		Assertions.assertEquals(batches + 2, meterRegistry.get("words.ingest.lock.wait").timer().count());
+		Assertions.assertEquals(3, meterRegistry.get("words.vocabulary.size").gauge().value());
+		Assertions.assertTrue(meterRegistry.get("words.snapshot.size").gauge().value() > 0);
+	}
+
 	/**
 	 * Check cumulative requirement
 	 */
+	/**
+	 * Streamed uploads (raw or gzipped) are counted like the same text in a string ingest, within the maximal size
+	 */
+	@Test
+	public void postWordsStream_raw_and_gzip_bodies() throws Exception {
+		byte[] text = "Stream the data\nstream-it".getBytes(StandardCharsets.UTF_8);
+		this.wordService.postWordsStream(new ByteArrayInputStream(text), text.length, false);
+		Assertions.assertEquals(Arrays.asList("stream", "data", "it", "the"), this.wordService.getWordRanking("1-4"));
+
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+			gzip.write("data data data".getBytes(StandardCharsets.UTF_8));
+		}
+		this.wordService.postWordsStream(new ByteArrayInputStream(gzipped.toByteArray()), -1, true);
+		Assertions.assertEquals(Arrays.asList("data", "stream"), this.wordService.getWordRanking("1-2"));
+	}
+
+	@Test
+	public void postWordsStream_beyond_the_maximal_size(@TempDir Path stateDirectory) throws Exception {
+		WordsProperties properties = new WordsProperties();
+		properties.getPersistence().setDirectory(stateDirectory.toString());
+		properties.getIngest().setStreamMaxSize(DataSize.ofBytes(1000));
+		WordService limitedService = new WordService(properties);
+		try {
+			limitedService.init();
+			byte[] text = new byte[2000];
+			Arrays.fill(text, (byte) 'a');
+			// Declared too large, a chunked body that turns out too large and a small body that decompresses too large
+			Assertions.assertThrows(PayloadTooLargeException.class,
+					() -> limitedService.postWordsStream(new ByteArrayInputStream(text), text.length, false));
+			Assertions.assertThrows(PayloadTooLargeException.class,
+					() -> limitedService.postWordsStream(new ByteArrayInputStream(text), -1, false));
+			ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+			try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+				gzip.write(text);
+			}
+			Assertions.assertTrue(gzipped.size() < 1000);
+			Assertions.assertThrows(PayloadTooLargeException.class,
+					() -> limitedService.postWordsStream(new ByteArrayInputStream(gzipped.toByteArray()), gzipped.size(), true));
+			Assertions.assertEquals(0, limitedService.getRankingSnapshot().size());
+		} finally {
+			limitedService.destroy();
+		}
+	}
+
+	/**
+	 * A window ranking only has the words ingested since the service started (the windows are not restored on startup)
+	 */
+	@Test
+	public void get_word_ranking_in_a_time_window(@TempDir Path stateDirectory) throws Exception {
+		WordsProperties properties = new WordsProperties();
+		properties.getPersistence().setDirectory(stateDirectory.toString());
+		properties.getRanking().setWindows(Arrays.asList(Duration.ofMinutes(5), Duration.ofHours(1), Duration.ofHours(24)));
+		WordService windowsService = new WordService(properties);
+		try {
+			windowsService.init();
+			windowsService.postWords("string", "old old old");
+			windowsService.init();
+			windowsService.postWords("string", "new new some");
+			Assertions.assertEquals(Arrays.asList("old", "new"), windowsService.getWordRanking("1-2"));
+			Assertions.assertEquals(Arrays.asList("new", "some"), windowsService.getWordRanking("1-5", "5m"));
+			Assertions.assertEquals(Arrays.asList("some"), windowsService.getWordRanking("2", "24h"));
+			Assertions.assertEquals(Arrays.asList("old", "new"), windowsService.getWordRanking("1-2", (String) null));
+			Assertions.assertThrows(InvalidWindowException.class, () -> windowsService.getWordRanking("1", "2m"));
+			Assertions.assertThrows(InvalidWindowException.class, () -> windowsService.getWordRanking("1", "lately"));
+		} finally {
+			windowsService.destroy();
+		}
+	}
+
+	/**
+	 * The windows are off by default (and are never kept in the approximate mode)
+	 */
+	@Test
+	public void time_windows_are_disabled_by_default_and_in_the_approximate_mode(@TempDir Path stateDirectory) throws Exception {
+		this.wordService.postWords("string", "some words");
+		Assertions.assertThrows(InvalidWindowException.class, () -> this.wordService.getWordRanking("1", "5m"));
+
+		WordsProperties properties = new WordsProperties();
+		properties.getPersistence().setDirectory(stateDirectory.toString());
+		properties.getRanking().setMode(RankingMode.APPROXIMATE);
+		properties.getRanking().setWindows(Arrays.asList(Duration.ofMinutes(5)));
+		WordService approximateService = new WordService(properties);
+		try {
+			approximateService.init();
+			approximateService.postWords("string", "some words");
+			Assertions.assertThrows(InvalidWindowException.class, () -> approximateService.getWordRanking("1", "5m"));
+		} finally {
+			approximateService.destroy();
+		}
+	}
+
+	/**
+	 * A word's rank is its position in /word_ranking, an unknown word has no rank
+	 */
+	@Test
+	public void lookup_words_count_and_rank() throws Exception {
+		Random random = new Random(5);
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			data.append("w").append(random.nextInt(700)).append(' ');
+		}
+		this.wordService.postWords("string", data.toString());
+		List<String> ranking = this.wordService.getWordRanking("1-1000");
+		List<String> words = new ArrayList<>(ranking);
+		words.add("missing");
+		List<WordLookup> lookups = this.wordService.lookupWords(words);
+		Assertions.assertEquals(words.size(), lookups.size());
+		for (int i = 0; i < ranking.size(); i++) {
+			Assertions.assertEquals(ranking.get(i), lookups.get(i).getWord());
+			Assertions.assertEquals(i + 1, (int) lookups.get(i).getRank());
+		}
+		Assertions.assertTrue(lookups.get(0).getCount() >= lookups.get(ranking.size() - 1).getCount());
+		Assertions.assertEquals(0, lookups.get(ranking.size()).getCount());
+		Assertions.assertNull(lookups.get(ranking.size()).getRank());
+
+		this.wordService.postWords("string", "missing missing");
+		WordLookup found = this.wordService.lookupWords(Collections.singletonList("missing")).get(0);
+		Assertions.assertEquals(2, found.getCount());
+		Assertions.assertEquals("missing", this.wordService.getWordRanking(String.valueOf(found.getRank())).get(0));
+		Assertions.assertThrows(TooManyWordsException.class,
+				() -> this.wordService.lookupWords(Collections.nCopies(10001, "w1")));
+	}
+
+	/**
+	 * The ingested words are lower cased, a mixed case lookup finds the word
+	 */
+	@Test
+	public void lookup_words_is_case_insensitive() throws Exception {
+		this.wordService.postWords("string", "Hello hello world");
+		List<WordLookup> lookups = this.wordService.lookupWords(Arrays.asList("Hello", "HELLO", "wOrLd"));
+		Assertions.assertEquals("hello", lookups.get(0).getWord());
+		Assertions.assertEquals("hello", lookups.get(1).getWord());
+		Assertions.assertEquals("world", lookups.get(2).getWord());
+		Assertions.assertEquals(2, lookups.get(0).getCount());
+		Assertions.assertEquals(1, (int) lookups.get(0).getRank());
+		Assertions.assertEquals(2, lookups.get(1).getCount());
+		Assertions.assertEquals(1, lookups.get(2).getCount());
+		Assertions.assertArrayEquals(new long[] { 2, 1 }, this.wordService.shardCountsOf(Arrays.asList("HeLLo", "World")));
+	}
+
+	@Test
+	public void get_prefix_ranking() throws Exception {
+		this.wordService.postWords("string", "internet internal inter interval interval internet internet in winter");
+		RankingSnapshot snapshot = this.wordService.getRankingSnapshot();
+		Assertions.assertEquals(Arrays.asList("internet", "interval", "inter", "internal"),
+				this.wordService.getPrefixRanking("1-10", "inter", snapshot));
+		Assertions.assertEquals(Arrays.asList("interval", "internal"),
+				this.wordService.getPrefixRanking("2,4", "inter", snapshot));
+		Assertions.assertEquals(Arrays.asList("internal"), this.wordService.getPrefixRanking("2", "intern", snapshot));
+		Assertions.assertEquals(Arrays.asList(), this.wordService.getPrefixRanking("1-10", "x", snapshot));
+
+		// Kept up to date by the ingests
+		this.wordService.postWords("string", "internal internal internal");
+		Assertions.assertEquals(Arrays.asList("internal", "internet"),
+				this.wordService.getPrefixRanking("1-2", "in", this.wordService.getRankingSnapshot()));
+	}
+
+	@Test
+	public void get_prefix_ranking_without_the_prefix_index(@TempDir Path stateDirectory) throws Exception {
+		WordsProperties properties = new WordsProperties();
+		properties.getPersistence().setDirectory(stateDirectory.toString());
+		properties.getRanking().setPrefixIndex(false);
+		WordService service = new WordService(properties);
+		try {
+			service.init();
+			service.postWords("string", "some words");
+			Assertions.assertThrows(InvalidPrefixException.class,
+					() -> service.getPrefixRanking("1", "s", service.getRankingSnapshot()));
+		} finally {
+			service.destroy();
+		}
+	}
+
 	@Test
 	public void get_word_ranking_cumulative() throws Exception {
 		this.wordService.postWords("string", "some data data");
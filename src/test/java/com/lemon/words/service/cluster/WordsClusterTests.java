@@ -0,0 +1,177 @@
+package com.lemon.words.service.cluster;
+
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.lemon.WordsApplication;
+import com.lemon.words.config.WordsProperties;
+import com.lemon.words.control.WordController;
+import com.lemon.words.exception.InvalidPrefixException;
+import com.lemon.words.exception.InvalidWindowException;
+import com.lemon.words.model.WordLookup;
+import com.lemon.words.model.dto.PostWordsRequestDTO;
+import com.lemon.words.service.WordService;
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.ranking.RankRanges;
+
+/**
+ * A cluster's merged ranking and lookups should be exactly the ranking of a single node that ingested the same words
+ */
+class WordsClusterTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void cluster_ranking_matches_a_single_node() throws Exception {
+		List<WordService> services = new ArrayList<>();
+		List<Shard> shards = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			WordService service = createService("shard-" + i);
+			services.add(service);
+			shards.add(new LocalShard(service));
+		}
+		WordService reference = createService("reference");
+		// A small histogram so a deep range takes several rounds
+		WordsCluster cluster = new WordsCluster(shards, 3);
+		try {
+			Random random = new Random(7);
+			for (int batch = 0; batch < 20; batch++) {
+				WordCounts wordCounts = new WordCounts();
+				for (int i = 0; i < 500; i++) {
+					// Many words with the same count, including words whose UTF-8 order differs from the String order
+					String word = random.nextInt(10) == 0 ? "x" + random.nextInt(50) : "w" + random.nextInt(3000);
+					wordCounts.add(word + (random.nextInt(20) == 0 ? "😀" : ""), 1 + random.nextInt(random.nextInt(3) + 1));
+				}
+				cluster.ingest(wordCounts);
+				reference.ingestShard(wordCounts);
+			}
+
+			int size = reference.shardSize();
+			int shardsSize = 0;
+			for (WordService service : services) {
+				Assertions.assertTrue(service.shardSize() > 0);
+				shardsSize += service.shardSize();
+			}
+			Assertions.assertEquals(size, shardsSize);
+
+			for (String range : new String[] { "1-" + size, "1-10", "1", "2", size + "", (size - 5) + "-" + (size + 5),
+					"777-790,5-6,1500-1500", (size + 1) + "-" + (size + 10) }) {
+				Assertions.assertEquals(reference.getWordRanking(range), cluster.getWordRanking(RankRanges.parse(range), 100000),
+						range);
+			}
+			for (int from = 1; from <= size; from += 1 + random.nextInt(97)) {
+				String range = from + "-" + (from + random.nextInt(5));
+				Assertions.assertEquals(reference.getWordRanking(range), cluster.getWordRanking(RankRanges.parse(range), 100000),
+						range);
+			}
+
+			List<String> words = new ArrayList<>(reference.getWordRanking("1-" + size));
+			Collections.shuffle(words, random);
+			words.add("missing");
+			List<WordLookup> expected = reference.lookupWords(words);
+			List<WordLookup> lookups = cluster.lookupWords(words);
+			for (int i = 0; i < words.size(); i++) {
+				Assertions.assertEquals(expected.get(i).getWord(), lookups.get(i).getWord());
+				Assertions.assertEquals(expected.get(i).getCount(), lookups.get(i).getCount());
+				Assertions.assertEquals(expected.get(i).getRank(), lookups.get(i).getRank(), words.get(i));
+			}
+		} finally {
+			cluster.close();
+			for (WordService service : services) {
+				service.destroy();
+			}
+			reference.destroy();
+		}
+	}
+
+	/**
+	 * Three nodes on localhost - any node ingests (routing to the owners) and serves the merged ranking
+	 */
+	@Test
+	public void cluster_of_nodes_on_localhost() throws Exception {
+		int[] ports = new int[3];
+		List<String> nodes = new ArrayList<>();
+		for (int i = 0; i < ports.length; i++) {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				ports[i] = socket.getLocalPort();
+			}
+			nodes.add("http://localhost:" + ports[i]);
+		}
+		List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+		WordService reference = createService("reference");
+		try {
+			for (int i = 0; i < ports.length; i++) {
+				Path directory = Files.createDirectories(tempDir.resolve("node-" + i));
+				// Command line arguments, they override application.properties
+				contexts.add(new SpringApplicationBuilder(WordsApplication.class).run("--server.port=" + ports[i],
+						"--words.cluster.nodes=" + String.join(",", nodes), "--words.cluster.node-index=" + i,
+						"--words.persistence.directory=" + directory));
+			}
+			RestTemplate client = new RestTemplate();
+			String text = "the cluster ranks the words of all the nodes and the nodes own the words by their hash "
+					+ "so every node serves the same ranking of the words";
+			client.postForEntity(nodes.get(0) + "/words", new PostWordsRequestDTO("string", text), Void.class);
+			client.postForEntity(nodes.get(1) + "/words", new PostWordsRequestDTO("string", "nodes nodes hash"), Void.class);
+			reference.postWords("string", text);
+			reference.postWords("string", "nodes nodes hash");
+
+			int size = 0;
+			for (String node : nodes) {
+				size += client.getForObject(node + "/cluster/size", Integer.class);
+			}
+			Assertions.assertEquals(reference.shardSize(), size);
+			for (String node : nodes) {
+				ResponseEntity<String[]> response = client.getForEntity(node + "/word_ranking?range=1-100", String[].class);
+				Assertions.assertEquals(reference.getWordRanking("1-100"), Arrays.asList(response.getBody()));
+				Assertions.assertNull(response.getHeaders().getFirst(WordController.RANKING_VERSION_HEADER));
+			}
+			Map<?, ?> lookup = client.getForObject(nodes.get(2) + "/word/nodes", Map.class);
+			WordLookup expected = reference.lookupWords(Arrays.asList("nodes")).get(0);
+			Assertions.assertEquals(expected.getCount(), ((Number) lookup.get("count")).longValue());
+			Assertions.assertEquals(expected.getRank(), lookup.get("rank"));
+
+			WordService clusteredService = contexts.get(0).getBean(WordService.class);
+			Assertions.assertTrue(clusteredService.isClustered());
+			Assertions.assertThrows(InvalidWindowException.class, () -> clusteredService.getWordRanking("1", "1h"));
+			Assertions.assertThrows(InvalidPrefixException.class,
+					() -> clusteredService.getPrefixRanking("1", "no", clusteredService.getRankingSnapshot()));
+
+			// A node that is down fails the requests that need it
+			contexts.remove(2).close();
+			HttpServerErrorException failed = Assertions.assertThrows(HttpServerErrorException.class,
+					() -> client.getForObject(nodes.get(0) + "/word_ranking?range=1-10", String.class));
+			Assertions.assertEquals(HttpStatus.BAD_GATEWAY, failed.getStatusCode());
+		} finally {
+			for (ConfigurableApplicationContext context : contexts) {
+				context.close();
+			}
+			reference.destroy();
+		}
+	}
+
+	private WordService createService(String name) throws Exception {
+		WordsProperties properties = new WordsProperties();
+		properties.getPersistence().setDirectory(Files.createDirectories(tempDir.resolve(name)).toString());
+		WordService service = new WordService(properties);
+		service.init();
+		return service;
+	}
+}
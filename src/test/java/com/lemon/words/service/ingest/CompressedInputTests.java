@@ -0,0 +1,86 @@
+package com.lemon.words.service.ingest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Streams (e.g. type=url contents) are decompressed by their magic bytes, anything else is read as is
+ */
+class CompressedInputTests {
+
+	private static final byte[] TEXT = "some compressed words, some more".getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	public void compressed_streams_are_detected_by_magic_bytes() throws Exception {
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(gzip)) {
+			os.write(TEXT);
+		}
+		ByteArrayOutputStream zstd = new ByteArrayOutputStream();
+		try (OutputStream os = new ZstdOutputStream(zstd)) {
+			os.write(TEXT);
+		}
+		ByteArrayOutputStream bzip2 = new ByteArrayOutputStream();
+		try (OutputStream os = new BZip2CompressorOutputStream(bzip2)) {
+			os.write(TEXT);
+		}
+		Assertions.assertEquals(CompressedInput.Format.GZIP, CompressedInput.detect(gzip.toByteArray(), 4));
+		Assertions.assertEquals(CompressedInput.Format.ZSTD, CompressedInput.detect(zstd.toByteArray(), 4));
+		Assertions.assertEquals(CompressedInput.Format.BZIP2, CompressedInput.detect(bzip2.toByteArray(), 4));
+		for (ByteArrayOutputStream compressed : new ByteArrayOutputStream[] { gzip, zstd, bzip2 }) {
+			Assertions.assertArrayEquals(TEXT, readAll(new ByteArrayInputStream(compressed.toByteArray())));
+		}
+	}
+
+	@Test
+	public void raw_streams_are_read_as_is() throws Exception {
+		Assertions.assertArrayEquals(TEXT, readAll(new ByteArrayInputStream(TEXT)));
+		// Shorter than any magic
+		Assertions.assertArrayEquals(new byte[] { 0x1F }, readAll(new ByteArrayInputStream(new byte[] { 0x1F })));
+		Assertions.assertArrayEquals(new byte[0], readAll(new ByteArrayInputStream(new byte[0])));
+	}
+
+	@Test
+	public void all_the_gzip_members_of_a_trickling_stream_are_read() throws Exception {
+		// As a socket delivers a multi member (e.g. BGZF) body - a few bytes per read, nothing reported as available
+		ByteArrayOutputStream members = new ByteArrayOutputStream();
+		for (int i = 0; i < 3; i++) {
+			try (OutputStream os = new GZIPOutputStream(members)) {
+				os.write(TEXT);
+			}
+		}
+		byte[] expected = new byte[TEXT.length * 3];
+		for (int i = 0; i < 3; i++) {
+			System.arraycopy(TEXT, 0, expected, i * TEXT.length, TEXT.length);
+		}
+		InputStream trickling = new ByteArrayInputStream(members.toByteArray()) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 7));
+			}
+
+			@Override
+			public synchronized int available() {
+				return 0;
+			}
+		};
+		Assertions.assertArrayEquals(expected, readAll(trickling));
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		try (InputStream decompressed = CompressedInput.open(in)) {
+			return decompressed.readAllBytes();
+		}
+	}
+}
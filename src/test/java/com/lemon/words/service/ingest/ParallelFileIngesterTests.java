@@ -0,0 +1,243 @@
+package com.lemon.words.service.ingest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.lemon.words.model.FileProgress;
+import com.lemon.words.model.IngestProgress;
+
+/**
+ * The parallel chunked file ingest should count exactly what the single threaded tokenizer counts
+ */
+class ParallelFileIngesterTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void parallel_file_ingest_matches_single_threaded_counts() throws Exception {
+		String[] words = { "Some", "data", "DATA", "tel-aviv", "école", "ΟΔΟΣ", "x y", "a\tb", "😀", "\r\n", "  " };
+		Random random = new Random(3);
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			data.append(words[random.nextInt(words.length)]).append(random.nextInt(4) == 0 ? "\n" : " ");
+		}
+		Path file = tempDir.resolve("words.txt");
+		Files.write(file, data.toString().getBytes(StandardCharsets.UTF_8));
+
+		// Small chunks so the file is split to many chunks
+		for (int chunkSize : new int[] { 1, 7, 100, 4096 }) {
+			try (ParallelFileIngester ingester = new ParallelFileIngester(4, chunkSize)) {
+				Assertions.assertEquals(singleThreadedCounts(file), toMap(ingester.count(file)), "chunk size: " + chunkSize);
+			}
+		}
+	}
+
+	@Test
+	public void parallel_file_ingest_without_separators() throws Exception {
+		Path file = tempDir.resolve("one-word.txt");
+		Files.write(file, "averyveryverylongword".getBytes(StandardCharsets.UTF_8));
+		try (ParallelFileIngester ingester = new ParallelFileIngester(2, 3)) {
+			Assertions.assertEquals(singleThreadedCounts(file), toMap(ingester.count(file)));
+		}
+	}
+
+	@Test
+	public void parallel_file_ingest_empty_file() throws Exception {
+		Path file = tempDir.resolve("empty.txt");
+		Files.createFile(file);
+		try (ParallelFileIngester ingester = new ParallelFileIngester(2, 3)) {
+			Assertions.assertTrue(ingester.count(file).isEmpty());
+		}
+	}
+
+	@Test
+	public void bgzf_file_ingest_matches_single_threaded_counts() throws Exception {
+		StringBuilder data = new StringBuilder(randomText(20000));
+		// A word that spans many blocks (and chunks)
+		for (int i = 0; i < 700; i++) {
+			data.append('x');
+		}
+		data.append(" tail");
+		byte[] text = data.toString().getBytes(StandardCharsets.UTF_8);
+		Path rawFile = tempDir.resolve("words.txt");
+		Files.write(rawFile, text);
+		Path bgzfFile = tempDir.resolve("words.txt.gz");
+		// Small blocks so the file has many blocks
+		Files.write(bgzfFile, bgzf(text, 97));
+		try (FileChannel channel = FileChannel.open(bgzfFile)) {
+			Assertions.assertTrue(BgzfFile.open(channel).blocks() > 1000);
+		}
+
+		for (int chunkSize : new int[] { 1, 150, 1000, 1 << 20 }) {
+			try (ParallelFileIngester ingester = new ParallelFileIngester(4, chunkSize)) {
+				Assertions.assertEquals(singleThreadedCounts(rawFile), toMap(ingester.count(bgzfFile)), "chunk size: " + chunkSize);
+			}
+		}
+	}
+
+	@Test
+	public void compressed_file_ingest_is_detected_by_magic_bytes() throws Exception {
+		byte[] text = randomText(5000).getBytes(StandardCharsets.UTF_8);
+		Path rawFile = tempDir.resolve("words.txt");
+		Files.write(rawFile, text);
+		Map<String, Long> expected = singleThreadedCounts(rawFile);
+
+		// Two gzip members (not BGZF), zstd and bzip2 - the file names don't matter
+		ByteArrayOutputStream multiMember = new ByteArrayOutputStream();
+		int half = text.length / 2;
+		multiMember.write(gzip(Arrays.copyOfRange(text, 0, half)));
+		multiMember.write(gzip(Arrays.copyOfRange(text, half, text.length)));
+		ByteArrayOutputStream zstd = new ByteArrayOutputStream();
+		try (OutputStream os = new ZstdOutputStream(zstd)) {
+			os.write(text);
+		}
+		ByteArrayOutputStream bzip2 = new ByteArrayOutputStream();
+		try (OutputStream os = new BZip2CompressorOutputStream(bzip2)) {
+			os.write(text);
+		}
+		for (byte[] compressed : new byte[][] { multiMember.toByteArray(), zstd.toByteArray(), bzip2.toByteArray() }) {
+			Path file = tempDir.resolve("words.data");
+			Files.write(file, compressed);
+			try (ParallelFileIngester ingester = new ParallelFileIngester(2, 100)) {
+				Assertions.assertEquals(expected, toMap(ingester.count(file)));
+			}
+		}
+	}
+
+	@Test
+	public void file_set_ingest_is_scheduled_largest_first() throws Exception {
+		String[] texts = new String[8];
+		StringBuilder all = new StringBuilder();
+		for (int i = 0; i < texts.length; i++) {
+			texts[i] = randomText(200 * (i + 1) * (i % 2 == 0 ? 1 : 3));
+			Files.write(tempDir.resolve("file-" + i + ".txt"), gzipIfOdd(i, texts[i].getBytes(StandardCharsets.UTF_8)));
+			all.append(texts[i]).append('\n');
+		}
+		Path allFile = tempDir.resolve("all.data");
+		Files.write(allFile, all.toString().getBytes(StandardCharsets.UTF_8));
+		List<Path> files = FileSet.resolve(tempDir + "/file-*.txt");
+		Assertions.assertEquals(texts.length, files.size());
+
+		try (ParallelFileIngester ingester = new ParallelFileIngester(3, 500)) {
+			IngestProgress progress = new IngestProgress();
+			Assertions.assertEquals(singleThreadedCounts(allFile), toMap(ingester.countAll(files, progress)));
+			List<FileProgress> fileProgresses = progress.getFiles();
+			for (int i = 1; i < fileProgresses.size(); i++) {
+				Assertions.assertTrue(fileProgresses.get(i - 1).getSize() >= fileProgresses.get(i).getSize());
+			}
+			Assertions.assertTrue(fileProgresses.stream().allMatch(file -> file.getStatus() == FileProgress.Status.SUCCEEDED));
+			Assertions.assertEquals(fileProgresses.stream().mapToLong(FileProgress::getTokens).sum(), progress.getTokens());
+		}
+	}
+
+	@Test
+	public void file_set_ingest_of_failed_files() throws Exception {
+		Path good = tempDir.resolve("good.txt");
+		Files.write(good, "some data".getBytes(StandardCharsets.UTF_8));
+		Path broken = tempDir.resolve("broken.txt");
+		Files.write(broken, Arrays.copyOf(gzip("some data".getBytes(StandardCharsets.UTF_8)), 12));
+		try (ParallelFileIngester ingester = new ParallelFileIngester(2, 100)) {
+			IngestProgress progress = new IngestProgress();
+			Assertions.assertEquals(singleThreadedCounts(good), toMap(ingester.countAll(Arrays.asList(good, broken), progress)));
+			Assertions.assertEquals(FileProgress.Status.FAILED, progress.getFiles().get(0).getStatus());
+			Assertions.assertEquals(FileProgress.Status.SUCCEEDED, progress.getFiles().get(1).getStatus());
+
+			Assertions.assertThrows(IOException.class, () -> ingester.countAll(Arrays.asList(broken), new IngestProgress()));
+
+			// A file deleted after the set was resolved fails alone
+			Path deleted = tempDir.resolve("deleted.txt");
+			progress = new IngestProgress();
+			Assertions.assertEquals(singleThreadedCounts(good), toMap(ingester.countAll(Arrays.asList(deleted, good), progress)));
+			Assertions.assertEquals(FileProgress.Status.SUCCEEDED, progress.getFiles().get(0).getStatus());
+			Assertions.assertEquals(FileProgress.Status.FAILED, progress.getFiles().get(1).getStatus());
+			Assertions.assertEquals(0, progress.getFiles().get(1).getSize());
+			Assertions.assertTrue(progress.getFiles().get(1).getError().contains("deleted.txt"));
+		}
+	}
+
+	private static byte[] gzipIfOdd(int i, byte[] bytes) throws IOException {
+		return i % 2 == 0 ? bytes : gzip(bytes);
+	}
+
+	private static String randomText(int words) {
+		String[] vocabulary = { "Some", "data", "DATA", "tel-aviv", "école", "ΟΔΟΣ", "x y", "a\tb", "😀", "\r\n", "  " };
+		Random random = new Random(3);
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			data.append(vocabulary[random.nextInt(vocabulary.length)]).append(random.nextInt(4) == 0 ? "\n" : " ");
+		}
+		return data.toString();
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(compressed)) {
+			os.write(bytes);
+		}
+		return compressed.toByteArray();
+	}
+
+	/**
+	 * A BGZF file (as written by bgzip) with blocks of the given uncompressed size, followed by the empty EOF block
+	 */
+	private static byte[] bgzf(byte[] bytes, int blockSize) {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		for (int offset = 0; offset < bytes.length; offset += blockSize) {
+			writeBgzfBlock(file, bytes, offset, Math.min(blockSize, bytes.length - offset));
+		}
+		writeBgzfBlock(file, bytes, 0, 0);
+		return file.toByteArray();
+	}
+
+	private static void writeBgzfBlock(ByteArrayOutputStream file, byte[] bytes, int offset, int length) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(bytes, offset, length);
+		deflater.finish();
+		byte[] deflated = new byte[length + 1024];
+		int deflatedLength = deflater.deflate(deflated);
+		deflater.end();
+		CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+		ByteBuffer block = ByteBuffer.allocate(18 + deflatedLength + 8).order(ByteOrder.LITTLE_ENDIAN);
+		block.put(new byte[] { 0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF }).putShort((short) 6);
+		block.put((byte) 'B').put((byte) 'C').putShort((short) 2).putShort((short) (block.capacity() - 1));
+		block.put(deflated, 0, deflatedLength).putInt((int) crc.getValue()).putInt(length);
+		file.write(block.array(), 0, block.capacity());
+	}
+
+	private Map<String, Long> singleThreadedCounts(Path file) throws Exception {
+		WordCounts wordCounts = new WordCounts();
+		new WordTokenizer(wordCounts).tokenize(new ByteArrayInputStream(Files.readAllBytes(file)));
+		return toMap(wordCounts);
+	}
+
+	private Map<String, Long> toMap(WordCounts wordCounts) {
+		Map<String, Long> result = new HashMap<>();
+		wordCounts.forEach(result::put);
+		return result;
+	}
+}
@@ -0,0 +1,120 @@
+package com.lemon.words.service.ingest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.lemon.words.exception.PayloadTooLargeException;
+
+/**
+ * An upload counts the same words however its body is split to buffers, plain or gzipped
+ */
+class StreamUploadTests {
+
+	@Test
+	public void any_split_of_the_body_counts_the_same_words() throws Exception {
+		StringBuilder text = new StringBuilder();
+		Random random = new Random(3);
+		for (int i = 0; i < 20000; i++) {
+			text.append("word").append(random.nextInt(500)).append(i % 7 == 0 ? "-" : " ");
+		}
+		byte[] plain = text.toString().getBytes(StandardCharsets.UTF_8);
+		WordCounts expected = new WordCounts();
+		new WordTokenizer(expected).tokenize(new ByteArrayInputStream(plain));
+
+		byte[] gzipped = gzip(plain);
+		for (int split : new int[] { 1, 3, 10, 4096, Integer.MAX_VALUE }) {
+			assertSameCounts(expected, upload(plain, false, split));
+			assertSameCounts(expected, upload(gzipped, true, split));
+		}
+		// A direct buffer (e.g. a Netty buffer) is copied out
+		try (StreamUpload upload = new StreamUpload(Long.MAX_VALUE, true)) {
+			ByteBuffer direct = ByteBuffer.allocateDirect(gzipped.length);
+			direct.put(gzipped).flip();
+			upload.feed(direct);
+			Assertions.assertFalse(direct.hasRemaining());
+			assertSameCounts(expected, upload.finish());
+		}
+	}
+
+	@Test
+	public void gzip_members_and_headers() throws Exception {
+		byte[] first = gzip("first words".getBytes(StandardCharsets.UTF_8));
+		byte[] second = gzip(" second words".getBytes(StandardCharsets.UTF_8));
+		byte[] concatenated = Arrays.copyOf(first, first.length + second.length + 3);
+		System.arraycopy(second, 0, concatenated, first.length, second.length);
+		// Trailing garbage is ignored (as GZIPInputStream does)
+		concatenated[concatenated.length - 3] = 'x';
+		WordCounts counts = upload(concatenated, true, 2);
+		Assertions.assertEquals(2, counts.get("words"));
+		Assertions.assertEquals(1, counts.get("second"));
+
+		// A header with an extra field, a file name and a comment
+		byte[] header = { 0x1F, (byte) 0x8B, 8, 4 | 8 | 16, 0, 0, 0, 0, 0, 0, 2, 0, 'a', 'b', 'n', 0, 'c', 0 };
+		byte[] named = new byte[header.length + first.length - 10];
+		System.arraycopy(header, 0, named, 0, header.length);
+		System.arraycopy(first, 10, named, header.length, first.length - 10);
+		Assertions.assertEquals(1, upload(named, true, 1).get("first"));
+	}
+
+	@Test
+	public void corrupted_gzip_bodies_fail() throws Exception {
+		byte[] gzipped = gzip("some words".getBytes(StandardCharsets.UTF_8));
+		Assertions.assertThrows(ZipException.class, () -> upload("plain text".getBytes(StandardCharsets.UTF_8), true, 4));
+		Assertions.assertThrows(EOFException.class, () -> upload(Arrays.copyOf(gzipped, gzipped.length - 4), true, 4));
+		Assertions.assertThrows(EOFException.class, () -> upload(new byte[0], true, 4));
+		byte[] badCrc = gzipped.clone();
+		badCrc[badCrc.length - 8] ^= 1;
+		Assertions.assertThrows(ZipException.class, () -> upload(badCrc, true, 4));
+	}
+
+	@Test
+	public void bodies_beyond_the_maximal_size() throws Exception {
+		byte[] plain = new byte[1000];
+		Arrays.fill(plain, (byte) 'a');
+		Assertions.assertThrows(PayloadTooLargeException.class, () -> upload(plain, false, 100, 999));
+		Assertions.assertEquals(1, upload(plain, false, 100, 1000).size());
+		// A small body that decompresses beyond the maximal size
+		byte[] gzipped = gzip(plain);
+		Assertions.assertTrue(gzipped.length < 100);
+		Assertions.assertThrows(PayloadTooLargeException.class, () -> upload(gzipped, true, 100, 999));
+	}
+
+	private static WordCounts upload(byte[] body, boolean gzip, int split) throws IOException {
+		return upload(body, gzip, split, Long.MAX_VALUE);
+	}
+
+	private static WordCounts upload(byte[] body, boolean gzip, int split, long maxSize) throws IOException {
+		try (StreamUpload upload = new StreamUpload(maxSize, gzip)) {
+			for (int offset = 0; offset < body.length; offset += split) {
+				upload.feed(body, offset, Math.min(split, body.length - offset));
+			}
+			Assertions.assertEquals(body.length, upload.getBytesRead());
+			return upload.finish();
+		}
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(gzipped)) {
+			os.write(bytes);
+		}
+		return gzipped.toByteArray();
+	}
+
+	private static void assertSameCounts(WordCounts expected, WordCounts actual) {
+		Assertions.assertEquals(expected.size(), actual.size());
+		expected.forEach((word, count) -> Assertions.assertEquals(count, actual.get(word), word));
+	}
+}
@@ -0,0 +1,111 @@
+package com.lemon.words.service.ingest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.lemon.words.service.cluster.WordsCluster;
+
+/**
+ * Concurrent batches added to the striped counts should sum up exactly like adding them one by one
+ */
+class StripedWordCountsTests {
+
+	@Test
+	public void concurrent_batches_sum_up_exactly() throws Exception {
+		int threads = 8;
+		List<WordCounts> batches = new ArrayList<>();
+		Map<String, Long> expected = new HashMap<>();
+		Random random = new Random(11);
+		for (int i = 0; i < threads * 20; i++) {
+			WordCounts batch = new WordCounts();
+			for (int j = 0; j < 500; j++) {
+				String word = "w" + random.nextInt(2000);
+				batch.increment(word);
+				expected.merge(word, 1l, Long::sum);
+			}
+			batches.add(batch);
+		}
+
+		StripedWordCounts striped = new StripedWordCounts(16);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = thread; i < batches.size(); i += threads) {
+						striped.addAll(batches.get(i));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		Map<String, Long> actual = new HashMap<>();
+		Set<String> seen = new HashSet<>();
+		for (WordCounts drained : striped.drain()) {
+			drained.forEach((word, count) -> {
+				// The drained batches have no words in common
+				Assertions.assertTrue(seen.add(word), word);
+				actual.put(word, count);
+			});
+		}
+		Assertions.assertEquals(expected, actual);
+		Assertions.assertTrue(striped.drain().isEmpty());
+	}
+
+	/**
+	 * A cluster node only gets the words of its shard (picked by the high bits of the hash), they should still use all its stripes
+	 */
+	@Test
+	public void the_words_of_a_shard_spread_over_all_the_stripes() {
+		for (int shards : new int[] { 2, 4, 16 }) {
+			for (int shard = 0; shard < shards; shard++) {
+				WordCounts batch = new WordCounts();
+				for (int i = 0; batch.size() < 2000; i++) {
+					String word = "w" + i;
+					if (WordsCluster.shardOf(hash(word), shards) == shard) {
+						batch.increment(word);
+					}
+				}
+				StripedWordCounts striped = new StripedWordCounts(16);
+				striped.addAll(batch);
+				List<WordCounts> drained = striped.drain();
+				Assertions.assertEquals(16, drained.size(), shards + " shards, shard " + shard);
+				for (WordCounts stripe : drained) {
+					// Roughly even (2000 words over 16 stripes, 125 on average)
+					Assertions.assertTrue(stripe.size() > 60, shards + " shards, shard " + shard + ": " + stripe.size());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void stripes_count_is_a_power_of_two() {
+		Assertions.assertEquals(2, new StripedWordCounts(0).getStripesCount());
+		Assertions.assertEquals(2, new StripedWordCounts(2).getStripesCount());
+		Assertions.assertEquals(8, new StripedWordCounts(5).getStripesCount());
+		Assertions.assertEquals(16, new StripedWordCounts(16).getStripesCount());
+	}
+
+	private static int hash(String word) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		return WordCounts.hash(bytes, 0, bytes.length);
+	}
+}
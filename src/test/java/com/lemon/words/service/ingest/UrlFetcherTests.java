@@ -0,0 +1,150 @@
+package com.lemon.words.service.ingest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checking the URL fetcher against a local HTTP server
+ */
+class UrlFetcherTests {
+
+	private HttpServer server;
+	private String baseUrl;
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/words.txt", exchange -> {
+			byte[] body = "some data data".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+		server.createContext("/chunked.txt", exchange -> {
+			// Chunked (unknown length) response, larger than the cap
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream os = exchange.getResponseBody()) {
+				for (int i = 0; i < 100; i++) {
+					os.write("word ".getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		});
+		server.createContext("/slow.txt", exchange -> {
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write("slow ".getBytes(StandardCharsets.UTF_8));
+				os.flush();
+				Thread.sleep(2000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		server.createContext("/words.gz", exchange -> {
+			// Two gzip members, the second one sent after a pause (nothing of it is available when the first one ends)
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(gzip("first words "));
+				os.flush();
+				Thread.sleep(200);
+				os.write(gzip("second words"));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		server.createContext("/expanding.gz", exchange -> {
+			byte[] body = gzip(new String(new char[1000]).replace('\0', 'a'));
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+		server.start();
+		baseUrl = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@AfterEach
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void url_fetcher_streams_content() throws Exception {
+		UrlFetcher fetcher = new UrlFetcher(Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofMinutes(1), 1024);
+		WordCounts wordCounts = new WordCounts();
+		try (InputStream is = fetcher.open(baseUrl + "/words.txt")) {
+			new WordTokenizer(wordCounts).tokenize(is);
+		}
+		Assertions.assertEquals(2, wordCounts.get("data"));
+	}
+
+	@Test
+	public void url_fetcher_rejects_content_length_over_max_size() throws Exception {
+		UrlFetcher fetcher = new UrlFetcher(Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofMinutes(1), 5);
+		Assertions.assertThrows(IOException.class, () -> fetcher.open(baseUrl + "/words.txt"));
+	}
+
+	@Test
+	public void url_fetcher_stops_streaming_over_max_size() throws Exception {
+		UrlFetcher fetcher = new UrlFetcher(Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofMinutes(1), 50);
+		Assertions.assertThrows(IOException.class, () -> {
+			try (InputStream is = fetcher.open(baseUrl + "/chunked.txt")) {
+				new WordTokenizer(new WordCounts()).tokenize(is);
+			}
+		});
+	}
+
+	@Test
+	public void url_fetcher_decompresses_all_the_gzip_members() throws Exception {
+		UrlFetcher fetcher = new UrlFetcher(Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofMinutes(1), 1024);
+		WordCounts wordCounts = new WordCounts();
+		try (InputStream is = fetcher.openDecompressed(baseUrl + "/words.gz")) {
+			new WordTokenizer(wordCounts).tokenize(is);
+		}
+		Assertions.assertEquals(2, wordCounts.get("words"));
+		Assertions.assertEquals(1, wordCounts.get("second"));
+	}
+
+	@Test
+	public void url_fetcher_stops_decompressing_over_max_size() throws Exception {
+		// The compressed content is within the maximal size, the decompressed one is not
+		UrlFetcher fetcher = new UrlFetcher(Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofMinutes(1), 100);
+		Assertions.assertThrows(IOException.class, () -> {
+			try (InputStream is = fetcher.openDecompressed(baseUrl + "/expanding.gz")) {
+				new WordTokenizer(new WordCounts()).tokenize(is);
+			}
+		});
+	}
+
+	@Test
+	public void url_fetcher_read_timeout() throws Exception {
+		UrlFetcher fetcher = new UrlFetcher(Duration.ofSeconds(5), Duration.ofMillis(200), Duration.ofMinutes(1), 1024);
+		Assertions.assertThrows(SocketTimeoutException.class, () -> {
+			try (InputStream is = fetcher.open(baseUrl + "/slow.txt")) {
+				new WordTokenizer(new WordCounts()).tokenize(is);
+			}
+		});
+	}
+
+	private static byte[] gzip(String text) throws IOException {
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(gzipped)) {
+			os.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+		return gzipped.toByteArray();
+	}
+}
@@ -0,0 +1,148 @@
+package com.lemon.words.service.ingest;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Conformance tests - the byte level tokenizer should count exactly the same words as the original line splitter
+ * (Scanner + StringUtils.replace + String.split + toLowerCase)
+ */
+class WordTokenizerTests {
+
+	private static final String[] SAMPLES = {
+			"",
+			"   ",
+			"some data data",
+			"mid-word-clean-up-up",
+			"Hi! My name is (what?), my name is (who?), my name is Slim Shady",
+			"Hi1 You YOU",
+			"  leading and trailing  ",
+			"double  spaces--and dashes-",
+			"tabs\tare\tpart of\ta word",
+			"windows\r\nlines\rmac\nunix\n\n",
+			"unicode\u0085next\u2028line\u2029paragraph",
+			"ÉCOLE école École-ÉCOLE",
+			"ΟΔΟΣ οδος",
+			"İstanbul ISTANBUL istanbul",
+			"emoji 😀 😀x X😀",
+			"שלום עולם",
+			"\uFEFFbom at start",
+			"2-t\n45-d\n20-point" };
+
+	@Test
+	public void tokenizer_matches_line_splitter_on_samples() throws Exception {
+		for (String sample : SAMPLES) {
+			assertConforms(sample);
+		}
+	}
+
+	@Test
+	public void tokenizer_matches_line_splitter_on_random_input() throws Exception {
+		String alphabet = "abcABC  --\n\r\t1!éÉ\u0085\u2028\u2029Σİ😀";
+		Random random = new Random(11);
+		for (int sample = 0; sample < 500; sample++) {
+			StringBuilder data = new StringBuilder();
+			int length = random.nextInt(200);
+			for (int i = 0; i < length; i++) {
+				char c = alphabet.charAt(random.nextInt(alphabet.length()));
+				if (Character.isHighSurrogate(c)) {
+					data.append("😀");
+				} else if (!Character.isLowSurrogate(c)) {
+					data.append(c);
+				}
+			}
+			assertConforms(data.toString());
+		}
+	}
+
+	/**
+	 * The tokenizer is push based, a word (or a multi byte separator) may be split between two feeds
+	 */
+	@Test
+	public void tokenizer_handles_words_split_between_feeds() throws Exception {
+		for (String sample : SAMPLES) {
+			byte[] bytes = sample.getBytes(StandardCharsets.UTF_8);
+			Map<String, Long> expected = splitterCounts(bytes);
+			for (int split = 0; split <= bytes.length; split++) {
+				WordCounts wordCounts = new WordCounts();
+				WordTokenizer tokenizer = new WordTokenizer(wordCounts);
+				tokenizer.feed(bytes, 0, split);
+				tokenizer.feed(bytes, split, bytes.length - split);
+				tokenizer.finish();
+				Assertions.assertEquals(expected, toMap(wordCounts), "sample: " + sample + " split: " + split);
+			}
+		}
+	}
+
+	@Test
+	public void tokenizer_handles_words_longer_than_its_buffers() throws Exception {
+		String longWord = StringUtils.repeat("Ab", 100000);
+		assertConforms(longWord + " " + longWord + "-x");
+	}
+
+	@Test
+	public void tokenizer_matches_line_splitter_on_test_file() throws Exception {
+		byte[] bytes;
+		try (InputStream is = new FileInputStream("testfile.txt")) {
+			bytes = is.readAllBytes();
+		}
+		Assertions.assertEquals(splitterCounts(bytes), tokenizerCounts(bytes));
+	}
+
+	@Test
+	public void tokenizer_counts_tokens() throws Exception {
+		WordCounts wordCounts = new WordCounts();
+		WordTokenizer tokenizer = new WordTokenizer(wordCounts);
+		tokenizer.tokenize(new ByteArrayInputStream("a b-b  c\n".getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertEquals(4, tokenizer.getTokens());
+		Assertions.assertEquals(4, wordCounts.getTotalCount());
+		Assertions.assertEquals(3, wordCounts.size());
+		Assertions.assertEquals(2, wordCounts.get("b"));
+	}
+
+	private void assertConforms(String sample) throws IOException {
+		byte[] bytes = sample.getBytes(StandardCharsets.UTF_8);
+		Assertions.assertEquals(splitterCounts(bytes), tokenizerCounts(bytes), "sample: " + sample);
+	}
+
+	private Map<String, Long> tokenizerCounts(byte[] bytes) throws IOException {
+		WordCounts wordCounts = new WordCounts();
+		new WordTokenizer(wordCounts).tokenize(new ByteArrayInputStream(bytes));
+		return toMap(wordCounts);
+	}
+
+	private Map<String, Long> toMap(WordCounts wordCounts) {
+		Map<String, Long> result = new HashMap<>();
+		wordCounts.forEach(result::put);
+		return result;
+	}
+
+	/**
+	 * The original splitter, as it was implemented in WordService
+	 */
+	private Map<String, Long> splitterCounts(byte[] bytes) {
+		Map<String, Long> result = new HashMap<>();
+		try (Scanner sc = new Scanner(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)) {
+			while (sc.hasNextLine()) {
+				String lineString = StringUtils.replace(sc.nextLine(), "-", " ");
+				for (String word : lineString.split(" ")) {
+					if (word != null && !word.equals("")) {
+						result.merge(word.toLowerCase(), 1l, Long::sum);
+					}
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,63 @@
+package com.lemon.words.service.persistence;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.persistence.SnapshotFile.StateSnapshot;
+
+/**
+ * Comparing the load \ save time and the file size of the legacy (Java serialization) state file and the binary snapshot.
+ * 
+ * Not part of the regular build, run with:
+ *   mvn test -Dtest=SnapshotFileBenchmark -Dwords.benchmark=true [-Dwords.benchmark.sizes=1000000,10000000] [-DargLine=-Xmx8g]
+ */
+@EnabledIfSystemProperty(named = "words.benchmark", matches = "true")
+class SnapshotFileBenchmark {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void snapshot_load_and_save_benchmark() throws Exception {
+		for (String size : System.getProperty("words.benchmark.sizes", "1000000,10000000").split(",")) {
+			List<WordOccurrences> occurrences = SnapshotFileTests.sortedOccurrences(Integer.parseInt(size));
+			Path legacyFile = tempDir.resolve("legacy-" + size);
+			Path binaryFile = tempDir.resolve("binary-" + size);
+
+			long start = System.nanoTime();
+			try (OutputStream os = Files.newOutputStream(legacyFile); ObjectOutputStream oos = new ObjectOutputStream(os)) {
+				oos.writeObject(occurrences);
+			}
+			long legacySave = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(legacyFile))) {
+				ois.readObject();
+			}
+			long legacyLoad = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			SnapshotFile.write(binaryFile, new StateSnapshot(occurrences, 0));
+			long binarySave = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			SnapshotFile.read(binaryFile);
+			long binaryLoad = System.nanoTime() - start;
+
+			System.out.printf("%s words: legacy save %d ms, load %d ms, %d bytes | binary save %d ms, load %d ms, %d bytes%n",
+					size, legacySave / 1_000_000, legacyLoad / 1_000_000, Files.size(legacyFile),
+					binarySave / 1_000_000, binaryLoad / 1_000_000, Files.size(binaryFile));
+			Files.delete(legacyFile);
+			Files.delete(binaryFile);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.lemon.words.service.persistence;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.persistence.SnapshotFile.StateSnapshot;
+
+class SnapshotFileTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void snapshot_file_round_trip() throws Exception {
+		List<WordOccurrences> occurrences = sortedOccurrences(100000);
+		Path file = tempDir.resolve("state.txt");
+		SnapshotFile.write(file, new StateSnapshot(occurrences, 42));
+
+		StateSnapshot snapshot = SnapshotFile.read(file);
+		Assertions.assertEquals(42, snapshot.getSequence());
+		assertSameOccurrences(occurrences, snapshot.getOccurrences());
+	}
+
+	@Test
+	public void snapshot_file_empty_round_trip() throws Exception {
+		Path file = tempDir.resolve("state.txt");
+		SnapshotFile.write(file, new StateSnapshot(Collections.emptyList(), 0));
+		Assertions.assertTrue(SnapshotFile.read(file).getOccurrences().isEmpty());
+	}
+
+	@Test
+	public void snapshot_file_detects_corruption() throws Exception {
+		Path file = tempDir.resolve("state.txt");
+		SnapshotFile.write(file, new StateSnapshot(sortedOccurrences(1000), 1));
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length / 2] ^= 0x20;
+		Files.write(file, bytes);
+		Assertions.assertThrows(IOException.class, () -> SnapshotFile.read(file));
+	}
+
+	@Test
+	public void snapshot_file_streaming_round_trip() throws Exception {
+		List<WordOccurrences> occurrences = sortedOccurrences(10000);
+		Path file = tempDir.resolve("state.txt");
+		SnapshotFile.write(file, 7, occurrences.size(), consumer -> {
+			for (WordOccurrences wo : occurrences) {
+				byte[] bytes = ("-" + wo.getWord()).getBytes(StandardCharsets.UTF_8);
+				consumer.accept(bytes, 1, bytes.length - 1, wo.getCount());
+			}
+		});
+
+		List<WordOccurrences> read = new ArrayList<>();
+		long sequence = SnapshotFile.read(file, (bytes, offset, length, count) -> read
+				.add(new WordOccurrences(count, new String(bytes, offset, length, StandardCharsets.UTF_8))));
+		Assertions.assertEquals(7, sequence);
+		assertSameOccurrences(occurrences, read);
+		assertSameOccurrences(occurrences, SnapshotFile.read(file).getOccurrences());
+	}
+
+	@Test
+	public void legacy_state_file_migration() throws Exception {
+		List<WordOccurrences> occurrences = sortedOccurrences(1000);
+		Path file = tempDir.resolve("state.txt");
+		try (OutputStream os = Files.newOutputStream(file); ObjectOutputStream oos = new ObjectOutputStream(os)) {
+			oos.writeObject(Collections.synchronizedList(new ArrayList<>(occurrences)));
+		}
+		Assertions.assertTrue(LegacySnapshotMigrator.isLegacy(file));
+
+		LegacySnapshotMigrator.migrate(file);
+		Assertions.assertFalse(LegacySnapshotMigrator.isLegacy(file));
+		StateSnapshot snapshot = SnapshotFile.read(file);
+		Assertions.assertEquals(0, snapshot.getSequence());
+		assertSameOccurrences(occurrences, snapshot.getOccurrences());
+	}
+
+	/**
+	 * Words in rank order, with shared prefixes, non ASCII characters and large counts
+	 */
+	static List<WordOccurrences> sortedOccurrences(int size) {
+		List<WordOccurrences> occurrences = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			long count = i < 10 ? Long.MAX_VALUE - i : 1 + (size / (i + 1));
+			occurrences.add(new WordOccurrences(count, (i % 3 == 0 ? "école" : "word") + i));
+		}
+		Collections.sort(occurrences);
+		return occurrences;
+	}
+
+	private void assertSameOccurrences(List<WordOccurrences> expected, List<WordOccurrences> actual) {
+		Assertions.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assertions.assertEquals(expected.get(i).getWord(), actual.get(i).getWord());
+			Assertions.assertEquals(expected.get(i).getCount(), actual.get(i).getCount());
+		}
+	}
+}
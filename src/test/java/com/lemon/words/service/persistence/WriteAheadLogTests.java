@@ -0,0 +1,185 @@
+package com.lemon.words.service.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lemon.words.service.ingest.WordCounts;
+
+class WriteAheadLogTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void replay_skips_records_included_in_the_snapshot() throws Exception {
+		Path file = tempDir.resolve("state.wal");
+		try (WriteAheadLog log = new WriteAheadLog(file, 0, true)) {
+			Assertions.assertEquals(1, log.append(counts("a", 1, "b", 2)));
+			Assertions.assertEquals(2, log.append(counts("b", 3, "é", 4)));
+			log.sync(2);
+		}
+
+		WordCounts all = new WordCounts();
+		Assertions.assertEquals(2, WriteAheadLog.replay(file, 0, all));
+		Assertions.assertEquals(1, all.get("a"));
+		Assertions.assertEquals(5, all.get("b"));
+		Assertions.assertEquals(4, all.get("é"));
+
+		WordCounts afterFirst = new WordCounts();
+		Assertions.assertEquals(2, WriteAheadLog.replay(file, 1, afterFirst));
+		Assertions.assertEquals(0, afterFirst.get("a"));
+		Assertions.assertEquals(3, afterFirst.get("b"));
+	}
+
+	@Test
+	public void replay_truncates_a_torn_record() throws Exception {
+		Path file = tempDir.resolve("state.wal");
+		try (WriteAheadLog log = new WriteAheadLog(file, 0, true)) {
+			log.append(counts("a", 1, "b", 2));
+		}
+		long validSize = Files.size(file);
+		Files.write(file, new byte[] { 0, 0, 0, 100, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+		WordCounts replayed = new WordCounts();
+		Assertions.assertEquals(1, WriteAheadLog.replay(file, 0, replayed));
+		Assertions.assertEquals(2, replayed.get("b"));
+		Assertions.assertEquals(validSize, Files.size(file));
+
+		// Appending after the truncated tail
+		try (WriteAheadLog log = new WriteAheadLog(file, 1, true)) {
+			log.append(counts("c", 1, "b", 1));
+		}
+		replayed = new WordCounts();
+		Assertions.assertEquals(2, WriteAheadLog.replay(file, 0, replayed));
+		Assertions.assertEquals(3, replayed.get("b"));
+	}
+
+	@Test
+	public void rotate_starts_an_empty_log() throws Exception {
+		Path file = tempDir.resolve("state.wal");
+		Path rotated = tempDir.resolve("state.wal.1");
+		try (WriteAheadLog log = new WriteAheadLog(file, 0, false)) {
+			log.append(counts("a", 1, "b", 2));
+			log.rotate(rotated);
+			Assertions.assertEquals(0, log.size());
+			Assertions.assertEquals(2, log.append(counts("a", 1, "b", 2)));
+		}
+		WordCounts replayed = new WordCounts();
+		WriteAheadLog.replay(rotated, 0, replayed);
+		Assertions.assertEquals(1, replayed.get("a"));
+		Assertions.assertEquals(2, WriteAheadLog.replay(file, 0, replayed));
+		Assertions.assertEquals(2, replayed.get("a"));
+	}
+
+	@Test
+	public void large_ingests_are_split_to_records_and_replayed_whole() throws Exception {
+		Path file = tempDir.resolve("state.wal");
+		WordCounts large = new WordCounts();
+		for (int i = 0; i < 100; i++) {
+			large.add("word" + i, i + 1);
+		}
+		long singleRecordSize;
+		try (WriteAheadLog log = new WriteAheadLog(tempDir.resolve("single.wal"), 0, true)) {
+			log.append(large);
+			singleRecordSize = log.size();
+		}
+		try (WriteAheadLog log = new WriteAheadLog(file, 0, true, 64)) {
+			Assertions.assertEquals(1, log.append(counts("a", 1, "b", 2)));
+			long firstSize = log.size();
+			Assertions.assertEquals(2, log.append(large));
+			// Each record adds its headers
+			Assertions.assertTrue(log.size() - firstSize > singleRecordSize + 20 * 20);
+			Assertions.assertEquals(Files.size(file), log.size());
+		}
+		long fullSize = Files.size(file);
+
+		WordCounts replayed = new WordCounts();
+		Assertions.assertEquals(2, WriteAheadLog.replay(file, 0, replayed));
+		Assertions.assertEquals(102, replayed.size());
+		Assertions.assertEquals(100, replayed.get("word99"));
+		WordCounts afterFirst = new WordCounts();
+		Assertions.assertEquals(2, WriteAheadLog.replay(file, 1, afterFirst));
+		Assertions.assertEquals(100, afterFirst.size());
+
+		// A crash before the last record of the split ingest - none of its records is replayed, they are all truncated
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(fullSize - 1);
+		}
+		replayed = new WordCounts();
+		Assertions.assertEquals(1, WriteAheadLog.replay(file, 0, replayed));
+		Assertions.assertEquals(2, replayed.size());
+		try (WriteAheadLog log = new WriteAheadLog(file, 1, true)) {
+			Assertions.assertEquals(log.size(), Files.size(file));
+			Assertions.assertTrue(log.size() < 100);
+		}
+	}
+
+	@Test
+	public void a_failed_append_is_rolled_back() throws Exception {
+		Path file = tempDir.resolve("state.wal");
+		WordCounts large = new WordCounts();
+		for (int i = 0; i < 100; i++) {
+			large.add("word" + i, 1);
+		}
+		try (FailingLog log = new FailingLog(file, 64)) {
+			Assertions.assertEquals(1, log.append(counts("a", 1, "b", 2)));
+			long validSize = log.size();
+			// A single record torn in the middle
+			log.failAtRecord = 0;
+			Assertions.assertThrows(IOException.class, () -> log.append(counts("c", 1, "d", 1)));
+			Assertions.assertEquals(validSize, log.size());
+			Assertions.assertEquals(validSize, Files.size(file));
+			// A split ingest that fails after some of its records were written
+			log.failAtRecord = 5;
+			Assertions.assertThrows(IOException.class, () -> log.append(large));
+			Assertions.assertEquals(validSize, Files.size(file));
+
+			// The next ingests take the failed sequence, after the first one
+			Assertions.assertEquals(2, log.append(large));
+			Assertions.assertEquals(3, log.append(counts("a", 1, "e", 1)));
+		}
+		WordCounts replayed = new WordCounts();
+		Assertions.assertEquals(3, WriteAheadLog.replay(file, 0, replayed));
+		Assertions.assertEquals(2, replayed.get("a"));
+		Assertions.assertEquals(0, replayed.get("c"));
+		Assertions.assertEquals(1, replayed.get("word7"));
+		Assertions.assertEquals(1, replayed.get("e"));
+	}
+
+	/**
+	 * A log whose record write fails half way (once it reaches the given record)
+	 */
+	private static class FailingLog extends WriteAheadLog {
+
+		private int failAtRecord = -1;
+
+		private FailingLog(Path file, int maxRecordSize) throws IOException {
+			super(file, 0, true, maxRecordSize);
+		}
+
+		@Override
+		void writeRecord(FileChannel channel, ByteBuffer record) throws IOException {
+			if (failAtRecord-- == 0) {
+				record.limit(record.position() + record.remaining() / 2);
+				super.writeRecord(channel, record);
+				throw new IOException("No space left on device");
+			}
+			super.writeRecord(channel, record);
+		}
+	}
+
+	private WordCounts counts(String word1, long count1, String word2, long count2) {
+		WordCounts wordCounts = new WordCounts();
+		wordCounts.add(word1, count1);
+		wordCounts.add(word2, count2);
+		return wordCounts;
+	}
+}
@@ -0,0 +1,104 @@
+package com.lemon.words.service.ranking;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import com.lemon.words.config.WordsProperties;
+import com.lemon.words.config.WordsProperties.Ranking.RankingMode;
+import com.lemon.words.service.WordService;
+
+/**
+ * Measuring the approximate ranking (words.ranking.mode=approximate) against the exact engine on Zipf distributed corpora:
+ * recall \ precision of the top K words, the largest count error and the reported max error, and the ingest time of both modes.
+ * 
+ * Not part of the regular build, run with:
+ *   mvn test -Dtest=ApproximateRankingBenchmark -Dwords.benchmark=true [-Dwords.benchmark.tokens=10000000]
+ *     [-Dwords.benchmark.vocabulary=1000000] [-Dwords.benchmark.exponents=0.8,1.0,1.2] [-DargLine=-Xmx4g]
+ */
+@EnabledIfSystemProperty(named = "words.benchmark", matches = "true")
+class ApproximateRankingBenchmark {
+
+	private static final int BATCH_TOKENS = 100000;
+	private static final int TOP_K = 1000;
+
+	@Test
+	public void approximate_ranking_benchmark() throws Exception {
+		long tokens = Long.getLong("words.benchmark.tokens", 10000000);
+		int vocabulary = Integer.getInteger("words.benchmark.vocabulary", 1000000);
+		System.out.println("tokens=" + tokens + " vocabulary=" + vocabulary + " top-k=" + TOP_K);
+		for (String exponent : System.getProperty("words.benchmark.exponents", "0.8,1.0,1.2").split(",")) {
+			for (int counters : new int[] { 2000, 10000 }) {
+				measure(tokens, vocabulary, Double.parseDouble(exponent), counters);
+			}
+		}
+	}
+
+	private void measure(long tokens, int vocabulary, double exponent, int counters) throws Exception {
+		WordService exact = service(RankingMode.EXACT, counters);
+		WordService approximate = service(RankingMode.APPROXIMATE, counters);
+		try {
+			double[] cumulative = HeavyHittersTests.zipfCumulative(vocabulary, exponent);
+			Random random = new Random(11);
+			Map<String, Long> trueCounts = new HashMap<>();
+			long exactNanos = 0;
+			long approximateNanos = 0;
+			for (long ingested = 0; ingested < tokens; ingested += BATCH_TOKENS) {
+				StringBuilder batch = new StringBuilder();
+				for (int i = 0; i < BATCH_TOKENS; i++) {
+					String word = "w" + HeavyHittersTests.sample(cumulative, random);
+					batch.append(word).append(' ');
+					trueCounts.merge(word, 1L, Long::sum);
+				}
+				String data = batch.toString();
+				long start = System.nanoTime();
+				exact.postWords("string", data);
+				exactNanos += System.nanoTime() - start;
+				start = System.nanoTime();
+				approximate.postWords("string", data);
+				approximateNanos += System.nanoTime() - start;
+			}
+
+			List<String> exactTop = exact.getWordRanking("1-" + TOP_K);
+			RankingSnapshot approximateSnapshot = approximate.getRankingSnapshot();
+			List<String> approximateTop = approximate.getWordRanking("1-" + TOP_K, approximateSnapshot);
+			Set<String> common = new HashSet<>(exactTop);
+			common.retainAll(approximateTop);
+			int samePosition = 0;
+			for (int i = 0; i < Math.min(exactTop.size(), approximateTop.size()); i++) {
+				if (exactTop.get(i).equals(approximateTop.get(i))) {
+					samePosition++;
+				}
+			}
+			System.out.println(String.format(
+					"exponent=%.1f counters=%d vocabulary seen=%d recall@K=%.4f precision@K=%.4f same position=%.4f "
+							+ "reported max error=%d (N/m=%d) exact ingest=%dms approximate ingest=%dms",
+					exponent, counters, trueCounts.size(), (double) common.size() / exactTop.size(),
+					(double) common.size() / approximateTop.size(), (double) samePosition / exactTop.size(),
+					approximateSnapshot.getMaxError(), tokens / counters, exactNanos / 1000000, approximateNanos / 1000000));
+		} finally {
+			exact.destroy();
+			approximate.destroy();
+		}
+	}
+
+	private WordService service(RankingMode mode, int counters) throws Exception {
+		Path directory = Files.createTempDirectory("words-benchmark");
+		WordsProperties properties = new WordsProperties();
+		properties.getPersistence().setDirectory(directory.toString());
+		properties.getRanking().setMode(mode);
+		properties.getRanking().getApproximate().setTopK(TOP_K);
+		properties.getRanking().getApproximate().setCounters(counters);
+		WordService service = new WordService(properties);
+		service.init();
+		return service;
+	}
+}
@@ -0,0 +1,161 @@
+package com.lemon.words.service.ranking;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.storage.HeapStorage;
+import com.lemon.words.service.storage.IntArray;
+import com.lemon.words.service.storage.MappedStorage;
+
+/**
+ * Checking the dictionary encoded rank index against the reference sorted list implementation.
+ */
+class DictionaryRankIndexTests {
+
+	// Including words whose UTF-8 byte order differs from the String (UTF-16) order - a supplementary character vs U+E000+
+	private static final String[] WORDS = { "a", "ab", "b", "B", "école", "ΟΔΟΣ", "", "\uE000", "😀", "x😀",
+			"x\uFF01", "tel-aviv" };
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void dictionary_rank_index_matches_sorted_list_reference() {
+		WordDictionary dictionary = new WordDictionary();
+		assertMatchesReference(dictionary, new DictionaryRankIndex(dictionary));
+	}
+
+	@Test
+	public void mapped_dictionary_rank_index_matches_reference_and_reopens() {
+		// Small segments so words and tree arrays cross segments
+		int size;
+		try (MappedStorage storage = new MappedStorage(tempDir, 256)) {
+			WordDictionary dictionary = new WordDictionary(storage);
+			assertMatchesReference(dictionary, new DictionaryRankIndex(dictionary, storage));
+			size = dictionary.size();
+			storage.force();
+		}
+		try (MappedStorage storage = new MappedStorage(tempDir, 256)) {
+			WordDictionary dictionary = new WordDictionary(storage);
+			DictionaryRankIndex index = new DictionaryRankIndex(dictionary, storage);
+			Assertions.assertEquals(size, dictionary.size());
+			Assertions.assertEquals(size, index.size());
+
+			// The reopened tree keeps working - both the reference and the reopened dictionary get the increments twice
+			RankIndex reference = new SortedListRankIndex();
+			Map<String, WordOccurrences> referenceWords = new HashMap<>();
+			WordDictionary heapDictionary = new WordDictionary();
+			fill(reference, referenceWords, heapDictionary, new DictionaryRankIndex(heapDictionary));
+			fill(reference, referenceWords, dictionary, index);
+			assertSameRanking(reference, dictionary, index);
+		}
+	}
+
+	private void assertMatchesReference(WordDictionary dictionary, DictionaryRankIndex index) {
+		RankIndex reference = new SortedListRankIndex();
+		Map<String, WordOccurrences> referenceWords = new HashMap<>();
+		fill(reference, referenceWords, dictionary, index);
+		assertSameRanking(reference, dictionary, index);
+	}
+
+	/**
+	 * The same (random, but repeatable) increments to the reference and the dictionary
+	 */
+	private void fill(RankIndex reference, Map<String, WordOccurrences> referenceWords, WordDictionary dictionary,
+			DictionaryRankIndex index) {
+		Random random = new Random(42);
+
+		for (int i = 0; i < 20000; i++) {
+			// A small vocabulary so most of the operations are increments of existing words
+			String word = random.nextInt(4) == 0 ? WORDS[random.nextInt(WORDS.length)] : "w" + random.nextInt(500);
+			long delta = 1 + random.nextInt(3);
+
+			WordOccurrences wo = referenceWords.get(word);
+			if (wo == null) {
+				wo = new WordOccurrences(delta, word);
+				reference.add(wo);
+				referenceWords.put(word, wo);
+			} else {
+				reference.increment(wo, delta);
+			}
+
+			int id = dictionary.find(word);
+			if (id < 0) {
+				byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+				index.add(dictionary.add(bytes, 0, bytes.length, WordCounts.hash(bytes, 0, bytes.length), delta));
+			} else {
+				index.increment(id, delta);
+			}
+		}
+	}
+
+	private void assertSameRanking(RankIndex reference, WordDictionary dictionary, DictionaryRankIndex index) {
+		Assertions.assertEquals(reference.size(), index.size());
+		Assertions.assertEquals(reference.size(), dictionary.size());
+		IntArray ranked = HeapStorage.INSTANCE.temporaryIntArray(index.size());
+		index.copyTo(ranked);
+		for (int i = 0; i < reference.size(); i++) {
+			WordOccurrences expected = reference.get(i);
+			Assertions.assertEquals(expected.getWord(), dictionary.getWord(index.idAt(i)));
+			Assertions.assertEquals(expected.getCount(), dictionary.getCount(index.idAt(i)));
+			Assertions.assertEquals(index.idAt(i), ranked.get(i));
+			Assertions.assertEquals(i, index.indexOf(dictionary.find(expected.getWord())));
+			// Ranking a key - an indexed word, and a word that is not in the dictionary (right after the indexed word)
+			Assertions.assertEquals(i, index.rankOf(expected.getCount(), expected.getWord().getBytes(StandardCharsets.UTF_8)));
+			Assertions.assertEquals(i + 1,
+					index.rankOf(expected.getCount(), (expected.getWord() + "\0").getBytes(StandardCharsets.UTF_8)));
+		}
+	}
+
+	@Test
+	public void dictionary_orders_words_like_strings() {
+		WordDictionary dictionary = new WordDictionary();
+		for (String word : WORDS) {
+			byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+			dictionary.add(bytes, 0, bytes.length, WordCounts.hash(bytes, 0, bytes.length), 1);
+		}
+		for (int a = 0; a < WORDS.length; a++) {
+			for (int b = 0; b < WORDS.length; b++) {
+				Assertions.assertEquals(Integer.signum(WORDS[a].compareTo(WORDS[b])), Integer.signum(dictionary.compare(a, b)),
+						WORDS[a] + " vs " + WORDS[b]);
+				Assertions.assertEquals(Integer.signum(WORDS[a].compareTo(WORDS[b])),
+						Integer.signum(dictionary.compare(1, WORDS[a].getBytes(StandardCharsets.UTF_8), b)), WORDS[a] + " vs " + WORDS[b]);
+			}
+		}
+	}
+
+	@Test
+	public void dictionary_rank_index_remove_and_load_ranked() {
+		WordDictionary dictionary = new WordDictionary();
+		for (int i = 0; i < 1000; i++) {
+			byte[] bytes = ("w" + i).getBytes(StandardCharsets.UTF_8);
+			dictionary.add(bytes, 0, bytes.length, WordCounts.hash(bytes, 0, bytes.length), 1000 - i);
+		}
+		DictionaryRankIndex index = new DictionaryRankIndex(dictionary);
+		index.loadRanked();
+		Assertions.assertEquals(1000, index.size());
+		for (int i = 0; i < 1000; i++) {
+			Assertions.assertEquals(i, index.idAt(i));
+		}
+
+		// The loaded tree should keep working as a regular index
+		index.increment(999, 5000l);
+		Assertions.assertEquals(0, index.indexOf(999));
+		Assertions.assertEquals("w999", dictionary.getWord(index.idAt(0)));
+
+		index.remove(0);
+		Assertions.assertEquals(999, index.size());
+		Assertions.assertEquals(-1, index.indexOf(0));
+		Assertions.assertThrows(IndexOutOfBoundsException.class, () -> index.idAt(999));
+		Assertions.assertEquals(-1, dictionary.find("missing"));
+	}
+}
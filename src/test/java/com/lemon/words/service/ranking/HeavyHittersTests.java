@@ -0,0 +1,141 @@
+package com.lemon.words.service.ranking;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.lemon.words.service.ingest.WordCounts;
+
+/**
+ * The approximate counts (CountMinSketch, HeavyHitters) should stay within their documented error bounds
+ */
+class HeavyHittersTests {
+
+	@Test
+	public void count_min_sketch_never_under_counts_and_stays_within_the_error_bound() {
+		double epsilon = 0.001;
+		double delta = 0.01;
+		CountMinSketch sketch = CountMinSketch.withErrorBound(epsilon, delta);
+		Assertions.assertEquals(2719, sketch.getWidth());
+		Assertions.assertEquals(5, sketch.getDepth());
+
+		Map<String, Long> counts = zipfCounts(20000, 200000, 1);
+		long total = 0;
+		for (Map.Entry<String, Long> entry : counts.entrySet()) {
+			sketch.add(hash(entry.getKey()), entry.getValue());
+			total += entry.getValue();
+		}
+		int aboveBound = 0;
+		for (Map.Entry<String, Long> entry : counts.entrySet()) {
+			long estimate = sketch.estimate(hash(entry.getKey()));
+			Assertions.assertTrue(estimate >= entry.getValue(), entry.getKey());
+			if (estimate - entry.getValue() > epsilon * total) {
+				aboveBound++;
+			}
+		}
+		Assertions.assertTrue(aboveBound <= delta * counts.size(), "above the bound: " + aboveBound);
+	}
+
+	@Test
+	public void heavy_hitters_are_exact_below_the_capacity() {
+		HeavyHitters heavyHitters = new HeavyHitters(10, CountMinSketch.withErrorBound(0.01, 0.01));
+		WordCounts batch = new WordCounts();
+		batch.add("b", 3);
+		batch.add("a", 3);
+		batch.add("école", 5);
+		Assertions.assertEquals(3, heavyHitters.addAll(batch));
+		batch = new WordCounts();
+		batch.add("a", 1);
+		Assertions.assertEquals(0, heavyHitters.addAll(batch));
+
+		List<HeavyHitters.Counter> top = heavyHitters.top(10);
+		Assertions.assertEquals(Arrays.asList("école", "a", "b"), Arrays.asList(top.get(0).getWord(), top.get(1).getWord(),
+				top.get(2).getWord()));
+		Assertions.assertEquals(4, top.get(1).getCount());
+		for (HeavyHitters.Counter counter : top) {
+			Assertions.assertEquals(0, counter.getError());
+		}
+		Assertions.assertEquals(12, heavyHitters.getTotalCount());
+		Assertions.assertEquals(2, heavyHitters.top(2).size());
+	}
+
+	@Test
+	public void heavy_hitters_monitor_every_frequent_word_within_the_error_bounds() {
+		int capacity = 100;
+		HeavyHitters heavyHitters = new HeavyHitters(capacity, CountMinSketch.withErrorBound(0.001, 0.01));
+		Map<String, Long> counts = new HashMap<>();
+		Random random = new Random(7);
+		double[] cumulative = zipfCumulative(50000, 1.1);
+		// Many small batches, the same word keeps arriving in different batches
+		for (int b = 0; b < 200; b++) {
+			WordCounts batch = new WordCounts();
+			for (int i = 0; i < 1000; i++) {
+				String word = "w" + sample(cumulative, random);
+				batch.add(word, 1);
+				counts.merge(word, 1L, Long::sum);
+			}
+			heavyHitters.addAll(batch);
+		}
+		long total = heavyHitters.getTotalCount();
+		Assertions.assertEquals(200000, total);
+
+		List<HeavyHitters.Counter> top = heavyHitters.top(capacity);
+		Map<String, HeavyHitters.Counter> monitored = new HashMap<>();
+		for (HeavyHitters.Counter counter : top) {
+			monitored.put(counter.getWord(), counter);
+			long trueCount = counts.get(counter.getWord());
+			Assertions.assertTrue(counter.getCount() - counter.getError() <= trueCount, counter.getWord());
+			Assertions.assertTrue(trueCount <= counter.getCount(), counter.getWord());
+			Assertions.assertTrue(counter.getError() <= total / capacity, counter.getWord());
+		}
+		long minimal = top.get(top.size() - 1).getCount();
+		Assertions.assertTrue(minimal <= total / capacity);
+		for (Map.Entry<String, Long> entry : counts.entrySet()) {
+			if (entry.getValue() > minimal) {
+				Assertions.assertTrue(monitored.containsKey(entry.getKey()), entry.getKey());
+			}
+		}
+		// The heaviest words are ranked exactly
+		Assertions.assertEquals("w0", top.get(0).getWord());
+		Assertions.assertEquals(counts.get("w0"), top.get(0).getCount());
+	}
+
+	private static int hash(String word) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		return WordCounts.hash(bytes, 0, bytes.length);
+	}
+
+	private static Map<String, Long> zipfCounts(int words, int total, double exponent) {
+		Map<String, Long> counts = new HashMap<>();
+		Random random = new Random(3);
+		double[] cumulative = zipfCumulative(words, exponent);
+		for (int i = 0; i < total; i++) {
+			counts.merge("w" + sample(cumulative, random), 1L, Long::sum);
+		}
+		return counts;
+	}
+
+	static double[] zipfCumulative(int words, double exponent) {
+		double[] cumulative = new double[words];
+		double sum = 0;
+		for (int i = 0; i < words; i++) {
+			sum += 1 / Math.pow(i + 1, exponent);
+			cumulative[i] = sum;
+		}
+		for (int i = 0; i < words; i++) {
+			cumulative[i] /= sum;
+		}
+		return cumulative;
+	}
+
+	static int sample(double[] cumulative, Random random) {
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+	}
+}
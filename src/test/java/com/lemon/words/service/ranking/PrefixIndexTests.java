@@ -0,0 +1,153 @@
+package com.lemon.words.service.ranking;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.storage.MappedStorage;
+
+/**
+ * Checking the prefix rankings against filtering the whole ranking (the dictionary rank index) by the prefix
+ */
+class PrefixIndexTests {
+
+	// Words with many shared prefixes - multi byte characters, a word that is a prefix of others and the empty word
+	private static final String[] PARTS = { "a", "b", "ab", "é", "😀", "", "inter" };
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void prefix_rankings_match_the_filtered_ranking() {
+		WordDictionary dictionary = new WordDictionary();
+		DictionaryRankIndex rankIndex = new DictionaryRankIndex(dictionary);
+		PrefixIndex prefixIndex = new PrefixIndex(dictionary);
+		Set<String> words = fill(dictionary, rankIndex, prefixIndex, 3, 30000);
+		assertPrefixRankings(dictionary, rankIndex, prefixIndex, words);
+
+		// A new index over the same dictionary is built from its words
+		assertPrefixRankings(dictionary, rankIndex, new PrefixIndex(dictionary), words);
+	}
+
+	@Test
+	public void prefix_ranking_produces_only_the_requested_positions() {
+		WordDictionary dictionary = new WordDictionary();
+		DictionaryRankIndex rankIndex = new DictionaryRankIndex(dictionary);
+		PrefixIndex prefixIndex = new PrefixIndex(dictionary);
+		fill(dictionary, rankIndex, prefixIndex, 3, 5000);
+
+		PrefixIndex.PrefixRanking ranking = prefixIndex.rank("a".getBytes(StandardCharsets.UTF_8));
+		List<String> top = new ArrayList<>();
+		ranking.copyRange(0, 3, top);
+		ranking.copyRange(5, 7, top);
+		List<String> all = new ArrayList<>();
+		prefixIndex.rank("a".getBytes(StandardCharsets.UTF_8)).copyRange(0, ranking.size(), all);
+		Assertions.assertEquals(all.subList(0, 3), top.subList(0, 3));
+		Assertions.assertEquals(all.subList(5, 7), top.subList(3, 5));
+		Assertions.assertEquals(0, prefixIndex.rank("missing".getBytes(StandardCharsets.UTF_8)).size());
+		Assertions.assertThrows(IndexOutOfBoundsException.class, () -> ranking.copyRange(0, ranking.size() + 1, top));
+	}
+
+	@Test
+	public void mapped_prefix_index_reopens_and_rebuilds_when_stale() {
+		Set<String> words;
+		try (MappedStorage storage = new MappedStorage(tempDir, 256)) {
+			WordDictionary dictionary = new WordDictionary(storage);
+			DictionaryRankIndex rankIndex = new DictionaryRankIndex(dictionary, storage);
+			words = fill(dictionary, rankIndex, new PrefixIndex(dictionary, storage), 3, 5000);
+			storage.force();
+		}
+		try (MappedStorage storage = new MappedStorage(tempDir, 256)) {
+			WordDictionary dictionary = new WordDictionary(storage);
+			DictionaryRankIndex rankIndex = new DictionaryRankIndex(dictionary, storage);
+			PrefixIndex prefixIndex = new PrefixIndex(dictionary, storage);
+			Assertions.assertEquals(dictionary.size(), prefixIndex.size());
+			assertPrefixRankings(dictionary, rankIndex, prefixIndex, words);
+
+			// The words change without the index (it is disabled)
+			PrefixIndex.invalidate(storage);
+			words.addAll(fill(dictionary, rankIndex, null, 4, 2000));
+			storage.force();
+		}
+		try (MappedStorage storage = new MappedStorage(tempDir, 256)) {
+			WordDictionary dictionary = new WordDictionary(storage);
+			DictionaryRankIndex rankIndex = new DictionaryRankIndex(dictionary, storage);
+			assertPrefixRankings(dictionary, rankIndex, new PrefixIndex(dictionary, storage), words);
+		}
+	}
+
+	/**
+	 * Random (repeatable) increments, most of them of existing words
+	 */
+	private Set<String> fill(WordDictionary dictionary, DictionaryRankIndex rankIndex, PrefixIndex prefixIndex, long seed,
+			int increments) {
+		Random random = new Random(seed);
+		Set<String> words = new LinkedHashSet<>();
+		for (int i = 0; i < increments; i++) {
+			StringBuilder word = new StringBuilder();
+			int parts = random.nextInt(5);
+			for (int p = 0; p < parts; p++) {
+				word.append(PARTS[random.nextInt(PARTS.length)]);
+			}
+			words.add(word.toString());
+			byte[] bytes = word.toString().getBytes(StandardCharsets.UTF_8);
+			long delta = 1 + random.nextInt(3);
+			int id = dictionary.find(bytes, 0, bytes.length, WordCounts.hash(bytes, 0, bytes.length));
+			if (id < 0) {
+				id = dictionary.add(bytes, 0, bytes.length, WordCounts.hash(bytes, 0, bytes.length), delta);
+				rankIndex.add(id);
+				if (prefixIndex != null) {
+					prefixIndex.add(id);
+				}
+			} else {
+				rankIndex.increment(id, delta);
+				if (prefixIndex != null) {
+					prefixIndex.increment(id);
+				}
+			}
+		}
+		return words;
+	}
+
+	private void assertPrefixRankings(WordDictionary dictionary, DictionaryRankIndex rankIndex, PrefixIndex prefixIndex,
+			Set<String> words) {
+		List<String> ranking = new ArrayList<>();
+		for (int i = 0; i < rankIndex.size(); i++) {
+			ranking.add(dictionary.getWord(rankIndex.idAt(i)));
+		}
+		Set<String> prefixes = new LinkedHashSet<>();
+		prefixes.add("");
+		prefixes.add("missing");
+		prefixes.add("inte");
+		prefixes.add("interb");
+		for (String word : words) {
+			for (int end = 1; end <= word.length(); end++) {
+				if (!Character.isHighSurrogate(word.charAt(end - 1))) {
+					prefixes.add(word.substring(0, end));
+				}
+			}
+		}
+		for (String prefix : prefixes) {
+			List<String> expected = new ArrayList<>();
+			for (String word : ranking) {
+				if (word.startsWith(prefix)) {
+					expected.add(word);
+				}
+			}
+			PrefixIndex.PrefixRanking prefixRanking = prefixIndex.rank(prefix.getBytes(StandardCharsets.UTF_8));
+			Assertions.assertEquals(expected.size(), prefixRanking.size(), prefix);
+			List<String> actual = new ArrayList<>();
+			prefixRanking.copyRange(0, prefixRanking.size(), actual);
+			Assertions.assertEquals(expected, actual, prefix);
+		}
+	}
+}
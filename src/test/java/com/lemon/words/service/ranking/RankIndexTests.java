@@ -0,0 +1,128 @@
+package com.lemon.words.service.ranking;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.lemon.words.model.WordOccurrences;
+
+/**
+ * Checking the order statistic tree rank indexes against the reference sorted list implementation.
+ */
+class RankIndexTests {
+
+	@Test
+	public void tree_rank_index_matches_sorted_list_reference() {
+		assertMatchesReference(new OrderStatisticTreeRankIndex());
+	}
+
+	@Test
+	public void dictionary_rank_index_matches_sorted_list_reference() {
+		assertMatchesReference(new DictionaryRankIndex(new WordDictionary()));
+	}
+
+	@Test
+	public void tree_rank_index_remove_and_index_of_missing_element() {
+		assertRemoveAndIndexOfMissingElement(new OrderStatisticTreeRankIndex());
+	}
+
+	@Test
+	public void dictionary_rank_index_remove_and_index_of_missing_element() {
+		assertRemoveAndIndexOfMissingElement(new DictionaryRankIndex(new WordDictionary()));
+	}
+
+	@Test
+	public void tree_rank_index_load_sorted_list() {
+		RankIndex tree = new OrderStatisticTreeRankIndex();
+		List<WordOccurrences> sorted = assertLoadsSortedList(tree);
+		Assertions.assertEquals(sorted, tree.toList().subList(1, 1000));
+	}
+
+	@Test
+	public void dictionary_rank_index_load_sorted_list() {
+		assertLoadsSortedList(new DictionaryRankIndex(new WordDictionary()));
+	}
+
+	private void assertMatchesReference(RankIndex tree) {
+		RankIndex reference = new SortedListRankIndex();
+		Map<String, WordOccurrences> referenceWords = new HashMap<>();
+		Map<String, WordOccurrences> treeWords = new HashMap<>();
+		Random random = new Random(42);
+
+		for (int i = 0; i < 20000; i++) {
+			// A small vocabulary so most of the operations are increments of existing words
+			String word = "w" + random.nextInt(500);
+			long delta = 1 + random.nextInt(3);
+			increment(reference, referenceWords, word, delta);
+			increment(tree, treeWords, word, delta);
+		}
+
+		assertSameContent(reference, tree);
+		for (WordOccurrences wo : treeWords.values()) {
+			Assertions.assertEquals(reference.indexOf(referenceWords.get(wo.getWord())), tree.indexOf(wo));
+		}
+	}
+
+	private void assertRemoveAndIndexOfMissingElement(RankIndex tree) {
+		WordOccurrences a = new WordOccurrences(3l, "a");
+		WordOccurrences b = new WordOccurrences(2l, "b");
+		tree.add(a);
+		tree.add(b);
+		tree.remove(a);
+		Assertions.assertEquals(1, tree.size());
+		Assertions.assertEquals(-1, tree.indexOf(a));
+		Assertions.assertEquals(0, tree.indexOf(b));
+		Assertions.assertThrows(IndexOutOfBoundsException.class, () -> tree.get(1));
+	}
+
+	/**
+	 * Loading a sorted list and moving its last element to the top
+	 *
+	 * @return the loaded elements that kept their positions (all but the moved last element)
+	 */
+	private List<WordOccurrences> assertLoadsSortedList(RankIndex tree) {
+		List<WordOccurrences> sorted = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			sorted.add(new WordOccurrences(1000 - i, "w" + i));
+		}
+		tree.load(sorted);
+		Assertions.assertEquals(sorted.size(), tree.size());
+		List<WordOccurrences> loaded = tree.toList();
+		for (int i = 0; i < sorted.size(); i++) {
+			Assertions.assertEquals(sorted.get(i).getWord(), loaded.get(i).getWord());
+			Assertions.assertEquals(sorted.get(i).getCount(), loaded.get(i).getCount());
+		}
+
+		// The loaded tree should keep working as a regular index
+		WordOccurrences last = sorted.get(999);
+		tree.increment(last, 5000l);
+		Assertions.assertEquals(0, tree.indexOf(last));
+		Assertions.assertEquals("w999", tree.get(0).getWord());
+		return sorted.subList(0, 999);
+	}
+
+	private void increment(RankIndex index, Map<String, WordOccurrences> words, String word, long delta) {
+		WordOccurrences wo = words.get(word);
+		if (wo == null) {
+			wo = new WordOccurrences(delta, word);
+			index.add(wo);
+			words.put(word, wo);
+		} else {
+			index.increment(wo, delta);
+		}
+	}
+
+	private void assertSameContent(RankIndex expected, RankIndex actual) {
+		Assertions.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assertions.assertEquals(expected.get(i).getWord(), actual.get(i).getWord());
+			Assertions.assertEquals(expected.get(i).getCount(), actual.get(i).getCount());
+		}
+		Assertions.assertEquals(expected.toList().size(), actual.toList().size());
+	}
+}
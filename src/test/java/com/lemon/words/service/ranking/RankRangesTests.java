@@ -0,0 +1,41 @@
+package com.lemon.words.service.ranking;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.lemon.words.exception.InvalidRangeException;
+
+/**
+ * Parsing, merging and clamping of the /word_ranking range input
+ */
+class RankRangesTests {
+
+	@Test
+	public void overlapping_and_adjacent_ranges_are_merged_in_order() {
+		RankRanges ranges = RankRanges.parse("50,1-10,2-4,11,8-12,40-45");
+		Assertions.assertEquals(3, ranges.rangesCount());
+		assertRange(ranges, 0, 1, 12);
+		assertRange(ranges, 1, 40, 45);
+		assertRange(ranges, 2, 50, 50);
+	}
+
+	@Test
+	public void positions_are_clamped_to_the_ranking_size() {
+		RankRanges ranges = RankRanges.parse("1-2000000000,3000000000");
+		Assertions.assertEquals(0, ranges.countPositions(0));
+		Assertions.assertEquals(7, ranges.countPositions(7));
+		Assertions.assertEquals(3, RankRanges.parse("5-7,100").countPositions(10));
+	}
+
+	@Test
+	public void malformed_ranges_are_rejected() {
+		for (String input : new String[] { "", "a", "1-", "-3", "0", "3-1", "1,,2", "1-2-3" }) {
+			Assertions.assertThrows(InvalidRangeException.class, () -> RankRanges.parse(input), input);
+		}
+	}
+
+	private void assertRange(RankRanges ranges, int i, long from, long to) {
+		Assertions.assertEquals(from, ranges.getFrom(i));
+		Assertions.assertEquals(to, ranges.getTo(i));
+	}
+}
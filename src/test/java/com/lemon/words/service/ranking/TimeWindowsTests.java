@@ -0,0 +1,117 @@
+package com.lemon.words.service.ranking;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.ingest.WordCounts;
+
+/**
+ * The incrementally evicted windows should rank exactly what a recount of the window's batches ranks
+ */
+class TimeWindowsTests {
+
+	private static final long MINUTE = 60000;
+
+	private final AtomicLong clock = new AtomicLong();
+	private final WordDictionary dictionary = new WordDictionary();
+
+	@Test
+	public void windows_slide_a_bucket_at_a_time() {
+		TimeWindows windows = new TimeWindows(dictionary, Arrays.asList(Duration.ofMinutes(2), Duration.ofMinutes(5)),
+				Duration.ofMinutes(1), clock::get);
+		record(windows, batch("a", 5));
+		clock.set(MINUTE);
+		record(windows, batch("b", 3));
+		clock.set(2 * MINUTE);
+		record(windows, batch("b", 3));
+
+		// The 2 minutes window no longer has the first minute
+		Assertions.assertEquals(Arrays.asList("b"), ranking(windows, Duration.ofMinutes(2)));
+		Assertions.assertEquals(Arrays.asList("b", "a"), ranking(windows, Duration.ofMinutes(5)));
+
+		// Nothing ingested, the windows still move on a query
+		clock.set(5 * MINUTE);
+		Assertions.assertEquals(Arrays.asList(), ranking(windows, Duration.ofMinutes(2)));
+		Assertions.assertEquals(Arrays.asList("b"), ranking(windows, Duration.ofMinutes(5)));
+		Assertions.assertEquals(6L, (long) windows.read(Duration.ofMinutes(5), window -> window.getCount(dictionary.find("b"))));
+
+		// A jump beyond all the windows
+		clock.set(60 * MINUTE);
+		record(windows, batch("c", 1));
+		Assertions.assertEquals(Arrays.asList("c"), ranking(windows, Duration.ofMinutes(5)));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ranking(windows, Duration.ofMinutes(3)));
+	}
+
+	@Test
+	public void windows_match_a_recount_of_their_buckets() {
+		List<Duration> durations = Arrays.asList(Duration.ofMinutes(3), Duration.ofMinutes(10));
+		TimeWindows windows = new TimeWindows(dictionary, durations, Duration.ofMinutes(1), clock::get);
+		Random random = new Random(5);
+		List<Long> minutes = new ArrayList<>();
+		List<WordCounts> batches = new ArrayList<>();
+		long time = 0;
+		for (int i = 0; i < 500; i++) {
+			time += random.nextInt(4) == 0 ? random.nextInt(3 * (int) MINUTE) : random.nextInt(1000);
+			clock.set(time);
+			WordCounts batch = new WordCounts();
+			for (int j = 0; j < 5; j++) {
+				batch.add("w" + random.nextInt(30), 1 + random.nextInt(3));
+			}
+			record(windows, batch);
+			minutes.add(time / MINUTE);
+			batches.add(batch);
+
+			for (Duration duration : durations) {
+				long start = time / MINUTE - duration.toMinutes() + 1;
+				Map<String, Long> expected = new HashMap<>();
+				for (int b = 0; b < batches.size(); b++) {
+					if (minutes.get(b) >= start) {
+						batches.get(b).forEach((word, count) -> expected.merge(word, count, Long::sum));
+					}
+				}
+				List<WordOccurrences> sorted = new ArrayList<>();
+				expected.forEach((word, count) -> sorted.add(new WordOccurrences(count, word)));
+				sorted.sort(null);
+				List<String> expectedRanking = new ArrayList<>();
+				sorted.forEach(wo -> expectedRanking.add(wo.getWord()));
+				Assertions.assertEquals(expectedRanking, ranking(windows, duration), "time " + time + " window " + duration);
+			}
+		}
+	}
+
+	private static List<String> ranking(TimeWindows windows, Duration duration) {
+		return windows.read(duration, window -> {
+			List<String> words = new ArrayList<>();
+			window.copyRange(0, window.size(), words);
+			return words;
+		});
+	}
+
+	/**
+	 * Merging the batch's new words into the dictionary (as the service does before recording it) and recording it
+	 */
+	private void record(TimeWindows windows, WordCounts batch) {
+		batch.forEachEntry((bytes, offset, length, hash, count) -> {
+			if (dictionary.find(bytes, offset, length, hash) < 0) {
+				dictionary.add(bytes, offset, length, hash, count);
+			}
+		});
+		windows.record(batch);
+	}
+
+	private static WordCounts batch(String word, long count) {
+		WordCounts batch = new WordCounts();
+		batch.add(word, count);
+		return batch;
+	}
+}
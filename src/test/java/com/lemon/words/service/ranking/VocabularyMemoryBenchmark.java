@@ -0,0 +1,124 @@
+package com.lemon.words.service.ranking;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import com.lemon.words.model.WordOccurrences;
+import com.lemon.words.service.ingest.WordCounts;
+import com.lemon.words.service.storage.HeapStorage;
+import com.lemon.words.service.storage.IntArray;
+import com.lemon.words.service.storage.MappedStorage;
+import com.lemon.words.service.storage.VocabularyStorage;
+
+/**
+ * Comparing the heap used by the vocabulary - the object based structures (a map of Strings to WordOccurrences,
+ * an order statistic tree and a String[] ranking) vs the dictionary encoding (WordDictionary, DictionaryRankIndex and an int[] ranking),
+ * on the heap and on a mapped storage (where only the segments objects are on the heap).
+ * 
+ * Not part of the regular build, run with:
+ *   mvn test -Dtest=VocabularyMemoryBenchmark -Dwords.benchmark=true [-Dwords.benchmark.sizes=1000000,10000000] [-DargLine=-Xmx4g]
+ */
+@EnabledIfSystemProperty(named = "words.benchmark", matches = "true")
+class VocabularyMemoryBenchmark {
+
+	private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+	// Keeps the measured structures reachable while the heap is measured
+	private Object retained;
+
+	@Test
+	public void vocabulary_memory_benchmark() throws IOException {
+		for (String size : System.getProperty("words.benchmark.sizes", "1000000,10000000").split(",")) {
+			int words = Integer.parseInt(size);
+
+			long before = usedHeap();
+			retained = objectVocabulary(words);
+			long objectBytes = usedHeap() - before;
+			retained = null;
+
+			before = usedHeap();
+			retained = encodedVocabulary(words, HeapStorage.INSTANCE);
+			long encodedBytes = usedHeap() - before;
+			retained = null;
+
+			long mappedBytes;
+			Path directory = Files.createTempDirectory("vocabulary");
+			try (MappedStorage storage = new MappedStorage(directory)) {
+				before = usedHeap();
+				retained = encodedVocabulary(words, storage);
+				mappedBytes = usedHeap() - before;
+				retained = null;
+			} finally {
+				MappedStorage.delete(directory);
+				Files.delete(directory);
+			}
+
+			System.out.printf("%d words: objects %d MB (%d bytes per word) | dictionary %d MB (%d bytes per word) | mapped dictionary %d KB heap%n",
+					words, objectBytes >> 20, objectBytes / words, encodedBytes >> 20, encodedBytes / words, mappedBytes >> 10);
+		}
+	}
+
+	private Object objectVocabulary(int words) {
+		Map<String, WordOccurrences> map = new HashMap<>();
+		List<WordOccurrences> occurrences = new ArrayList<>(words);
+		for (int i = 0; i < words; i++) {
+			WordOccurrences wo = new WordOccurrences(count(i, words), word(i));
+			map.put(wo.getWord(), wo);
+			occurrences.add(wo);
+		}
+		Collections.sort(occurrences);
+		RankIndex rankIndex = new OrderStatisticTreeRankIndex();
+		rankIndex.load(occurrences);
+		occurrences = null;
+		String[] ranking = new String[words];
+		for (int i = 0; i < words; i++) {
+			ranking[i] = rankIndex.get(i).getWord();
+		}
+		return new Object[] { map, rankIndex, ranking };
+	}
+
+	private Object encodedVocabulary(int words, VocabularyStorage storage) {
+		WordDictionary dictionary = new WordDictionary(storage);
+		DictionaryRankIndex rankIndex = new DictionaryRankIndex(dictionary, storage);
+		for (int i = 0; i < words; i++) {
+			byte[] bytes = word(i).getBytes(StandardCharsets.UTF_8);
+			rankIndex.add(dictionary.add(bytes, 0, bytes.length, WordCounts.hash(bytes, 0, bytes.length), count(i, words)));
+		}
+		IntArray ranking = storage.temporaryIntArray(words);
+		rankIndex.copyTo(ranking);
+		return new Object[] { dictionary, rankIndex, ranking };
+	}
+
+	/**
+	 * Word like tokens of 3-10 characters
+	 */
+	private static String word(int i) {
+		return Integer.toString(i * 31 + 46656, 36) + (i % 4 == 0 ? "ing" : "");
+	}
+
+	/**
+	 * A Zipf like distribution of the counts
+	 */
+	private static long count(int i, int words) {
+		return 1 + words / (i + 1);
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return MEMORY.getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,102 @@
+package com.lemon.words.service.replication;
+
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lemon.words.config.WordsProperties;
+import com.lemon.words.exception.InvalidStalenessException;
+import com.lemon.words.exception.ReadOnlyReplicaException;
+import com.lemon.words.exception.StaleReplicaException;
+import com.lemon.words.service.WordService;
+
+/**
+ * A replica should converge to the primary's ranking - from the snapshot it bootstraps with and from the streamed batches -
+ * and bootstrap again when the primary restarts
+ */
+class ReplicationTests {
+
+	private static final Duration HEARTBEAT = Duration.ofMillis(100);
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void replica_follows_the_primary() throws Exception {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		WordService primary = createService("primary", port, "");
+		WordService replica = null;
+		try {
+			primary.postWords("string", "the replica bootstraps from a snapshot of the primary the words");
+			replica = createService("replica", 0, "localhost:" + port);
+			WordService readOnly = replica;
+			Assertions.assertThrows(ReadOnlyReplicaException.class, () -> readOnly.postWords("string", "no"));
+			awaitSameRanking(primary, replica);
+
+			// The batches after the bootstrap are streamed
+			for (int i = 0; i < 20; i++) {
+				primary.postWords("string", "then the primary streams batch" + i + " to the replica");
+			}
+			awaitSameRanking(primary, replica);
+			replica.checkStaleness("10s");
+			Assertions.assertThrows(InvalidStalenessException.class, () -> readOnly.checkStaleness("soon"));
+			// Staleness bounds are ignored by the primary
+			primary.checkStaleness("0s");
+
+			// A restarted primary bootstraps the replica again
+			primary.destroy();
+			primary = createService("primary", port, "");
+			primary.postWords("string", "after the restart");
+			awaitSameRanking(primary, replica);
+		} finally {
+			primary.destroy();
+			if (replica != null) {
+				replica.destroy();
+			}
+		}
+	}
+
+	@Test
+	public void replica_without_a_primary_is_stale() throws Exception {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		WordService replica = createService("replica", 0, "localhost:" + port);
+		try {
+			Assertions.assertThrows(StaleReplicaException.class, () -> replica.checkStaleness("1h"));
+		} finally {
+			replica.destroy();
+		}
+	}
+
+	private static void awaitSameRanking(WordService primary, WordService replica) throws InterruptedException {
+		List<String> expected = primary.getWordRanking("1-1000");
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (!expected.equals(replica.getWordRanking("1-1000")) && System.nanoTime() < deadline) {
+			Thread.sleep(20);
+		}
+		Assertions.assertEquals(expected, replica.getWordRanking("1-1000"));
+	}
+
+	private WordService createService(String name, int port, String primary) throws Exception {
+		WordsProperties properties = new WordsProperties();
+		properties.getPersistence().setDirectory(Files.createDirectories(tempDir.resolve(name)).toString());
+		properties.getReplication().setPort(port);
+		properties.getReplication().setPrimary(primary);
+		properties.getReplication().setHeartbeatInterval(HEARTBEAT);
+		properties.getReplication().setReconnectDelay(HEARTBEAT);
+		WordService service = new WordService(properties);
+		service.init();
+		return service;
+	}
+}
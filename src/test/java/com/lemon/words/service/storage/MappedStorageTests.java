@@ -0,0 +1,84 @@
+package com.lemon.words.service.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The mapped arrays should behave like Java arrays - across segments, while growing and after reopening
+ */
+class MappedStorageTests {
+
+	// Tiny segments so the arrays span many of them
+	private static final int SEGMENT_SIZE = 64;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void mapped_arrays_grow_and_reopen_with_their_content() {
+		try (MappedStorage storage = new MappedStorage(tempDir, SEGMENT_SIZE)) {
+			IntArray ints = storage.intArray("ints", 1);
+			LongArray longs = storage.longArray("longs", 1);
+			for (int i = 0; i < 1000; i++) {
+				ints.ensureCapacity(i + 1);
+				longs.ensureCapacity(i + 1);
+				ints.set(i, i * 7);
+				longs.set(i, Long.MAX_VALUE - i);
+			}
+			storage.force();
+		}
+
+		try (MappedStorage storage = new MappedStorage(tempDir, SEGMENT_SIZE)) {
+			IntArray ints = storage.intArray("ints", 1);
+			LongArray longs = storage.longArray("longs", 1);
+			Assertions.assertTrue(ints.capacity() >= 1000);
+			for (int i = 0; i < 1000; i++) {
+				Assertions.assertEquals(i * 7, ints.get(i));
+				Assertions.assertEquals(Long.MAX_VALUE - i, longs.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void mapped_bytes_across_segments_and_views() {
+		try (MappedStorage storage = new MappedStorage(tempDir, SEGMENT_SIZE)) {
+			ByteArray bytes = storage.byteArray("bytes", 1);
+			byte[] word = "a word longer than a single segment of sixty four bytes, écoles included"
+					.getBytes(StandardCharsets.UTF_8);
+			bytes.ensureCapacity(10 + word.length);
+			bytes.set(10, word, 0, word.length);
+			ByteArray view = bytes.view();
+
+			// Growing maps more segments, the view keeps reading the bytes it covers
+			bytes.ensureCapacity(100 * SEGMENT_SIZE);
+			bytes.set(50 * SEGMENT_SIZE, (byte) 42);
+			byte[] read = new byte[word.length];
+			view.get(10, read, 0, read.length);
+			Assertions.assertArrayEquals(word, read);
+			Assertions.assertEquals(word[3], bytes.get(13));
+			Assertions.assertEquals(42, bytes.get(50 * SEGMENT_SIZE));
+			Assertions.assertThrows(IllegalStateException.class, () -> view.ensureCapacity(1000 * SEGMENT_SIZE));
+		}
+	}
+
+	@Test
+	public void temporary_arrays_leave_no_files() throws Exception {
+		try (MappedStorage storage = new MappedStorage(tempDir, SEGMENT_SIZE)) {
+			IntArray ints = storage.temporaryIntArray(100);
+			for (int i = 0; i < 100; i++) {
+				ints.set(i, -i);
+			}
+			Assertions.assertEquals(-99, ints.get(99));
+			Assertions.assertEquals(0, storage.temporaryLongArray(0).capacity());
+			try (Stream<Path> files = Files.list(tempDir)) {
+				Assertions.assertEquals(0, files.count());
+			}
+		}
+	}
+}